@@ -0,0 +1,58 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.optimizelydecision.OptimizelyDecision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.util.Map;
+
+/**
+ * Decision API benchmarks shared by {@link DecideLatencyBenchmark} and {@link DecideThroughputBenchmark}.
+ */
+public abstract class AbstractDecideBenchmark {
+
+    @Benchmark
+    public OptimizelyDecision decide(SyntheticProjectState project, UserState user) {
+        return project.optimizely.createUserContext(user.nextUserId(), project.attributes)
+            .decide(user.next(project.flagKeys));
+    }
+
+    @Benchmark
+    public Map<String, OptimizelyDecision> decideForKeys(SyntheticProjectState project, UserState user) {
+        return project.optimizely.createUserContext(user.nextUserId(), project.attributes)
+            .decideForKeys(project.decideForKeys);
+    }
+
+    @Benchmark
+    public Map<String, OptimizelyDecision> decideAll(SyntheticProjectState project, UserState user) {
+        return project.optimizely.createUserContext(user.nextUserId(), project.attributes)
+            .decideAll();
+    }
+
+    @Benchmark
+    public Variation activate(SyntheticProjectState project, UserState user) {
+        return project.optimizely.activate(user.next(project.experimentKeys), user.nextUserId(), project.attributes);
+    }
+
+    @Benchmark
+    public void track(SyntheticProjectState project, UserState user) {
+        project.optimizely.track(user.next(project.eventKeys), user.nextUserId(), project.attributes);
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.*;
+
+/**
+ * Generates v4 datafiles of a configurable size for benchmarking.
+ *
+ * Every flag is given {@code rulesPerFlag} experiment rules and a rollout with {@code rulesPerFlag} targeted
+ * delivery rules followed by an "Everyone Else" rule. Rules reference the audiences round-robin, so most
+ * audiences are shared by several flags, the same way they are in large projects.
+ */
+public final class SyntheticDatafile {
+
+    public static final int NUM_ATTRIBUTES = 10;
+    public static final String AGE_ATTRIBUTE = "age";
+
+    private static final String[] VARIABLE_TYPES = {"string", "integer", "double", "boolean", "json"};
+    private static final String[] VARIABLE_VALUES = {"value", "10", "1.5", "true", "{\"k\":\"v\",\"n\":1}"};
+
+    private final int numFlags;
+    private final int rulesPerFlag;
+    private final int numAudiences;
+    private final int numVariables;
+
+    private SyntheticDatafile(int numFlags, int rulesPerFlag, int numAudiences, int numVariables) {
+        this.numFlags = numFlags;
+        this.rulesPerFlag = rulesPerFlag;
+        this.numAudiences = numAudiences;
+        this.numVariables = numVariables;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static String flagKey(int flag) {
+        return "flag_" + flag;
+    }
+
+    public static String experimentKey(int flag, int rule) {
+        return "exp_" + flag + "_" + rule;
+    }
+
+    public static String eventKey(int flag) {
+        return "event_" + flag;
+    }
+
+    public static String attributeKey(int attribute) {
+        return "attr_" + attribute;
+    }
+
+    /**
+     * @return attributes which satisfy every generated audience.
+     */
+    public static Map<String, Object> matchingAttributes() {
+        Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+            attributes.put(attributeKey(i), "value_" + i);
+        }
+        attributes.put(AGE_ATTRIBUTE, 100);
+        return attributes;
+    }
+
+    public String toJson() {
+        Map<String, Object> datafile = new LinkedHashMap<>();
+        datafile.put("version", "4");
+        datafile.put("accountId", "1000");
+        datafile.put("projectId", "2000");
+        datafile.put("revision", "1");
+        datafile.put("anonymizeIP", true);
+        datafile.put("botFiltering", false);
+        datafile.put("sendFlagDecisions", true);
+        datafile.put("attributes", attributes());
+        datafile.put("audiences", Collections.emptyList());
+        datafile.put("typedAudiences", audiences());
+        datafile.put("groups", Collections.emptyList());
+
+        List<Object> experiments = new ArrayList<>();
+        List<Object> rollouts = new ArrayList<>();
+        List<Object> featureFlags = new ArrayList<>();
+        List<Object> events = new ArrayList<>();
+
+        for (int flag = 0; flag < numFlags; flag++) {
+            List<String> experimentIds = new ArrayList<>();
+            for (int rule = 0; rule < rulesPerFlag; rule++) {
+                String id = "e_" + flag + "_" + rule;
+                experimentIds.add(id);
+                experiments.add(rule(id, experimentKey(flag, rule), audienceFor(flag, rule), 2, 5000));
+            }
+
+            List<Object> deliveryRules = new ArrayList<>();
+            for (int rule = 0; rule < rulesPerFlag; rule++) {
+                String id = "d_" + flag + "_" + rule;
+                deliveryRules.add(rule(id, "rollout_" + flag + "_" + rule, audienceFor(flag, rule + rulesPerFlag), 1, 5000));
+            }
+            deliveryRules.add(rule("ee_" + flag, "everyone_else_" + flag, null, 1, 10000));
+
+            Map<String, Object> rollout = new LinkedHashMap<>();
+            rollout.put("id", "r_" + flag);
+            rollout.put("experiments", deliveryRules);
+            rollouts.add(rollout);
+
+            Map<String, Object> featureFlag = new LinkedHashMap<>();
+            featureFlag.put("id", "f_" + flag);
+            featureFlag.put("key", flagKey(flag));
+            featureFlag.put("rolloutId", "r_" + flag);
+            featureFlag.put("experimentIds", experimentIds);
+            featureFlag.put("variables", variables());
+            featureFlags.add(featureFlag);
+
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("id", "ev_" + flag);
+            event.put("key", eventKey(flag));
+            event.put("experimentIds", experimentIds);
+            events.add(event);
+        }
+
+        datafile.put("experiments", experiments);
+        datafile.put("rollouts", rollouts);
+        datafile.put("featureFlags", featureFlags);
+        datafile.put("events", events);
+
+        try {
+            return new ObjectMapper().writeValueAsString(datafile);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("unable to serialize the synthetic datafile", e);
+        }
+    }
+
+    private String audienceFor(int flag, int rule) {
+        if (numAudiences == 0) {
+            return null;
+        }
+        return "a_" + ((flag * rulesPerFlag * 2 + rule) % numAudiences);
+    }
+
+    private List<Object> attributes() {
+        List<Object> attributes = new ArrayList<>();
+        for (int i = 0; i < NUM_ATTRIBUTES; i++) {
+            attributes.add(entity("at_" + i, attributeKey(i)));
+        }
+        attributes.add(entity("at_age", AGE_ATTRIBUTE));
+        return attributes;
+    }
+
+    private List<Object> audiences() {
+        List<Object> audiences = new ArrayList<>();
+        for (int i = 0; i < numAudiences; i++) {
+            Map<String, Object> exact = new LinkedHashMap<>();
+            exact.put("name", attributeKey(i % NUM_ATTRIBUTES));
+            exact.put("type", "custom_attribute");
+            exact.put("match", "exact");
+            exact.put("value", "value_" + (i % NUM_ATTRIBUTES));
+
+            Map<String, Object> greaterThan = new LinkedHashMap<>();
+            greaterThan.put("name", AGE_ATTRIBUTE);
+            greaterThan.put("type", "custom_attribute");
+            greaterThan.put("match", "gt");
+            greaterThan.put("value", i % 50);
+
+            Map<String, Object> audience = new LinkedHashMap<>();
+            audience.put("id", "a_" + i);
+            audience.put("name", "audience_" + i);
+            audience.put("conditions", Arrays.asList("and", Arrays.asList("or", exact), Arrays.asList("or", greaterThan)));
+            audiences.add(audience);
+        }
+        return audiences;
+    }
+
+    private List<Object> variables() {
+        List<Object> variables = new ArrayList<>();
+        for (int i = 0; i < numVariables; i++) {
+            Map<String, Object> variable = entity("var_" + i, "variable_" + i);
+            variable.put("type", VARIABLE_TYPES[i % VARIABLE_TYPES.length]);
+            variable.put("defaultValue", VARIABLE_VALUES[i % VARIABLE_VALUES.length]);
+            variables.add(variable);
+        }
+        return variables;
+    }
+
+    private Map<String, Object> rule(String id, String key, String audienceId, int numVariations, int trafficPerVariation) {
+        List<Object> variations = new ArrayList<>();
+        List<Object> trafficAllocation = new ArrayList<>();
+        for (int i = 0; i < numVariations; i++) {
+            String variationId = id + "_v" + i;
+            Map<String, Object> variation = entity(variationId, "variation_" + i);
+            variation.put("featureEnabled", i == 0);
+            List<Object> variableValues = new ArrayList<>();
+            for (int v = 0; v < numVariables; v++) {
+                variableValues.add(entityValue("var_" + v, VARIABLE_VALUES[v % VARIABLE_VALUES.length]));
+            }
+            variation.put("variables", variableValues);
+            variations.add(variation);
+
+            Map<String, Object> allocation = new LinkedHashMap<>();
+            allocation.put("entityId", variationId);
+            allocation.put("endOfRange", Math.min(10000, (i + 1) * trafficPerVariation / numVariations));
+            trafficAllocation.add(allocation);
+        }
+
+        Map<String, Object> rule = entity(id, key);
+        rule.put("status", "Running");
+        rule.put("layerId", "l_" + id);
+        rule.put("audienceIds", audienceId == null ? Collections.emptyList() : Collections.singletonList(audienceId));
+        rule.put("variations", variations);
+        rule.put("trafficAllocation", trafficAllocation);
+        rule.put("forcedVariations", Collections.emptyMap());
+        return rule;
+    }
+
+    private static Map<String, Object> entity(String id, String key) {
+        Map<String, Object> entity = new LinkedHashMap<>();
+        entity.put("id", id);
+        entity.put("key", key);
+        return entity;
+    }
+
+    private static Map<String, Object> entityValue(String id, String value) {
+        Map<String, Object> entity = new LinkedHashMap<>();
+        entity.put("id", id);
+        entity.put("value", value);
+        return entity;
+    }
+
+    public static class Builder {
+        private int numFlags = 10;
+        private int rulesPerFlag = 2;
+        private int numAudiences = 10;
+        private int numVariables = 5;
+
+        public Builder withFlags(int numFlags) {
+            this.numFlags = numFlags;
+            return this;
+        }
+
+        public Builder withRulesPerFlag(int rulesPerFlag) {
+            this.rulesPerFlag = rulesPerFlag;
+            return this;
+        }
+
+        public Builder withAudiences(int numAudiences) {
+            this.numAudiences = numAudiences;
+            return this;
+        }
+
+        public Builder withVariables(int numVariables) {
+            this.numVariables = numVariables;
+            return this;
+        }
+
+        public SyntheticDatafile build() {
+            return new SyntheticDatafile(numFlags, rulesPerFlag, numAudiences, numVariables);
+        }
+    }
+}
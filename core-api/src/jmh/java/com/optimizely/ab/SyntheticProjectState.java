@@ -0,0 +1,122 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import com.optimizely.ab.config.parser.ConfigParser;
+import com.optimizely.ab.config.parser.DefaultConfigParser;
+import com.optimizely.ab.internal.PropertyUtils;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared {@link Optimizely} instance built from a {@link SyntheticDatafile}.
+ *
+ * The datafile parser is resolved once per JVM by {@link DefaultConfigParser}, so the parser parameter relies on
+ * every parameter combination running in its own fork. Running with {@code -f 0} is not supported.
+ */
+@State(Scope.Benchmark)
+public class SyntheticProjectState {
+
+    private static final int DECIDE_FOR_KEYS_SIZE = 10;
+
+    @Param({"GSON_CONFIG_PARSER", "JACKSON_CONFIG_PARSER", "JSON_CONFIG_PARSER", "JSON_SIMPLE_CONFIG_PARSER"})
+    public String parser;
+
+    @Param({"10", "100"})
+    public int numFlags;
+
+    @Param({"3"})
+    public int rulesPerFlag;
+
+    @Param({"20"})
+    public int numAudiences;
+
+    @Param({"5"})
+    public int numVariables;
+
+    public Optimizely optimizely;
+    public Map<String, Object> attributes;
+    public List<String> flagKeys;
+    public List<String> decideForKeys;
+    public List<String> experimentKeys;
+    public List<String> eventKeys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        PropertyUtils.set("default_parser", parser);
+        ConfigParser configParser = DefaultConfigParser.getInstance();
+        if (!configParser.getClass().getSimpleName().equals(parserClassName(parser))) {
+            throw new IllegalStateException("Expected " + parser + " but the JVM resolved " + configParser.getClass().getSimpleName());
+        }
+
+        String datafile = SyntheticDatafile.builder()
+            .withFlags(numFlags)
+            .withRulesPerFlag(rulesPerFlag)
+            .withAudiences(numAudiences)
+            .withVariables(numVariables)
+            .build()
+            .toJson();
+
+        optimizely = Optimizely.builder().withDatafile(datafile).build();
+        if (!optimizely.isValid()) {
+            throw new IllegalStateException("Unable to parse the synthetic datafile.");
+        }
+
+        attributes = SyntheticDatafile.matchingAttributes();
+        flagKeys = new ArrayList<>();
+        experimentKeys = new ArrayList<>();
+        eventKeys = new ArrayList<>();
+        for (int flag = 0; flag < numFlags; flag++) {
+            flagKeys.add(SyntheticDatafile.flagKey(flag));
+            eventKeys.add(SyntheticDatafile.eventKey(flag));
+            for (int rule = 0; rule < rulesPerFlag; rule++) {
+                experimentKeys.add(SyntheticDatafile.experimentKey(flag, rule));
+            }
+        }
+        decideForKeys = Collections.unmodifiableList(flagKeys.subList(0, Math.min(DECIDE_FOR_KEYS_SIZE, numFlags)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        optimizely.close();
+    }
+
+    private static String parserClassName(String parser) {
+        switch (parser) {
+            case "GSON_CONFIG_PARSER":
+                return "GsonConfigParser";
+            case "JACKSON_CONFIG_PARSER":
+                return "JacksonConfigParser";
+            case "JSON_CONFIG_PARSER":
+                return "JsonConfigParser";
+            case "JSON_SIMPLE_CONFIG_PARSER":
+                return "JsonSimpleConfigParser";
+            default:
+                throw new IllegalArgumentException("Unknown parser " + parser);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Per-thread source of user ids and keys, so that multi-threaded runs do not contend on a shared {@link Random}.
+ */
+@State(Scope.Thread)
+public class UserState {
+
+    private final Random random = new Random();
+
+    public String nextUserId() {
+        return "user_" + random.nextInt();
+    }
+
+    public <T> T next(List<T> keys) {
+        return keys.get(random.nextInt(keys.size()));
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.SyntheticDatafile;
+import com.optimizely.ab.UserState;
+import com.optimizely.ab.config.DatafileProjectConfig;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.optimizelydecision.DecisionResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Bucketer#bucket} in isolation, over every experiment in a {@link SyntheticDatafile}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class BucketerBenchmark {
+
+    @Param({"10", "100"})
+    public int numFlags;
+
+    Bucketer bucketer;
+    ProjectConfig projectConfig;
+    List<Experiment> experiments;
+
+    @Setup
+    public void setUp() throws Exception {
+        bucketer = new Bucketer();
+        projectConfig = new DatafileProjectConfig.Builder()
+            .withDatafile(SyntheticDatafile.builder().withFlags(numFlags).build().toJson())
+            .build();
+        experiments = projectConfig.getExperiments();
+    }
+
+    @Benchmark
+    public DecisionResponse<Variation> bucket(UserState user) {
+        return bucketer.bucket(user.next(experiments), user.nextUserId(), projectConfig);
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.SyntheticDatafile;
+import com.optimizely.ab.config.ProjectConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a {@link SyntheticDatafile} with each of the supported {@link ConfigParser} implementations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class ConfigParserBenchmark {
+
+    @Param({"GSON_CONFIG_PARSER", "JACKSON_CONFIG_PARSER", "JSON_CONFIG_PARSER", "JSON_SIMPLE_CONFIG_PARSER"})
+    public String parser;
+
+    @Param({"10", "100", "1000"})
+    public int numFlags;
+
+    ConfigParser configParser;
+    String datafile;
+
+    @Setup
+    public void setUp() {
+        configParser = DefaultConfigParser.ConfigParserSupplier.valueOf(parser).get();
+        datafile = SyntheticDatafile.builder().withFlags(numFlags).build().toJson();
+    }
+
+    @Benchmark
+    public ProjectConfig parse() throws ConfigParseException {
+        return configParser.parseProjectConfig(datafile);
+    }
+}
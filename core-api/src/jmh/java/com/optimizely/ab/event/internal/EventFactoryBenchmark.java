@@ -0,0 +1,89 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event.internal;
+
+import com.optimizely.ab.SyntheticDatafile;
+import com.optimizely.ab.config.DatafileProjectConfig;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.event.LogEvent;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link EventFactory#createLogEvent} for a single event and for a batch of events.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class EventFactoryBenchmark {
+
+    @Param({"10", "100"})
+    public int batchSize;
+
+    UserEvent impression;
+    UserEvent conversion;
+    List<UserEvent> batch;
+
+    @Setup
+    public void setUp() throws Exception {
+        ProjectConfig projectConfig = new DatafileProjectConfig.Builder()
+            .withDatafile(SyntheticDatafile.builder().build().toJson())
+            .build();
+        Map<String, Object> attributes = SyntheticDatafile.matchingAttributes();
+        Experiment experiment = projectConfig.getExperimentKeyMapping().get(SyntheticDatafile.experimentKey(0, 0));
+        String eventKey = SyntheticDatafile.eventKey(0);
+
+        impression = UserEventFactory.createImpressionEvent(projectConfig, experiment, experiment.getVariations().get(0),
+            "user", attributes, SyntheticDatafile.flagKey(0), "feature-test", true);
+        conversion = UserEventFactory.createConversionEvent(projectConfig, "user",
+            projectConfig.getEventNameMapping().get(eventKey).getId(), eventKey, attributes, Collections.<String, Object>emptyMap());
+
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(i % 2 == 0 ? impression : conversion);
+        }
+    }
+
+    @Benchmark
+    public LogEvent createImpression() {
+        return EventFactory.createLogEvent(impression);
+    }
+
+    @Benchmark
+    public LogEvent createConversion() {
+        return EventFactory.createLogEvent(conversion);
+    }
+
+    @Benchmark
+    public LogEvent createBatch() {
+        return EventFactory.createLogEvent(batch);
+    }
+
+    @Benchmark
+    public String createBatchBody() {
+        return EventFactory.createLogEvent(batch).getBody();
+    }
+}
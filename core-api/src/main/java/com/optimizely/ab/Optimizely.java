@@ -27,6 +27,7 @@ import com.optimizely.ab.error.NoOpErrorHandler;
 import com.optimizely.ab.event.*;
 import com.optimizely.ab.event.internal.*;
 import com.optimizely.ab.event.internal.payload.EventBatch;
+import com.optimizely.ab.internal.FeatureVariableUtils;
 import com.optimizely.ab.notification.*;
 import com.optimizely.ab.odp.*;
 import com.optimizely.ab.optimizelyconfig.OptimizelyConfig;
@@ -42,6 +43,7 @@ import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import static com.optimizely.ab.internal.SafetyUtils.tryClose;
 
@@ -153,6 +155,7 @@ public class Optimizely implements AutoCloseable {
         tryClose(eventProcessor);
         tryClose(eventHandler);
         tryClose(projectConfigManager);
+        tryClose(userProfileService);
         if (odpManager != null) {
             tryClose(odpManager);
         }
@@ -466,16 +469,18 @@ public class Optimizely implements AutoCloseable {
             decisionSource.toString(),
             featureEnabled);
 
-        DecisionNotification decisionNotification = DecisionNotification.newFeatureDecisionNotificationBuilder()
-            .withUserId(userId)
-            .withAttributes(copiedAttributes)
-            .withFeatureKey(featureKey)
-            .withFeatureEnabled(featureEnabled)
-            .withSource(decisionSource)
-            .withSourceInfo(sourceInfo)
-            .build();
+        if (hasDecisionNotificationHandlers()) {
+            DecisionNotification decisionNotification = DecisionNotification.newFeatureDecisionNotificationBuilder()
+                .withUserId(userId)
+                .withAttributes(copiedAttributes)
+                .withFeatureKey(featureKey)
+                .withFeatureEnabled(featureEnabled)
+                .withSource(decisionSource)
+                .withSourceInfo(sourceInfo)
+                .build();
 
-        notificationCenter.send(decisionNotification);
+            notificationCenter.send(decisionNotification);
+        }
 
         logger.info("Feature \"{}\" is enabled for user \"{}\"? {}", featureKey, userId, featureEnabled);
         return featureEnabled;
@@ -773,60 +778,32 @@ public class Optimizely implements AutoCloseable {
         }
 
         Object convertedValue = convertStringToType(variableValue, variableType);
-        Object notificationValue = convertedValue;
-        if (convertedValue instanceof OptimizelyJSON) {
-            notificationValue = ((OptimizelyJSON) convertedValue).toMap();
-        }
-
-        DecisionNotification decisionNotification = DecisionNotification.newFeatureVariableDecisionNotificationBuilder()
-            .withUserId(userId)
-            .withAttributes(copiedAttributes)
-            .withFeatureKey(featureKey)
-            .withFeatureEnabled(featureEnabled)
-            .withVariableKey(variableKey)
-            .withVariableType(variableType)
-            .withVariableValue(notificationValue)
-            .withFeatureDecision(featureDecision)
-            .build();
+        if (hasDecisionNotificationHandlers()) {
+            Object notificationValue = convertedValue;
+            if (convertedValue instanceof OptimizelyJSON) {
+                notificationValue = ((OptimizelyJSON) convertedValue).toMap();
+            }
 
+            DecisionNotification decisionNotification = DecisionNotification.newFeatureVariableDecisionNotificationBuilder()
+                .withUserId(userId)
+                .withAttributes(copiedAttributes)
+                .withFeatureKey(featureKey)
+                .withFeatureEnabled(featureEnabled)
+                .withVariableKey(variableKey)
+                .withVariableType(variableType)
+                .withVariableValue(notificationValue)
+                .withFeatureDecision(featureDecision)
+                .build();
 
-        notificationCenter.send(decisionNotification);
+            notificationCenter.send(decisionNotification);
+        }
 
         return (T) convertedValue;
     }
 
     // Helper method which takes type and variable value and convert it to object to use in Listener DecisionInfo object variable value
     Object convertStringToType(String variableValue, String type) {
-        if (variableValue != null) {
-            switch (type) {
-                case FeatureVariable.DOUBLE_TYPE:
-                    try {
-                        return Double.parseDouble(variableValue);
-                    } catch (NumberFormatException exception) {
-                        logger.error("NumberFormatException while trying to parse \"" + variableValue +
-                            "\" as Double. " + exception);
-                    }
-                    break;
-                case FeatureVariable.STRING_TYPE:
-                    return variableValue;
-                case FeatureVariable.BOOLEAN_TYPE:
-                    return Boolean.parseBoolean(variableValue);
-                case FeatureVariable.INTEGER_TYPE:
-                    try {
-                        return Integer.parseInt(variableValue);
-                    } catch (NumberFormatException exception) {
-                        logger.error("NumberFormatException while trying to parse \"" + variableValue +
-                            "\" as Integer. " + exception.toString());
-                    }
-                    break;
-                case FeatureVariable.JSON_TYPE:
-                    return new OptimizelyJSON(variableValue);
-                default:
-                    return variableValue;
-            }
-        }
-
-        return null;
+        return FeatureVariableUtils.convertStringToType(variableValue, type);
     }
 
     /**
@@ -914,16 +891,18 @@ public class Optimizely implements AutoCloseable {
             valuesMap.put(variable.getKey(), convertedValue);
         }
 
-        DecisionNotification decisionNotification = DecisionNotification.newFeatureVariableDecisionNotificationBuilder()
-            .withUserId(userId)
-            .withAttributes(copiedAttributes)
-            .withFeatureKey(featureKey)
-            .withFeatureEnabled(featureEnabled)
-            .withVariableValues(valuesMap)
-            .withFeatureDecision(featureDecision)
-            .build();
+        if (hasDecisionNotificationHandlers()) {
+            DecisionNotification decisionNotification = DecisionNotification.newFeatureVariableDecisionNotificationBuilder()
+                .withUserId(userId)
+                .withAttributes(copiedAttributes)
+                .withFeatureKey(featureKey)
+                .withFeatureEnabled(featureEnabled)
+                .withVariableValues(valuesMap)
+                .withFeatureDecision(featureDecision)
+                .build();
 
-        notificationCenter.send(decisionNotification);
+            notificationCenter.send(decisionNotification);
+        }
 
         return new OptimizelyJSON(valuesMap);
     }
@@ -983,21 +962,23 @@ public class Optimizely implements AutoCloseable {
                                    @Nonnull Map<String, ?> attributes) throws UnknownExperimentException {
         Map<String, ?> copiedAttributes = copyAttributes(attributes);
         Variation variation = decisionService.getVariation(experiment, createUserContextCopy(userId, copiedAttributes), projectConfig).getResult();
-        String notificationType = NotificationCenter.DecisionNotificationType.AB_TEST.toString();
+        if (hasDecisionNotificationHandlers()) {
+            String notificationType = NotificationCenter.DecisionNotificationType.AB_TEST.toString();
 
-        if (projectConfig.getExperimentFeatureKeyMapping().get(experiment.getId()) != null) {
-            notificationType = NotificationCenter.DecisionNotificationType.FEATURE_TEST.toString();
-        }
+            if (projectConfig.getExperimentFeatureKeyMapping().get(experiment.getId()) != null) {
+                notificationType = NotificationCenter.DecisionNotificationType.FEATURE_TEST.toString();
+            }
 
-        DecisionNotification decisionNotification = DecisionNotification.newExperimentDecisionNotificationBuilder()
-            .withUserId(userId)
-            .withAttributes(copiedAttributes)
-            .withExperimentKey(experiment.getKey())
-            .withVariation(variation)
-            .withType(notificationType)
-            .build();
+            DecisionNotification decisionNotification = DecisionNotification.newExperimentDecisionNotificationBuilder()
+                .withUserId(userId)
+                .withAttributes(copiedAttributes)
+                .withExperimentKey(experiment.getKey())
+                .withVariation(variation)
+                .withType(notificationType)
+                .build();
 
-        notificationCenter.send(decisionNotification);
+            notificationCenter.send(decisionNotification);
+        }
 
         return variation;
     }
@@ -1189,36 +1170,139 @@ public class Optimizely implements AutoCloseable {
             return OptimizelyDecision.newErrorDecision(key, user, DecisionMessage.SDK_NOT_READY.reason());
         }
 
-        FeatureFlag flag = projectConfig.getFeatureKeyMapping().get(key);
-        if (flag == null) {
-            return OptimizelyDecision.newErrorDecision(key, user, DecisionMessage.FLAG_KEY_INVALID.reason(key));
+        return decideFlags(projectConfig, user, Collections.singletonList(key), getAllOptions(options))[0];
+    }
+
+    Map<String, OptimizelyDecision> decideForKeys(@Nonnull OptimizelyUserContext user,
+                                                  @Nonnull List<String> keys,
+                                                  @Nonnull List<OptimizelyDecideOption> options) {
+        Map<String, OptimizelyDecision> decisionMap = new HashMap<>();
+
+        ProjectConfig projectConfig = getProjectConfig();
+        if (projectConfig == null) {
+            logger.error("Optimizely instance is not valid, failing isFeatureEnabled call.");
+            return decisionMap;
         }
 
-        String userId = user.getUserId();
-        Map<String, Object> attributes = user.getAttributes();
-        Boolean decisionEventDispatched = false;
+        return decideForKeys(projectConfig, user, keys, options);
+    }
+
+    private Map<String, OptimizelyDecision> decideForKeys(@Nonnull ProjectConfig projectConfig,
+                                                          @Nonnull OptimizelyUserContext user,
+                                                          @Nonnull List<String> keys,
+                                                          @Nonnull List<OptimizelyDecideOption> options) {
+        Map<String, OptimizelyDecision> decisionMap = new HashMap<>();
+
+        if (keys.isEmpty()) return decisionMap;
+
         List<OptimizelyDecideOption> allOptions = getAllOptions(options);
-        DecisionReasons decisionReasons = DefaultDecisionReasons.newInstance(allOptions);
+        OptimizelyDecision[] decisions = decideFlags(projectConfig, user, keys, allOptions);
 
-        Map<String, ?> copiedAttributes = new HashMap<>(attributes);
-        FeatureDecision flagDecision;
+        for (int i = 0; i < keys.size(); i++) {
+            OptimizelyDecision decision = decisions[i];
+            if (!allOptions.contains(OptimizelyDecideOption.ENABLED_FLAGS_ONLY) || decision.getEnabled()) {
+                decisionMap.put(keys.get(i), decision);
+            }
+        }
 
-        // Check Forced Decision
-        OptimizelyDecisionContext optimizelyDecisionContext = new OptimizelyDecisionContext(flag.getKey(), null);
-        DecisionResponse<Variation> forcedDecisionVariation = decisionService.validatedForcedDecision(optimizelyDecisionContext, projectConfig, user);
-        decisionReasons.merge(forcedDecisionVariation.getReasons());
-        if (forcedDecisionVariation.getResult() != null) {
-            flagDecision = new FeatureDecision(null, forcedDecisionVariation.getResult(), FeatureDecision.DecisionSource.FEATURE_TEST);
-        } else {
-            // Regular decision
-            DecisionResponse<FeatureDecision> decisionVariation = decisionService.getVariationForFeature(
-                flag,
+        return decisionMap;
+    }
+
+    Map<String, OptimizelyDecision> decideAll(@Nonnull OptimizelyUserContext user,
+                                              @Nonnull List<OptimizelyDecideOption> options) {
+        Map<String, OptimizelyDecision> decisionMap = new HashMap<>();
+
+        ProjectConfig projectConfig = getProjectConfig();
+        if (projectConfig == null) {
+            logger.error("Optimizely instance is not valid, failing isFeatureEnabled call.");
+            return decisionMap;
+        }
+
+        List<FeatureFlag> allFlags = projectConfig.getFeatureFlags();
+        List<String> allFlagKeys = new ArrayList<>();
+        for (int i = 0; i < allFlags.size(); i++) allFlagKeys.add(allFlags.get(i).getKey());
+
+        return decideForKeys(projectConfig, user, allFlagKeys, options);
+    }
+
+    /**
+     * Decide a list of flags for a user against a single config snapshot.
+     *
+     * Per-user work is done once for the whole list: the options are resolved by the caller, the attributes are
+     * copied once, and the flags without a forced decision are decided in one batch so the user profile is
+     * looked up and saved once. Impressions and notifications are then sent flag by flag, in key order.
+     *
+     * @return the decisions in the same order as the keys
+     */
+    private OptimizelyDecision[] decideFlags(@Nonnull ProjectConfig projectConfig,
+                                             @Nonnull OptimizelyUserContext user,
+                                             @Nonnull List<String> keys,
+                                             @Nonnull List<OptimizelyDecideOption> allOptions) {
+        int size = keys.size();
+        OptimizelyDecision[] decisions = new OptimizelyDecision[size];
+        FeatureFlag[] flags = new FeatureFlag[size];
+        FeatureDecision[] flagDecisions = new FeatureDecision[size];
+        DecisionReasons[] decisionReasons = new DecisionReasons[size];
+
+        List<FeatureFlag> flagsToDecide = new ArrayList<>(size);
+        List<Integer> indexesToDecide = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            String key = keys.get(i);
+            FeatureFlag flag = projectConfig.getFeatureKeyMapping().get(key);
+            if (flag == null) {
+                decisions[i] = OptimizelyDecision.newErrorDecision(key, user, DecisionMessage.FLAG_KEY_INVALID.reason(key));
+                continue;
+            }
+            flags[i] = flag;
+            decisionReasons[i] = DefaultDecisionReasons.newInstance(allOptions);
+
+            // Check Forced Decision
+            OptimizelyDecisionContext optimizelyDecisionContext = new OptimizelyDecisionContext(flag.getKey(), null);
+            DecisionResponse<Variation> forcedDecisionVariation = decisionService.validatedForcedDecision(optimizelyDecisionContext, projectConfig, user);
+            decisionReasons[i].merge(forcedDecisionVariation.getReasons());
+            if (forcedDecisionVariation.getResult() != null) {
+                flagDecisions[i] = new FeatureDecision(null, forcedDecisionVariation.getResult(), FeatureDecision.DecisionSource.FEATURE_TEST);
+            } else {
+                flagsToDecide.add(flag);
+                indexesToDecide.add(i);
+            }
+        }
+
+        // Regular decisions
+        if (!flagsToDecide.isEmpty()) {
+            List<DecisionResponse<FeatureDecision>> decisionVariations = decisionService.getVariationsForFeatureList(
+                flagsToDecide,
                 user,
                 projectConfig,
                 allOptions);
-            flagDecision = decisionVariation.getResult();
-            decisionReasons.merge(decisionVariation.getReasons());
+            for (int j = 0; j < indexesToDecide.size(); j++) {
+                int i = indexesToDecide.get(j);
+                DecisionResponse<FeatureDecision> decisionVariation = decisionVariations.get(j);
+                flagDecisions[i] = decisionVariation.getResult();
+                decisionReasons[i].merge(decisionVariation.getReasons());
+            }
+        }
+
+        Map<String, ?> copiedAttributes = new HashMap<>(user.getAttributes());
+        for (int i = 0; i < size; i++) {
+            if (decisions[i] == null) {
+                decisions[i] = createDecision(projectConfig, user, flags[i], flagDecisions[i], decisionReasons[i], copiedAttributes, allOptions);
+            }
         }
+        return decisions;
+    }
+
+    private OptimizelyDecision createDecision(@Nonnull ProjectConfig projectConfig,
+                                              @Nonnull OptimizelyUserContext user,
+                                              @Nonnull FeatureFlag flag,
+                                              @Nonnull FeatureDecision flagDecision,
+                                              @Nonnull DecisionReasons decisionReasons,
+                                              @Nonnull Map<String, ?> copiedAttributes,
+                                              @Nonnull List<OptimizelyDecideOption> allOptions) {
+        String key = flag.getKey();
+        String userId = user.getUserId();
+        Boolean decisionEventDispatched = false;
 
         Boolean flagEnabled = false;
         if (flagDecision.variation != null) {
@@ -1231,6 +1315,7 @@ public class Optimizely implements AutoCloseable {
         Map<String, Object> variableMap = new HashMap<>();
         if (!allOptions.contains(OptimizelyDecideOption.EXCLUDE_VARIABLES)) {
             DecisionResponse<Map<String, Object>> decisionVariables = getDecisionVariableMap(
+                projectConfig,
                 flag,
                 flagDecision.variation,
                 flagEnabled);
@@ -1262,18 +1347,20 @@ public class Optimizely implements AutoCloseable {
                 flagEnabled);
         }
 
-        DecisionNotification decisionNotification = DecisionNotification.newFlagDecisionNotificationBuilder()
-            .withUserId(userId)
-            .withAttributes(copiedAttributes)
-            .withFlagKey(key)
-            .withEnabled(flagEnabled)
-            .withVariables(variableMap)
-            .withVariationKey(variationKey)
-            .withRuleKey(ruleKey)
-            .withReasons(reasonsToReport)
-            .withDecisionEventDispatched(decisionEventDispatched)
-            .build();
-        notificationCenter.send(decisionNotification);
+        if (hasDecisionNotificationHandlers()) {
+            DecisionNotification decisionNotification = DecisionNotification.newFlagDecisionNotificationBuilder()
+                .withUserId(userId)
+                .withAttributes(copiedAttributes)
+                .withFlagKey(key)
+                .withEnabled(flagEnabled)
+                .withVariables(variableMap)
+                .withVariationKey(variationKey)
+                .withRuleKey(ruleKey)
+                .withReasons(reasonsToReport)
+                .withDecisionEventDispatched(decisionEventDispatched)
+                .build();
+            notificationCenter.send(decisionNotification);
+        }
 
         return new OptimizelyDecision(
             variationKey,
@@ -1285,48 +1372,6 @@ public class Optimizely implements AutoCloseable {
             reasonsToReport);
     }
 
-    Map<String, OptimizelyDecision> decideForKeys(@Nonnull OptimizelyUserContext user,
-                                                  @Nonnull List<String> keys,
-                                                  @Nonnull List<OptimizelyDecideOption> options) {
-        Map<String, OptimizelyDecision> decisionMap = new HashMap<>();
-
-        ProjectConfig projectConfig = getProjectConfig();
-        if (projectConfig == null) {
-            logger.error("Optimizely instance is not valid, failing isFeatureEnabled call.");
-            return decisionMap;
-        }
-
-        if (keys.isEmpty()) return decisionMap;
-
-        List<OptimizelyDecideOption> allOptions = getAllOptions(options);
-
-        for (String key : keys) {
-            OptimizelyDecision decision = decide(user, key, options);
-            if (!allOptions.contains(OptimizelyDecideOption.ENABLED_FLAGS_ONLY) || decision.getEnabled()) {
-                decisionMap.put(key, decision);
-            }
-        }
-
-        return decisionMap;
-    }
-
-    Map<String, OptimizelyDecision> decideAll(@Nonnull OptimizelyUserContext user,
-                                              @Nonnull List<OptimizelyDecideOption> options) {
-        Map<String, OptimizelyDecision> decisionMap = new HashMap<>();
-
-        ProjectConfig projectConfig = getProjectConfig();
-        if (projectConfig == null) {
-            logger.error("Optimizely instance is not valid, failing isFeatureEnabled call.");
-            return decisionMap;
-        }
-
-        List<FeatureFlag> allFlags = projectConfig.getFeatureFlags();
-        List<String> allFlagKeys = new ArrayList<>();
-        for (int i = 0; i < allFlags.size(); i++) allFlagKeys.add(allFlags.get(i).getKey());
-
-        return decideForKeys(user, allFlagKeys, options);
-    }
-
     private List<OptimizelyDecideOption> getAllOptions(List<OptimizelyDecideOption> options) {
         List<OptimizelyDecideOption> copiedOptions = new ArrayList(defaultDecideOptions);
         if (options != null) {
@@ -1336,11 +1381,21 @@ public class Optimizely implements AutoCloseable {
     }
 
     @Nonnull
-    private DecisionResponse<Map<String, Object>> getDecisionVariableMap(@Nonnull FeatureFlag flag,
+    private DecisionResponse<Map<String, Object>> getDecisionVariableMap(@Nonnull ProjectConfig projectConfig,
+                                                                         @Nonnull FeatureFlag flag,
                                                                          @Nonnull Variation variation,
                                                                          @Nonnull Boolean featureEnabled) {
         DecisionReasons reasons = new DecisionReasons();
 
+        FlagDecisionPlan plan = projectConfig.getFlagDecisionPlan(flag);
+        if (plan != null) {
+            FlagDecisionPlan.VariableValues variableValues = plan.getVariableValues(variation, featureEnabled);
+            for (String key : variableValues.getInvalidKeys()) {
+                reasons.addError(DecisionMessage.VARIABLE_VALUE_INVALID.reason(key));
+            }
+            return new DecisionResponse(variableValues.toMap(), reasons);
+        }
+
         Map<String, Object> valuesMap = new HashMap<String, Object>();
         for (FeatureVariable variable : flag.getVariables()) {
             String value = variable.getDefaultValue();
@@ -1364,6 +1419,13 @@ public class Optimizely implements AutoCloseable {
         return new DecisionResponse(valuesMap, reasons);
     }
 
+    /**
+     * Decision notifications are only built when a handler is registered, most clients do not listen for them.
+     */
+    private boolean hasDecisionNotificationHandlers() {
+        return notificationCenter.getNotificationManager(DecisionNotification.class).size() > 0;
+    }
+
     /**
      * Helper method which makes separate copy of attributesMap variable and returns it
      *
@@ -1438,9 +1500,7 @@ public class Optimizely implements AutoCloseable {
 
     public List<String> fetchQualifiedSegments(String userId, @Nonnull List<ODPSegmentOption> segmentOptions) {
         if (odpManager != null) {
-            synchronized (odpManager) {
-                return odpManager.getSegmentManager().getQualifiedSegments(userId, segmentOptions);
-            }
+            return odpManager.getSegmentManager().getQualifiedSegments(userId, segmentOptions);
         }
         logger.error("Audience segments fetch failed (ODP is not enabled).");
         return null;
@@ -1455,6 +1515,14 @@ public class Optimizely implements AutoCloseable {
         }
     }
 
+    public CompletableFuture<List<String>> fetchQualifiedSegmentsAsync(String userId, @Nonnull List<ODPSegmentOption> segmentOptions) {
+        if (odpManager == null) {
+            logger.error("Audience segments fetch failed (ODP is not enabled).");
+            return CompletableFuture.completedFuture(null);
+        }
+        return odpManager.getSegmentManager().getQualifiedSegmentsAsync(userId, segmentOptions);
+    }
+
     @Nullable
     public ODPManager getODPManager() {
         return odpManager;
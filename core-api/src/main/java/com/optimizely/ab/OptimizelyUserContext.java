@@ -16,6 +16,7 @@
  */
 package com.optimizely.ab;
 
+import com.optimizely.ab.internal.AudienceResultCache;
 import com.optimizely.ab.odp.ODPManager;
 import com.optimizely.ab.odp.ODPSegmentCallback;
 import com.optimizely.ab.odp.ODPSegmentOption;
@@ -26,6 +27,7 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class OptimizelyUserContext {
@@ -43,6 +45,10 @@ public class OptimizelyUserContext {
     @Nonnull
     private final Optimizely optimizely;
 
+    // Audience results for the current attributes and qualified segments, shared with the copies used for decisions.
+    private volatile AudienceResultCache audienceResultCache = new AudienceResultCache();
+    private final Object userStateLock = new Object();
+
     private static final Logger logger = LoggerFactory.getLogger(OptimizelyUserContext.class);
 
     public OptimizelyUserContext(@Nonnull Optimizely optimizely,
@@ -102,7 +108,24 @@ public class OptimizelyUserContext {
     }
 
     public OptimizelyUserContext copy() {
-        return new OptimizelyUserContext(optimizely, userId, attributes, forcedDecisionsMap, qualifiedSegments, false);
+        synchronized (userStateLock) {
+            OptimizelyUserContext userContext = new OptimizelyUserContext(optimizely, userId, attributes, forcedDecisionsMap, qualifiedSegments, false);
+            userContext.audienceResultCache = audienceResultCache;
+            return userContext;
+        }
+    }
+
+    /**
+     * Returns the audience results memoized for the current attributes and qualified segments.
+     *
+     * The cache is replaced by {@link #setAttribute(String, Object)} and {@link #setQualifiedSegments(List)};
+     * attributes or segments modified in place through {@link #getAttributes()} or {@link #getQualifiedSegments()}
+     * are not tracked. Hit and miss counts accumulate across replacements.
+     *
+     * @return the {@link AudienceResultCache} of this user context
+     */
+    public AudienceResultCache getAudienceResultCache() {
+        return audienceResultCache;
     }
 
     /**
@@ -125,7 +148,10 @@ public class OptimizelyUserContext {
      * @param value An attribute value
      */
     public void setAttribute(@Nonnull String key, @Nullable Object value) {
-        attributes.put(key, value);
+        synchronized (userStateLock) {
+            attributes.put(key, value);
+            audienceResultCache = audienceResultCache.newGeneration();
+        }
     }
 
     /**
@@ -299,13 +325,16 @@ public class OptimizelyUserContext {
     }
 
     public void setQualifiedSegments(List<String> qualifiedSegments) {
-        if (qualifiedSegments == null) {
-            this.qualifiedSegments = null;
-        } else if (this.qualifiedSegments == null) {
-            this.qualifiedSegments = Collections.synchronizedList(new LinkedList<>(qualifiedSegments));
-        } else {
-            this.qualifiedSegments.clear();
-            this.qualifiedSegments.addAll(qualifiedSegments);
+        synchronized (userStateLock) {
+            if (qualifiedSegments == null) {
+                this.qualifiedSegments = null;
+            } else if (this.qualifiedSegments == null) {
+                this.qualifiedSegments = Collections.synchronizedList(new LinkedList<>(qualifiedSegments));
+            } else {
+                this.qualifiedSegments.clear();
+                this.qualifiedSegments.addAll(qualifiedSegments);
+            }
+            audienceResultCache = audienceResultCache.newGeneration();
         }
     }
 
@@ -333,7 +362,7 @@ public class OptimizelyUserContext {
 
     /**
      * Fetch all qualified segments for the user context in a non-blocking manner. This method will fetch segments
-     * in a separate thread and invoke the provided callback when results are available.
+     * on the segment fetch executor and invoke the provided callback when results are available.
      * <p>
      * The segments fetched will be saved and can be accessed at any time by calling {@link #getQualifiedSegments()}.
      *
@@ -349,7 +378,7 @@ public class OptimizelyUserContext {
 
     /**
      * Fetch all qualified segments for the user context in a non-blocking manner. This method will fetch segments
-     * in a separate thread and invoke the provided callback when results are available.
+     * on the segment fetch executor and invoke the provided callback when results are available.
      * <p>
      * The segments fetched will be saved and can be accessed at any time by calling {@link #getQualifiedSegments()}.
      *
@@ -359,6 +388,36 @@ public class OptimizelyUserContext {
         fetchQualifiedSegments(callback, Collections.emptyList());
     }
 
+    /**
+     * Fetch all qualified segments for the user context in a non-blocking manner.
+     * <p>
+     * The segments fetched will be saved and can be accessed at any time by calling {@link #getQualifiedSegments()}.
+     *
+     * @param segmentOptions A set of options for fetching qualified segments.
+     * @return A future completed with true when segments were fetched, or false if the fetch failed.
+     */
+    public CompletableFuture<Boolean> fetchQualifiedSegmentsAsync(@Nonnull List<ODPSegmentOption> segmentOptions) {
+        return optimizely.fetchQualifiedSegmentsAsync(userId, segmentOptions).handle((segments, error) -> {
+            if (error != null) {
+                logger.error("Audience segments fetch failed", error);
+                segments = null;
+            }
+            setQualifiedSegments(segments);
+            return segments != null;
+        });
+    }
+
+    /**
+     * Fetch all qualified segments for the user context in a non-blocking manner.
+     * <p>
+     * The segments fetched will be saved and can be accessed at any time by calling {@link #getQualifiedSegments()}.
+     *
+     * @return A future completed with true when segments were fetched, or false if the fetch failed.
+     */
+    public CompletableFuture<Boolean> fetchQualifiedSegmentsAsync() {
+        return fetchQualifiedSegmentsAsync(Collections.emptyList());
+    }
+
     // Utils
 
     @Override
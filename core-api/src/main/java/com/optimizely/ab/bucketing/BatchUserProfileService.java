@@ -0,0 +1,101 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A {@link UserProfileService} exchanging typed {@link UserProfile}s in bulk.
+ *
+ * {@link DecisionService} detects this extension and uses it instead of the map based methods: the profile of a
+ * user is looked up once per decision request, and all the variations bucketed during the request are written
+ * back with a single {@link #saveUserProfilesAsync(Collection)} that the decision does not wait for.
+ *
+ * Stores with an asynchronous client should override the async variants, which by default run the
+ * synchronous methods in the calling thread.
+ */
+public interface BatchUserProfileService extends UserProfileService {
+
+    /**
+     * Fetch the profiles of a set of users.
+     *
+     * @param userIds The IDs of the users whose profiles will be retrieved.
+     * @return the profiles found, by user ID. Users without a profile are left out, and null is taken as no
+     * profiles found.
+     * @throws Exception Passes on whatever exceptions the implementation may throw.
+     */
+    @Nonnull
+    Map<String, UserProfile> lookupUserProfiles(@Nonnull Collection<String> userIds) throws Exception;
+
+    /**
+     * Save a set of user profiles.
+     *
+     * @param userProfiles The profiles to save.
+     * @throws Exception Can throw an exception if the profiles were not saved properly.
+     */
+    void saveUserProfiles(@Nonnull Collection<UserProfile> userProfiles) throws Exception;
+
+    /**
+     * Fetch the profiles of a set of users without blocking the caller.
+     *
+     * @param userIds The IDs of the users whose profiles will be retrieved.
+     * @return a future of the profiles found, by user ID, completed exceptionally if the lookup failed.
+     */
+    @Nonnull
+    default CompletableFuture<Map<String, UserProfile>> lookupUserProfilesAsync(@Nonnull Collection<String> userIds) {
+        CompletableFuture<Map<String, UserProfile>> future = new CompletableFuture<>();
+        try {
+            future.complete(lookupUserProfiles(userIds));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Save a set of user profiles without blocking the caller.
+     *
+     * @param userProfiles The profiles to save.
+     * @return a future completed once the profiles are saved, or exceptionally if they were not.
+     */
+    @Nonnull
+    default CompletableFuture<Void> saveUserProfilesAsync(@Nonnull Collection<UserProfile> userProfiles) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            saveUserProfiles(userProfiles);
+            future.complete(null);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    @Override
+    default Map<String, Object> lookup(String userId) throws Exception {
+        UserProfile userProfile = UserProfileUtils.foundUserProfiles(lookupUserProfiles(Collections.singletonList(userId))).get(userId);
+        return userProfile != null ? userProfile.toMap() : null;
+    }
+
+    @Override
+    default void save(Map<String, Object> userProfile) throws Exception {
+        saveUserProfiles(Collections.singletonList(UserProfileUtils.convertMapToUserProfile(userProfile)));
+    }
+}
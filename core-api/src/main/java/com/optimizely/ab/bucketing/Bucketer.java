@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019-2021 Optimizely and contributors
+ *    Copyright 2016-2017, 2019-2021, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package com.optimizely.ab.bucketing;
 import com.optimizely.ab.annotations.VisibleForTesting;
 import com.optimizely.ab.bucketing.internal.MurmurHash3;
 import com.optimizely.ab.config.*;
+import com.optimizely.ab.optimizelydecision.DecisionReason;
 import com.optimizely.ab.optimizelydecision.DecisionReasons;
 import com.optimizely.ab.optimizelydecision.DecisionResponse;
 import com.optimizely.ab.optimizelydecision.DefaultDecisionReasons;
@@ -70,16 +71,20 @@ public class Bucketer {
     private Experiment bucketToExperiment(@Nonnull Group group,
                                           @Nonnull String bucketingId,
                                           @Nonnull ProjectConfig projectConfig) {
-        // "salt" the bucket id using the group id
-        String bucketKey = bucketingId + group.getId();
-
         List<TrafficAllocation> trafficAllocations = group.getTrafficAllocation();
 
-        int hashCode = MurmurHash3.murmurhash3_x86_32(bucketKey, 0, bucketKey.length(), MURMUR_HASH_SEED);
+        // "salt" the bucket id using the group id
+        int hashCode = MurmurHash3.murmurhash3_x86_32(bucketingId, group.getId(), MURMUR_HASH_SEED);
         int bucketValue = generateBucketValue(hashCode);
         logger.debug("Assigned bucket {} to user with bucketingId \"{}\" during experiment bucketing.", bucketValue, bucketingId);
 
-        String bucketedExperimentId = bucketToEntity(bucketValue, trafficAllocations);
+        String bucketedExperimentId;
+        TrafficAllocationIndex<String> index = group.getTrafficAllocationIndex();
+        if (index != null && index.isIndexOf(trafficAllocations)) {
+            bucketedExperimentId = index.getEntity(bucketValue);
+        } else {
+            bucketedExperimentId = bucketToEntity(bucketValue, trafficAllocations);
+        }
         if (bucketedExperimentId != null) {
             return projectConfig.getExperimentIdMapping().get(bucketedExperimentId);
         }
@@ -93,31 +98,37 @@ public class Bucketer {
                                                           @Nonnull String bucketingId) {
         DecisionReasons reasons = DefaultDecisionReasons.newInstance();
 
-        // "salt" the bucket id using the experiment id
-        String experimentId = experiment.getId();
         String experimentKey = experiment.getKey();
-        String combinedBucketId = bucketingId + experimentId;
 
         List<TrafficAllocation> trafficAllocations = experiment.getTrafficAllocation();
 
-        int hashCode = MurmurHash3.murmurhash3_x86_32(combinedBucketId, 0, combinedBucketId.length(), MURMUR_HASH_SEED);
+        // "salt" the bucket id using the experiment id
+        int hashCode = MurmurHash3.murmurhash3_x86_32(bucketingId, experiment.getId(), MURMUR_HASH_SEED);
         int bucketValue = generateBucketValue(hashCode);
         logger.debug("Assigned bucket {} to user with bucketingId \"{}\" when bucketing to a variation.", bucketValue, bucketingId);
 
-        String bucketedVariationId = bucketToEntity(bucketValue, trafficAllocations);
-        if (bucketedVariationId != null) {
-            Variation bucketedVariation = experiment.getVariationIdToVariationMap().get(bucketedVariationId);
+        Variation bucketedVariation = null;
+        TrafficAllocationIndex<Variation> index = experiment.getTrafficAllocationIndex();
+        if (index != null && index.isIndexOf(trafficAllocations)) {
+            bucketedVariation = index.getEntity(bucketValue);
+        } else {
+            String bucketedVariationId = bucketToEntity(bucketValue, trafficAllocations);
+            if (bucketedVariationId != null) {
+                bucketedVariation = experiment.getVariationIdToVariationMap().get(bucketedVariationId);
+            }
+        }
+        if (bucketedVariation != null) {
             String variationKey = bucketedVariation.getKey();
-            String message = reasons.addInfo("User with bucketingId \"%s\" is in variation \"%s\" of experiment \"%s\".", bucketingId, variationKey,
+            DecisionReason reason = reasons.info("User with bucketingId \"%s\" is in variation \"%s\" of experiment \"%s\".", bucketingId, variationKey,
                 experimentKey);
-            logger.info(message);
+            logger.info("{}", reason);
 
             return new DecisionResponse(bucketedVariation, reasons);
         }
 
         // user was not bucketed to a variation
-        String message = reasons.addInfo("User with bucketingId \"%s\" is not in any variation of experiment \"%s\".", bucketingId, experimentKey);
-        logger.info(message);
+        DecisionReason reason = reasons.info("User with bucketingId \"%s\" is not in any variation of experiment \"%s\".", bucketingId, experimentKey);
+        logger.info("{}", reason);
         return new DecisionResponse(null, reasons);
     }
 
@@ -144,8 +155,8 @@ public class Bucketer {
             if (experimentGroup.getPolicy().equals(Group.RANDOM_POLICY)) {
                 Experiment bucketedExperiment = bucketToExperiment(experimentGroup, bucketingId, projectConfig);
                 if (bucketedExperiment == null) {
-                    String message = reasons.addInfo("User with bucketingId \"%s\" is not in any experiment of group %s.", bucketingId, experimentGroup.getId());
-                    logger.info(message);
+                    DecisionReason reason = reasons.info("User with bucketingId \"%s\" is not in any experiment of group %s.", bucketingId, experimentGroup.getId());
+                    logger.info("{}", reason);
                     return new DecisionResponse(null, reasons);
                 } else {
 
@@ -153,15 +164,15 @@ public class Bucketer {
                 // if the experiment a user is bucketed in within a group isn't the same as the experiment provided,
                 // don't perform further bucketing within the experiment
                 if (!bucketedExperiment.getId().equals(experiment.getId())) {
-                    String message = reasons.addInfo("User with bucketingId \"%s\" is not in experiment \"%s\" of group %s.", bucketingId, experiment.getKey(),
+                    DecisionReason reason = reasons.info("User with bucketingId \"%s\" is not in experiment \"%s\" of group %s.", bucketingId, experiment.getKey(),
                         experimentGroup.getId());
-                    logger.info(message);
+                    logger.info("{}", reason);
                     return new DecisionResponse(null, reasons);
                 }
 
-                String message = reasons.addInfo("User with bucketingId \"%s\" is in experiment \"%s\" of group %s.", bucketingId, experiment.getKey(),
+                DecisionReason reason = reasons.info("User with bucketingId \"%s\" is in experiment \"%s\" of group %s.", bucketingId, experiment.getKey(),
                     experimentGroup.getId());
-                logger.info(message);
+                logger.info("{}", reason);
             }
         }
 
@@ -180,9 +191,9 @@ public class Bucketer {
      */
     @VisibleForTesting
     int generateBucketValue(int hashCode) {
-        // map the hashCode into the range [0, BucketAlgorithm.MAX_TRAFFIC_VALUE)
-        double ratio = (double) (hashCode & 0xFFFFFFFFL) / Math.pow(2, 32);
-        return (int) Math.floor(MAX_TRAFFIC_VALUE * ratio);
+        // map the hashCode into the range [0, BucketAlgorithm.MAX_TRAFFIC_VALUE).
+        // floor(MAX_TRAFFIC_VALUE * (hashCode / 2^32)) is exact in integer arithmetic: the product fits in 46 bits.
+        return (int) (((hashCode & 0xFFFFFFFFL) * MAX_TRAFFIC_VALUE) >>> 32);
     }
 
 }
@@ -0,0 +1,276 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.internal.Cache;
+import com.optimizely.ab.internal.ConcurrentLRUCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.optimizely.ab.internal.SafetyUtils.tryClose;
+
+/**
+ * A {@link UserProfileService} keeping recently used profiles in process, in front of another
+ * {@link UserProfileService}.
+ *
+ * Lookups are served from the cache when possible, including users known to have no profile. Saves are written
+ * through to the underlying service and cached once they succeed; a lookup that read a user from the underlying
+ * service while a save of that user completed does not cache what it read. Profiles saved to the underlying
+ * service by other processes are seen once their cached entry expires or is evicted.
+ *
+ * Bulk lookups and saves are passed on in bulk when the underlying service is a {@link BatchUserProfileService}.
+ * Profiles returned by the typed lookups are shared with the cache and must not be modified.
+ */
+public class CachingUserProfileService implements BatchUserProfileService, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingUserProfileService.class);
+
+    /**
+     * Cached for users without a profile, so they are not looked up again.
+     */
+    private static final UserProfile NO_PROFILE = new UserProfile("", Collections.emptyMap());
+
+    private final UserProfileService userProfileService;
+    private final Cache<UserProfile> cache;
+    /**
+     * The latest lookup reading each user from the underlying service. Saves remove the user, and cache writes
+     * for a user are made while holding its entry, so a lookup only caches a user no save has completed for since
+     * it started.
+     */
+    private final ConcurrentHashMap<String, Object> pendingLookups = new ConcurrentHashMap<>();
+
+    /**
+     * Cache up to {@link Cache#DEFAULT_MAX_SIZE} profiles for {@link Cache#DEFAULT_TIMEOUT_SECONDS} seconds.
+     *
+     * @param userProfileService the service to cache
+     */
+    public CachingUserProfileService(@Nonnull UserProfileService userProfileService) {
+        this(userProfileService, new ConcurrentLRUCache<>());
+    }
+
+    /**
+     * @param userProfileService the service to cache
+     * @param maxSize            the maximum number of cached profiles, 0 to disable caching
+     * @param timeoutSeconds     the time a profile is cached for, 0 to keep profiles until they are evicted
+     */
+    public CachingUserProfileService(@Nonnull UserProfileService userProfileService, int maxSize, int timeoutSeconds) {
+        this(userProfileService, new ConcurrentLRUCache<>(maxSize, timeoutSeconds));
+    }
+
+    /**
+     * @param userProfileService the service to cache
+     * @param cache              the cache of profiles by user ID
+     */
+    public CachingUserProfileService(@Nonnull UserProfileService userProfileService, @Nonnull Cache<UserProfile> cache) {
+        this.userProfileService = userProfileService;
+        this.cache = cache;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, UserProfile> lookupUserProfiles(@Nonnull Collection<String> userIds) throws Exception {
+        Map<String, UserProfile> userProfiles = new HashMap<>();
+        List<String> missingUserIds = lookupCached(userIds, userProfiles);
+        if (missingUserIds.isEmpty()) {
+            return userProfiles;
+        }
+
+        Object lookup = startLookup(missingUserIds);
+        try {
+            Map<String, UserProfile> found;
+            List<String> invalidUserIds = new ArrayList<>();
+            if (userProfileService instanceof BatchUserProfileService) {
+                found = UserProfileUtils.foundUserProfiles(((BatchUserProfileService) userProfileService).lookupUserProfiles(missingUserIds));
+            } else {
+                found = new HashMap<>();
+                for (String userId : missingUserIds) {
+                    Map<String, Object> userProfileMap = userProfileService.lookup(userId);
+                    if (userProfileMap == null) {
+                        continue;
+                    }
+                    if (UserProfileUtils.isValidUserProfileMap(userProfileMap)) {
+                        found.put(userId, UserProfileUtils.convertMapToUserProfile(userProfileMap));
+                    } else {
+                        logger.warn("The UserProfileService returned an invalid map for user \"{}\".", userId);
+                        invalidUserIds.add(userId);
+                    }
+                }
+            }
+
+            // invalid maps are not cached, so they are not mistaken for users without a profile
+            List<String> cachedUserIds = new ArrayList<>(missingUserIds);
+            cachedUserIds.removeAll(invalidUserIds);
+            cacheFound(lookup, cachedUserIds, found, userProfiles);
+            return userProfiles;
+        } finally {
+            endLookup(lookup, missingUserIds);
+        }
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Map<String, UserProfile>> lookupUserProfilesAsync(@Nonnull Collection<String> userIds) {
+        if (!(userProfileService instanceof BatchUserProfileService)) {
+            return BatchUserProfileService.super.lookupUserProfilesAsync(userIds);
+        }
+
+        Map<String, UserProfile> userProfiles = new HashMap<>();
+        List<String> missingUserIds = lookupCached(userIds, userProfiles);
+        if (missingUserIds.isEmpty()) {
+            return CompletableFuture.completedFuture(userProfiles);
+        }
+
+        Object lookup = startLookup(missingUserIds);
+        return ((BatchUserProfileService) userProfileService).lookupUserProfilesAsync(missingUserIds)
+            .thenApply(found -> {
+                cacheFound(lookup, missingUserIds, UserProfileUtils.foundUserProfiles(found), userProfiles);
+                return userProfiles;
+            })
+            .whenComplete((found, e) -> endLookup(lookup, missingUserIds));
+    }
+
+    @Override
+    public void saveUserProfiles(@Nonnull Collection<UserProfile> userProfiles) throws Exception {
+        if (userProfileService instanceof BatchUserProfileService) {
+            ((BatchUserProfileService) userProfileService).saveUserProfiles(userProfiles);
+        } else {
+            for (UserProfile userProfile : userProfiles) {
+                userProfileService.save(userProfile.toMap());
+            }
+        }
+        cacheSaved(userProfiles);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> saveUserProfilesAsync(@Nonnull Collection<UserProfile> userProfiles) {
+        if (!(userProfileService instanceof BatchUserProfileService)) {
+            return BatchUserProfileService.super.saveUserProfilesAsync(userProfiles);
+        }
+
+        return ((BatchUserProfileService) userProfileService).saveUserProfilesAsync(userProfiles)
+            .thenRun(() -> cacheSaved(userProfiles));
+    }
+
+    @Override
+    public Map<String, Object> lookup(String userId) throws Exception {
+        UserProfile userProfile = lookupUserProfiles(Collections.singletonList(userId)).get(userId);
+        return userProfile != null ? userProfile.toMap() : null;
+    }
+
+    @Override
+    public void save(Map<String, Object> userProfile) throws Exception {
+        if (userProfileService instanceof BatchUserProfileService) {
+            saveUserProfiles(Collections.singletonList(UserProfileUtils.convertMapToUserProfile(userProfile)));
+            return;
+        }
+
+        // passed on as is, so the underlying service sees the same map as without the cache
+        userProfileService.save(userProfile);
+        if (UserProfileUtils.isValidUserProfileMap(userProfile)) {
+            cacheSaved(Collections.singletonList(UserProfileUtils.convertMapToUserProfile(userProfile)));
+        }
+    }
+
+    /**
+     * Drop all cached profiles.
+     */
+    public void reset() {
+        cache.reset();
+    }
+
+    @Override
+    public void close() {
+        tryClose(userProfileService);
+    }
+
+    private List<String> lookupCached(Collection<String> userIds, Map<String, UserProfile> userProfiles) {
+        List<String> missingUserIds = new ArrayList<>();
+        for (String userId : userIds) {
+            UserProfile userProfile = cache.lookup(userId);
+            if (userProfile == null) {
+                missingUserIds.add(userId);
+            } else if (userProfile != NO_PROFILE) {
+                userProfiles.put(userId, userProfile);
+            }
+        }
+        if (!missingUserIds.isEmpty()) {
+            logger.debug("User profile cache missed {} of {} users.", missingUserIds.size(), userIds.size());
+        }
+        return missingUserIds;
+    }
+
+    private Object startLookup(List<String> userIds) {
+        Object lookup = new Object();
+        for (String userId : userIds) {
+            pendingLookups.put(userId, lookup);
+        }
+        return lookup;
+    }
+
+    private void endLookup(Object lookup, List<String> userIds) {
+        for (String userId : userIds) {
+            pendingLookups.remove(userId, lookup);
+        }
+    }
+
+    private void cacheFound(Object lookup, List<String> missingUserIds, Map<String, UserProfile> found, Map<String, UserProfile> userProfiles) {
+        for (String userId : missingUserIds) {
+            UserProfile userProfile = found.get(userId);
+            UserProfile cachedProfile = userProfile != null ? copyOf(userProfile) : NO_PROFILE;
+            pendingLookups.computeIfPresent(userId, (id, pendingLookup) -> {
+                if (pendingLookup != lookup) {
+                    // a later lookup of the user caches its own read
+                    return pendingLookup;
+                }
+                cache.save(id, cachedProfile);
+                return null;
+            });
+            if (userProfile != null) {
+                userProfiles.put(userId, userProfile);
+            }
+        }
+    }
+
+    private void cacheSaved(Collection<UserProfile> userProfiles) {
+        for (UserProfile userProfile : userProfiles) {
+            UserProfile cachedProfile = copyOf(userProfile);
+            // ends the lookups of the user in progress, which may have read it before the save
+            pendingLookups.compute(userProfile.userId, (id, pendingLookup) -> {
+                cache.save(id, cachedProfile);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Cached profiles are copies, so changes made to a profile after it was saved or returned do not leak into the
+     * cache.
+     */
+    private static UserProfile copyOf(UserProfile userProfile) {
+        Map<String, Decision> experimentBucketMap = new HashMap<>(userProfile.experimentBucketMap.size());
+        for (Map.Entry<String, Decision> entry : userProfile.experimentBucketMap.entrySet()) {
+            experimentBucketMap.put(entry.getKey(), new Decision(entry.getValue().variationId));
+        }
+        return new UserProfile(userProfile.userId, experimentBucketMap);
+    }
+}
@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright 2017-2022, Optimizely, Inc. and contributors                   *
+ * Copyright 2017-2023, Optimizely, Inc. and contributors                   *
  *                                                                          *
  * Licensed under the Apache License, Version 2.0 (the "License");          *
  * you may not use this file except in compliance with the License.         *
@@ -23,6 +23,7 @@ import com.optimizely.ab.config.*;
 import com.optimizely.ab.error.ErrorHandler;
 import com.optimizely.ab.internal.ControlAttribute;
 import com.optimizely.ab.internal.ExperimentUtils;
+import com.optimizely.ab.optimizelydecision.DecisionReason;
 import com.optimizely.ab.optimizelydecision.DecisionReasons;
 import com.optimizely.ab.optimizelydecision.DecisionResponse;
 import com.optimizely.ab.optimizelydecision.DefaultDecisionReasons;
@@ -92,11 +93,31 @@ public class DecisionService {
                                                     @Nonnull OptimizelyUserContext user,
                                                     @Nonnull ProjectConfig projectConfig,
                                                     @Nonnull List<OptimizelyDecideOption> options) {
+        UserProfileTracker userProfileTracker = createUserProfileTracker(user, options);
+        DecisionResponse<Variation> decisionVariation = getVariation(experiment, user, projectConfig, options, userProfileTracker);
+        if (userProfileTracker != null) {
+            userProfileTracker.saveUserProfile();
+        }
+        return decisionVariation;
+    }
+
+    /**
+     * Get a {@link Variation} of an {@link Experiment} for a user, reading and recording sticky bucketing through
+     * the given tracker. The caller is responsible for saving the tracked profile.
+     *
+     * @param userProfileTracker The user profile of the current request, or null if user profiles are not used
+     */
+    @Nonnull
+    private DecisionResponse<Variation> getVariation(@Nonnull Experiment experiment,
+                                                     @Nonnull OptimizelyUserContext user,
+                                                     @Nonnull ProjectConfig projectConfig,
+                                                     @Nonnull List<OptimizelyDecideOption> options,
+                                                     @Nullable UserProfileTracker userProfileTracker) {
         DecisionReasons reasons = DefaultDecisionReasons.newInstance();
 
         if (!ExperimentUtils.isExperimentActive(experiment)) {
-            String message = reasons.addInfo("Experiment \"%s\" is not running.", experiment.getKey());
-            logger.info(message);
+            DecisionReason reason = reasons.info("Experiment \"%s\" is not running.", experiment.getKey());
+            logger.info("{}", reason);
             return new DecisionResponse(null, reasons);
         }
 
@@ -117,38 +138,18 @@ public class DecisionService {
         }
 
         // fetch the user profile map from the user profile service
-        boolean ignoreUPS = options.contains(OptimizelyDecideOption.IGNORE_USER_PROFILE_SERVICE);
-        UserProfile userProfile = null;
-
-        if (userProfileService != null && !ignoreUPS) {
-            try {
-                Map<String, Object> userProfileMap = userProfileService.lookup(user.getUserId());
-                if (userProfileMap == null) {
-                    String message = reasons.addInfo("We were unable to get a user profile map from the UserProfileService.");
-                    logger.info(message);
-                } else if (UserProfileUtils.isValidUserProfileMap(userProfileMap)) {
-                    userProfile = UserProfileUtils.convertMapToUserProfile(userProfileMap);
-                } else {
-                    String message = reasons.addInfo("The UserProfileService returned an invalid map.");
-                    logger.warn(message);
-                }
-            } catch (Exception exception) {
-                String message = reasons.addInfo(exception.getMessage());
-                logger.error(message);
-                errorHandler.handleError(new OptimizelyRuntimeException(exception));
-            }
+        if (userProfileTracker != null) {
+            reasons.merge(userProfileTracker.loadUserProfile());
 
             // check if user exists in user profile
-            if (userProfile != null) {
-                decisionVariation = getStoredVariation(experiment, userProfile, projectConfig);
+            if (userProfileTracker.isProfileFound()) {
+                decisionVariation = getStoredVariation(experiment, userProfileTracker.getUserProfile(), projectConfig);
                 reasons.merge(decisionVariation.getReasons());
                 variation = decisionVariation.getResult();
                 // return the stored variation if it exists
                 if (variation != null) {
                     return new DecisionResponse(variation, reasons);
                 }
-            } else { // if we could not find a user profile, make a new one
-                userProfile = new UserProfile(user.getUserId(), new HashMap<String, Decision>());
             }
         }
 
@@ -162,8 +163,8 @@ public class DecisionService {
             variation = decisionVariation.getResult();
 
             if (variation != null) {
-                if (userProfileService != null && !ignoreUPS) {
-                    saveVariation(experiment, variation, userProfile);
+                if (userProfileTracker != null) {
+                    userProfileTracker.updateUserProfile(experiment, variation);
                 } else {
                     logger.debug("This decision will not be saved since the UserProfileService is null.");
                 }
@@ -172,11 +173,20 @@ public class DecisionService {
             return new DecisionResponse(variation, reasons);
         }
 
-        String message = reasons.addInfo("User \"%s\" does not meet conditions to be in experiment \"%s\".", user.getUserId(), experiment.getKey());
-        logger.info(message);
+        DecisionReason reason = reasons.info("User \"%s\" does not meet conditions to be in experiment \"%s\".", user.getUserId(), experiment.getKey());
+        logger.info("{}", reason);
         return new DecisionResponse(null, reasons);
     }
 
+    @Nullable
+    private UserProfileTracker createUserProfileTracker(@Nonnull OptimizelyUserContext user,
+                                                        @Nonnull List<OptimizelyDecideOption> options) {
+        if (userProfileService == null || options.contains(OptimizelyDecideOption.IGNORE_USER_PROFILE_SERVICE)) {
+            return null;
+        }
+        return new UserProfileTracker(userProfileService, errorHandler, user.getUserId());
+    }
+
     @Nonnull
     public DecisionResponse<Variation>  getVariation(@Nonnull Experiment experiment,
                                                      @Nonnull OptimizelyUserContext user,
@@ -198,9 +208,47 @@ public class DecisionService {
                                                                     @Nonnull OptimizelyUserContext user,
                                                                     @Nonnull ProjectConfig projectConfig,
                                                                     @Nonnull List<OptimizelyDecideOption> options) {
+        return getVariationsForFeatureList(Collections.singletonList(featureFlag), user, projectConfig, options).get(0);
+    }
+
+    /**
+     * Get the variations the user is bucketed into for a list of FeatureFlags.
+     *
+     * The user profile is looked up at most once for the whole list and saved once after all flags are decided.
+     *
+     * @param featureFlags       The feature flags the user wants to access.
+     * @param user               The current OptimizelyuserContext
+     * @param projectConfig      The current projectConfig
+     * @param options            An array of decision options
+     * @return A list of {@link DecisionResponse}, one for each flag in the same order
+     */
+    @Nonnull
+    public List<DecisionResponse<FeatureDecision>> getVariationsForFeatureList(@Nonnull List<FeatureFlag> featureFlags,
+                                                                               @Nonnull OptimizelyUserContext user,
+                                                                               @Nonnull ProjectConfig projectConfig,
+                                                                               @Nonnull List<OptimizelyDecideOption> options) {
+        UserProfileTracker userProfileTracker = createUserProfileTracker(user, options);
+
+        List<DecisionResponse<FeatureDecision>> decisions = new ArrayList<>(featureFlags.size());
+        for (FeatureFlag featureFlag : featureFlags) {
+            decisions.add(getVariationForFeature(featureFlag, user, projectConfig, options, userProfileTracker));
+        }
+
+        if (userProfileTracker != null) {
+            userProfileTracker.saveUserProfile();
+        }
+        return decisions;
+    }
+
+    @Nonnull
+    private DecisionResponse<FeatureDecision> getVariationForFeature(@Nonnull FeatureFlag featureFlag,
+                                                                     @Nonnull OptimizelyUserContext user,
+                                                                     @Nonnull ProjectConfig projectConfig,
+                                                                     @Nonnull List<OptimizelyDecideOption> options,
+                                                                     @Nullable UserProfileTracker userProfileTracker) {
         DecisionReasons reasons = DefaultDecisionReasons.newInstance();
 
-        DecisionResponse<FeatureDecision> decisionVariationResponse = getVariationFromExperiment(projectConfig, featureFlag, user, options);
+        DecisionResponse<FeatureDecision> decisionVariationResponse = getVariationFromExperiment(projectConfig, featureFlag, user, options, userProfileTracker);
         reasons.merge(decisionVariationResponse.getReasons());
 
         FeatureDecision decision = decisionVariationResponse.getResult();
@@ -212,15 +260,15 @@ public class DecisionService {
         reasons.merge(decisionFeatureResponse.getReasons());
         decision = decisionFeatureResponse.getResult();
 
-        String message;
+        DecisionReason reason;
         if (decision.variation == null) {
-            message = reasons.addInfo("The user \"%s\" was not bucketed into a rollout for feature flag \"%s\".",
+            reason = reasons.info("The user \"%s\" was not bucketed into a rollout for feature flag \"%s\".",
                 user.getUserId(), featureFlag.getKey());
         } else {
-            message = reasons.addInfo("The user \"%s\" was bucketed into a rollout for feature flag \"%s\".",
+            reason = reasons.info("The user \"%s\" was bucketed into a rollout for feature flag \"%s\".",
                 user.getUserId(), featureFlag.getKey());
         }
-        logger.info(message);
+        logger.info("{}", reason);
 
         return new DecisionResponse(decision, reasons);
     }
@@ -245,30 +293,70 @@ public class DecisionService {
                                                                  @Nonnull FeatureFlag featureFlag,
                                                                  @Nonnull OptimizelyUserContext user,
                                                                  @Nonnull List<OptimizelyDecideOption> options) {
+        UserProfileTracker userProfileTracker = createUserProfileTracker(user, options);
+        DecisionResponse<FeatureDecision> decision = getVariationFromExperiment(projectConfig, featureFlag, user, options, userProfileTracker);
+        if (userProfileTracker != null) {
+            userProfileTracker.saveUserProfile();
+        }
+        return decision;
+    }
+
+    @Nonnull
+    private DecisionResponse<FeatureDecision> getVariationFromExperiment(@Nonnull ProjectConfig projectConfig,
+                                                                         @Nonnull FeatureFlag featureFlag,
+                                                                         @Nonnull OptimizelyUserContext user,
+                                                                         @Nonnull List<OptimizelyDecideOption> options,
+                                                                         @Nullable UserProfileTracker userProfileTracker) {
         DecisionReasons reasons = DefaultDecisionReasons.newInstance();
-        if (!featureFlag.getExperimentIds().isEmpty()) {
+        FlagDecisionPlan plan = projectConfig.getFlagDecisionPlan(featureFlag);
+        if (plan != null) {
+            List<Experiment> rules = plan.getExperimentRules();
+            for (int i = 0; i < rules.size(); i++) {
+                FeatureDecision decision = getFeatureDecisionFromExperimentRule(projectConfig, featureFlag.getKey(), rules.get(i), user, options, userProfileTracker, reasons);
+                if (decision != null) {
+                    return new DecisionResponse(decision, reasons);
+                }
+            }
+            if (rules.isEmpty()) {
+                DecisionReason reason = reasons.info("The feature flag \"%s\" is not used in any experiments.", featureFlag.getKey());
+                logger.info("{}", reason);
+            }
+        } else if (!featureFlag.getExperimentIds().isEmpty()) {
             for (String experimentId : featureFlag.getExperimentIds()) {
                 Experiment experiment = projectConfig.getExperimentIdMapping().get(experimentId);
 
-                DecisionResponse<Variation> decisionVariation = getVariationFromExperimentRule(projectConfig, featureFlag.getKey(), experiment, user, options);
-                reasons.merge(decisionVariation.getReasons());
-                Variation variation = decisionVariation.getResult();
-
-                if (variation != null) {
-                    return new DecisionResponse(
-                        new FeatureDecision(experiment, variation, FeatureDecision.DecisionSource.FEATURE_TEST),
-                        reasons);
+                FeatureDecision decision = getFeatureDecisionFromExperimentRule(projectConfig, featureFlag.getKey(), experiment, user, options, userProfileTracker, reasons);
+                if (decision != null) {
+                    return new DecisionResponse(decision, reasons);
                 }
             }
         } else {
-            String message = reasons.addInfo("The feature flag \"%s\" is not used in any experiments.", featureFlag.getKey());
-            logger.info(message);
+            DecisionReason reason = reasons.info("The feature flag \"%s\" is not used in any experiments.", featureFlag.getKey());
+            logger.info("{}", reason);
         }
 
         return new DecisionResponse(null, reasons);
 
     }
 
+    @Nullable
+    private FeatureDecision getFeatureDecisionFromExperimentRule(@Nonnull ProjectConfig projectConfig,
+                                                                 @Nonnull String flagKey,
+                                                                 @Nonnull Experiment experiment,
+                                                                 @Nonnull OptimizelyUserContext user,
+                                                                 @Nonnull List<OptimizelyDecideOption> options,
+                                                                 @Nullable UserProfileTracker userProfileTracker,
+                                                                 @Nonnull DecisionReasons reasons) {
+        DecisionResponse<Variation> decisionVariation = getVariationFromExperimentRule(projectConfig, flagKey, experiment, user, options, userProfileTracker);
+        reasons.merge(decisionVariation.getReasons());
+        Variation variation = decisionVariation.getResult();
+
+        if (variation != null) {
+            return new FeatureDecision(experiment, variation, FeatureDecision.DecisionSource.FEATURE_TEST);
+        }
+        return null;
+    }
+
     /**
      * Try to bucket the user into a rollout rule.
      * Evaluate the user for rules in priority order by seeing if the user satisfies the audience.
@@ -287,15 +375,16 @@ public class DecisionService {
 
         // use rollout to get variation for feature
         if (featureFlag.getRolloutId().isEmpty()) {
-            String message = reasons.addInfo("The feature flag \"%s\" is not used in a rollout.", featureFlag.getKey());
-            logger.info(message);
+            DecisionReason reason = reasons.info("The feature flag \"%s\" is not used in a rollout.", featureFlag.getKey());
+            logger.info("{}", reason);
             return new DecisionResponse(new FeatureDecision(null, null, null), reasons);
         }
-        Rollout rollout = projectConfig.getRolloutIdMapping().get(featureFlag.getRolloutId());
+        FlagDecisionPlan plan = projectConfig.getFlagDecisionPlan(featureFlag);
+        Rollout rollout = plan != null ? plan.getRollout() : projectConfig.getRolloutIdMapping().get(featureFlag.getRolloutId());
         if (rollout == null) {
-            String message = reasons.addInfo("The rollout with id \"%s\" was not found in the datafile for feature flag \"%s\".",
+            DecisionReason reason = reasons.info("The rollout with id \"%s\" was not found in the datafile for feature flag \"%s\".",
                 featureFlag.getRolloutId(), featureFlag.getKey());
-            logger.error(message);
+            logger.error("{}", reason);
             return new DecisionResponse(new FeatureDecision(null, null, null), reasons);
         }
 
@@ -353,12 +442,12 @@ public class DecisionService {
             String forcedVariationKey = userIdToVariationKeyMap.get(userId);
             Variation forcedVariation = experiment.getVariationKeyToVariationMap().get(forcedVariationKey);
             if (forcedVariation != null) {
-                String message = reasons.addInfo("User \"%s\" is forced in variation \"%s\".", userId, forcedVariationKey);
-                logger.info(message);
+                DecisionReason reason = reasons.info("User \"%s\" is forced in variation \"%s\".", userId, forcedVariationKey);
+                logger.info("{}", reason);
             } else {
-                String message = reasons.addInfo("Variation \"%s\" is not in the datafile. Not activating user \"%s\".",
+                DecisionReason reason = reasons.info("Variation \"%s\" is not in the datafile. Not activating user \"%s\".",
                     forcedVariationKey, userId);
-                logger.error(message);
+                logger.error("{}", reason);
             }
             return new DecisionResponse(forcedVariation, reasons);
         }
@@ -393,21 +482,21 @@ public class DecisionService {
                 .getVariationIdToVariationMap()
                 .get(variationId);
             if (savedVariation != null) {
-                String message = reasons.addInfo("Returning previously activated variation \"%s\" of experiment \"%s\" for user \"%s\" from user profile.",
+                DecisionReason reason = reasons.info("Returning previously activated variation \"%s\" of experiment \"%s\" for user \"%s\" from user profile.",
                     savedVariation.getKey(), experimentKey, userProfile.userId);
-                logger.info(message);
+                logger.info("{}", reason);
                 // A variation is stored for this combined bucket id
                 return new DecisionResponse(savedVariation, reasons);
             } else {
-                String message = reasons.addInfo("User \"%s\" was previously bucketed into variation with ID \"%s\" for experiment \"%s\", but no matching variation was found for that user. We will re-bucket the user.",
+                DecisionReason reason = reasons.info("User \"%s\" was previously bucketed into variation with ID \"%s\" for experiment \"%s\", but no matching variation was found for that user. We will re-bucket the user.",
                     userProfile.userId, variationId, experimentKey);
-                logger.info(message);
+                logger.info("{}", reason);
                 return new DecisionResponse(null, reasons);
             }
         } else {
-            String message = reasons.addInfo("No previously activated variation of experiment \"%s\" for user \"%s\" found in user profile.",
+            DecisionReason reason = reasons.info("No previously activated variation of experiment \"%s\" for user \"%s\" found in user profile.",
                 experimentKey, userProfile.userId);
-            logger.info(message);
+            logger.info("{}", reason);
             return new DecisionResponse(null, reasons);
         }
     }
@@ -487,17 +576,15 @@ public class DecisionService {
             Variation variation = projectConfig.getFlagVariationByKey(optimizelyDecisionContext.getFlagKey(), variationKey);
             String ruleKey = optimizelyDecisionContext.getRuleKey();
             String flagKey = optimizelyDecisionContext.getFlagKey();
-            String info;
-            String target = ruleKey != OptimizelyDecisionContext.OPTI_NULL_RULE_KEY ? String.format("flag (%s), rule (%s)", flagKey, ruleKey) : String.format("flag (%s)", flagKey);
+            DecisionReason reason;
+            DecisionReason target = ruleKey != OptimizelyDecisionContext.OPTI_NULL_RULE_KEY ? new DecisionReason("flag (%s), rule (%s)", flagKey, ruleKey) : new DecisionReason("flag (%s)", flagKey);
             if (variation != null) {
-                info = String.format("Variation (%s) is mapped to %s and user (%s) in the forced decision map.", variationKey, target, userId);
-                logger.debug(info);
-                reasons.addInfo(info);
+                reason = reasons.info("Variation (%s) is mapped to %s and user (%s) in the forced decision map.", variationKey, target, userId);
+                logger.debug("{}", reason);
                 return new DecisionResponse(variation, reasons);
             } else {
-                info = String.format("Invalid variation is mapped to %s and user (%s) in the forced decision map.", target, userId);
-                logger.debug(info);
-                reasons.addInfo(info);
+                reason = reasons.info("Invalid variation is mapped to %s and user (%s) in the forced decision map.", target, userId);
+                logger.debug("{}", reason);
             }
         }
         return new DecisionResponse<>(null, reasons);
@@ -591,8 +678,8 @@ public class DecisionService {
         DecisionReasons reasons = DefaultDecisionReasons.newInstance();
 
         if (!validateUserId(userId)) {
-            String message = reasons.addInfo("User ID is invalid");
-            logger.error(message);
+            DecisionReason reason = reasons.info("User ID is invalid");
+            logger.error("{}", reason);
             return new DecisionResponse(null, reasons);
         }
 
@@ -602,9 +689,9 @@ public class DecisionService {
             if (variationId != null) {
                 Variation variation = experiment.getVariationIdToVariationMap().get(variationId);
                 if (variation != null) {
-                    String message = reasons.addInfo("Variation \"%s\" is mapped to experiment \"%s\" and user \"%s\" in the forced variation map",
+                    DecisionReason reason = reasons.info("Variation \"%s\" is mapped to experiment \"%s\" and user \"%s\" in the forced variation map",
                         variation.getKey(), experiment.getKey(), userId);
-                    logger.debug(message);
+                    logger.debug("{}", reason);
                     return new DecisionResponse(variation, reasons);
                 }
             } else {
@@ -620,6 +707,15 @@ public class DecisionService {
                                                                       @Nonnull Experiment rule,
                                                                       @Nonnull OptimizelyUserContext user,
                                                                       @Nonnull List<OptimizelyDecideOption> options) {
+        return getVariationFromExperimentRule(projectConfig, flagKey, rule, user, options, null);
+    }
+
+    private DecisionResponse<Variation> getVariationFromExperimentRule(@Nonnull ProjectConfig projectConfig,
+                                                                       @Nonnull String flagKey,
+                                                                       @Nonnull Experiment rule,
+                                                                       @Nonnull OptimizelyUserContext user,
+                                                                       @Nonnull List<OptimizelyDecideOption> options,
+                                                                       @Nullable UserProfileTracker userProfileTracker) {
         DecisionReasons reasons = DefaultDecisionReasons.newInstance();
 
         String ruleKey = rule != null ? rule.getKey() : null;
@@ -634,7 +730,10 @@ public class DecisionService {
             return new DecisionResponse(variation, reasons);
         }
         //regular decision
-        DecisionResponse<Variation> decisionResponse = getVariation(rule, user, projectConfig, options);
+        // without a shared tracker, go through getVariation so the profile is looked up and saved for this rule alone
+        DecisionResponse<Variation> decisionResponse = userProfileTracker != null
+            ? getVariation(rule, user, projectConfig, options, userProfileTracker)
+            : getVariation(rule, user, projectConfig, options);
         reasons.merge(decisionResponse.getReasons());
 
         variation = decisionResponse.getResult();
@@ -699,31 +798,31 @@ public class DecisionService {
         );
 
         reasons.merge(audienceDecisionResponse.getReasons());
-        String message;
+        DecisionReason reason;
         if (audienceDecisionResponse.getResult()) {
-            message = reasons.addInfo("User \"%s\" meets conditions for targeting rule \"%s\".", user.getUserId(), loggingKey);
-            reasons.addInfo(message);
-            logger.debug(message);
+            reason = reasons.info("User \"%s\" meets conditions for targeting rule \"%s\".", user.getUserId(), loggingKey);
+            reasons.addInfo(reason);
+            logger.debug("{}", reason);
 
             DecisionResponse<Variation> decisionResponse = bucketer.bucket(rule, bucketingId, projectConfig);
             reasons.merge(decisionResponse.getReasons());
             bucketedVariation = decisionResponse.getResult();
 
             if (bucketedVariation != null) {
-                message = reasons.addInfo("User \"%s\" bucketed for targeting rule \"%s\".", user.getUserId(), loggingKey);
-                logger.debug(message);
-                reasons.addInfo(message);
+                reason = reasons.info("User \"%s\" bucketed for targeting rule \"%s\".", user.getUserId(), loggingKey);
+                logger.debug("{}", reason);
+                reasons.addInfo(reason);
             } else if (!everyoneElse) {
-                message = reasons.addInfo("User \"%s\" is not bucketed for targeting rule \"%s\".", user.getUserId(), loggingKey);
-                logger.debug(message);
-                reasons.addInfo(message);
+                reason = reasons.info("User \"%s\" is not bucketed for targeting rule \"%s\".", user.getUserId(), loggingKey);
+                logger.debug("{}", reason);
+                reasons.addInfo(reason);
                 // Skip the rest of rollout rules to the everyone-else rule if audience matches but not bucketed.
                 skipToEveryoneElse = true;
             }
         } else {
-            message = reasons.addInfo("User \"%s\" does not meet conditions for targeting rule \"%d\".", user.getUserId(), ruleIndex + 1);
-            reasons.addInfo(message);
-            logger.debug(message);
+            reason = reasons.info("User \"%s\" does not meet conditions for targeting rule \"%d\".", user.getUserId(), ruleIndex + 1);
+            reasons.addInfo(reason);
+            logger.debug("{}", reason);
         }
         variationToSkipToEveryoneElsePair = new AbstractMap.SimpleEntry<>(bucketedVariation, skipToEveryoneElse);
         return new DecisionResponse(variationToSkipToEveryoneElsePair, reasons);
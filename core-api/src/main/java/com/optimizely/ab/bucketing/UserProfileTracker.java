@@ -0,0 +1,208 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.OptimizelyRuntimeException;
+import com.optimizely.ab.config.Experiment;
+import com.optimizely.ab.config.Variation;
+import com.optimizely.ab.error.ErrorHandler;
+import com.optimizely.ab.optimizelydecision.DecisionReason;
+import com.optimizely.ab.optimizelydecision.DecisionReasons;
+import com.optimizely.ab.optimizelydecision.DefaultDecisionReasons;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Holds a user's {@link UserProfile} for the length of a single decision request.
+ *
+ * The profile is looked up from the {@link UserProfileService} at most once, when the first experiment needs it,
+ * and every variation bucketed during the request is written back with a single save at the end.
+ *
+ * A {@link BatchUserProfileService} is called through its typed methods, and the save at the end is handed to
+ * {@link BatchUserProfileService#saveUserProfilesAsync} without waiting for it to complete.
+ */
+class UserProfileTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserProfileTracker.class);
+
+    private final UserProfileService userProfileService;
+    private final ErrorHandler errorHandler;
+    private final String userId;
+
+    private DecisionReasons lookupReasons;
+    private UserProfile userProfile;
+    private boolean profileFound;
+    private final Map<String, String> updatedVariationIds = new LinkedHashMap<>();
+
+    UserProfileTracker(@Nonnull UserProfileService userProfileService,
+                       @Nonnull ErrorHandler errorHandler,
+                       @Nonnull String userId) {
+        this.userProfileService = userProfileService;
+        this.errorHandler = errorHandler;
+        this.userId = userId;
+    }
+
+    /**
+     * Look up the user profile on first use.
+     *
+     * @return the reasons recorded by the lookup, to be reported by every decision that depends on it
+     */
+    @Nonnull
+    DecisionReasons loadUserProfile() {
+        if (lookupReasons != null) {
+            return lookupReasons;
+        }
+
+        lookupReasons = DefaultDecisionReasons.newInstance();
+        try {
+            if (userProfileService instanceof BatchUserProfileService) {
+                lookupBatchUserProfile((BatchUserProfileService) userProfileService);
+                return lookupReasons;
+            }
+
+            Map<String, Object> userProfileMap = userProfileService.lookup(userId);
+            if (userProfileMap == null) {
+                DecisionReason reason = lookupReasons.info("We were unable to get a user profile map from the UserProfileService.");
+                logger.info("{}", reason);
+            } else if (UserProfileUtils.isValidUserProfileMap(userProfileMap)) {
+                userProfile = UserProfileUtils.convertMapToUserProfile(userProfileMap);
+                profileFound = true;
+            } else {
+                DecisionReason reason = lookupReasons.info("The UserProfileService returned an invalid map.");
+                logger.warn("{}", reason);
+            }
+        } catch (Exception exception) {
+            DecisionReason reason = lookupReasons.info(exception.getMessage());
+            logger.error("{}", reason);
+            errorHandler.handleError(new OptimizelyRuntimeException(exception));
+        } finally {
+            // if we could not find a user profile, make a new one
+            if (userProfile == null) {
+                userProfile = new UserProfile(userId, new HashMap<String, Decision>());
+            }
+        }
+        return lookupReasons;
+    }
+
+    private void lookupBatchUserProfile(@Nonnull BatchUserProfileService batchUserProfileService) throws Exception {
+        UserProfile storedProfile = UserProfileUtils.foundUserProfiles(
+            batchUserProfileService.lookupUserProfiles(Collections.singletonList(userId))).get(userId);
+        if (storedProfile == null) {
+            DecisionReason reason = lookupReasons.info("We were unable to get a user profile map from the UserProfileService.");
+            logger.info("{}", reason);
+            return;
+        }
+
+        // the service may hand out profiles it keeps, so the decisions recorded here go into a copy
+        Map<String, Decision> experimentBucketMap = new HashMap<>(storedProfile.experimentBucketMap.size());
+        for (Map.Entry<String, Decision> entry : storedProfile.experimentBucketMap.entrySet()) {
+            experimentBucketMap.put(entry.getKey(), new Decision(entry.getValue().variationId));
+        }
+        userProfile = new UserProfile(userId, experimentBucketMap);
+        profileFound = true;
+    }
+
+    /**
+     * @return true if the {@link UserProfileService} returned a valid profile for the user
+     */
+    boolean isProfileFound() {
+        return profileFound;
+    }
+
+    @Nonnull
+    UserProfile getUserProfile() {
+        return userProfile;
+    }
+
+    /**
+     * Record a bucketed variation in the profile. It is persisted by {@link #saveUserProfile()}.
+     */
+    void updateUserProfile(@Nonnull Experiment experiment, @Nonnull Variation variation) {
+        String experimentId = experiment.getId();
+        String variationId = variation.getId();
+        Decision decision = userProfile.experimentBucketMap.get(experimentId);
+        if (decision != null) {
+            decision.variationId = variationId;
+        } else {
+            userProfile.experimentBucketMap.put(experimentId, new Decision(variationId));
+        }
+        updatedVariationIds.put(experimentId, variationId);
+    }
+
+    /**
+     * Save the profile if any variation was recorded since it was loaded.
+     */
+    void saveUserProfile() {
+        if (updatedVariationIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> savedVariationIds = new LinkedHashMap<>(updatedVariationIds);
+        updatedVariationIds.clear();
+
+        if (userProfileService instanceof BatchUserProfileService) {
+            try {
+                ((BatchUserProfileService) userProfileService)
+                    .saveUserProfilesAsync(Collections.singletonList(userProfile))
+                    .whenComplete((result, throwable) -> {
+                        if (throwable == null) {
+                            logSaved(savedVariationIds);
+                        } else {
+                            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                                ? throwable.getCause()
+                                : throwable;
+                            logSaveFailed(savedVariationIds, cause);
+                        }
+                    });
+            } catch (Exception exception) {
+                logSaveFailed(savedVariationIds, exception);
+            }
+            return;
+        }
+
+        try {
+            userProfileService.save(userProfile.toMap());
+            logSaved(savedVariationIds);
+        } catch (Exception exception) {
+            logSaveFailed(savedVariationIds, exception);
+        }
+    }
+
+    private void logSaved(Map<String, String> savedVariationIds) {
+        for (Map.Entry<String, String> saved : savedVariationIds.entrySet()) {
+            logger.info("Saved variation \"{}\" of experiment \"{}\" for user \"{}\".",
+                saved.getValue(), saved.getKey(), userId);
+        }
+    }
+
+    private void logSaveFailed(Map<String, String> savedVariationIds, Throwable throwable) {
+        for (Map.Entry<String, String> saved : savedVariationIds.entrySet()) {
+            logger.warn("Failed to save variation \"{}\" of experiment \"{}\" for user \"{}\".",
+                saved.getValue(), saved.getKey(), userId);
+        }
+        errorHandler.handleError(throwable instanceof Exception
+            ? new OptimizelyRuntimeException((Exception) throwable)
+            : new OptimizelyRuntimeException(throwable.getMessage(), throwable));
+    }
+}
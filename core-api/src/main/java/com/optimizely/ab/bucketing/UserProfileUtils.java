@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2017, 2019, Optimizely and contributors
+ *    Copyright 2017, 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -17,6 +17,8 @@
 package com.optimizely.ab.bucketing;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -82,4 +84,16 @@ public class UserProfileUtils {
         }
         return new UserProfile(userId, decisions);
     }
+
+    /**
+     * Take the profiles returned by {@link BatchUserProfileService#lookupUserProfiles(java.util.Collection)},
+     * with null as no profiles found.
+     *
+     * @param userProfiles The profiles found, or null.
+     * @return The profiles found, by user ID.
+     */
+    @Nonnull
+    static Map<String, UserProfile> foundUserProfiles(@Nullable Map<String, UserProfile> userProfiles) {
+        return userProfiles != null ? userProfiles : Collections.<String, UserProfile>emptyMap();
+    }
 }
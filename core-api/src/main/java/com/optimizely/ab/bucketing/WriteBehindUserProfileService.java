@@ -0,0 +1,420 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import com.optimizely.ab.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.optimizely.ab.internal.SafetyUtils.tryClose;
+
+/**
+ * A {@link UserProfileService} that returns from saves right away and writes the profiles to another
+ * {@link UserProfileService} on a background executor.
+ *
+ * Saves are coalesced by user ID, so only the latest profile of a user is written. Pending profiles are written
+ * every flush interval, or as soon as a batch of them is pending, with a single bulk save when the underlying
+ * service is a {@link BatchUserProfileService}. Lookups see the pending profiles before they are written.
+ *
+ * Profiles that fail to be written are kept pending and retried with the next flush, unless a newer profile of
+ * the same user was saved in the meantime, or keeping them would exceed the maximum number of pending profiles,
+ * in which case they are dropped. Profiles still pending when the service is closed are written before
+ * {@link #close()} returns.
+ */
+public class WriteBehindUserProfileService implements BatchUserProfileService, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindUserProfileService.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_FLUSH_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+    public static final long DEFAULT_TIMEOUT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    public static final int DEFAULT_MAX_PENDING_PROFILES = 10000;
+
+    private final UserProfileService userProfileService;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    final int batchSize;
+    final long flushInterval;
+    final long timeoutMillis;
+    final int maxPendingProfiles;
+
+    private final ConcurrentHashMap<String, UserProfile> pending = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, UserProfile> inFlight = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final ScheduledFuture<?> scheduledFlush;
+    /**
+     * Held for reading while a save checks {@link #closed} and adds its profiles to {@link #pending}, and for
+     * writing while closing, so every profile saved before close is pending when the final flush starts.
+     */
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    private WriteBehindUserProfileService(UserProfileService userProfileService,
+                                          ScheduledExecutorService executor,
+                                          boolean ownsExecutor,
+                                          int batchSize,
+                                          long flushInterval,
+                                          long timeoutMillis,
+                                          int maxPendingProfiles) {
+        this.userProfileService = userProfileService;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.timeoutMillis = timeoutMillis;
+        this.maxPendingProfiles = maxPendingProfiles;
+        this.scheduledFlush = executor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, UserProfile> lookupUserProfiles(@Nonnull Collection<String> userIds) throws Exception {
+        Map<String, UserProfile> userProfiles = new HashMap<>();
+        List<String> missingUserIds = new ArrayList<>();
+        for (String userId : userIds) {
+            UserProfile userProfile = getUnwritten(userId);
+            if (userProfile != null) {
+                userProfiles.put(userId, userProfile);
+            } else {
+                missingUserIds.add(userId);
+            }
+        }
+        if (missingUserIds.isEmpty()) {
+            return userProfiles;
+        }
+
+        if (userProfileService instanceof BatchUserProfileService) {
+            userProfiles.putAll(UserProfileUtils.foundUserProfiles(((BatchUserProfileService) userProfileService).lookupUserProfiles(missingUserIds)));
+        } else {
+            for (String userId : missingUserIds) {
+                Map<String, Object> userProfileMap = userProfileService.lookup(userId);
+                if (userProfileMap != null && UserProfileUtils.isValidUserProfileMap(userProfileMap)) {
+                    userProfiles.put(userId, UserProfileUtils.convertMapToUserProfile(userProfileMap));
+                }
+            }
+        }
+        return userProfiles;
+    }
+
+    @Override
+    public Map<String, Object> lookup(String userId) throws Exception {
+        UserProfile userProfile = getUnwritten(userId);
+        if (userProfile != null) {
+            return userProfile.toMap();
+        }
+        // passed on as is, so invalid maps are reported as without this service
+        return userProfileService.lookup(userId);
+    }
+
+    @Override
+    public void saveUserProfiles(@Nonnull Collection<UserProfile> userProfiles) {
+        closeLock.readLock().lock();
+        try {
+            if (!closed) {
+                for (UserProfile userProfile : userProfiles) {
+                    pending.put(userProfile.userId, userProfile);
+                }
+                scheduleFlushIfBatchPending();
+                return;
+            }
+        } finally {
+            closeLock.readLock().unlock();
+        }
+
+        logger.warn("WriteBehindUserProfileService is closed, writing {} user profiles through.", userProfiles.size());
+        write(new ArrayList<>(userProfiles));
+    }
+
+    private void scheduleFlushIfBatchPending() {
+        if (pending.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+                logger.warn("Executor rejected the flush of pending user profiles, waiting for the next flush interval.");
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Void> saveUserProfilesAsync(@Nonnull Collection<UserProfile> userProfiles) {
+        saveUserProfiles(userProfiles);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return the number of profiles saved but not written yet
+     */
+    public int getPendingCount() {
+        return pending.size() + inFlight.size();
+    }
+
+    /**
+     * Write all pending profiles, in batches, in the calling thread. Stops at the first batch that fails to be
+     * written, which is kept pending.
+     */
+    @VisibleForTesting
+    void flush() {
+        flush(false);
+    }
+
+    private void flush(boolean drain) {
+        synchronized (flushLock) {
+            int dropped = 0;
+            while (!pending.isEmpty()) {
+                List<UserProfile> batch = new ArrayList<>(Math.min(batchSize, pending.size()));
+                for (String userId : pending.keySet()) {
+                    UserProfile userProfile = pending.get(userId);
+                    if (userProfile == null) {
+                        continue;
+                    }
+                    // in flight before it leaves pending, so lookups always see it
+                    inFlight.put(userId, userProfile);
+                    if (!pending.remove(userId, userProfile)) {
+                        // saved again, the newer profile stays pending
+                        inFlight.remove(userId, userProfile);
+                        continue;
+                    }
+                    batch.add(userProfile);
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                }
+
+                boolean written = write(batch);
+                boolean retried = !written && !drain && pending.size() + batch.size() <= maxPendingProfiles;
+                if (retried) {
+                    // retried with the next flush, unless the user was saved again
+                    for (UserProfile userProfile : batch) {
+                        pending.putIfAbsent(userProfile.userId, userProfile);
+                    }
+                } else if (!written) {
+                    dropped += batch.size();
+                }
+                for (UserProfile userProfile : batch) {
+                    inFlight.remove(userProfile.userId, userProfile);
+                }
+                if (retried) {
+                    break;
+                }
+            }
+            if (dropped > 0) {
+                logger.error("Dropped {} user profiles that could not be written.", dropped);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        scheduledFlush.cancel(false);
+
+        Future<?> finalFlush;
+        try {
+            finalFlush = executor.submit(() -> flush(true));
+        } catch (RejectedExecutionException e) {
+            logger.warn("Executor rejected the final flush, writing pending user profiles in the calling thread.");
+            flush(true);
+            finalFlush = null;
+        }
+
+        try {
+            if (finalFlush != null) {
+                finalFlush.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Interrupted while writing pending user profiles.");
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Failed to write pending user profiles.", e.getCause());
+        } catch (TimeoutException e) {
+            logger.error("Timeout exceeded writing pending user profiles for {} ms", timeoutMillis);
+        } finally {
+            if (ownsExecutor) {
+                executor.shutdownNow();
+            }
+            tryClose(userProfileService);
+        }
+    }
+
+    private UserProfile getUnwritten(String userId) {
+        UserProfile userProfile = pending.get(userId);
+        return userProfile != null ? userProfile : inFlight.get(userId);
+    }
+
+    private boolean write(List<UserProfile> batch) {
+        if (batch.isEmpty()) {
+            return true;
+        }
+
+        try {
+            if (userProfileService instanceof BatchUserProfileService) {
+                ((BatchUserProfileService) userProfileService).saveUserProfiles(batch);
+            } else {
+                for (UserProfile userProfile : batch) {
+                    userProfileService.save(userProfile.toMap());
+                }
+            }
+            logger.debug("Wrote {} user profiles.", batch.size());
+            return true;
+        } catch (Exception e) {
+            logger.error("Failed to write {} user profiles.", batch.size(), e);
+            return false;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private UserProfileService userProfileService = null;
+        private ScheduledExecutorService executor = null;
+        private int batchSize = DEFAULT_BATCH_SIZE;
+        private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+        private long timeoutMillis = DEFAULT_TIMEOUT_INTERVAL;
+        private int maxPendingProfiles = DEFAULT_MAX_PENDING_PROFILES;
+
+        /**
+         * UserProfileService the profiles are written to.
+         *
+         * @param userProfileService The underlying user profile service
+         * @return The WriteBehindUserProfileService builder
+         */
+        public Builder withUserProfileService(UserProfileService userProfileService) {
+            this.userProfileService = userProfileService;
+            return this;
+        }
+
+        /**
+         * BatchSize is the maximum number of profiles written at once. A flush starts as soon as a batch of
+         * profiles is pending.
+         *
+         * @param batchSize The batch size
+         * @return The WriteBehindUserProfileService builder
+         */
+        public Builder withBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * FlushInterval is the maximum time a saved profile waits before it is written.
+         *
+         * @param duration The flush interval
+         * @param timeUnit The time unit
+         * @return The WriteBehindUserProfileService builder
+         */
+        public Builder withFlushInterval(long duration, TimeUnit timeUnit) {
+            this.flushInterval = timeUnit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Timeout is the maximum time {@link #close()} waits for the pending profiles to be written.
+         *
+         * @param duration The max time to wait on close
+         * @param timeUnit The time unit
+         * @return The WriteBehindUserProfileService builder
+         */
+        public Builder withTimeout(long duration, TimeUnit timeUnit) {
+            this.timeoutMillis = timeUnit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * MaxPendingProfiles is the maximum number of profiles kept pending to retry writes that failed. Profiles
+         * that fail to be written beyond it are dropped.
+         *
+         * @param maxPendingProfiles The max number of pending profiles
+         * @return The WriteBehindUserProfileService builder
+         */
+        public Builder withMaxPendingProfiles(int maxPendingProfiles) {
+            this.maxPendingProfiles = maxPendingProfiles;
+            return this;
+        }
+
+        /**
+         * ScheduledExecutorService the profiles are written on. It is not shut down on close. Defaults to a
+         * single daemon thread owned by the service.
+         *
+         * @param executor The ScheduledExecutorService
+         * @return The WriteBehindUserProfileService builder
+         */
+        public Builder withExecutor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public WriteBehindUserProfileService build() {
+            if (userProfileService == null) {
+                throw new IllegalArgumentException("UserProfileService was not configured");
+            }
+
+            if (batchSize <= 0) {
+                logger.warn("Invalid batchSize of {}, Defaulting to {}", batchSize, DEFAULT_BATCH_SIZE);
+                batchSize = DEFAULT_BATCH_SIZE;
+            }
+
+            if (flushInterval <= 0) {
+                logger.warn("Invalid flushInterval of {}, Defaulting to {}", flushInterval, DEFAULT_FLUSH_INTERVAL);
+                flushInterval = DEFAULT_FLUSH_INTERVAL;
+            }
+
+            if (timeoutMillis < 0) {
+                logger.warn("Invalid timeoutMillis of {}, Defaulting to {}", timeoutMillis, DEFAULT_TIMEOUT_INTERVAL);
+                timeoutMillis = DEFAULT_TIMEOUT_INTERVAL;
+            }
+
+            if (maxPendingProfiles <= 0) {
+                logger.warn("Invalid maxPendingProfiles of {}, Defaulting to {}", maxPendingProfiles, DEFAULT_MAX_PENDING_PROFILES);
+                maxPendingProfiles = DEFAULT_MAX_PENDING_PROFILES;
+            }
+
+            boolean ownsExecutor = executor == null;
+            if (ownsExecutor) {
+                final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+                executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = threadFactory.newThread(runnable);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+
+            return new WriteBehindUserProfileService(userProfileService, executor, ownsExecutor, batchSize, flushInterval, timeoutMillis, maxPendingProfiles);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019, Optimizely and contributors
+ *    Copyright 2016-2017, 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -96,14 +96,32 @@ public final class MurmurHash3 {
      * the string to a temporary buffer
      */
     public static int murmurhash3_x86_32(CharSequence data, int offset, int len, int seed) {
+        return murmurhash3_x86_32(data, offset, len, "", seed);
+    }
+
+    /**
+     * Hash two character sequences as if they were concatenated, without building the concatenated string.
+     *
+     * @param first  the leading data
+     * @param second the trailing data
+     * @param seed   the murmur hash seed
+     * @return the MurmurHash3_x86_32 hash of the UTF-8 bytes of {@code first + second}
+     */
+    public static int murmurhash3_x86_32(CharSequence first, CharSequence second, int seed) {
+        return murmurhash3_x86_32(first, 0, first.length(), second, seed);
+    }
+
+    private static int murmurhash3_x86_32(CharSequence data, int offset, int len, CharSequence trailer, int seed) {
 
         final int c1 = 0xcc9e2d51;
         final int c2 = 0x1b873593;
 
         int h1 = seed;
 
+        // positions run over data[offset, offset + len) followed by the whole trailer
         int pos = offset;
-        int end = offset + len;
+        int dataEnd = offset + len;
+        int end = dataEnd + trailer.length();
         int k1 = 0;
         int k2;
         int shift = 0;
@@ -112,7 +130,8 @@ public final class MurmurHash3 {
 
 
         while (pos < end) {
-            int code = data.charAt(pos++);
+            int code = pos < dataEnd ? data.charAt(pos) : trailer.charAt(pos - dataEnd);
+            pos++;
             if (code < 0x80) {
                 k2 = code;
                 bits = 8;
@@ -153,7 +172,8 @@ public final class MurmurHash3 {
             } else {
                 // surrogate pair
                 // int utf32 = pos < end ? (int) data.charAt(pos++) : 0;
-                int utf32 = (int) data.charAt(pos++);
+                int utf32 = pos < dataEnd ? data.charAt(pos) : trailer.charAt(pos - dataEnd);
+                pos++;
                 utf32 = ((code - 0xD7C0) << 10) + (utf32 & 0x3FF);
                 k2 = (0xff & (0xF0 | (utf32 >> 18)))
                     | ((0x80 | ((utf32 >> 12) & 0x3F))) << 8
@@ -0,0 +1,152 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.internal.ControlAttribute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.optimizely.ab.config.ProjectConfig.RESERVED_ATTRIBUTE_PREFIX;
+import static com.optimizely.ab.internal.AttributesUtil.isValidNumber;
+
+/**
+ * Encodes user attributes into the attributes of an event payload, with the attribute ids of the
+ * {@link ProjectConfig} it was built with.
+ *
+ * Encoders are built once per config revision by {@link DatafileProjectConfig}, so encoding an attribute is a
+ * single map lookup. Other configs are encoded with {@link #forConfig(ProjectConfig)}. Payload attributes are mutable, so each event gets its own, including the bot filtering one.
+ */
+@Immutable
+public final class AttributeEncoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttributeEncoder.class);
+
+    private final Function<String, String> attributeIdLookup;
+    private final Boolean botFiltering;
+
+    AttributeEncoder(@Nonnull Map<String, Attribute> attributeKeyMapping, @Nullable Boolean botFiltering) {
+        this(attributeIdLookup(attributeKeyMapping), botFiltering);
+    }
+
+    private AttributeEncoder(@Nonnull Function<String, String> attributeIdLookup, @Nullable Boolean botFiltering) {
+        this.attributeIdLookup = attributeIdLookup;
+        this.botFiltering = botFiltering;
+    }
+
+    /**
+     * Build an encoder for a config without one of its own, looking the attribute ids up with
+     * {@link ProjectConfig#getAttributeId(ProjectConfig, String)} on every event.
+     *
+     * @param projectConfig the config the attributes are encoded for
+     * @return the encoder
+     */
+    @Nonnull
+    public static AttributeEncoder forConfig(@Nonnull ProjectConfig projectConfig) {
+        return new AttributeEncoder(key -> projectConfig.getAttributeId(projectConfig, key), projectConfig.getBotFiltering());
+    }
+
+    private static Function<String, String> attributeIdLookup(@Nonnull Map<String, Attribute> attributeKeyMapping) {
+        Map<String, String> attributeIds = new HashMap<>(attributeKeyMapping.size() * 4 / 3 + 1);
+        for (Map.Entry<String, Attribute> entry : attributeKeyMapping.entrySet()) {
+            if (entry.getKey().startsWith(RESERVED_ATTRIBUTE_PREFIX)) {
+                logger.warn("Attribute {} unexpectedly has reserved prefix {}; using attribute ID instead of reserved attribute name.",
+                    entry.getKey(), RESERVED_ATTRIBUTE_PREFIX);
+            }
+            attributeIds.put(entry.getKey(), entry.getValue().getId());
+        }
+
+        return attributeKey -> {
+            String attributeId = attributeIds.get(attributeKey);
+            if (attributeId == null && attributeKey.startsWith(RESERVED_ATTRIBUTE_PREFIX)) {
+                attributeId = attributeKey;
+            }
+            return attributeId;
+        };
+    }
+
+    /**
+     * Get the id an attribute is sent with, as {@link ProjectConfig#getAttributeId(ProjectConfig, String)} does.
+     *
+     * @param attributeKey the key of a user attribute
+     * @return the id of the datafile attribute, the key itself for reserved attributes, or null if unknown
+     */
+    @Nullable
+    public String getAttributeId(@Nonnull String attributeKey) {
+        return attributeIdLookup.apply(attributeKey);
+    }
+
+    /**
+     * Encode user attributes. Attributes with an empty key, an unknown key, or a value of a type the events API
+     * does not accept are skipped. The bot filtering attribute is appended when the datafile sets it.
+     *
+     * @param attributes the user attributes
+     * @return the payload attributes
+     */
+    @Nonnull
+    public List<com.optimizely.ab.event.internal.payload.Attribute> encode(@Nullable Map<String, ?> attributes) {
+        int size = (attributes != null ? attributes.size() : 0) + (botFiltering != null ? 1 : 0);
+        List<com.optimizely.ab.event.internal.payload.Attribute> attributesList = new ArrayList<>(size);
+
+        if (attributes != null) {
+            for (Map.Entry<String, ?> entry : attributes.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+
+                // Only Strings, Booleans and numbers the backend parses faithfully are tracked.
+                // https://developers.optimizely.com/x/events/api/#Attribute
+                if (key.isEmpty() || value == null ||
+                    !(value instanceof String || value instanceof Boolean || isValidNumber(value))) {
+                    continue;
+                }
+
+                String attributeId = getAttributeId(key);
+                if (attributeId == null) {
+                    logger.debug("Unrecognized Attribute \"{}\"", key);
+                    continue;
+                }
+
+                attributesList.add(new com.optimizely.ab.event.internal.payload.Attribute.Builder()
+                    .setEntityId(attributeId)
+                    .setKey(key)
+                    .setType(com.optimizely.ab.event.internal.payload.Attribute.CUSTOM_ATTRIBUTE_TYPE)
+                    .setValue(value)
+                    .build());
+            }
+        }
+
+        //checks if botFiltering value is not set in the project config file.
+        if (botFiltering != null) {
+            attributesList.add(new com.optimizely.ab.event.internal.payload.Attribute.Builder()
+                .setEntityId(ControlAttribute.BOT_FILTERING_ATTRIBUTE.toString())
+                .setKey(ControlAttribute.BOT_FILTERING_ATTRIBUTE.toString())
+                .setType(com.optimizely.ab.event.internal.payload.Attribute.CUSTOM_ATTRIBUTE_TYPE)
+                .setValue(botFiltering)
+                .build());
+        }
+
+        return attributesList;
+    }
+}
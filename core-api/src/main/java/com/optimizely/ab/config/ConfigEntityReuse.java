@@ -0,0 +1,271 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.config.audience.*;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.*;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Swaps the entities of a freshly parsed {@link DatafileProjectConfig} for the equal entities of the config of a
+ * previous revision.
+ *
+ * Entities are matched by id, attributes and flags by key, and reused only when their content is equal field by field, so the new config shares
+ * the objects, and everything built from them, of the rules a revision did not touch. Groups and rollouts with a
+ * changed rule are rebuilt around the unchanged rules.
+ */
+final class ConfigEntityReuse {
+
+    private final Map<String, Attribute> attributes;
+    private final Map<String, Audience> audiences;
+    private final Map<String, Audience> typedAudiences;
+    private final Map<String, EventType> events;
+    private final Map<String, Experiment> experiments;
+    private final Map<String, FeatureFlag> featureFlags;
+    private final Map<String, Group> groups;
+    private final Map<String, Rollout> rollouts;
+
+    private int entityCount;
+    private int reusedCount;
+
+    ConfigEntityReuse(@Nonnull ProjectConfig previous) {
+        // attributes and flags are matched by key, their ids are not guaranteed to be unique
+        this.attributes = previous.getAttributeKeyMapping();
+        this.audiences = ProjectConfigUtils.generateIdMapping(previous.getAudiences());
+        this.typedAudiences = ProjectConfigUtils.generateIdMapping(previous.getTypedAudiences());
+        this.events = ProjectConfigUtils.generateIdMapping(previous.getEventTypes());
+        this.featureFlags = previous.getFeatureKeyMapping();
+        this.groups = ProjectConfigUtils.generateIdMapping(previous.getGroups());
+        this.rollouts = ProjectConfigUtils.generateIdMapping(previous.getRollouts());
+
+        Map<String, Experiment> experiments = new HashMap<>(previous.getExperimentIdMapping());
+        for (Rollout rollout : previous.getRollouts()) {
+            for (Experiment rule : rollout.getExperiments()) {
+                experiments.putIfAbsent(rule.getId(), rule);
+            }
+        }
+        this.experiments = experiments;
+    }
+
+    /**
+     * @return the number of entities looked up so far
+     */
+    int getEntityCount() {
+        return entityCount;
+    }
+
+    /**
+     * @return the number of entities looked up so far that were replaced by an entity of the previous config
+     */
+    int getReusedCount() {
+        return reusedCount;
+    }
+
+    List<Attribute> reuseAttributes(List<Attribute> current) {
+        return reuse(current, attributes, Attribute::getKey, ConfigEntityReuse::sameAttribute);
+    }
+
+    List<Audience> reuseAudiences(List<Audience> current) {
+        return reuse(current, audiences, IdMapped::getId, ConfigEntityReuse::sameAudience);
+    }
+
+    List<Audience> reuseTypedAudiences(List<Audience> current) {
+        return reuse(current, typedAudiences, IdMapped::getId, ConfigEntityReuse::sameAudience);
+    }
+
+    List<EventType> reuseEvents(List<EventType> current) {
+        return reuse(current, events, IdMapped::getId, ConfigEntityReuse::sameEvent);
+    }
+
+    List<Experiment> reuseExperiments(List<Experiment> current) {
+        return reuse(current, experiments, IdMapped::getId, ConfigEntityReuse::sameExperiment);
+    }
+
+    List<FeatureFlag> reuseFeatureFlags(List<FeatureFlag> current) {
+        return reuse(current, featureFlags, FeatureFlag::getKey, ConfigEntityReuse::sameFeatureFlag);
+    }
+
+    List<Group> reuseGroups(List<Group> current) {
+        return map(current, this::reuseGroup);
+    }
+
+    List<Rollout> reuseRollouts(List<Rollout> current) {
+        return map(current, this::reuseRollout);
+    }
+
+    private Group reuseGroup(Group group) {
+        List<Experiment> rules = reuseExperiments(group.getExperiments());
+        Group previous = groups.get(group.getId());
+        entityCount++;
+        if (previous != null && previous.getClass() == group.getClass()
+            && Objects.equals(previous.getPolicy(), group.getPolicy())
+            && sameElements(previous.getTrafficAllocation(), group.getTrafficAllocation(), ConfigEntityReuse::sameTrafficAllocation)
+            && sameInstances(previous.getExperiments(), rules)) {
+            reusedCount++;
+            return previous;
+        }
+        if (sameInstances(group.getExperiments(), rules)) {
+            return group;
+        }
+        return new Group(group.getId(), group.getPolicy(), rules, group.getTrafficAllocation());
+    }
+
+    private Rollout reuseRollout(Rollout rollout) {
+        List<Experiment> rules = reuseExperiments(rollout.getExperiments());
+        Rollout previous = rollouts.get(rollout.getId());
+        entityCount++;
+        if (previous != null && previous.getClass() == rollout.getClass()
+            && sameInstances(previous.getExperiments(), rules)) {
+            reusedCount++;
+            return previous;
+        }
+        if (sameInstances(rollout.getExperiments(), rules)) {
+            return rollout;
+        }
+        return new Rollout(rollout.getId(), rules);
+    }
+
+    private <T> List<T> reuse(@Nullable List<T> current, Map<String, T> previous, Function<T, String> idOf,
+                              BiPredicate<T, T> sameContent) {
+        return map(current, entity -> {
+            T previousEntity = previous.get(idOf.apply(entity));
+            entityCount++;
+            if (previousEntity != null && previousEntity.getClass() == entity.getClass() && sameContent.test(previousEntity, entity)) {
+                reusedCount++;
+                return previousEntity;
+            }
+            return entity;
+        });
+    }
+
+    private static <T> List<T> map(@Nullable List<T> current, UnaryOperator<T> operator) {
+        if (current == null) {
+            return null;
+        }
+        List<T> mapped = new ArrayList<>(current.size());
+        for (T entity : current) {
+            mapped.add(operator.apply(entity));
+        }
+        return mapped;
+    }
+
+    /**
+     * @return true if both lists hold the same instances in the same order
+     */
+    static boolean sameInstances(@Nullable List<?> a, @Nullable List<?> b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static <T> boolean sameElements(@Nullable List<T> a, @Nullable List<T> b, BiPredicate<T, T> sameContent) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null || a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            T left = a.get(i);
+            T right = b.get(i);
+            if (left != right && (left == null || right == null || left.getClass() != right.getClass() || !sameContent.test(left, right))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameAttribute(Attribute a, Attribute b) {
+        return Objects.equals(a.getId(), b.getId())
+            && Objects.equals(a.getSegmentId(), b.getSegmentId());
+    }
+
+    private static boolean sameAudience(Audience a, Audience b) {
+        return Objects.equals(a.getName(), b.getName())
+            && sameCondition(a.getConditions(), b.getConditions());
+    }
+
+    private static boolean sameEvent(EventType a, EventType b) {
+        return Objects.equals(a.getKey(), b.getKey())
+            && Objects.equals(a.getExperimentIds(), b.getExperimentIds());
+    }
+
+    private static boolean sameExperiment(Experiment a, Experiment b) {
+        return Objects.equals(a.getKey(), b.getKey())
+            && Objects.equals(a.getStatus(), b.getStatus())
+            && Objects.equals(a.getLayerId(), b.getLayerId())
+            && Objects.equals(a.getGroupId(), b.getGroupId())
+            && Objects.equals(a.getAudienceIds(), b.getAudienceIds())
+            && sameCondition(a.getAudienceConditions(), b.getAudienceConditions())
+            && Objects.equals(a.getUserIdToVariationKeyMap(), b.getUserIdToVariationKeyMap())
+            && sameElements(a.getVariations(), b.getVariations(), ConfigEntityReuse::sameVariation)
+            && sameElements(a.getTrafficAllocation(), b.getTrafficAllocation(), ConfigEntityReuse::sameTrafficAllocation);
+    }
+
+    private static boolean sameVariation(Variation a, Variation b) {
+        return Objects.equals(a.getId(), b.getId())
+            && Objects.equals(a.getKey(), b.getKey())
+            && Objects.equals(a.getFeatureEnabled(), b.getFeatureEnabled())
+            && Objects.equals(a.getFeatureVariableUsageInstances(), b.getFeatureVariableUsageInstances());
+    }
+
+    private static boolean sameTrafficAllocation(TrafficAllocation a, TrafficAllocation b) {
+        return Objects.equals(a.getEntityId(), b.getEntityId())
+            && a.getEndOfRange() == b.getEndOfRange();
+    }
+
+    private static boolean sameFeatureFlag(FeatureFlag a, FeatureFlag b) {
+        // FeatureVariable#equals leaves out the json sub type, which getType() folds in
+        return a.equals(b) && sameElements(a.getVariables(), b.getVariables(),
+            (left, right) -> Objects.equals(left.getType(), right.getType()));
+    }
+
+    private static boolean sameCondition(@Nullable Condition a, @Nullable Condition b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a.getClass() != b.getClass()) {
+            return false;
+        }
+        if (a instanceof AudienceIdCondition) {
+            // compared by structure only, the audience is resolved against each config when evaluated
+            return Objects.equals(((AudienceIdCondition) a).getAudienceId(), ((AudienceIdCondition) b).getAudienceId());
+        }
+        if (a instanceof AndCondition || a instanceof OrCondition || a instanceof NotCondition) {
+            return sameElements(a.getConditions(), b.getConditions(), ConfigEntityReuse::sameCondition);
+        }
+        if (a instanceof EmptyCondition || a instanceof NullCondition) {
+            // stateless conditions without equals
+            return true;
+        }
+        return a.equals(b);
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2022, Optimizely and contributors
+ *    Copyright 2016-2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -31,7 +31,12 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * DatafileProjectConfig is an implementation of ProjectConfig that is backed by a
@@ -95,7 +100,14 @@ public class DatafileProjectConfig implements ProjectConfig {
     // other mappings
     private final Map<String, Experiment> variationIdToExperimentMapping;
 
+    // compiled decision plans, keyed by flag instance
+    private final Map<FeatureFlag, FlagDecisionPlan> flagDecisionPlans;
+
+    private final AttributeEncoder attributeEncoder;
+
     private String datafile;
+    // deflated datafile of configs parsed from a stream, inflated only when requested
+    private byte[] compressedDatafile;
 
     // v2 constructor
     public DatafileProjectConfig(String accountId, String projectId, String version, String revision, List<Group> groups,
@@ -149,6 +161,34 @@ public class DatafileProjectConfig implements ProjectConfig {
                                  List<Group> groups,
                                  List<Rollout> rollouts,
                                  List<Integration> integrations) {
+        this(accountId, anonymizeIP, sendFlagDecisions, botFiltering, projectId, revision, sdkKey, environmentKey,
+            version, attributes, audiences, typedAudiences, events, experiments, featureFlags, groups, rollouts,
+            integrations, null);
+    }
+
+    /**
+     * @param previous the config of a previous revision, whose decision plans are reused for flags whose
+     *                 flag, rule and rollout instances are all unchanged
+     */
+    private DatafileProjectConfig(String accountId,
+                                  boolean anonymizeIP,
+                                  boolean sendFlagDecisions,
+                                  Boolean botFiltering,
+                                  String projectId,
+                                  String revision,
+                                  String sdkKey,
+                                  String environmentKey,
+                                  String version,
+                                  List<Attribute> attributes,
+                                  List<Audience> audiences,
+                                  List<Audience> typedAudiences,
+                                  List<EventType> events,
+                                  List<Experiment> experiments,
+                                  List<FeatureFlag> featureFlags,
+                                  List<Group> groups,
+                                  List<Rollout> rollouts,
+                                  List<Integration> integrations,
+                                  @Nullable DatafileProjectConfig previous) {
         this.accountId = accountId;
         this.projectId = projectId;
         this.version = version;
@@ -224,6 +264,12 @@ public class DatafileProjectConfig implements ProjectConfig {
 
         // generate the name mappers
         this.attributeKeyMapping = ProjectConfigUtils.generateNameMapping(attributes);
+        if (previous != null && ConfigEntityReuse.sameInstances(previous.attributes, this.attributes)
+            && Objects.equals(previous.botFiltering, botFiltering)) {
+            this.attributeEncoder = previous.attributeEncoder;
+        } else {
+            this.attributeEncoder = new AttributeEncoder(attributeKeyMapping, botFiltering);
+        }
         this.eventNameMapping = ProjectConfigUtils.generateNameMapping(this.events);
         this.experimentKeyMapping = ProjectConfigUtils.generateNameMapping(this.experiments);
         this.featureKeyMapping = ProjectConfigUtils.generateNameMapping(this.featureFlags);
@@ -244,8 +290,18 @@ public class DatafileProjectConfig implements ProjectConfig {
         this.experimentFeatureKeyMapping = ProjectConfigUtils.generateExperimentFeatureMapping(this.featureFlags);
 
         flagVariationsMap = new HashMap<>();
+        flagDecisionPlans = new IdentityHashMap<>();
         if (featureFlags != null) {
             for (FeatureFlag flag : featureFlags) {
+                FlagDecisionPlan previousPlan = previous != null ? previous.flagDecisionPlans.get(flag) : null;
+                if (previousPlan != null && previousPlan.isPlanOf(experimentIdMapping, rolloutIdMapping)) {
+                    // nothing the flag decides with has changed, keep the plan and its converted variable values
+                    flagDecisionPlans.put(flag, previousPlan);
+                    flagVariationsMap.put(flag.getKey(), previous.flagVariationsMap.get(flag.getKey()));
+                    continue;
+                }
+                flagDecisionPlans.put(flag, new FlagDecisionPlan(flag, experimentIdMapping, rolloutIdMapping));
+
                 Map<String, Variation> variationIdToVariationsMap = new HashMap<>();
                 for (Experiment rule : getAllRulesForFlag(flag)) {
                     for (Variation variation : rule.getVariations()) {
@@ -260,6 +316,61 @@ public class DatafileProjectConfig implements ProjectConfig {
         }
     }
 
+    /**
+     * Rebuild a config on top of the config of a previous revision. Entities whose id and content are unchanged
+     * are replaced by the instances of the previous config, and the decision plans of flags untouched by the
+     * revision are carried over instead of being compiled again.
+     *
+     * Only applies when both configs are {@link DatafileProjectConfig} instances, not subclasses.
+     *
+     * @param config   a freshly parsed config
+     * @param previous the config it replaces, or null
+     * @return a config sharing the unchanged entities of the previous config, or the given config if it cannot
+     */
+    static ProjectConfig reuseUnchangedEntities(ProjectConfig config, @Nullable ProjectConfig previous) {
+        if (previous == null || config.getClass() != DatafileProjectConfig.class || previous.getClass() != DatafileProjectConfig.class) {
+            return config;
+        }
+
+        DatafileProjectConfig parsed = (DatafileProjectConfig) config;
+        ConfigEntityReuse reuse = new ConfigEntityReuse(previous);
+
+        // the experiments of groups follow the top-level experiments, the rebuilt config adds them back
+        int groupExperimentCount = 0;
+        for (Group group : parsed.groups) {
+            groupExperimentCount += group.getExperiments().size();
+        }
+        List<Experiment> topLevelExperiments = parsed.experiments.subList(0, parsed.experiments.size() - groupExperimentCount);
+
+        DatafileProjectConfig rebuilt = new DatafileProjectConfig(
+            parsed.accountId,
+            parsed.anonymizeIP,
+            parsed.sendFlagDecisions,
+            parsed.botFiltering,
+            parsed.projectId,
+            parsed.revision,
+            parsed.sdkKey,
+            parsed.environmentKey,
+            parsed.version,
+            reuse.reuseAttributes(parsed.attributes),
+            reuse.reuseAudiences(parsed.audiences),
+            reuse.reuseTypedAudiences(parsed.typedAudiences),
+            reuse.reuseEvents(parsed.events),
+            reuse.reuseExperiments(topLevelExperiments),
+            reuse.reuseFeatureFlags(parsed.featureFlags),
+            reuse.reuseGroups(parsed.groups),
+            reuse.reuseRollouts(parsed.rollouts),
+            parsed.integrations,
+            (DatafileProjectConfig) previous
+        );
+        rebuilt.datafile = parsed.datafile;
+        rebuilt.compressedDatafile = parsed.compressedDatafile;
+
+        logger.debug("Reused {} of {} entities from revision {} for revision {}.",
+            reuse.getReusedCount(), reuse.getEntityCount(), previous.getRevision(), parsed.revision);
+        return rebuilt;
+    }
+
     /**
      *  Helper method to grab all rules for a flag
      * @param flag The flag to grab all the rules from
@@ -383,9 +494,28 @@ public class DatafileProjectConfig implements ProjectConfig {
 
     @Override
     public String toDatafile() {
+        if (datafile == null && compressedDatafile != null) {
+            return inflateDatafile(compressedDatafile);
+        }
         return datafile;
     }
 
+    @Nullable
+    private static String inflateDatafile(byte[] compressedDatafile) {
+        try (InputStream datafile = new InflaterInputStream(new ByteArrayInputStream(compressedDatafile))) {
+            ByteArrayOutputStream inflated = new ByteArrayOutputStream(compressedDatafile.length * 8);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = datafile.read(buffer)) != -1) {
+                inflated.write(buffer, 0, read);
+            }
+            return new String(inflated.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.error("Unable to inflate the datafile", e);
+            return null;
+        }
+    }
+
     @Override
     public String getProjectId() {
         return projectId;
@@ -566,11 +696,30 @@ public class DatafileProjectConfig implements ProjectConfig {
         return null;
     }
 
+    @Override
+    public AttributeEncoder getAttributeEncoder() {
+        // the encoder is built from this config's own attributes; a subclass serving others falls back to the lookups.
+        if (getAttributeKeyMapping() != attributeKeyMapping || getBotFiltering() != botFiltering) {
+            return null;
+        }
+        return attributeEncoder;
+    }
+
     @Override
     public String getHostForODP() {
         return hostForODP;
     }
 
+    @Override
+    public FlagDecisionPlan getFlagDecisionPlan(FeatureFlag featureFlag) {
+        // plans are resolved against this config's own id mappings; a subclass serving other entities
+        // falls back to the id lookups.
+        if (getExperimentIdMapping() != experimentIdMapping || getRolloutIdMapping() != rolloutIdMapping) {
+            return null;
+        }
+        return flagDecisionPlans.get(featureFlag);
+    }
+
     @Override
     public String getPublicKeyForODP() {
         return publicKeyForODP;
@@ -609,27 +758,48 @@ public class DatafileProjectConfig implements ProjectConfig {
 
     public static class Builder {
         private String datafile;
+        private InputStream datafileStream;
 
         public Builder withDatafile(String datafile) {
             this.datafile = datafile;
             return this;
         }
 
+        /**
+         * Parse the datafile from a UTF-8 encoded stream, without reading it into a String first. The stream is
+         * read to its end and not closed.
+         *
+         * The config keeps a compressed copy of the datafile, which {@link ProjectConfig#toDatafile()}
+         * decompresses on every call.
+         *
+         * @param datafileStream the datafile
+         * @return the builder
+         */
+        public Builder withDatafileStream(InputStream datafileStream) {
+            this.datafileStream = datafileStream;
+            return this;
+        }
+
         /**
          * @return a {@link DatafileProjectConfig} instance given a JSON string datafile
          * @throws ConfigParseException when parsing datafile fails
          */
         public ProjectConfig build() throws ConfigParseException {
-            if (datafile == null) {
-                throw new ConfigParseException("Unable to parse null datafile.");
-            }
-            if (datafile.isEmpty()) {
-                throw new ConfigParseException("Unable to parse empty datafile.");
-            }
+            ProjectConfig projectConfig;
+            if (datafileStream != null) {
+                projectConfig = parseDatafileStream(datafileStream);
+            } else {
+                if (datafile == null) {
+                    throw new ConfigParseException("Unable to parse null datafile.");
+                }
+                if (datafile.isEmpty()) {
+                    throw new ConfigParseException("Unable to parse empty datafile.");
+                }
 
-            ProjectConfig projectConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
-            if (projectConfig instanceof DatafileProjectConfig) {
-                ((DatafileProjectConfig) projectConfig).datafile = datafile;
+                projectConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+                if (projectConfig instanceof DatafileProjectConfig) {
+                    ((DatafileProjectConfig) projectConfig).datafile = datafile;
+                }
             }
 
             if (!supportedVersions.contains(projectConfig.getVersion())) {
@@ -638,5 +808,84 @@ public class DatafileProjectConfig implements ProjectConfig {
 
             return projectConfig;
         }
+
+        private static ProjectConfig parseDatafileStream(InputStream datafileStream) throws ConfigParseException {
+            ByteArrayOutputStream compressedDatafile = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            ProjectConfig projectConfig;
+            try (DeflaterOutputStream copy = new DeflaterOutputStream(compressedDatafile, deflater)) {
+                CopyingInputStream datafile = new CopyingInputStream(datafileStream, copy);
+                projectConfig = DefaultConfigParser.getInstance().parseProjectConfig(datafile);
+                // parsers stop at the end of the JSON object, copy what follows too
+                datafile.drain();
+            } catch (IOException e) {
+                throw new ConfigParseException("Unable to read datafile.", e);
+            } finally {
+                deflater.end();
+            }
+
+            if (projectConfig instanceof DatafileProjectConfig) {
+                ((DatafileProjectConfig) projectConfig).compressedDatafile = compressedDatafile.toByteArray();
+            }
+            return projectConfig;
+        }
+    }
+
+    /**
+     * Copies the bytes read from a stream to another stream.
+     */
+    private static class CopyingInputStream extends FilterInputStream {
+        private final OutputStream copy;
+
+        CopyingInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                copy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                copy.write(b, off, read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int read;
+            while (skipped < n && (read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped))) != -1) {
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // the caller owns the stream
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // copied by read
+            }
+        }
     }
 }
@@ -23,6 +23,7 @@ import com.optimizely.ab.config.audience.*;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -55,6 +56,9 @@ public class Experiment implements IdKeyMapped {
     private final Map<String, Variation> variationIdToVariationMap;
     private final Map<String, String> userIdToVariationKeyMap;
 
+    private final OrCondition audienceIdsCondition;
+    private final TrafficAllocationIndex<Variation> trafficAllocationIndex;
+
     public enum ExperimentStatus {
         RUNNING("Running"),
         LAUNCHED("Launched"),
@@ -113,6 +117,8 @@ public class Experiment implements IdKeyMapped {
         this.userIdToVariationKeyMap = userIdToVariationKeyMap;
         this.variationKeyToVariationMap = ProjectConfigUtils.generateNameMapping(variations);
         this.variationIdToVariationMap = ProjectConfigUtils.generateIdMapping(variations);
+        this.audienceIdsCondition = createAudienceIdsCondition(this.audienceIds);
+        this.trafficAllocationIndex = new TrafficAllocationIndex<>(this.trafficAllocation, variationIdToVariationMap::get);
     }
 
     public String getId() {
@@ -159,6 +165,31 @@ public class Experiment implements IdKeyMapped {
         return trafficAllocation;
     }
 
+    /**
+     * @return the variations of {@link #getTrafficAllocation()} indexed by end of range.
+     */
+    public TrafficAllocationIndex<Variation> getTrafficAllocationIndex() {
+        return trafficAllocationIndex;
+    }
+
+    /**
+     * The implicit OR over {@link #getAudienceIds()}, used when the experiment has no audienceConditions.
+     *
+     * @return the condition built at construction, or a new one if {@link #getAudienceIds()} is overridden.
+     */
+    public OrCondition getAudienceIdsCondition() {
+        List<String> ids = getAudienceIds();
+        return ids == audienceIds ? audienceIdsCondition : createAudienceIdsCondition(ids);
+    }
+
+    private static OrCondition createAudienceIdsCondition(List<String> audienceIds) {
+        List<Condition> conditions = new ArrayList<>(audienceIds.size());
+        for (String audienceId : audienceIds) {
+            conditions.add(new AudienceIdCondition(audienceId));
+        }
+        return new OrCondition(Collections.unmodifiableList(conditions));
+    }
+
     public String getGroupId() {
         return groupId;
     }
@@ -0,0 +1,199 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.internal.FeatureVariableUtils;
+import com.optimizely.ab.optimizelyjson.OptimizelyJSON;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decision inputs of a {@link FeatureFlag} resolved against the {@link ProjectConfig} it was parsed with.
+ *
+ * Plans are compiled once per config revision by {@link DatafileProjectConfig}, so deciding a flag walks the
+ * resolved rules instead of looking each rule and rollout up by id. Variable values are converted to their
+ * declared types the first time a variation is decided and reused afterwards.
+ */
+@Immutable
+public final class FlagDecisionPlan {
+
+    private final FeatureFlag featureFlag;
+    private final List<Experiment> experimentRules;
+    private final Rollout rollout;
+
+    private final ConcurrentHashMap<String, VariableValues> variableValues = new ConcurrentHashMap<>();
+    private volatile VariableValues defaultVariableValues;
+
+    FlagDecisionPlan(@Nonnull FeatureFlag featureFlag,
+                     @Nonnull Map<String, Experiment> experimentIdMapping,
+                     @Nonnull Map<String, Rollout> rolloutIdMapping) {
+        this.featureFlag = featureFlag;
+
+        List<String> experimentIds = featureFlag.getExperimentIds();
+        Experiment[] rules = new Experiment[experimentIds.size()];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = experimentIdMapping.get(experimentIds.get(i));
+        }
+        this.experimentRules = Collections.unmodifiableList(Arrays.asList(rules));
+        this.rollout = rolloutIdMapping.get(featureFlag.getRolloutId());
+    }
+
+    /**
+     * @return true if the rules and rollout of the flag still resolve to the instances this plan was compiled with
+     */
+    boolean isPlanOf(@Nonnull Map<String, Experiment> experimentIdMapping,
+                     @Nonnull Map<String, Rollout> rolloutIdMapping) {
+        List<String> experimentIds = featureFlag.getExperimentIds();
+        for (int i = 0; i < experimentRules.size(); i++) {
+            if (experimentRules.get(i) != experimentIdMapping.get(experimentIds.get(i))) {
+                return false;
+            }
+        }
+        return rollout == rolloutIdMapping.get(featureFlag.getRolloutId());
+    }
+
+    public FeatureFlag getFeatureFlag() {
+        return featureFlag;
+    }
+
+    /**
+     * @return the experiment rules of the flag, in evaluation order
+     */
+    public List<Experiment> getExperimentRules() {
+        return experimentRules;
+    }
+
+    /**
+     * @return the rollout of the flag, or null if the flag has none or it is missing from the datafile
+     */
+    @Nullable
+    public Rollout getRollout() {
+        return rollout;
+    }
+
+    /**
+     * Get the variable values a decision exposes.
+     *
+     * @param variation      the decided variation, if any
+     * @param featureEnabled whether the variation enables the flag; disabled decisions get the default values
+     * @return the converted values of every variable of the flag
+     */
+    @Nonnull
+    public VariableValues getVariableValues(@Nullable Variation variation, boolean featureEnabled) {
+        if (!featureEnabled || variation == null) {
+            VariableValues values = defaultVariableValues;
+            if (values == null) {
+                values = new VariableValues(featureFlag, null);
+                defaultVariableValues = values;
+            }
+            return values;
+        }
+
+        VariableValues values = variableValues.get(variation.getId());
+        if (values == null) {
+            values = new VariableValues(featureFlag, variation);
+            VariableValues existing = variableValues.putIfAbsent(variation.getId(), values);
+            if (existing != null) {
+                values = existing;
+            }
+        }
+        return values.variation == variation ? values : new VariableValues(featureFlag, variation);
+    }
+
+    /**
+     * Variable values of one variation, converted to the types declared by the flag.
+     */
+    @Immutable
+    public static final class VariableValues {
+
+        private final Variation variation;
+        private final String[] keys;
+        private final Object[] values;
+        private final List<String> invalidKeys;
+
+        private VariableValues(FeatureFlag featureFlag, @Nullable Variation variation) {
+            this.variation = variation;
+
+            List<FeatureVariable> variables = featureFlag.getVariables();
+            Map<String, FeatureVariableUsageInstance> usages = variation != null ?
+                variation.getVariableIdToFeatureVariableUsageInstanceMap() : null;
+            List<String> invalid = new ArrayList<>();
+
+            keys = new String[variables.size()];
+            values = new Object[variables.size()];
+            for (int i = 0; i < keys.length; i++) {
+                FeatureVariable variable = variables.get(i);
+                String value = variable.getDefaultValue();
+                FeatureVariableUsageInstance instance = usages != null ? usages.get(variable.getId()) : null;
+                if (instance != null) {
+                    value = instance.getValue();
+                }
+
+                Object convertedValue = FeatureVariableUtils.convertStringToType(value, variable.getType());
+                if (convertedValue == null) {
+                    invalid.add(variable.getKey());
+                } else if (convertedValue instanceof OptimizelyJSON) {
+                    convertedValue = ((OptimizelyJSON) convertedValue).toMap();
+                }
+                keys[i] = variable.getKey();
+                values[i] = convertedValue;
+            }
+            invalidKeys = Collections.unmodifiableList(invalid);
+        }
+
+        /**
+         * @return keys of the variables whose values could not be converted to their type
+         */
+        public List<String> getInvalidKeys() {
+            return invalidKeys;
+        }
+
+        /**
+         * @return a new map of variable key to value; JSON values are copied so callers may modify them
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], copy(values[i]));
+            }
+            return map;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Object copy(Object value) {
+            if (value instanceof Map) {
+                Map<Object, Object> copy = new LinkedHashMap<>();
+                for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                    copy.put(entry.getKey(), copy(entry.getValue()));
+                }
+                return copy;
+            }
+            if (value instanceof List) {
+                List<Object> copy = new ArrayList<>();
+                for (Object element : (List<Object>) value) {
+                    copy.add(copy(element));
+                }
+                return copy;
+            }
+            return value;
+        }
+    }
+}
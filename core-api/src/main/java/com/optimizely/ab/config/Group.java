@@ -23,6 +23,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import javax.annotation.concurrent.Immutable;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Represents a Optimizely Group configuration
@@ -37,6 +38,7 @@ public class Group implements IdMapped {
     private final String policy;
     private final List<TrafficAllocation> trafficAllocation;
     private final List<Experiment> experiments;
+    private final TrafficAllocationIndex<String> trafficAllocationIndex;
 
     public static final String RANDOM_POLICY = "random";
 
@@ -67,6 +69,7 @@ public class Group implements IdMapped {
             }
             this.experiments.add(experiment);
         }
+        this.trafficAllocationIndex = new TrafficAllocationIndex<>(trafficAllocation, Function.identity());
     }
 
     public String getId() {
@@ -81,6 +84,13 @@ public class Group implements IdMapped {
         return trafficAllocation;
     }
 
+    /**
+     * @return the experiment ids of {@link #getTrafficAllocation()} indexed by end of range.
+     */
+    public TrafficAllocationIndex<String> getTrafficAllocationIndex() {
+        return trafficAllocationIndex;
+    }
+
     public List<Experiment> getExperiments() {
         return experiments;
     }
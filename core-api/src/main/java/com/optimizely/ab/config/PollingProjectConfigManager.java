@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019-2020, Optimizely and contributors
+ *    Copyright 2019-2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
  */
 package com.optimizely.ab.config;
 
+import com.optimizely.ab.internal.MemoizingSupplier;
 import com.optimizely.ab.notification.NotificationCenter;
 import com.optimizely.ab.notification.UpdateConfigNotification;
 import com.optimizely.ab.optimizelyconfig.OptimizelyConfig;
@@ -26,6 +27,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 /**
  * PollingProjectConfigManager is an abstract class that provides basic scheduling and caching.
@@ -46,7 +48,7 @@ public abstract class PollingProjectConfigManager implements ProjectConfigManage
     private static final UpdateConfigNotification SIGNAL = new UpdateConfigNotification();
 
     private final AtomicReference<ProjectConfig> currentProjectConfig = new AtomicReference<>();
-    private final AtomicReference<OptimizelyConfig> currentOptimizelyConfig = new AtomicReference<>();
+    private final AtomicReference<Supplier<OptimizelyConfig>> currentOptimizelyConfig = new AtomicReference<>();
     private final ScheduledExecutorService scheduledExecutorService;
     private final long period;
     private final TimeUnit timeUnit;
@@ -106,8 +108,13 @@ public abstract class PollingProjectConfigManager implements ProjectConfigManage
             logger.info("New datafile set with revision: {}. Old revision: {}", projectConfig.getRevision(), previousRevision);
         }
 
-        currentProjectConfig.set(projectConfig);
-        currentOptimizelyConfig.set(new OptimizelyConfigService(projectConfig).getConfig());
+        // share the entities the new revision did not change with the current config
+        projectConfig = DatafileProjectConfig.reuseUnchangedEntities(projectConfig, oldProjectConfig);
+
+        ProjectConfig newProjectConfig = projectConfig;
+        currentProjectConfig.set(newProjectConfig);
+        // built on the first getOptimizelyConfig() call of the revision, most services never make one
+        currentOptimizelyConfig.set(new MemoizingSupplier<>(() -> new OptimizelyConfigService(newProjectConfig).getConfig()));
         countDownLatch.countDown();
         notificationCenter.send(SIGNAL);
     }
@@ -119,10 +126,17 @@ public abstract class PollingProjectConfigManager implements ProjectConfigManage
     /**
      * If the instance was never started, then call getConfig() directly from the inner ProjectConfigManager.
      * else, wait until the ProjectConfig is set or the timeout expires.
+     *
+     * Once a ProjectConfig has been published, reads are a single volatile load and never touch the latch.
      */
     @Override
     public ProjectConfig getConfig() {
         if (started) {
+            ProjectConfig projectConfig = currentProjectConfig.get();
+            if (projectConfig != null) {
+                return projectConfig;
+            }
+
             try {
                 boolean acquired = countDownLatch.await(blockingTimeoutPeriod, blockingTimeoutUnit);
                 if (!acquired) {
@@ -142,12 +156,13 @@ public abstract class PollingProjectConfigManager implements ProjectConfigManage
     }
 
     /**
-     * Returns the cached {@link OptimizelyConfig}
+     * Returns the {@link OptimizelyConfig} of the current config, built on the first call for each revision.
      * @return {@link OptimizelyConfig}
      */
     @Override
     public OptimizelyConfig getOptimizelyConfig() {
-        return currentOptimizelyConfig.get();
+        Supplier<OptimizelyConfig> optimizelyConfig = currentOptimizelyConfig.get();
+        return optimizelyConfig == null ? null : optimizelyConfig.get();
     }
 
     public synchronized void start() {
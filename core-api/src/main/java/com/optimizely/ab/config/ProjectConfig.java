@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2022, Optimizely and contributors
+ *    Copyright 2016-2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -112,6 +112,27 @@ public interface ProjectConfig {
 
     Variation getFlagVariationByKey(String flagKey, String variationKey);
 
+    /**
+     * Get the compiled decision plan of a feature flag.
+     *
+     * @param featureFlag a flag of this config
+     * @return the plan, or null if the flag is not an instance of this config or plans are not supported
+     */
+    @Nullable
+    default FlagDecisionPlan getFlagDecisionPlan(FeatureFlag featureFlag) {
+        return null;
+    }
+
+    /**
+     * Get the encoder of user attributes into event payload attributes.
+     *
+     * @return the encoder, or null if encoders are not supported
+     */
+    @Nullable
+    default AttributeEncoder getAttributeEncoder() {
+        return null;
+    }
+
     String getHostForODP();
 
     String getPublicKeyForODP();
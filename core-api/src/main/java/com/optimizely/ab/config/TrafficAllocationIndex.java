@@ -0,0 +1,108 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Flattened form of a {@link TrafficAllocation} list: the end of each range in an int array, and the entity
+ * each range resolves to in a parallel array.
+ *
+ * Built once by the owning {@link Experiment} or {@link Group} so bucketing does not walk the allocation objects
+ * or look entities up by id.
+ *
+ * @param <T> the entity the ranges resolve to
+ */
+@Immutable
+public final class TrafficAllocationIndex<T> {
+
+    private final List<TrafficAllocation> trafficAllocation;
+    private final int[] endOfRanges;
+    private final Object[] entities;
+    private final boolean sorted;
+
+    /**
+     * @param trafficAllocation the ranges to index
+     * @param resolver          maps a non-empty entity id to its entity; de-allocated ranges (empty ids) and
+     *                          unresolved ids are indexed as null
+     */
+    public TrafficAllocationIndex(@Nullable List<TrafficAllocation> trafficAllocation,
+                                  Function<String, T> resolver) {
+        this.trafficAllocation = trafficAllocation;
+        List<TrafficAllocation> ranges = trafficAllocation != null ? trafficAllocation : Collections.emptyList();
+        this.endOfRanges = new int[ranges.size()];
+        this.entities = new Object[ranges.size()];
+        boolean sorted = true;
+        for (int i = 0; i < ranges.size(); i++) {
+            TrafficAllocation range = ranges.get(i);
+            String entityId = range.getEntityId();
+            endOfRanges[i] = range.getEndOfRange();
+            entities[i] = entityId == null || entityId.isEmpty() ? null : resolver.apply(entityId);
+            sorted &= i == 0 || endOfRanges[i - 1] <= endOfRanges[i];
+        }
+        this.sorted = sorted;
+    }
+
+    /**
+     * @return true if this index was built from the given list instance
+     */
+    public boolean isIndexOf(@Nullable List<TrafficAllocation> trafficAllocation) {
+        return this.trafficAllocation == trafficAllocation;
+    }
+
+    /**
+     * Find the entity of the first range whose end is past the bucket value.
+     *
+     * Ranges are binary searched when their ends are in ascending order, as datafiles produce them, and scanned
+     * in order otherwise.
+     *
+     * @param bucketValue a value in [0, 10000)
+     * @return the entity, or null if the value falls past the last range or into a de-allocated range
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public T getEntity(int bucketValue) {
+        int index = sorted ? searchRange(bucketValue) : scanRange(bucketValue);
+        return index < endOfRanges.length ? (T) entities[index] : null;
+    }
+
+    private int searchRange(int bucketValue) {
+        int low = 0;
+        int high = endOfRanges.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bucketValue < endOfRanges[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private int scanRange(int bucketValue) {
+        int i = 0;
+        while (i < endOfRanges.length && bucketValue >= endOfRanges[i]) {
+            i++;
+        }
+        return i;
+    }
+}
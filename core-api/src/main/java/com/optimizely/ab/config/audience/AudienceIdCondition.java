@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2018-2022, Optimizely and contributors
+ *    Copyright 2018-2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -21,6 +21,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.optimizely.ab.OptimizelyUserContext;
 import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.internal.AudienceResultCache;
 import com.optimizely.ab.internal.InvalidAudienceCondition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,7 +36,8 @@ import java.util.Objects;
  * The AudienceIdCondition is a holder for the audience id in
  * {@link com.optimizely.ab.config.Experiment#audienceConditions auienceConditions}.
  * If the audienceId is not resolved at evaluation time, the
- * condition will fail.  AudienceIdConditions are resolved when the ProjectConfig is passed into evaluate.
+ * condition will fail.  AudienceIdConditions are resolved when the ProjectConfig is passed into evaluate,
+ * without being modified, so they can be shared between the revisions of a config.
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class AudienceIdCondition<T> implements Condition<T> {
@@ -74,13 +76,21 @@ public class AudienceIdCondition<T> implements Condition<T> {
     @Nullable
     @Override
     public Boolean evaluate(ProjectConfig config, OptimizelyUserContext user) {
-        if (config != null) {
-            audience = config.getAudienceIdMapping().get(audienceId);
-        }
-        if (audience == null) {
+        Audience resolvedAudience = config != null ? config.getAudienceIdMapping().get(audienceId) : audience;
+        if (resolvedAudience == null) {
             logger.error("Audience {} could not be found.", audienceId);
             return null;
         }
+
+        AudienceResultCache audienceResultCache = user != null ? user.getAudienceResultCache() : null;
+        if (audienceResultCache == null) {
+            return evaluateAudience(resolvedAudience, config, user);
+        }
+        return audienceResultCache.getOrEvaluate(resolvedAudience, () -> evaluateAudience(resolvedAudience, config, user));
+    }
+
+    @Nullable
+    private static Boolean evaluateAudience(Audience audience, ProjectConfig config, OptimizelyUserContext user) {
         logger.debug("Starting to evaluate audience \"{}\" with conditions: {}.", audience.getId(), audience.getConditions());
         Boolean result = audience.getConditions().evaluate(config, user);
         logger.debug("Audience \"{}\" evaluated to {}.", audience.getId(), result);
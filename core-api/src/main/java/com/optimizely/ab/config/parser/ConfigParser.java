@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017,2021, Optimizely and contributors
+ *    Copyright 2016-2017,2021,2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -19,6 +19,10 @@ package com.optimizely.ab.config.parser;
 import com.optimizely.ab.config.ProjectConfig;
 
 import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Config parser wrapper to allow multiple library implementations to be used.
@@ -39,6 +43,30 @@ public interface ConfigParser {
      */
     ProjectConfig parseProjectConfig(@Nonnull String json) throws ConfigParseException;
 
+    /**
+     * Parse a UTF-8 encoded datafile from a stream. The stream is read up to the end of the datafile and not closed.
+     *
+     * Parsers that support token streams build the config without holding the datafile in memory; the others
+     * read it into a String first.
+     *
+     * @param json The json to parse
+     * @return The {@code ProjectConfig} configuration from the provided json
+     * @throws ConfigParseException when there's an issue reading or parsing the provided project config
+     */
+    default ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        ByteArrayOutputStream datafile = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = json.read(buffer)) != -1) {
+                datafile.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new ConfigParseException("Unable to read datafile", e);
+        }
+        return parseProjectConfig(new String(datafile.toByteArray(), StandardCharsets.UTF_8));
+    }
+
     /**
      * OptimizelyJSON parsing
      *
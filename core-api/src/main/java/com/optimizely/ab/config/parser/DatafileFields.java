@@ -0,0 +1,109 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config.parser;
+
+import com.optimizely.ab.config.*;
+import com.optimizely.ab.config.audience.Audience;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Top-level fields of a datafile, collected by the streaming parsers in whatever order the datafile lists them.
+ *
+ * {@link #toProjectConfig()} applies the same version rules as {@link DatafileGsonDeserializer} and
+ * {@link DatafileJacksonDeserializer}.
+ */
+final class DatafileFields {
+    String accountId;
+    String projectId;
+    String revision;
+    String version;
+    Boolean anonymizeIP;
+    List<Group> groups;
+    List<Experiment> experiments;
+    List<Attribute> attributes;
+    List<EventType> events;
+    List<Audience> audiences = Collections.emptyList();
+    List<Audience> typedAudiences;
+    List<FeatureFlag> featureFlags;
+    List<Rollout> rollouts;
+    List<Integration> integrations;
+    String sdkKey;
+    String environmentKey;
+    Boolean botFiltering;
+    Boolean sendFlagDecisions;
+
+    DatafileProjectConfig toProjectConfig() throws ConfigParseException {
+        if (accountId == null || projectId == null || revision == null || version == null) {
+            throw new ConfigParseException("Unable to parse datafile: accountId, projectId, revision and version are required.");
+        }
+
+        int datafileVersion;
+        try {
+            datafileVersion = Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            throw new ConfigParseException("Unable to parse datafile version: " + version, e);
+        }
+
+        boolean anonymizeIP = false;
+        if (datafileVersion >= Integer.parseInt(DatafileProjectConfig.Version.V3.toString())) {
+            if (this.anonymizeIP == null) {
+                throw new ConfigParseException("Unable to parse datafile: anonymizeIP is required.");
+            }
+            anonymizeIP = this.anonymizeIP;
+        }
+
+        List<FeatureFlag> featureFlags = null;
+        List<Rollout> rollouts = null;
+        List<Integration> integrations = null;
+        String sdkKey = null;
+        String environmentKey = null;
+        Boolean botFiltering = null;
+        boolean sendFlagDecisions = false;
+        if (datafileVersion >= Integer.parseInt(DatafileProjectConfig.Version.V4.toString())) {
+            featureFlags = this.featureFlags;
+            rollouts = this.rollouts;
+            integrations = this.integrations;
+            sdkKey = this.sdkKey;
+            environmentKey = this.environmentKey;
+            botFiltering = this.botFiltering;
+            sendFlagDecisions = this.sendFlagDecisions != null && this.sendFlagDecisions;
+        }
+
+        return new DatafileProjectConfig(
+            accountId,
+            anonymizeIP,
+            sendFlagDecisions,
+            botFiltering,
+            projectId,
+            revision,
+            sdkKey,
+            environmentKey,
+            version,
+            attributes,
+            audiences,
+            typedAudiences,
+            events,
+            experiments,
+            featureFlags,
+            groups,
+            rollouts,
+            integrations
+        );
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019-2020, Optimizely and contributors
+ *    Copyright 2016-2017, 2019-2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -18,11 +18,18 @@ package com.optimizely.ab.config.parser;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 import com.optimizely.ab.config.*;
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.audience.TypedAudience;
 
 import javax.annotation.Nonnull;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * {@link Gson}-based config parser implementation.
@@ -61,6 +68,58 @@ final public class GsonConfigParser implements ConfigParser {
         }
     }
 
+    /**
+     * Parse the datafile token by token: each top-level entity list is bound element by element, without
+     * building a tree of the whole datafile.
+     */
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        DatafileFields fields = new DatafileFields();
+        try {
+            // not closed, so the stream is left open for the caller
+            JsonReader reader = gson.newJsonReader(new InputStreamReader(json, StandardCharsets.UTF_8));
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "accountId": fields.accountId = readString(reader); break;
+                    case "projectId": fields.projectId = readString(reader); break;
+                    case "revision": fields.revision = readString(reader); break;
+                    case "version": fields.version = readString(reader); break;
+                    case "anonymizeIP": fields.anonymizeIP = readBoolean(reader); break;
+                    case "groups": fields.groups = gson.fromJson(reader, new TypeToken<List<Group>>() {}.getType()); break;
+                    case "experiments": fields.experiments = gson.fromJson(reader, new TypeToken<List<Experiment>>() {}.getType()); break;
+                    case "attributes": fields.attributes = gson.fromJson(reader, new TypeToken<List<Attribute>>() {}.getType()); break;
+                    case "events": fields.events = gson.fromJson(reader, new TypeToken<List<EventType>>() {}.getType()); break;
+                    case "audiences": fields.audiences = gson.fromJson(reader, new TypeToken<List<Audience>>() {}.getType()); break;
+                    case "typedAudiences": fields.typedAudiences = gson.fromJson(reader, new TypeToken<List<TypedAudience>>() {}.getType()); break;
+                    case "featureFlags": fields.featureFlags = gson.fromJson(reader, new TypeToken<List<FeatureFlag>>() {}.getType()); break;
+                    case "rollouts": fields.rollouts = gson.fromJson(reader, new TypeToken<List<Rollout>>() {}.getType()); break;
+                    case "integrations": fields.integrations = gson.fromJson(reader, new TypeToken<List<Integration>>() {}.getType()); break;
+                    case "sdkKey": fields.sdkKey = readString(reader); break;
+                    case "environmentKey": fields.environmentKey = readString(reader); break;
+                    case "botFiltering": fields.botFiltering = readBoolean(reader); break;
+                    case "sendFlagDecisions": fields.sendFlagDecisions = readBoolean(reader); break;
+                    default: reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (Exception e) {
+            throw new ConfigParseException("Unable to parse datafile", e);
+        }
+        return fields.toProjectConfig();
+    }
+
+    private String readString(JsonReader reader) {
+        JsonElement element = gson.fromJson(reader, JsonElement.class);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private Boolean readBoolean(JsonReader reader) {
+        JsonElement element = gson.fromJson(reader, JsonElement.class);
+        return element == null || element.isJsonNull() ? null : element.getAsBoolean();
+    }
+
     public String toJson(Object src) {
         return gson.toJson(src);
     }
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2018, 2020, Optimizely and contributors
+ *    Copyright 2016-2018, 2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,17 +16,22 @@
  */
 package com.optimizely.ab.config.parser;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
-import com.optimizely.ab.config.DatafileProjectConfig;
-import com.optimizely.ab.config.ProjectConfig;
+import com.optimizely.ab.config.*;
 import com.optimizely.ab.config.audience.Audience;
 import com.optimizely.ab.config.audience.Condition;
 import com.optimizely.ab.config.audience.TypedAudience;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * {@code Jackson}-based config parser implementation.
@@ -52,6 +57,79 @@ final public class JacksonConfigParser implements ConfigParser {
         }
     }
 
+    /**
+     * Parse the datafile token by token: each top-level entity list is bound element by element, without
+     * building a tree of the whole datafile.
+     */
+    @Override
+    public ProjectConfig parseProjectConfig(@Nonnull InputStream json) throws ConfigParseException {
+        DatafileFields fields = new DatafileFields();
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            parser.setCodec(objectMapper);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ConfigParseException("Unable to parse datafile: expected a JSON object.");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                switch (name) {
+                    case "accountId": fields.accountId = readText(parser); break;
+                    case "projectId": fields.projectId = readText(parser); break;
+                    case "revision": fields.revision = readText(parser); break;
+                    case "version": fields.version = readText(parser); break;
+                    case "anonymizeIP": fields.anonymizeIP = ((JsonNode) parser.readValueAsTree()).asBoolean(); break;
+                    case "groups": fields.groups = readList(parser, Group.class); break;
+                    case "experiments": fields.experiments = readList(parser, Experiment.class); break;
+                    case "attributes": fields.attributes = readList(parser, Attribute.class); break;
+                    case "events": fields.events = readList(parser, EventType.class); break;
+                    case "audiences": fields.audiences = readList(parser, Audience.class); break;
+                    case "typedAudiences": fields.typedAudiences = readList(parser, TypedAudience.class); break;
+                    case "featureFlags": fields.featureFlags = readList(parser, FeatureFlag.class); break;
+                    case "rollouts": fields.rollouts = readList(parser, Rollout.class); break;
+                    case "integrations": fields.integrations = readList(parser, Integration.class); break;
+                    case "sdkKey": fields.sdkKey = readText(parser); break;
+                    case "environmentKey": fields.environmentKey = readText(parser); break;
+                    case "botFiltering": fields.botFiltering = readBoolean(parser); break;
+                    case "sendFlagDecisions": fields.sendFlagDecisions = readBoolean(parser); break;
+                    default: parser.skipChildren();
+                }
+            }
+        } catch (ConfigParseException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConfigParseException("Unable to parse datafile", e);
+        }
+        return fields.toProjectConfig();
+    }
+
+    private static String readText(JsonParser parser) throws IOException {
+        JsonNode node = parser.readValueAsTree();
+        return node.textValue();
+    }
+
+    private static Boolean readBoolean(JsonParser parser) throws IOException {
+        JsonNode node = parser.readValueAsTree();
+        return node.isNull() ? null : node.asBoolean();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> readList(JsonParser parser, Class<? extends T> itemClass) throws IOException {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+
+        List<T> items = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            items.add(parser.readValueAs(itemClass));
+        }
+        return items;
+    }
+
     class ProjectConfigModule extends SimpleModule {
         private final static String NAME = "ProjectConfigModule";
 
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019,2021, Optimizely and contributors
+ *    Copyright 2019,2021,2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -20,60 +20,114 @@ import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.event.internal.EventFactory;
 import com.optimizely.ab.event.internal.UserEvent;
 import com.optimizely.ab.internal.PropertyUtils;
+import com.optimizely.ab.internal.RingBuffer;
 import com.optimizely.ab.notification.NotificationCenter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 import static com.optimizely.ab.internal.SafetyUtils.tryClose;
 
 /**
  * BatchEventProcessor is a batched implementation of the {@link EventProcessor}
  *
- * Events passed to the BatchEventProcessor are immediately added to a BlockingQueue.
+ * Events passed to the BatchEventProcessor are immediately added to the lock-free ring buffer of one of its
+ * workers, chosen by the project id and revision of the event, so events that can share a batch go to the
+ * same worker.
  *
- * The BatchEventProcessor maintains a single consumer thread that pulls events off of
- * the BlockingQueue and buffers them for either a configured batch size or for a
- * maximum duration before the resulting LogEvent is sent to the EventHandler
+ * Each worker is a consumer thread that pulls events off of its buffer and batches them for either a
+ * configured batch size or for a maximum duration before the resulting LogEvent is sent to the EventHandler
  * and NotificationCenter.
+ *
+ * When a buffer is full, the {@link BackpressurePolicy} decides what happens to the event. Counters of the
+ * queued, dropped, spilled and dispatched events are available through {@link #getMetrics()}.
  */
 public class BatchEventProcessor implements EventProcessor, AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(BatchEventProcessor.class);
 
-    public static final String CONFIG_BATCH_SIZE     = "event.processor.batch.size";
-    public static final String CONFIG_BATCH_INTERVAL = "event.processor.batch.interval";
-    public static final String CONFIG_CLOSE_TIMEOUT  = "event.processor.close.timeout";
+    public static final String CONFIG_BATCH_SIZE          = "event.processor.batch.size";
+    public static final String CONFIG_BATCH_INTERVAL      = "event.processor.batch.interval";
+    public static final String CONFIG_CLOSE_TIMEOUT       = "event.processor.close.timeout";
+    public static final String CONFIG_QUEUE_CAPACITY      = "event.processor.queue.capacity";
+    public static final String CONFIG_NUM_WORKERS         = "event.processor.num.workers";
+    public static final String CONFIG_BACKPRESSURE_POLICY = "event.processor.backpressure.policy";
+    public static final String CONFIG_BLOCK_TIMEOUT       = "event.processor.block.timeout";
 
     public static final int DEFAULT_QUEUE_CAPACITY    = 1000;
     public static final int DEFAULT_EMPTY_COUNT = 2;
     public static final int DEFAULT_BATCH_SIZE        = 10;
     public static final long DEFAULT_BATCH_INTERVAL   = TimeUnit.SECONDS.toMillis(30);
     public static final long DEFAULT_TIMEOUT_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+    public static final int DEFAULT_NUM_WORKERS       = 1;
+    public static final long DEFAULT_BLOCK_TIMEOUT    = 100;
 
     private static final Object SHUTDOWN_SIGNAL = new Object();
     private static final Object FLUSH_SIGNAL    = new Object();
 
-    private final BlockingQueue<Object> eventQueue;
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * What {@link #process(UserEvent)} does with an event when the buffer of its worker is full.
+     */
+    public enum BackpressurePolicy {
+        /**
+         * Drop the new event.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest buffered event to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * Wait up to the block timeout for room, then drop the new event.
+         */
+        BLOCK,
+        /**
+         * Keep the event in an unbounded spill queue, drained once the buffer is.
+         */
+        SPILL
+    }
+
+    private final Partition[] partitions;
     private final EventHandler eventHandler;
 
     final int batchSize;
     final long flushInterval;
     final long timeoutMillis;
+    final BackpressurePolicy backpressurePolicy;
+    final long blockTimeoutMillis;
     private final ExecutorService executor;
     private final NotificationCenter notificationCenter;
+    private final Counters counters = new Counters();
 
-    private Future<?> future;
+    private Future<?>[] futures;
     private boolean isStarted = false;
 
-    private BatchEventProcessor(BlockingQueue<Object> eventQueue, EventHandler eventHandler, Integer batchSize, Long flushInterval, Long timeoutMillis, ExecutorService executor, NotificationCenter notificationCenter) {
+    private BatchEventProcessor(Partition[] partitions,
+                                EventHandler eventHandler,
+                                Integer batchSize,
+                                Long flushInterval,
+                                Long timeoutMillis,
+                                BackpressurePolicy backpressurePolicy,
+                                long blockTimeoutMillis,
+                                ExecutorService executor,
+                                NotificationCenter notificationCenter) {
         this.eventHandler = eventHandler;
-        this.eventQueue = eventQueue;
+        this.partitions = partitions;
         this.batchSize = batchSize;
         this.flushInterval = flushInterval;
         this.timeoutMillis = timeoutMillis;
+        this.backpressurePolicy = backpressurePolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
         this.notificationCenter = notificationCenter;
         this.executor = executor;
     }
@@ -85,16 +139,25 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
         }
 
         isStarted = true;
-        EventConsumer runnable = new EventConsumer();
-        future = executor.submit(runnable);
+        futures = new Future<?>[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            futures[i] = executor.submit(new EventConsumer(partitions[i]));
+        }
     }
 
     @Override
     public void close() throws Exception {
         logger.info("Start close");
-        eventQueue.put(SHUTDOWN_SIGNAL);
+        for (Partition partition : partitions) {
+            putSignal(partition, SHUTDOWN_SIGNAL);
+        }
         try {
-            future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            if (futures != null) {
+                long deadline = System.currentTimeMillis() + timeoutMillis;
+                for (Future<?> future : futures) {
+                    future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                }
+            }
         } catch (InterruptedException e) {
             logger.warn("Interrupted while awaiting termination.");
             Thread.currentThread().interrupt();
@@ -111,27 +174,224 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
 
         if (executor.isShutdown()) {
             logger.warn("Executor shutdown, not accepting tasks.");
+            counters.dropped.increment();
             return;
         }
 
-        if (!eventQueue.offer(userEvent)) {
-            logger.warn("Payload not accepted by the queue. Current size: {}", eventQueue.size());
+        Partition partition = partitionOf(userEvent);
+        if (enqueue(partition, userEvent)) {
+            counters.queued.increment();
+            partition.signal();
+        } else {
+            counters.dropped.increment();
+            logger.warn("Payload not accepted by the queue. Current size: {}", partition.size());
         }
     }
 
     public void flush() throws InterruptedException {
-        eventQueue.put(FLUSH_SIGNAL);
+        for (Partition partition : partitions) {
+            putSignal(partition, FLUSH_SIGNAL);
+        }
+    }
+
+    /**
+     * @return the counters of this processor
+     */
+    public EventProcessorMetrics getMetrics() {
+        return counters;
+    }
+
+    private Partition partitionOf(UserEvent userEvent) {
+        if (partitions.length == 1) {
+            return partitions[0];
+        }
+
+        ProjectConfig projectConfig = userEvent.getUserContext().getProjectConfig();
+        int hash = 31 * Objects.hashCode(projectConfig.getProjectId()) + Objects.hashCode(projectConfig.getRevision());
+        return partitions[Math.floorMod(hash ^ (hash >>> 16), partitions.length)];
+    }
+
+    private boolean enqueue(Partition partition, UserEvent userEvent) {
+        if (backpressurePolicy == BackpressurePolicy.SPILL && !partition.spill.isEmpty()) {
+            // keep spilling until the spill queue is drained, so events stay in order
+            return spill(partition, userEvent);
+        }
+
+        if (partition.offer(userEvent)) {
+            return true;
+        }
+
+        switch (backpressurePolicy) {
+            case DROP_OLDEST:
+                do {
+                    Object evicted = partition.evict();
+                    if (evicted == FLUSH_SIGNAL || evicted == SHUTDOWN_SIGNAL) {
+                        // signals are never dropped, they move behind the buffered events
+                        partition.spill.add(evicted);
+                    } else if (evicted != null) {
+                        counters.dropped.increment();
+                        logger.warn("Queue full, dropped the oldest event. Current size: {}", partition.size());
+                    }
+                } while (!partition.offer(userEvent));
+                return true;
+            case BLOCK:
+                return offer(partition, userEvent, TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis));
+            case SPILL:
+                return spill(partition, userEvent);
+            default:
+                return false;
+        }
+    }
+
+    private boolean spill(Partition partition, Object item) {
+        partition.spill.add(item);
+        if (item != FLUSH_SIGNAL && item != SHUTDOWN_SIGNAL) {
+            counters.spilled.increment();
+        }
+        return true;
+    }
+
+    /**
+     * Offer an item, waiting for room with a growing backoff while its worker drains the buffer.
+     */
+    private boolean offer(Partition partition, Object item, long timeoutNanos) {
+        long deadline = System.nanoTime() + timeoutNanos;
+        long backoff = MIN_BACKOFF_NANOS;
+        while (!partition.offer(item)) {
+            partition.signal();
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || Thread.currentThread().isInterrupted()) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(backoff, remaining));
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Enqueue a signal behind the events already buffered, waiting for room if the buffer is full.
+     */
+    private void putSignal(Partition partition, Object signal) throws InterruptedException {
+        if (partition.queue != null) {
+            partition.queue.put(signal);
+        } else if (backpressurePolicy == BackpressurePolicy.SPILL && (!partition.spill.isEmpty() || !partition.offer(signal))) {
+            spill(partition, signal);
+        } else {
+            while (!offer(partition, signal, MAX_BACKOFF_NANOS)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        partition.signal();
+    }
+
+    /**
+     * The buffer of one worker: a ring buffer, or the queue supplied through
+     * {@link Builder#withEventQueue(BlockingQueue)}, and the spill queue.
+     */
+    private static final class Partition {
+        private final RingBuffer<Object> ring;
+        private final BlockingQueue<Object> queue;
+        private final Queue<Object> spill = new ConcurrentLinkedQueue<>();
+
+        private volatile Thread consumerThread;
+        private volatile boolean waiting;
+
+        Partition(int capacity) {
+            this.ring = new RingBuffer<>(capacity);
+            this.queue = null;
+        }
+
+        Partition(BlockingQueue<Object> queue) {
+            this.ring = null;
+            this.queue = queue;
+        }
+
+        boolean offer(Object item) {
+            return ring != null ? ring.offer(item) : queue.offer(item);
+        }
+
+        Object evict() {
+            return ring != null ? ring.poll() : queue.poll();
+        }
+
+        Object poll() {
+            Object item = evict();
+            return item != null ? item : spill.poll();
+        }
+
+        boolean isEmpty() {
+            return (ring != null ? ring.isEmpty() : queue.isEmpty()) && spill.isEmpty();
+        }
+
+        int size() {
+            return (ring != null ? ring.size() : queue.size()) + spill.size();
+        }
+
+        /**
+         * Wake the worker if it is waiting for items.
+         */
+        void signal() {
+            if (waiting) {
+                Thread thread = consumerThread;
+                if (thread != null) {
+                    LockSupport.unpark(thread);
+                }
+            }
+        }
+    }
+
+    private final class Counters implements EventProcessorMetrics {
+        private final LongAdder queued = new LongAdder();
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder spilled = new LongAdder();
+        private final LongAdder dispatched = new LongAdder();
+
+        @Override
+        public long getQueuedCount() {
+            return queued.sum();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return dropped.sum();
+        }
+
+        @Override
+        public long getSpilledCount() {
+            return spilled.sum();
+        }
+
+        @Override
+        public long getDispatchedCount() {
+            return dispatched.sum();
+        }
+
+        @Override
+        public int getQueueSize() {
+            int size = 0;
+            for (Partition partition : partitions) {
+                size += partition.size();
+            }
+            return size;
+        }
     }
 
     public class EventConsumer implements Runnable {
-        private LinkedList<UserEvent> currentBatch = new LinkedList<>();
+        private final Partition partition;
+        private List<UserEvent> currentBatch = new ArrayList<>();
         private long deadline = System.currentTimeMillis() + flushInterval;
 
+        EventConsumer(Partition partition) {
+            this.partition = partition;
+        }
+
         @Override
         public void run() {
+            partition.consumerThread = Thread.currentThread();
             try {
-                int emptyCount = 0;
-
                 while (true) {
                     if (System.currentTimeMillis() >= deadline) {
                         logger.debug("Deadline exceeded flushing current batch.");
@@ -139,17 +399,13 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
                         deadline = System.currentTimeMillis() + flushInterval;
                     }
 
-                    long timeout = deadline - System.currentTimeMillis();
-                    Object item = emptyCount > DEFAULT_EMPTY_COUNT ? eventQueue.take() : eventQueue.poll(timeout, TimeUnit.MILLISECONDS);
+                    Object item = partition.poll();
 
                     if (item == null) {
-                        logger.debug("Empty item after waiting flush interval.");
-                        emptyCount++;
+                        await();
                         continue;
                     }
 
-                    emptyCount = 0;
-
                     if (item == SHUTDOWN_SIGNAL) {
                         logger.info("Received shutdown signal.");
                         break;
@@ -173,10 +429,36 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
             }
         }
 
+        /**
+         * Park until an item is signalled, or until the batch deadline if there is a batch to flush.
+         */
+        private void await() throws InterruptedException {
+            partition.waiting = true;
+            try {
+                // re-checked after announcing the wait, so a concurrent offer either is seen here or unparks us
+                if (partition.isEmpty()) {
+                    if (currentBatch.isEmpty()) {
+                        LockSupport.park(this);
+                    } else {
+                        long timeout = deadline - System.currentTimeMillis();
+                        if (timeout > 0) {
+                            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeout));
+                        }
+                    }
+                }
+            } finally {
+                partition.waiting = false;
+            }
+
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+
         private void addToBatch(UserEvent userEvent) {
             if (shouldSplit(userEvent)) {
                 flush();
-                currentBatch = new LinkedList<>();
+                currentBatch = new ArrayList<>();
             }
 
             // Reset the deadline if starting a new batch.
@@ -195,7 +477,7 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
                 return false;
             }
 
-            ProjectConfig currentConfig = currentBatch.peekLast().getUserContext().getProjectConfig();
+            ProjectConfig currentConfig = currentBatch.get(currentBatch.size() - 1).getUserContext().getProjectConfig();
             ProjectConfig newConfig = userEvent.getUserContext().getProjectConfig();
 
             // Projects should match
@@ -227,7 +509,8 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
             } catch (Exception e) {
                 logger.error("Error dispatching event: {}", logEvent, e);
             }
-            currentBatch = new LinkedList<>();
+            counters.dispatched.add(currentBatch.size());
+            currentBatch = new ArrayList<>();
         }
     }
 
@@ -236,11 +519,15 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
     }
 
     public static class Builder {
-        private BlockingQueue<Object> eventQueue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+        private BlockingQueue<Object> eventQueue = null;
         private EventHandler eventHandler = null;
         private Integer batchSize = PropertyUtils.getInteger(CONFIG_BATCH_SIZE, DEFAULT_BATCH_SIZE);
         private Long flushInterval = PropertyUtils.getLong(CONFIG_BATCH_INTERVAL, DEFAULT_BATCH_INTERVAL);
         private Long timeoutMillis = PropertyUtils.getLong(CONFIG_CLOSE_TIMEOUT, DEFAULT_TIMEOUT_INTERVAL);
+        private Integer queueCapacity = PropertyUtils.getInteger(CONFIG_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+        private Integer numWorkers = PropertyUtils.getInteger(CONFIG_NUM_WORKERS, DEFAULT_NUM_WORKERS);
+        private BackpressurePolicy backpressurePolicy = PropertyUtils.getEnum(CONFIG_BACKPRESSURE_POLICY, BackpressurePolicy.class, BackpressurePolicy.DROP_NEWEST);
+        private Long blockTimeoutMillis = PropertyUtils.getLong(CONFIG_BLOCK_TIMEOUT, DEFAULT_BLOCK_TIMEOUT);
         private ExecutorService executor = null;
         private NotificationCenter notificationCenter = null;
 
@@ -258,6 +545,9 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
         /**
          * EventQueue is the underlying BlockingQueue used to buffer events before being added to the batch payload.
          *
+         * By default each worker buffers events in a lock-free ring buffer. A supplied queue replaces them and
+         * limits the processor to a single worker.
+         *
          * @param eventQueue The event queue
          * @return The BatchEventProcessor builder
          */
@@ -266,6 +556,54 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
             return this;
         }
 
+        /**
+         * QueueCapacity is the number of events buffered across all workers, each worker getting an equal share
+         * rounded up to a power of two.
+         *
+         * @param queueCapacity The queue capacity
+         * @return The BatchEventProcessor builder
+         */
+        public Builder withQueueCapacity(Integer queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * NumWorkers is the number of threads building and dispatching batches. Events are assigned to workers
+         * by project id and revision.
+         *
+         * @param numWorkers The number of workers
+         * @return The BatchEventProcessor builder
+         */
+        public Builder withNumWorkers(Integer numWorkers) {
+            this.numWorkers = numWorkers;
+            return this;
+        }
+
+        /**
+         * BackpressurePolicy decides what happens to an event when the buffer of its worker is full. Defaults to
+         * {@link BackpressurePolicy#DROP_NEWEST}.
+         *
+         * @param backpressurePolicy The backpressure policy
+         * @return The BatchEventProcessor builder
+         */
+        public Builder withBackpressurePolicy(BackpressurePolicy backpressurePolicy) {
+            this.backpressurePolicy = backpressurePolicy;
+            return this;
+        }
+
+        /**
+         * BlockTimeout is the maximum time {@link BackpressurePolicy#BLOCK} waits for room in a full buffer.
+         *
+         * @param duration The max time to wait for room in the buffer
+         * @param timeUnit The time unit
+         * @return The BatchEventProcessor builder
+         */
+        public Builder withBlockTimeout(long duration, TimeUnit timeUnit) {
+            this.blockTimeoutMillis = timeUnit.toMillis(duration);
+            return this;
+        }
+
         /**
          * BatchSize is the maximum number of events contained within a single event batch.
          *
@@ -290,7 +628,8 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
         }
 
         /**
-         * ExecutorService used to execute the {@link EventConsumer} thread.
+         * ExecutorService used to execute the {@link EventConsumer} threads. It must be able to run one task
+         * per worker at the same time.
          *
          * @param executor The ExecutorService
          * @return The BatchEventProcessor builder
@@ -343,20 +682,55 @@ public class BatchEventProcessor implements EventProcessor, AutoCloseable {
                 timeoutMillis = DEFAULT_TIMEOUT_INTERVAL;
             }
 
+            if (queueCapacity <= 0) {
+                logger.warn("Invalid queueCapacity of {}, Defaulting to {}", queueCapacity, DEFAULT_QUEUE_CAPACITY);
+                queueCapacity = DEFAULT_QUEUE_CAPACITY;
+            }
+
+            if (numWorkers <= 0) {
+                logger.warn("Invalid numWorkers of {}, Defaulting to {}", numWorkers, DEFAULT_NUM_WORKERS);
+                numWorkers = DEFAULT_NUM_WORKERS;
+            }
+
+            if (eventQueue != null && numWorkers > 1) {
+                logger.warn("A custom event queue supports a single worker, ignoring numWorkers of {}", numWorkers);
+                numWorkers = 1;
+            }
+
+            if (backpressurePolicy == null) {
+                backpressurePolicy = BackpressurePolicy.DROP_NEWEST;
+            }
+
+            if (blockTimeoutMillis < 0) {
+                logger.warn("Invalid blockTimeoutMillis of {}, Defaulting to {}", blockTimeoutMillis, DEFAULT_BLOCK_TIMEOUT);
+                blockTimeoutMillis = DEFAULT_BLOCK_TIMEOUT;
+            }
+
             if (eventHandler == null) {
                 throw new IllegalArgumentException("EventHandler was not configured");
             }
 
             if (executor == null) {
                 final ThreadFactory threadFactory = Executors.defaultThreadFactory();
-                executor = Executors.newSingleThreadExecutor(runnable -> {
+                ThreadFactory daemonThreadFactory = runnable -> {
                     Thread thread = threadFactory.newThread(runnable);
                     thread.setDaemon(true);
                     return thread;
-                });
+                };
+                executor = numWorkers == 1
+                    ? Executors.newSingleThreadExecutor(daemonThreadFactory)
+                    : Executors.newFixedThreadPool(numWorkers, daemonThreadFactory);
+            }
+
+            Partition[] partitions = new Partition[numWorkers];
+            for (int i = 0; i < numWorkers; i++) {
+                partitions[i] = eventQueue != null
+                    ? new Partition(eventQueue)
+                    : new Partition((queueCapacity + numWorkers - 1) / numWorkers);
             }
 
-            BatchEventProcessor batchEventProcessor = new BatchEventProcessor(eventQueue, eventHandler, batchSize, flushInterval, timeoutMillis, executor, notificationCenter);
+            BatchEventProcessor batchEventProcessor = new BatchEventProcessor(partitions, eventHandler, batchSize, flushInterval, timeoutMillis,
+                backpressurePolicy, blockTimeoutMillis, executor, notificationCenter);
 
             if (shouldStart) {
                 batchEventProcessor.start();
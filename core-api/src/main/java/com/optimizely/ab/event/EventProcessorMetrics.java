@@ -0,0 +1,48 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.event;
+
+/**
+ * Counters of an {@link EventProcessor}, taken since it was built.
+ */
+public interface EventProcessorMetrics {
+
+    /**
+     * @return the number of events accepted for processing
+     */
+    long getQueuedCount();
+
+    /**
+     * @return the number of events dropped, because the queue was full or the processor was shut down
+     */
+    long getDroppedCount();
+
+    /**
+     * @return the number of accepted events that overflowed the queue into the spill queue
+     */
+    long getSpilledCount();
+
+    /**
+     * @return the number of events sent to the {@link EventHandler}
+     */
+    long getDispatchedCount();
+
+    /**
+     * @return the number of events waiting in the queues to be added to a batch
+     */
+    int getQueueSize();
+}
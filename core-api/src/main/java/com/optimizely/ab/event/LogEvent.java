@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019, Optimizely and contributors
+ *    Copyright 2016-2017, 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -20,6 +20,8 @@ import com.optimizely.ab.event.internal.payload.EventBatch;
 import com.optimizely.ab.event.internal.serializer.DefaultJsonSerializer;
 import com.optimizely.ab.event.internal.serializer.Serializer;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Map;
 import java.util.Objects;
 
@@ -37,6 +39,9 @@ public class LogEvent {
     private final Map<String, String> requestParams;
     private final EventBatch eventBatch;
 
+    // serialized body, memoized on first use by the dispatcher, toString() and notification listeners
+    private volatile String body;
+
     public LogEvent(@Nonnull RequestMethod requestMethod,
                     @Nonnull String endpointUrl,
                     @Nonnull Map<String, String> requestParams,
@@ -61,13 +66,41 @@ public class LogEvent {
         return requestParams;
     }
 
+    /**
+     * @return the event batch serialized as JSON, serialized once and reused on later calls
+     */
     public String getBody() {
         if (eventBatch == null) {
             return "";
         }
 
-        Serializer serializer = DefaultJsonSerializer.getInstance();
-        return serializer.serialize(eventBatch);
+        String result = body;
+        if (result == null) {
+            Serializer serializer = DefaultJsonSerializer.getInstance();
+            result = serializer.serialize(eventBatch);
+            body = result;
+        }
+        return result;
+    }
+
+    /**
+     * Write the body into the given writer without materializing it, unless it has already been serialized.
+     * The writer is not closed.
+     *
+     * @param writer the writer to write the body into
+     * @throws IOException if writing fails
+     */
+    public void writeBody(@Nonnull Writer writer) throws IOException {
+        if (eventBatch == null) {
+            return;
+        }
+
+        String result = body;
+        if (result != null) {
+            writer.write(result);
+        } else {
+            DefaultJsonSerializer.getInstance().serialize(eventBatch, writer);
+        }
     }
 
     public EventBatch getEventBatch() {
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2020, 2022, Optimizely and contributors
+ *    Copyright 2016-2020, 2022-2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
  */
 package com.optimizely.ab.event.internal;
 
+import com.optimizely.ab.config.AttributeEncoder;
 import com.optimizely.ab.config.ProjectConfig;
 import com.optimizely.ab.event.LogEvent;
 import com.optimizely.ab.event.internal.payload.Attribute;
@@ -24,21 +25,23 @@ import com.optimizely.ab.event.internal.payload.EventBatch;
 import com.optimizely.ab.event.internal.payload.Event;
 import com.optimizely.ab.event.internal.payload.Snapshot;
 import com.optimizely.ab.event.internal.payload.Visitor;
-import com.optimizely.ab.internal.ControlAttribute;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-import static com.optimizely.ab.internal.AttributesUtil.isValidNumber;
+import java.util.Objects;
 
 /**
  * EventFactory builds {@link LogEvent} objects from a given {@link UserEvent}
  *
  * This class serves to separate concerns between events in the SDK and the API used
  * to record the events via the <a href="https://developers.optimizely.com/x/events/api/index.html">Optimizely Events API</a>.
+ *
+ * Events of the same user with the same attributes are sent as a single {@link Visitor} holding a {@link Snapshot}
+ * per event, so the visitor and its attribute list are built and serialized once per batch.
  */
 public class EventFactory {
     private static final Logger logger = LoggerFactory.getLogger(EventFactory.class);
@@ -51,7 +54,7 @@ public class EventFactory {
 
     public static LogEvent createLogEvent(List<UserEvent> userEvents) {
         EventBatch.Builder builder = new EventBatch.Builder();
-        List<Visitor> visitors = new ArrayList<>(userEvents.size());
+        Map<VisitorKey, List<Snapshot>> snapshotsByVisitor = new LinkedHashMap<>();
 
         for (UserEvent userEvent: userEvents) {
 
@@ -59,18 +62,23 @@ public class EventFactory {
                 continue;
             }
 
+            Snapshot snapshot = null;
             if (userEvent instanceof ImpressionEvent) {
-                visitors.add(createVisitor((ImpressionEvent) userEvent));
+                snapshot = createSnapshot((ImpressionEvent) userEvent);
             }
 
             if (userEvent instanceof ConversionEvent) {
-                visitors.add(createVisitor((ConversionEvent) userEvent));
+                snapshot = createSnapshot((ConversionEvent) userEvent);
             }
 
             // This needs an interface.
             UserContext userContext = userEvent.getUserContext();
             ProjectConfig projectConfig = userContext.getProjectConfig();
 
+            if (snapshot != null) {
+                snapshotsByVisitor.computeIfAbsent(new VisitorKey(userContext), key -> new ArrayList<>()).add(snapshot);
+            }
+
             builder
                 .setClientName(ClientEngineInfo.getClientEngine().getClientEngineValue())
                 .setClientVersion(BuildVersionInfo.getClientVersion())
@@ -80,21 +88,25 @@ public class EventFactory {
                 .setRevision(projectConfig.getRevision());
         }
 
-        if (visitors.isEmpty()) {
+        if (snapshotsByVisitor.isEmpty()) {
             return null;
         }
 
+        List<Visitor> visitors = new ArrayList<>(snapshotsByVisitor.size());
+        for (Map.Entry<VisitorKey, List<Snapshot>> entry : snapshotsByVisitor.entrySet()) {
+            VisitorKey visitorKey = entry.getKey();
+            visitors.add(new Visitor.Builder()
+                .setVisitorId(visitorKey.userId)
+                .setAttributes(buildAttributeList(visitorKey.projectConfig, visitorKey.attributes))
+                .setSnapshots(entry.getValue())
+                .build());
+        }
+
         builder.setVisitors(visitors);
         return new LogEvent(LogEvent.RequestMethod.POST, EVENT_ENDPOINT, Collections.emptyMap(), builder.build());
     }
 
-    private static Visitor createVisitor(ImpressionEvent impressionEvent) {
-        if (impressionEvent == null) {
-            return null;
-        }
-
-        UserContext userContext = impressionEvent.getUserContext();
-
+    private static Snapshot createSnapshot(ImpressionEvent impressionEvent) {
         Decision decision = new Decision.Builder()
             .setCampaignId(impressionEvent.getLayerId())
             .setExperimentId(impressionEvent.getExperimentId())
@@ -111,25 +123,13 @@ public class EventFactory {
             .setType(ACTIVATE_EVENT_KEY)
             .build();
 
-        Snapshot snapshot = new Snapshot.Builder()
+        return new Snapshot.Builder()
             .setDecisions(Collections.singletonList(decision))
             .setEvents(Collections.singletonList(event))
             .build();
-
-        return new Visitor.Builder()
-            .setVisitorId(userContext.getUserId())
-            .setAttributes(buildAttributeList(userContext.getProjectConfig(), userContext.getAttributes()))
-            .setSnapshots(Collections.singletonList((snapshot)))
-            .build();
     }
 
-    private static Visitor createVisitor(ConversionEvent conversionEvent) {
-        if (conversionEvent == null) {
-            return null;
-        }
-
-        UserContext userContext = conversionEvent.getUserContext();
-
+    private static Snapshot createSnapshot(ConversionEvent conversionEvent) {
         Event event = new Event.Builder()
             .setTimestamp(conversionEvent.getTimestamp())
             .setUuid(conversionEvent.getUUID())
@@ -141,68 +141,47 @@ public class EventFactory {
             .setValue(conversionEvent.getValue())
             .build();
 
-        Snapshot snapshot = new Snapshot.Builder()
+        return new Snapshot.Builder()
             .setEvents(Collections.singletonList(event))
             .build();
-
-        return new Visitor.Builder()
-            .setVisitorId(userContext.getUserId())
-            .setAttributes(buildAttributeList(userContext.getProjectConfig(), userContext.getAttributes()))
-            .setSnapshots(Collections.singletonList(snapshot))
-            .build();
     }
 
     private static List<Attribute> buildAttributeList(ProjectConfig projectConfig, Map<String, ?> attributes) {
-        List<Attribute> attributesList = new ArrayList<>();
-
-        if (attributes != null) {
-            for (Map.Entry<String, ?> entry : attributes.entrySet()) {
-
-                // Ignore attributes with empty key
-                if (entry.getKey().isEmpty()) {
-                    continue;
-                }
-
-                // Filter down to the types of values we're allowed to track.
-                // Don't allow Longs, BigIntegers, or BigDecimals - they /can/ theoretically be serialized as JSON numbers
-                // but may take on values that can't be faithfully parsed by the backend.
-                // https://developers.optimizely.com/x/events/api/#Attribute
-                if (entry.getValue() == null ||
-                    !((entry.getValue() instanceof String) ||
-                        (entry.getValue() instanceof Boolean) ||
-                        (isValidNumber(entry.getValue())))) {
-                    continue;
-                }
-
-                String attributeId = projectConfig.getAttributeId(projectConfig, entry.getKey());
-                if (attributeId == null) {
-                    continue;
-                }
-
-                Attribute attribute = new Attribute.Builder()
-                    .setEntityId(attributeId)
-                    .setKey(entry.getKey())
-                    .setType(Attribute.CUSTOM_ATTRIBUTE_TYPE)
-                    .setValue(entry.getValue())
-                    .build();
-
-                attributesList.add(attribute);
-
-            }
+        AttributeEncoder attributeEncoder = projectConfig.getAttributeEncoder();
+        if (attributeEncoder == null) {
+            attributeEncoder = AttributeEncoder.forConfig(projectConfig);
         }
+        return attributeEncoder.encode(attributes);
+    }
 
-        //checks if botFiltering value is not set in the project config file.
-        if (projectConfig.getBotFiltering() != null) {
-            Attribute attribute = new Attribute.Builder()
-                .setEntityId(ControlAttribute.BOT_FILTERING_ATTRIBUTE.toString())
-                .setKey(ControlAttribute.BOT_FILTERING_ATTRIBUTE.toString())
-                .setType(Attribute.CUSTOM_ATTRIBUTE_TYPE)
-                .setValue(projectConfig.getBotFiltering())
-                .build();
+    /**
+     * Identifies the events that can share a {@link Visitor}: same user, attributes and project config.
+     */
+    private static final class VisitorKey {
+        private final String userId;
+        private final ProjectConfig projectConfig;
+        private final Map<String, ?> attributes;
+
+        private VisitorKey(UserContext userContext) {
+            this.userId = userContext.getUserId();
+            this.projectConfig = userContext.getProjectConfig();
+            this.attributes = userContext.getAttributes();
+        }
 
-            attributesList.add(attribute);
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            VisitorKey that = (VisitorKey) o;
+            return Objects.equals(userId, that.userId) &&
+                projectConfig == that.projectConfig &&
+                (attributes == that.attributes || Objects.equals(attributes, that.attributes));
         }
 
-        return attributesList;
+        @Override
+        public int hashCode() {
+            // attributes are left out so events sharing the attributes map do not hash it once per event
+            return 31 * Objects.hashCode(userId) + System.identityHashCode(projectConfig);
+        }
     }
 }
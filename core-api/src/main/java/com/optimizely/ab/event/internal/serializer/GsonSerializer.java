@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019, Optimizely and contributors
+ *    Copyright 2016-2017, 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -20,6 +20,8 @@ import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.Writer;
+
 class GsonSerializer implements Serializer {
 
     private Gson gson = new GsonBuilder()
@@ -29,4 +31,9 @@ class GsonSerializer implements Serializer {
     public <T> String serialize(T payload) {
         return gson.toJson(payload);
     }
+
+    @Override
+    public <T> void serialize(T payload, Writer writer) {
+        gson.toJson(payload, writer);
+    }
 }
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019, Optimizely and contributors
+ *    Copyright 2016-2017, 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -17,10 +17,14 @@
 package com.optimizely.ab.event.internal.serializer;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.PropertyNamingStrategy;
 
+import java.io.IOException;
+import java.io.Writer;
+
 class JacksonSerializer implements Serializer {
 
     private ObjectMapper mapper =
@@ -35,4 +39,16 @@ class JacksonSerializer implements Serializer {
             throw new SerializationException("Unable to serialize payload", e);
         }
     }
+
+    @Override
+    public <T> void serialize(T payload, Writer writer) throws IOException {
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(writer)) {
+            // closing the generator flushes the writer without closing it
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            mapper.writeValue(generator, payload);
+        } catch (JsonProcessingException e) {
+            throw new SerializationException("Unable to serialize payload", e);
+        }
+    }
 }
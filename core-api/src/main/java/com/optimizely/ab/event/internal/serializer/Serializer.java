@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, Optimizely and contributors
+ *    Copyright 2016-2017, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,6 +16,24 @@
  */
 package com.optimizely.ab.event.internal.serializer;
 
+import java.io.IOException;
+import java.io.Writer;
+
 public interface Serializer {
     <T> String serialize(T payload) throws SerializationException;
+
+    /**
+     * Serialize the payload into the given writer, producing the same output as {@link #serialize(Object)}.
+     * The writer is not closed.
+     *
+     * Serializers that can stream should override this so the payload is not materialized as a String first.
+     *
+     * @param payload the payload to serialize
+     * @param writer  the writer to serialize into
+     * @param <T>     the payload type
+     * @throws IOException if writing fails
+     */
+    default <T> void serialize(T payload, Writer writer) throws IOException {
+        writer.write(serialize(payload));
+    }
 }
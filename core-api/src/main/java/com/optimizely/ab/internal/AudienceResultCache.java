@@ -0,0 +1,102 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import com.optimizely.ab.config.audience.Audience;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Memoizes audience evaluation results for one user-attribute state.
+ *
+ * Results are keyed by the {@link Audience} instance, so a new datafile revision (with new audience instances)
+ * never reads results of the previous one. When the user attributes or qualified segments change, the owner
+ * switches to {@link #newGeneration()} instead of clearing this instance, so decisions still running against
+ * the old state cannot write their results into the new one.
+ */
+public final class AudienceResultCache {
+
+    // ConcurrentHashMap does not accept null values, and a null (unknown) result is as reusable as any other.
+    private static final Object NULL_RESULT = new Object();
+
+    private final ConcurrentHashMap<Audience, Object> results = new ConcurrentHashMap<>();
+    private final AtomicLong hitCount;
+    private final AtomicLong missCount;
+
+    public AudienceResultCache() {
+        this(new AtomicLong(), new AtomicLong());
+    }
+
+    private AudienceResultCache(AtomicLong hitCount, AtomicLong missCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+    }
+
+    /**
+     * Return the cached result for the audience, or evaluate and cache it.
+     *
+     * @param audience  the audience being evaluated
+     * @param evaluator evaluates the audience conditions for the user
+     * @return the audience result, null if it cannot be evaluated
+     */
+    @Nullable
+    public Boolean getOrEvaluate(@Nonnull Audience audience, @Nonnull Supplier<Boolean> evaluator) {
+        Object cached = results.get(audience);
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            return cached == NULL_RESULT ? null : (Boolean) cached;
+        }
+
+        missCount.incrementAndGet();
+        Boolean result = evaluator.get();
+        results.putIfAbsent(audience, result == null ? NULL_RESULT : result);
+        return result;
+    }
+
+    /**
+     * @return an empty cache for a new user state, sharing the hit and miss counters of this one
+     */
+    @Nonnull
+    public AudienceResultCache newGeneration() {
+        return new AudienceResultCache(hitCount, missCount);
+    }
+
+    /**
+     * @return the number of audience evaluations served from the cache
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of audience evaluations that had to run the audience conditions
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of audience results currently cached
+     */
+    public int size() {
+        return results.size();
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import com.optimizely.ab.annotations.VisibleForTesting;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link Cache} with the semantics of {@link DefaultLRUCache} (max size, TTL, reset) built for concurrent use.
+ *
+ * Entries are spread over segments by key hash. Each segment holds its entries in a {@link ConcurrentHashMap},
+ * so lookups never take a lock, and keeps their least-recently-used order in a linked list guarded by its own lock.
+ * A lookup records its hit in a bounded buffer of the segment, which is replayed into the list by whichever thread
+ * next holds the lock; hits are dropped rather than waited on when the buffer is full. Saves lock their segment
+ * only, and evict its least recently used entry once the segment is full.
+ *
+ * Each segment holds at least {@link #MIN_SEGMENT_SIZE} entries, so small caches use a single segment and evict
+ * in exact LRU order, while large caches evict in LRU order per segment.
+ *
+ * @param <T> the value type
+ */
+public class ConcurrentLRUCache<T> implements Cache<T> {
+
+    static final int MAX_SEGMENTS = 16;
+    static final int MIN_SEGMENT_SIZE = 64;
+
+    private static final int READ_BUFFER_SIZE = 64;
+    private static final int READ_BUFFER_DRAIN_THRESHOLD = READ_BUFFER_SIZE / 2;
+
+    private final int maxSize;
+    private final long timeoutMillis;
+    private final Segment<T>[] segments;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public ConcurrentLRUCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * @param maxSize        the maximum number of entries, 0 or less to disable the cache
+     * @param timeoutSeconds the time an entry is kept for, 0 or less to keep entries until they are evicted
+     */
+    public ConcurrentLRUCache(Integer maxSize, Integer timeoutSeconds) {
+        this(maxSize, timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    @VisibleForTesting
+    @SuppressWarnings("unchecked")
+    ConcurrentLRUCache(int maxSize, long timeout, TimeUnit timeUnit) {
+        this.maxSize = Math.max(0, maxSize);
+        this.timeoutMillis = timeUnit.toMillis(Math.max(0, timeout));
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && (segmentCount << 1) * MIN_SEGMENT_SIZE <= this.maxSize) {
+            segmentCount <<= 1;
+        }
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // spread the remainder, so the segments add up to the max size
+            int segmentSize = this.maxSize / segmentCount + (i < this.maxSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    @Override
+    public void save(String key, T value) {
+        if (maxSize == 0) {
+            // Cache is disabled when maxSize = 0
+            return;
+        }
+
+        segmentFor(key).save(key, value, System.currentTimeMillis());
+    }
+
+    @Override
+    public T lookup(String key) {
+        if (maxSize == 0) {
+            // Cache is disabled when maxSize = 0
+            return null;
+        }
+
+        return segmentFor(key).lookup(key, System.currentTimeMillis());
+    }
+
+    @Override
+    public void reset() {
+        for (Segment<T> segment : segments) {
+            segment.reset();
+        }
+    }
+
+    /**
+     * @return the number of entries, including expired entries not looked up since they expired
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<T> segment : segments) {
+            size += segment.map.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the number of lookups that returned a value
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return the number of lookups that returned null, including lookups of expired entries
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return the number of entries evicted to keep the cache within its max size
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    @VisibleForTesting
+    int getSegmentCount() {
+        return segments.length;
+    }
+
+    private Segment<T> segmentFor(String key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private static final class Node<T> {
+        final String key;
+        final T value;
+        final long timestamp;
+
+        // guarded by the segment lock
+        Node<T> prev;
+        Node<T> next;
+
+        Node(String key, T value, long timestamp) {
+            this.key = key;
+            this.value = value;
+            this.timestamp = timestamp;
+        }
+
+        boolean isLinked() {
+            return prev != null;
+        }
+    }
+
+    private final class Segment<V> {
+        private final int maxSize;
+        private final ConcurrentHashMap<String, Node<V>> map = new ConcurrentHashMap<>();
+        private final RingBuffer<Node<V>> readBuffer = new RingBuffer<>(READ_BUFFER_SIZE);
+        private final ReentrantLock lock = new ReentrantLock();
+
+        // least recently used first, guarded by the lock
+        private final Node<V> head = new Node<>(null, null, 0);
+
+        Segment(int maxSize) {
+            this.maxSize = maxSize;
+            head.prev = head;
+            head.next = head;
+        }
+
+        V lookup(String key, long now) {
+            Node<V> node = map.get(key);
+            if (node == null) {
+                missCount.increment();
+                return null;
+            }
+
+            // ttl = 0 means entities never expire.
+            if (timeoutMillis != 0 && now - node.timestamp >= timeoutMillis) {
+                missCount.increment();
+                lock.lock();
+                try {
+                    if (map.remove(key, node)) {
+                        unlink(node);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return null;
+            }
+
+            hitCount.increment();
+            readBuffer.offer(node);
+            if (readBuffer.size() >= READ_BUFFER_DRAIN_THRESHOLD && lock.tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return node.value;
+        }
+
+        void save(String key, V value, long now) {
+            Node<V> node = new Node<>(key, value, now);
+            lock.lock();
+            try {
+                drainReadBuffer();
+                Node<V> previous = map.put(key, node);
+                if (previous != null) {
+                    unlink(previous);
+                }
+                linkLast(node);
+
+                while (map.size() > maxSize && head.next != head) {
+                    Node<V> eldest = head.next;
+                    unlink(eldest);
+                    if (map.remove(eldest.key, eldest)) {
+                        evictionCount.increment();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void reset() {
+            lock.lock();
+            try {
+                map.clear();
+                while (readBuffer.poll() != null) {
+                    // discarded
+                }
+                Node<V> node = head.next;
+                while (node != head) {
+                    Node<V> next = node.next;
+                    node.prev = null;
+                    node.next = null;
+                    node = next;
+                }
+                head.prev = head;
+                head.next = head;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Move the nodes hit since the last drain to the most recently used end, skipping removed nodes.
+         */
+        private void drainReadBuffer() {
+            Node<V> node;
+            while ((node = readBuffer.poll()) != null) {
+                if (node.isLinked()) {
+                    unlink(node);
+                    linkLast(node);
+                }
+            }
+        }
+
+        private void linkLast(Node<V> node) {
+            node.prev = head.prev;
+            node.next = head;
+            head.prev.next = node;
+            head.prev = node;
+        }
+
+        private void unlink(Node<V> node) {
+            if (!node.isLinked()) {
+                return;
+            }
+            node.prev.next = node.next;
+            node.next.prev = node.prev;
+            node.prev = null;
+            node.next = null;
+        }
+    }
+}
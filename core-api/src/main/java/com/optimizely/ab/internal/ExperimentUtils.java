@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2017-2022, Optimizely and contributors
+ *    Copyright 2017-2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -19,9 +19,9 @@ package com.optimizely.ab.internal;
 import com.optimizely.ab.OptimizelyUserContext;
 import com.optimizely.ab.config.Experiment;
 import com.optimizely.ab.config.ProjectConfig;
-import com.optimizely.ab.config.audience.AudienceIdCondition;
 import com.optimizely.ab.config.audience.Condition;
 import com.optimizely.ab.config.audience.OrCondition;
+import com.optimizely.ab.optimizelydecision.DecisionReason;
 import com.optimizely.ab.optimizelydecision.DecisionReasons;
 import com.optimizely.ab.optimizelydecision.DecisionResponse;
 import com.optimizely.ab.optimizelydecision.DefaultDecisionReasons;
@@ -29,7 +29,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -99,19 +98,13 @@ public final class ExperimentUtils {
             return new DecisionResponse(true, reasons);
         }
 
-        List<Condition> conditions = new ArrayList<>();
-        for (String audienceId : experimentAudienceIds) {
-            AudienceIdCondition condition = new AudienceIdCondition(audienceId);
-            conditions.add(condition);
-        }
-
-        OrCondition implicitOr = new OrCondition(conditions);
+        OrCondition implicitOr = experiment.getAudienceIdsCondition();
 
-        logger.debug("Evaluating audiences for {} \"{}\": {}.", loggingEntityType, loggingKey, conditions);
+        logger.debug("Evaluating audiences for {} \"{}\": {}.", loggingEntityType, loggingKey, implicitOr.getConditions());
 
         Boolean result = implicitOr.evaluate(projectConfig, user);
-        String message = reasons.addInfo("Audiences for %s \"%s\" collectively evaluated to %s.", loggingEntityType, loggingKey, result);
-        logger.info(message);
+        DecisionReason reason = reasons.info("Audiences for %s \"%s\" collectively evaluated to %s.", loggingEntityType, loggingKey, result);
+        logger.info("{}", reason);
 
         return new DecisionResponse(result, reasons);
     }
@@ -130,11 +123,11 @@ public final class ExperimentUtils {
         Boolean result = null;
         try {
             result = conditions.evaluate(projectConfig, user);
-            String message = reasons.addInfo("Audiences for %s \"%s\" collectively evaluated to %s.", loggingEntityType, loggingKey, result);
-            logger.info(message);
+            DecisionReason reason = reasons.info("Audiences for %s \"%s\" collectively evaluated to %s.", loggingEntityType, loggingKey, result);
+            logger.info("{}", reason);
         } catch (Exception e) {
-            String message = reasons.addInfo("Condition invalid: %s", e.getMessage());
-            logger.error(message);
+            DecisionReason reason = reasons.info("Condition invalid: %s", e.getMessage());
+            logger.error("{}", reason);
         }
 
         return new DecisionResponse(result, reasons);
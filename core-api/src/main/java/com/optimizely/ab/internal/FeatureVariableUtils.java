@@ -0,0 +1,76 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import com.optimizely.ab.config.FeatureVariable;
+import com.optimizely.ab.optimizelyjson.OptimizelyJSON;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+
+/**
+ * Helpers for converting feature variable values from their datafile representation.
+ */
+public final class FeatureVariableUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeatureVariableUtils.class);
+
+    private FeatureVariableUtils() {
+    }
+
+    /**
+     * Convert a variable value to the Java type of the variable.
+     *
+     * @param variableValue the datafile value
+     * @param type          one of the {@link FeatureVariable} types
+     * @return the converted value, or null if the value is null or cannot be parsed as the type
+     */
+    @Nullable
+    public static Object convertStringToType(@Nullable String variableValue, String type) {
+        if (variableValue != null) {
+            switch (type) {
+                case FeatureVariable.DOUBLE_TYPE:
+                    try {
+                        return Double.parseDouble(variableValue);
+                    } catch (NumberFormatException exception) {
+                        logger.error("NumberFormatException while trying to parse \"" + variableValue +
+                            "\" as Double. " + exception);
+                    }
+                    break;
+                case FeatureVariable.STRING_TYPE:
+                    return variableValue;
+                case FeatureVariable.BOOLEAN_TYPE:
+                    return Boolean.parseBoolean(variableValue);
+                case FeatureVariable.INTEGER_TYPE:
+                    try {
+                        return Integer.parseInt(variableValue);
+                    } catch (NumberFormatException exception) {
+                        logger.error("NumberFormatException while trying to parse \"" + variableValue +
+                            "\" as Integer. " + exception.toString());
+                    }
+                    break;
+                case FeatureVariable.JSON_TYPE:
+                    return new OptimizelyJSON(variableValue);
+                default:
+                    return variableValue;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import javax.annotation.Nonnull;
+import java.util.function.Supplier;
+
+/**
+ * Computes a value on the first {@link #get()} and returns the same value afterwards.
+ *
+ * Concurrent first calls block until a single computation completes. The delegate is released once the value is
+ * computed, so whatever it captures can be collected.
+ *
+ * @param <T> the type of the value
+ */
+public final class MemoizingSupplier<T> implements Supplier<T> {
+
+    private volatile Supplier<T> delegate;
+    private T value;
+
+    public MemoizingSupplier(@Nonnull Supplier<T> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public T get() {
+        // the volatile read of delegate publishes value
+        if (delegate != null) {
+            synchronized (this) {
+                Supplier<T> supplier = delegate;
+                if (supplier != null) {
+                    value = supplier.get();
+                    delegate = null;
+                }
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.notification;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AsyncNotificationHandler delivers notifications to a {@link NotificationHandler} on a dedicated thread, so a slow
+ * handler does not hold up the thread sending the notification.
+ *
+ * Notifications are delivered in the order they were sent. Up to queueCapacity notifications wait for delivery;
+ * past that, new notifications are dropped and counted in {@link #getDroppedCount()}. Closing the handler delivers
+ * the waiting notifications and stops the thread.
+ */
+public class AsyncNotificationHandler<T> implements NotificationHandler<T>, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncNotificationHandler.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final NotificationHandler<T> handler;
+    private final ThreadPoolExecutor executor;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    public AsyncNotificationHandler(NotificationHandler<T> handler) {
+        this(handler, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public AsyncNotificationHandler(NotificationHandler<T> handler, int queueCapacity) {
+        if (queueCapacity <= 0) {
+            logger.warn("Invalid queueCapacity of {}, Defaulting to {}", queueCapacity, DEFAULT_QUEUE_CAPACITY);
+            queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        }
+
+        final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        this.handler = handler;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void handle(T message) {
+        try {
+            executor.execute(() -> deliver(message));
+        } catch (RejectedExecutionException e) {
+            dropped.increment();
+            logger.debug("Dropping notification for class: {}, the notification queue is full", message.getClass());
+        }
+    }
+
+    private void deliver(T message) {
+        try {
+            handler.handle(message);
+        } catch (Exception e) {
+            logger.warn("Catching exception sending notification for class: {}", message.getClass());
+        }
+        delivered.increment();
+    }
+
+    /**
+     * @return the handler notifications are delivered to
+     */
+    public NotificationHandler<T> getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return the number of notifications waiting for delivery
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the number of notifications delivered to the handler
+     */
+    public long getDeliveredCount() {
+        return delivered.sum();
+    }
+
+    /**
+     * @return the number of notifications dropped because the queue was full or the handler was closed
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
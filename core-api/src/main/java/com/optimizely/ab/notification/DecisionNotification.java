@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright 2019-2020, Optimizely, Inc. and contributors                   *
+ * Copyright 2019-2020, 2023, Optimizely, Inc. and contributors             *
  *                                                                          *
  * Licensed under the Apache License, Version 2.0 (the "License");          *
  * you may not use this file except in compliance with the License.         *
@@ -26,6 +26,7 @@ import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * DecisionNotification encapsulates the arguments and responses when using the following methods:
@@ -45,7 +46,8 @@ public final class DecisionNotification {
     protected String type;
     protected String userId;
     protected Map<String, ?> attributes;
-    protected Map<String, ?> decisionInfo;
+    protected volatile Map<String, ?> decisionInfo;
+    private Supplier<Map<String, ?>> decisionInfoSupplier;
 
     protected DecisionNotification() {
     }
@@ -63,6 +65,18 @@ public final class DecisionNotification {
         this.decisionInfo = decisionInfo;
     }
 
+    /**
+     * Create a notification whose decision info is built on the first call to {@link #getDecisionInfo()}, so
+     * listeners that do not read it do not pay for it.
+     */
+    private DecisionNotification(@Nonnull String type,
+                                 @Nonnull String userId,
+                                 @Nullable Map<String, ?> attributes,
+                                 @Nonnull Supplier<Map<String, ?>> decisionInfoSupplier) {
+        this(type, userId, attributes, (Map<String, ?>) null);
+        this.decisionInfoSupplier = decisionInfoSupplier;
+    }
+
     public String getType() {
         return type;
     }
@@ -76,6 +90,10 @@ public final class DecisionNotification {
     }
 
     public Map<String, ?> getDecisionInfo() {
+        if (decisionInfo == null && decisionInfoSupplier != null) {
+            // building it twice on a race is harmless, both maps hold the same values
+            decisionInfo = decisionInfoSupplier.get();
+        }
         return decisionInfo;
     }
 
@@ -85,7 +103,7 @@ public final class DecisionNotification {
         sb.append("type='").append(type).append('\'');
         sb.append(", userId='").append(userId).append('\'');
         sb.append(", attributes=").append(attributes);
-        sb.append(", decisionInfo=").append(decisionInfo);
+        sb.append(", decisionInfo=").append(getDecisionInfo());
         sb.append('}');
         return sb.toString();
     }
@@ -375,8 +393,6 @@ public final class DecisionNotification {
         private List<String> reasons;
         private Boolean decisionEventDispatched;
 
-        private Map<String, Object> decisionInfo;
-
         public FlagDecisionNotificationBuilder withUserId(String userId) {
             this.userId = userId;
             return this;
@@ -431,21 +447,29 @@ public final class DecisionNotification {
                 throw new OptimizelyRuntimeException("enabled not set");
             }
 
-            decisionInfo = new HashMap<String, Object>() {{
-                put(FLAG_KEY, flagKey);
-                put(ENABLED, enabled);
-                put(VARIABLES, variables);
-                put(VARIATION_KEY, variationKey);
-                put(RULE_KEY, ruleKey);
-                put(REASONS, reasons);
-                put(DECISION_EVENT_DISPATCHED, decisionEventDispatched);
-            }};
+            final String flagKey = this.flagKey;
+            final Boolean enabled = this.enabled;
+            final Object variables = this.variables;
+            final String variationKey = this.variationKey;
+            final String ruleKey = this.ruleKey;
+            final List<String> reasons = this.reasons;
+            final Boolean decisionEventDispatched = this.decisionEventDispatched;
 
             return new DecisionNotification(
                 NotificationCenter.DecisionNotificationType.FLAG.toString(),
                 userId,
                 attributes,
-                decisionInfo);
+                () -> {
+                    Map<String, Object> decisionInfo = new HashMap<>();
+                    decisionInfo.put(FLAG_KEY, flagKey);
+                    decisionInfo.put(ENABLED, enabled);
+                    decisionInfo.put(VARIABLES, variables);
+                    decisionInfo.put(VARIATION_KEY, variationKey);
+                    decisionInfo.put(RULE_KEY, ruleKey);
+                    decisionInfo.put(REASONS, reasons);
+                    decisionInfo.put(DECISION_EVENT_DISPATCHED, decisionEventDispatched);
+                    return decisionInfo;
+                });
         }
     }
 
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2017-2021, Optimizely and contributors
+ *    Copyright 2017-2021, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -119,6 +119,26 @@ public class NotificationCenter {
         return notificationManager.addHandler(handler);
     }
 
+    /**
+     * Register a handler that receives notifications on its own thread through a bounded queue, so slow handlers
+     * do not hold up the caller. Notifications arriving while the queue is full are dropped.
+     *
+     * @param clazz   The notification type.
+     * @param handler The handler to deliver notifications to.
+     * @param <T>     The notification type.
+     * @return greater than zero if added.
+     */
+    public <T> int addAsyncNotificationHandler(Class<T> clazz, NotificationHandler<T> handler) {
+        NotificationManager<T> notificationManager = getNotificationManager(clazz);
+
+        if (notificationManager == null) {
+            logger.warn("{} not supported by the NotificationCenter.", clazz);
+            return -1;
+        }
+
+        return notificationManager.addAsyncHandler(handler);
+    }
+
     /**
      * Convenience method to support lambdas as callbacks in later version of Java (8+).
      *
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019, Optimizely and contributors
+ *    Copyright 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -29,12 +29,17 @@ import java.util.concurrent.atomic.AtomicInteger;
  *
  * The NotificationManager is responsible for storing a collection of NotificationHandlers and mapping
  * them to a globally unique integer so that they can be removed on demand.
+ *
+ * Handlers are kept in a copy-on-write registry, so sending never locks. Handlers added with
+ * {@link #addAsyncHandler(NotificationHandler, int)} are called on their own thread instead of the sending one.
  */
 public class NotificationManager<T> {
 
     private static final Logger logger = LoggerFactory.getLogger(NotificationManager.class);
 
-    private final Map<Integer, NotificationHandler<T>> handlers = Collections.synchronizedMap(new LinkedHashMap<>());
+    // replaced on every change and never modified, so send() iterates it without locking
+    private volatile Map<Integer, NotificationHandler<T>> handlers = Collections.emptyMap();
+    private final Object lock = new Object();
     private final AtomicInteger counter;
 
     public NotificationManager() {
@@ -46,45 +51,102 @@ public class NotificationManager<T> {
     }
 
     public int addHandler(NotificationHandler<T> newHandler) {
-
-        // Prevent registering a duplicate listener.
-        synchronized (handlers) {
+        synchronized (lock) {
+            // Prevent registering a duplicate listener.
             for (NotificationHandler<T> handler : handlers.values()) {
-                if (handler.equals(newHandler)) {
+                if (unwrap(handler).equals(unwrap(newHandler))) {
                     logger.warn("Notification listener was already added");
                     return -1;
                 }
             }
-        }
 
-        int notificationId = counter.incrementAndGet();
-        handlers.put(notificationId, newHandler);
+            int notificationId = counter.incrementAndGet();
+            Map<Integer, NotificationHandler<T>> newHandlers = new LinkedHashMap<>(handlers);
+            newHandlers.put(notificationId, newHandler);
+            handlers = Collections.unmodifiableMap(newHandlers);
+
+            return notificationId;
+        }
+    }
 
+    /**
+     * Add a handler called on a dedicated thread, with up to queueCapacity notifications waiting for it.
+     *
+     * @see AsyncNotificationHandler
+     */
+    public int addAsyncHandler(NotificationHandler<T> newHandler, int queueCapacity) {
+        AsyncNotificationHandler<T> asyncHandler = new AsyncNotificationHandler<>(newHandler, queueCapacity);
+        int notificationId = addHandler(asyncHandler);
+        if (notificationId == -1) {
+            asyncHandler.close();
+        }
         return notificationId;
     }
 
+    public int addAsyncHandler(NotificationHandler<T> newHandler) {
+        return addAsyncHandler(newHandler, AsyncNotificationHandler.DEFAULT_QUEUE_CAPACITY);
+    }
+
     public void send(final T message) {
-        synchronized (handlers) {
-            for (Map.Entry<Integer, NotificationHandler<T>> handler: handlers.entrySet()) {
-                try {
-                    handler.getValue().handle(message);
-                } catch (Exception e) {
-                    logger.warn("Catching exception sending notification for class: {}, handler: {}", message.getClass(), handler.getKey());
-                }
+        for (Map.Entry<Integer, NotificationHandler<T>> handler: handlers.entrySet()) {
+            try {
+                handler.getValue().handle(message);
+            } catch (Exception e) {
+                logger.warn("Catching exception sending notification for class: {}, handler: {}", message.getClass(), handler.getKey());
             }
         }
     }
 
     public void clear() {
-        handlers.clear();
+        Map<Integer, NotificationHandler<T>> removed;
+        synchronized (lock) {
+            removed = handlers;
+            handlers = Collections.emptyMap();
+        }
+        for (NotificationHandler<T> handler : removed.values()) {
+            closeIfAsync(handler);
+        }
     }
 
     public boolean remove(int notificationID) {
-        NotificationHandler<T> handler = handlers.remove(notificationID);
-        return handler != null;
+        NotificationHandler<T> handler;
+        synchronized (lock) {
+            handler = handlers.get(notificationID);
+            if (handler == null) {
+                return false;
+            }
+            Map<Integer, NotificationHandler<T>> newHandlers = new LinkedHashMap<>(handlers);
+            newHandlers.remove(notificationID);
+            handlers = Collections.unmodifiableMap(newHandlers);
+        }
+        closeIfAsync(handler);
+        return true;
     }
 
     public int size() {
         return handlers.size();
     }
+
+    /**
+     * @return the number of notifications dropped by the async handlers currently added, because their queue was full
+     */
+    public long getDroppedCount() {
+        long dropped = 0;
+        for (NotificationHandler<T> handler : handlers.values()) {
+            if (handler instanceof AsyncNotificationHandler) {
+                dropped += ((AsyncNotificationHandler<T>) handler).getDroppedCount();
+            }
+        }
+        return dropped;
+    }
+
+    private static void closeIfAsync(NotificationHandler<?> handler) {
+        if (handler instanceof AsyncNotificationHandler) {
+            ((AsyncNotificationHandler<?>) handler).close();
+        }
+    }
+
+    private static <T> NotificationHandler<T> unwrap(NotificationHandler<T> handler) {
+        return handler instanceof AsyncNotificationHandler ? ((AsyncNotificationHandler<T>) handler).getHandler() : handler;
+    }
 }
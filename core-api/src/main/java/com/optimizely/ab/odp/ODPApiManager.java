@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -15,10 +15,38 @@
  */
 package com.optimizely.ab.odp;
 
+import java.util.List;
 import java.util.Set;
 
 public interface ODPApiManager {
     String fetchQualifiedSegments(String apiKey, String apiEndpoint, String userKey, String userValue, Set<String> segmentsToCheck);
 
+    /**
+     * @return true if {@link #fetchQualifiedSegments(String, String, List, Set)} is implemented. Otherwise,
+     * the default, segments are fetched one user at a time.
+     */
+    default boolean supportsBulkSegmentFetch() {
+        return false;
+    }
+
+    /**
+     * Fetch the segments of several users in one GraphQL request, querying each user under the alias
+     * {@link #getUserAlias(int)} of its position in the list.
+     *
+     * Only called when {@link #supportsBulkSegmentFetch()} is true. The default implementation fetches nothing.
+     *
+     * @return the response, or null if the fetch failed
+     */
+    default String fetchQualifiedSegments(String apiKey, String apiEndpoint, List<ODPUserIdentifier> users, Set<String> segmentsToCheck) {
+        return null;
+    }
+
     Integer sendEvents(String apiKey, String apiEndpoint, String eventPayload);
+
+    /**
+     * @return the alias of the user at the given position of a bulk segment fetch
+     */
+    static String getUserAlias(int index) {
+        return "user" + index;
+    }
 }
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2022, Optimizely
+ *    Copyright 2022, 2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
  */
 package com.optimizely.ab.odp;
 
+import com.optimizely.ab.annotations.VisibleForTesting;
 import com.optimizely.ab.event.internal.BuildVersionInfo;
 import com.optimizely.ab.event.internal.ClientEngineInfo;
 import com.optimizely.ab.odp.serializer.ODPJsonSerializerFactory;
@@ -26,18 +27,49 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * ODPEventManager batches ODP events and sends them to the ODP server.
+ *
+ * Events are queued up to the queue size, past which the {@link QueueFullPolicy} drops either the new event or the
+ * oldest queued one. A single dispatcher thread batches the queued events; batches are sent on the dispatcher thread,
+ * or on a pool of up to maxInFlightBatches threads when more than one batch may be in flight. Failed batches are
+ * retried with an exponential backoff with jitter. Counters are available through {@link #getMetrics()}.
+ */
 public class ODPEventManager {
     private static final Logger logger = LoggerFactory.getLogger(ODPEventManager.class);
     private static final int DEFAULT_BATCH_SIZE = 10;
     private static final int DEFAULT_QUEUE_SIZE = 10000;
     private static final int DEFAULT_FLUSH_INTERVAL = 1000;
+    private static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 1;
+    private static final long DEFAULT_RETRY_BACKOFF_MILLIS = 20;
+    private static final long STOP_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
     private static final int MAX_RETRIES = 3;
     private static final String EVENT_URL_PATH = "/v3/events";
+    private static final Object STOP_SIGNAL = new Object();
+
+    /**
+     * What {@link #sendEvent(ODPEvent)} does with an event when the queue is full.
+     */
+    public enum QueueFullPolicy {
+        /**
+         * Drop the new event.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest queued event to make room for the new one.
+         */
+        DROP_OLDEST
+    }
 
     private final int queueSize;
     private final int batchSize;
     private final int flushInterval;
+    private final int maxInFlightBatches;
+    private final long retryBackoffMillis;
+    private final QueueFullPolicy queueFullPolicy;
 
     private Boolean isRunning = false;
 
@@ -45,22 +77,40 @@ public class ODPEventManager {
     //      needs to see the change immediately.
     private volatile ODPConfig odpConfig;
     private EventDispatcherThread eventDispatcherThread;
+    private ExecutorService dispatchExecutor;
 
     private final ODPApiManager apiManager;
 
-    // The eventQueue needs to be thread safe. We are not doing anything extra for thread safety here
-    //      because `LinkedBlockingQueue` itself is thread safe.
-    private final BlockingQueue<Object> eventQueue = new LinkedBlockingQueue<>();
+    // The eventQueue also carries flush and stop signals, so it is not bounded itself: queued events are
+    //      counted in queuedEvents, which never goes past queueSize.
+    private final BlockingDeque<Object> eventQueue = new LinkedBlockingDeque<>();
+    private final AtomicInteger queuedEvents = new AtomicInteger();
+    private final Semaphore inFlightBatches;
+    private final Counters counters = new Counters();
 
     public ODPEventManager(@Nonnull ODPApiManager apiManager) {
         this(apiManager, null, null, null);
     }
 
     public ODPEventManager(@Nonnull ODPApiManager apiManager, @Nullable Integer batchSize, @Nullable Integer queueSize, @Nullable Integer flushInterval) {
+        this(apiManager, batchSize, queueSize, flushInterval, DEFAULT_MAX_IN_FLIGHT_BATCHES, DEFAULT_RETRY_BACKOFF_MILLIS, QueueFullPolicy.DROP_NEWEST);
+    }
+
+    private ODPEventManager(@Nonnull ODPApiManager apiManager,
+                            @Nullable Integer batchSize,
+                            @Nullable Integer queueSize,
+                            @Nullable Integer flushInterval,
+                            int maxInFlightBatches,
+                            long retryBackoffMillis,
+                            QueueFullPolicy queueFullPolicy) {
         this.apiManager = apiManager;
         this.batchSize = (batchSize != null && batchSize > 1) ? batchSize : DEFAULT_BATCH_SIZE;
-        this.queueSize = queueSize != null ? queueSize : DEFAULT_QUEUE_SIZE;
+        this.queueSize = (queueSize != null && queueSize > 0) ? queueSize : DEFAULT_QUEUE_SIZE;
         this.flushInterval = (flushInterval != null && flushInterval > 0) ? flushInterval : DEFAULT_FLUSH_INTERVAL;
+        this.maxInFlightBatches = maxInFlightBatches;
+        this.retryBackoffMillis = retryBackoffMillis;
+        this.queueFullPolicy = queueFullPolicy;
+        this.inFlightBatches = new Semaphore(maxInFlightBatches);
     }
 
     public void start() {
@@ -69,16 +119,27 @@ public class ODPEventManager {
         }
         if (!isRunning) {
             final ThreadFactory threadFactory = Executors.defaultThreadFactory();
-            ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            ThreadFactory daemonThreadFactory = runnable -> {
                 Thread thread = threadFactory.newThread(runnable);
                 thread.setDaemon(true);
                 return thread;
-            });
+            };
+            if (maxInFlightBatches > 1) {
+                dispatchExecutor = Executors.newFixedThreadPool(maxInFlightBatches, daemonThreadFactory);
+            }
+            ExecutorService executor = Executors.newSingleThreadExecutor(daemonThreadFactory);
             executor.submit(eventDispatcherThread);
         }
         isRunning = true;
     }
 
+    /**
+     * @return the counters of this event manager
+     */
+    public ODPEventManagerMetrics getMetrics() {
+        return counters;
+    }
+
     public void updateSettings(ODPConfig newConfig) {
         if (odpConfig == null || (!odpConfig.equals(newConfig) && eventQueue.offer(new FlushEvent(odpConfig)))) {
             odpConfig = newConfig;
@@ -131,26 +192,225 @@ public class ODPEventManager {
             return;
         }
 
-        if (eventQueue.size() >= queueSize) {
-            logger.warn("Failed to Process ODP Event. Event Queue full. queueSize = " + queueSize);
+        if (queuedEvents.incrementAndGet() <= queueSize) {
+            eventQueue.offer(event);
             return;
         }
-
-        if (!eventQueue.offer(event)) {
-            logger.error("Failed to Process ODP Event. Event Queue is not accepting any more events");
+        queuedEvents.decrementAndGet();
+
+        if (queueFullPolicy == QueueFullPolicy.DROP_OLDEST) {
+            Object oldest = eventQueue.pollFirst();
+            if (oldest instanceof ODPEvent) {
+                // the new event takes the place of the oldest one
+                eventQueue.offer(event);
+                counters.dropped.increment();
+                logger.warn("ODP Event Queue full, dropped the oldest event. queueSize = " + queueSize);
+                return;
+            }
+            if (oldest != null) {
+                // flush and stop signals are never dropped
+                eventQueue.offerFirst(oldest);
+            }
         }
+
+        counters.dropped.increment();
+        logger.warn("Failed to Process ODP Event. Event Queue full. queueSize = " + queueSize);
     }
 
     public void stop() {
         logger.debug("Sending stop signal to ODP Event Dispatcher Thread");
         eventDispatcherThread.signalStop();
+        eventQueue.offer(STOP_SIGNAL);
+    }
+
+    /**
+     * Exponential backoff with equal jitter: half of the backoff of the attempt, plus a random share of the other half.
+     *
+     * @param attempt the number of attempts made so far, starting at 1
+     * @return the time to wait before the next attempt
+     */
+    @VisibleForTesting
+    long getRetryBackoffMillis(int attempt) {
+        long backoff = retryBackoffMillis << Math.min(attempt - 1, 30);
+        long half = backoff / 2;
+        return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+    }
+
+    private void sendBatch(List<ODPEvent> batch, ODPConfig odpConfig) {
+        Integer statusCode = null;
+        try {
+            String payload = ODPJsonSerializerFactory.getSerializer().serializeEvents(batch);
+            String endpoint = odpConfig.getApiHost() + EVENT_URL_PATH;
+            int numAttempts = 0;
+            while (true) {
+                statusCode = apiManager.sendEvents(odpConfig.getApiKey(), endpoint, payload);
+                numAttempts++;
+                if (numAttempts >= MAX_RETRIES || statusCode == null || (statusCode != 0 && statusCode < 500)) {
+                    break;
+                }
+                Thread.sleep(getRetryBackoffMillis(numAttempts));
+                counters.retried.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("ODP event send failed", e);
+        }
+
+        if (statusCode != null && statusCode > 0 && statusCode < 400) {
+            counters.dispatched.add(batch.size());
+        } else {
+            counters.failed.add(batch.size());
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private ODPApiManager apiManager;
+        private Integer batchSize;
+        private Integer queueSize;
+        private Integer flushInterval;
+        private int maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+        private long retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+        private QueueFullPolicy queueFullPolicy = QueueFullPolicy.DROP_NEWEST;
+
+        /**
+         * @param apiManager The {@link ODPApiManager} events are sent with
+         * @return ODPEventManager builder
+         */
+        public Builder withApiManager(ODPApiManager apiManager) {
+            this.apiManager = apiManager;
+            return this;
+        }
+
+        /**
+         * @param batchSize The maximum number of events sent in one request
+         * @return ODPEventManager builder
+         */
+        public Builder withBatchSize(Integer batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param queueSize The maximum number of events waiting to be batched
+         * @return ODPEventManager builder
+         */
+        public Builder withQueueSize(Integer queueSize) {
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * @param flushInterval The time in milliseconds an incomplete batch waits for more events before it is sent
+         * @return ODPEventManager builder
+         */
+        public Builder withFlushInterval(Integer flushInterval) {
+            this.flushInterval = flushInterval;
+            return this;
+        }
+
+        /**
+         * MaxInFlightBatches is the number of batches sent to the ODP server at once. Batches are sent one at a
+         * time, in order, by default.
+         *
+         * @param maxInFlightBatches The maximum number of batches being sent at once
+         * @return ODPEventManager builder
+         */
+        public Builder withMaxInFlightBatches(int maxInFlightBatches) {
+            this.maxInFlightBatches = maxInFlightBatches;
+            return this;
+        }
+
+        /**
+         * RetryBackoff is the base wait before retrying a failed batch, doubled on every retry and jittered.
+         *
+         * @param retryBackoff The base wait before a retry
+         * @param timeUnit     The unit of the wait
+         * @return ODPEventManager builder
+         */
+        public Builder withRetryBackoff(long retryBackoff, TimeUnit timeUnit) {
+            this.retryBackoffMillis = timeUnit.toMillis(retryBackoff);
+            return this;
+        }
+
+        /**
+         * @param queueFullPolicy What to do with a new event when the queue is full
+         * @return ODPEventManager builder
+         */
+        public Builder withQueueFullPolicy(QueueFullPolicy queueFullPolicy) {
+            this.queueFullPolicy = queueFullPolicy;
+            return this;
+        }
+
+        public ODPEventManager build() {
+            if (apiManager == null) {
+                throw new IllegalArgumentException("ApiManager was not configured");
+            }
+
+            if (maxInFlightBatches <= 0) {
+                logger.warn("Invalid maxInFlightBatches of {}, Defaulting to {}", maxInFlightBatches, DEFAULT_MAX_IN_FLIGHT_BATCHES);
+                maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+            }
+
+            if (retryBackoffMillis < 0) {
+                logger.warn("Invalid retryBackoffMillis of {}, Defaulting to {}", retryBackoffMillis, DEFAULT_RETRY_BACKOFF_MILLIS);
+                retryBackoffMillis = DEFAULT_RETRY_BACKOFF_MILLIS;
+            }
+
+            if (queueFullPolicy == null) {
+                queueFullPolicy = QueueFullPolicy.DROP_NEWEST;
+            }
+
+            return new ODPEventManager(apiManager, batchSize, queueSize, flushInterval, maxInFlightBatches, retryBackoffMillis, queueFullPolicy);
+        }
+    }
+
+    private final class Counters implements ODPEventManagerMetrics {
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder retried = new LongAdder();
+        private final LongAdder dispatched = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+
+        @Override
+        public int getQueueSize() {
+            return queuedEvents.get();
+        }
+
+        @Override
+        public int getInFlightBatchCount() {
+            return maxInFlightBatches - inFlightBatches.availablePermits();
+        }
+
+        @Override
+        public long getDroppedCount() {
+            return dropped.sum();
+        }
+
+        @Override
+        public long getRetryCount() {
+            return retried.sum();
+        }
+
+        @Override
+        public long getDispatchedCount() {
+            return dispatched.sum();
+        }
+
+        @Override
+        public long getFailedCount() {
+            return failed.sum();
+        }
     }
 
     private class EventDispatcherThread extends Thread {
 
         private volatile boolean shouldStop = false;
 
-        private final List<ODPEvent> currentBatch = new ArrayList<>();
+        private List<ODPEvent> currentBatch = new ArrayList<>();
 
         private long nextFlushTime = new Date().getTime();
 
@@ -179,11 +439,18 @@ public class ODPEventManager {
                         continue;
                     }
 
+                    if (nextEvent == STOP_SIGNAL) {
+                        flush();
+                        break;
+                    }
+
                     if (nextEvent instanceof FlushEvent) {
                         flush(((FlushEvent) nextEvent).getOdpConfig());
                         continue;
                     }
 
+                    queuedEvents.decrementAndGet();
+
                     if (currentBatch.size() == 0) {
                         // Batch starting, create a new flush time
                         nextFlushTime = new Date().getTime() + flushInterval;
@@ -199,6 +466,7 @@ public class ODPEventManager {
                 }
             }
 
+            awaitInFlightBatches();
             isRunning = false;
             logger.debug("Exiting ODP Event Dispatcher Thread.");
         }
@@ -209,24 +477,60 @@ public class ODPEventManager {
             }
 
             if (odpConfig.isReady()) {
-                String payload = ODPJsonSerializerFactory.getSerializer().serializeEvents(currentBatch);
-                String endpoint = odpConfig.getApiHost() + EVENT_URL_PATH;
-                Integer statusCode;
-                int numAttempts = 0;
-                do {
-                    statusCode = apiManager.sendEvents(odpConfig.getApiKey(), endpoint, payload);
-                    numAttempts ++;
-                } while (numAttempts < MAX_RETRIES && statusCode != null && (statusCode == 0 || statusCode >= 500));
+                List<ODPEvent> batch = currentBatch;
+                currentBatch = new ArrayList<>();
+                dispatch(batch, odpConfig);
             } else {
                 logger.debug("ODPConfig not ready, discarding event batch");
+                currentBatch.clear();
             }
-            currentBatch.clear();
         }
 
         private void flush() {
             flush(odpConfig);
         }
 
+        /**
+         * Waits for a free in-flight slot, so a slow ODP server holds events back in the queue.
+         */
+        private void dispatch(List<ODPEvent> batch, ODPConfig odpConfig) {
+            inFlightBatches.acquireUninterruptibly();
+            if (dispatchExecutor != null) {
+                try {
+                    dispatchExecutor.execute(() -> {
+                        try {
+                            sendBatch(batch, odpConfig);
+                        } finally {
+                            inFlightBatches.release();
+                        }
+                    });
+                    return;
+                } catch (RejectedExecutionException e) {
+                    logger.debug("ODP event dispatch executor rejected the batch, sending it on the dispatcher thread");
+                }
+            }
+
+            try {
+                sendBatch(batch, odpConfig);
+            } finally {
+                inFlightBatches.release();
+            }
+        }
+
+        private void awaitInFlightBatches() {
+            if (dispatchExecutor == null) {
+                return;
+            }
+            dispatchExecutor.shutdown();
+            try {
+                if (!dispatchExecutor.awaitTermination(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Timed out waiting for in-flight ODP event batches");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
         public void signalStop() {
             shouldStop = true;
         }
@@ -0,0 +1,53 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.odp;
+
+/**
+ * Counters of an {@link ODPEventManager}, taken since it was created.
+ */
+public interface ODPEventManagerMetrics {
+
+    /**
+     * @return the number of events waiting in the queue to be added to a batch
+     */
+    int getQueueSize();
+
+    /**
+     * @return the number of batches being dispatched
+     */
+    int getInFlightBatchCount();
+
+    /**
+     * @return the number of events dropped because the queue was full
+     */
+    long getDroppedCount();
+
+    /**
+     * @return the number of times a batch was sent again after a failed attempt
+     */
+    long getRetryCount();
+
+    /**
+     * @return the number of events accepted by the ODP server
+     */
+    long getDispatchedCount();
+
+    /**
+     * @return the number of events whose batch could not be sent, after all retries
+     */
+    long getFailedCount();
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2022, Optimizely
+ *    Copyright 2022, 2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -17,12 +17,15 @@
 package com.optimizely.ab.odp;
 
 import com.optimizely.ab.internal.Cache;
+import com.optimizely.ab.internal.ConcurrentLRUCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 public class ODPManager implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(ODPManager.class);
@@ -64,6 +67,7 @@ public class ODPManager implements AutoCloseable {
 
     public void close() {
         eventManager.stop();
+        segmentManager.close();
     }
 
     public static Builder builder() {
@@ -77,6 +81,9 @@ public class ODPManager implements AutoCloseable {
         private Integer cacheSize;
         private Integer cacheTimeoutSeconds;
         private Cache<List<String>> cacheImpl;
+        private Executor segmentFetchExecutor;
+        private int maxPendingSegmentFetches = ODPSegmentManager.DEFAULT_MAX_PENDING_FETCHES;
+        private long segmentFetchTimeoutMillis = ODPSegmentManager.DEFAULT_FETCH_TIMEOUT_MILLIS;
 
         /**
          * Provide a custom {@link ODPManager} instance which makes http calls to fetch segments and send events.
@@ -146,7 +153,7 @@ public class ODPManager implements AutoCloseable {
         /**
          * Provide an optional custom Segment Cache implementation.
          *
-         * A Default LRU Cache implementation is automatically used if none provided.
+         * A {@link ConcurrentLRUCache} is automatically used if none provided.
          *
          * @param cacheImpl Customer Cache Implementation.
          * @return ODPManager builder
@@ -156,6 +163,44 @@ public class ODPManager implements AutoCloseable {
             return this;
         }
 
+        /**
+         * Provide an optional executor for async segment fetches. The executor is not shut down by the {@link ODPManager}.
+         *
+         * Virtual threads are used if none provided and the JVM supports them, a bounded pool of daemon threads otherwise.
+         *
+         * @param segmentFetchExecutor The executor async segment fetches run on.
+         * @return ODPManager builder
+         */
+        public Builder withSegmentFetchExecutor(Executor segmentFetchExecutor) {
+            this.segmentFetchExecutor = segmentFetchExecutor;
+            return this;
+        }
+
+        /**
+         * Provide an optional limit of async segment fetches queued or running at once. Fetches past the limit
+         * complete immediately with the cached segments of the user, or an empty list.
+         *
+         * @param maxPendingSegmentFetches The maximum number of pending async segment fetches.
+         * @return ODPManager builder
+         */
+        public Builder withMaxPendingSegmentFetches(int maxPendingSegmentFetches) {
+            this.maxPendingSegmentFetches = maxPendingSegmentFetches;
+            return this;
+        }
+
+        /**
+         * Provide an optional timeout of async segment fetches. Fetches taking longer complete with the cached
+         * segments of the user, or an empty list.
+         *
+         * @param timeout  The timeout, or 0 to wait for the fetch.
+         * @param timeUnit The unit of the timeout.
+         * @return ODPManager builder
+         */
+        public Builder withSegmentFetchTimeout(long timeout, TimeUnit timeUnit) {
+            this.segmentFetchTimeoutMillis = timeUnit.toMillis(timeout);
+            return this;
+        }
+
         public ODPManager build() {
             if ((segmentManager == null || eventManager == null) && apiManager == null) {
                 logger.warn("ApiManager instance is needed when using default EventManager or SegmentManager");
@@ -163,9 +208,8 @@ public class ODPManager implements AutoCloseable {
             }
 
             if (segmentManager == null) {
-                if (cacheImpl != null) {
-                    segmentManager = new ODPSegmentManager(apiManager, cacheImpl);
-                } else if (cacheSize != null || cacheTimeoutSeconds != null) {
+                Cache<List<String>> cache = cacheImpl;
+                if (cache == null && (cacheSize != null || cacheTimeoutSeconds != null)) {
                     // Converting null to -1 so that DefaultCache uses the default values;
                     if (cacheSize == null) {
                         cacheSize = -1;
@@ -173,10 +217,12 @@ public class ODPManager implements AutoCloseable {
                     if (cacheTimeoutSeconds == null) {
                         cacheTimeoutSeconds = -1;
                     }
-                    segmentManager = new ODPSegmentManager(apiManager, cacheSize, cacheTimeoutSeconds);
-                } else {
-                    segmentManager = new ODPSegmentManager(apiManager);
+                    cache = new ConcurrentLRUCache<>(cacheSize, cacheTimeoutSeconds);
+                } else if (cache == null) {
+                    cache = new ConcurrentLRUCache<>();
                 }
+                segmentManager = new ODPSegmentManager(apiManager, cache, segmentFetchExecutor,
+                    maxPendingSegmentFetches, segmentFetchTimeoutMillis);
             }
 
             if (eventManager == null) {
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2022, Optimizely
+ *    Copyright 2022, 2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,40 +16,110 @@
  */
 package com.optimizely.ab.odp;
 
+import com.optimizely.ab.annotations.VisibleForTesting;
 import com.optimizely.ab.internal.Cache;
-import com.optimizely.ab.internal.DefaultLRUCache;
+import com.optimizely.ab.internal.ConcurrentLRUCache;
 import com.optimizely.ab.odp.parser.ResponseJsonParser;
 import com.optimizely.ab.odp.parser.ResponseJsonParserFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-
-public class ODPSegmentManager {
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ODPSegmentManager implements AutoCloseable {
 
     private static final Logger logger = LoggerFactory.getLogger(ODPSegmentManager.class);
 
     private static final String SEGMENT_URL_PATH = "/v3/graphql";
 
+    public static final int DEFAULT_FETCH_THREADS = 10;
+    public static final int DEFAULT_MAX_PENDING_FETCHES = 1000;
+    public static final long DEFAULT_FETCH_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    public static final int DEFAULT_PREFETCH_BATCH_SIZE = 50;
+
     private final ODPApiManager apiManager;
+    private final boolean bulkFetchSupported;
 
     private volatile ODPConfig odpConfig;
 
     private final Cache<List<String>> segmentsCache;
 
+    private final ConcurrentHashMap<String, CompletableFuture<List<String>>> pendingFetches = new ConcurrentHashMap<>();
+
+    private final Executor fetchExecutor;
+    private final int maxPendingFetches;
+    private final long fetchTimeoutMillis;
+    private final AtomicInteger pendingAsyncFetches = new AtomicInteger();
+
+    // created on the first async fetch and owned by this manager
+    private volatile ExecutorService defaultFetchExecutor;
+    private volatile ScheduledExecutorService timeoutScheduler;
+    private volatile boolean closed;
+
     public ODPSegmentManager(ODPApiManager apiManager) {
         this(apiManager, Cache.DEFAULT_MAX_SIZE, Cache.DEFAULT_TIMEOUT_SECONDS);
     }
 
     public ODPSegmentManager(ODPApiManager apiManager, Cache<List<String>> cache) {
-        this.apiManager = apiManager;
-        this.segmentsCache = cache;
+        this(apiManager, cache, null, DEFAULT_MAX_PENDING_FETCHES, DEFAULT_FETCH_TIMEOUT_MILLIS);
     }
 
     public ODPSegmentManager(ODPApiManager apiManager, Integer cacheSize, Integer cacheTimeoutSeconds) {
+        this(apiManager, new ConcurrentLRUCache<>(cacheSize, cacheTimeoutSeconds));
+    }
+
+    /**
+     * @param apiManager         the api manager segments are fetched with
+     * @param cache              the cache of qualified segments
+     * @param fetchExecutor      the executor async fetches run on, or null to use virtual threads where the JVM
+     *                           supports them and a pool of {@link #DEFAULT_FETCH_THREADS} daemon threads otherwise
+     * @param maxPendingFetches  the maximum number of async fetches queued or running at once
+     * @param fetchTimeoutMillis the time an async fetch may take before it completes with the fallback segments,
+     *                           and a fetch may wait for the same user's pending fetch, or 0 to wait for the fetch
+     */
+    public ODPSegmentManager(ODPApiManager apiManager,
+                             Cache<List<String>> cache,
+                             @Nullable Executor fetchExecutor,
+                             int maxPendingFetches,
+                             long fetchTimeoutMillis) {
         this.apiManager = apiManager;
-        this.segmentsCache = new DefaultLRUCache<>(cacheSize, cacheTimeoutSeconds);
+        this.bulkFetchSupported = apiManager != null && apiManager.supportsBulkSegmentFetch();
+        this.segmentsCache = cache;
+        this.fetchExecutor = fetchExecutor;
+
+        if (maxPendingFetches <= 0) {
+            logger.warn("Invalid maxPendingFetches of {}, Defaulting to {}", maxPendingFetches, DEFAULT_MAX_PENDING_FETCHES);
+            maxPendingFetches = DEFAULT_MAX_PENDING_FETCHES;
+        }
+        if (fetchTimeoutMillis < 0) {
+            logger.warn("Invalid fetchTimeoutMillis of {}, Defaulting to {}", fetchTimeoutMillis, DEFAULT_FETCH_TIMEOUT_MILLIS);
+            fetchTimeoutMillis = DEFAULT_FETCH_TIMEOUT_MILLIS;
+        }
+        this.maxPendingFetches = maxPendingFetches;
+        this.fetchTimeoutMillis = fetchTimeoutMillis;
     }
 
     public List<String> getQualifiedSegments(String fsUserId) {
@@ -64,6 +134,11 @@ public class ODPSegmentManager {
     }
 
     public List<String> getQualifiedSegments(ODPUserKey userKey, String userValue, List<ODPSegmentOption> options) {
+        return getQualifiedSegments(userKey, userValue, options, false);
+    }
+
+    private List<String> getQualifiedSegments(ODPUserKey userKey, String userValue, List<ODPSegmentOption> options, boolean cacheChecked) {
+        ODPConfig odpConfig = this.odpConfig;
         if (odpConfig == null || !odpConfig.isReady()) {
             logger.error("Audience segments fetch failed (ODP is not enabled)");
             return null;
@@ -79,7 +154,7 @@ public class ODPSegmentManager {
 
         if (options.contains(ODPSegmentOption.RESET_CACHE)) {
             segmentsCache.reset();
-        } else if (!options.contains(ODPSegmentOption.IGNORE_CACHE)) {
+        } else if (!cacheChecked && !options.contains(ODPSegmentOption.IGNORE_CACHE)) {
             qualifiedSegments = segmentsCache.lookup(cacheKey);
             if (qualifiedSegments != null) {
                 logger.debug("ODP Cache Hit. Returning segments from Cache.");
@@ -87,28 +162,243 @@ public class ODPSegmentManager {
             }
         }
 
+        if (options.contains(ODPSegmentOption.IGNORE_CACHE)) {
+            return fetchQualifiedSegments(odpConfig, userKey, userValue);
+        }
+
+        // concurrent misses for the same user share one fetch
+        CompletableFuture<List<String>> fetch = new CompletableFuture<>();
+        CompletableFuture<List<String>> pendingFetch = pendingFetches.putIfAbsent(cacheKey, fetch);
+        if (pendingFetch != null) {
+            logger.debug("ODP Cache Miss. Waiting for the pending call to ODP Server.");
+            return awaitQualifiedSegments(pendingFetch);
+        }
+
+        try {
+            qualifiedSegments = fetchQualifiedSegments(odpConfig, userKey, userValue);
+            if (qualifiedSegments != null) {
+                // cached before the fetch is released, so later misses find it
+                segmentsCache.save(cacheKey, qualifiedSegments);
+            }
+            fetch.complete(qualifiedSegments);
+        } catch (RuntimeException | Error e) {
+            // followers are released however the fetch fails
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingFetches.remove(cacheKey, fetch);
+        }
+
+        return qualifiedSegments;
+    }
+
+    private List<String> fetchQualifiedSegments(ODPConfig odpConfig, ODPUserKey userKey, String userValue) {
         logger.debug("ODP Cache Miss. Making a call to ODP Server.");
 
         ResponseJsonParser parser = ResponseJsonParserFactory.getParser();
         String qualifiedSegmentsResponse = apiManager.fetchQualifiedSegments(odpConfig.getApiKey(), odpConfig.getApiHost() + SEGMENT_URL_PATH, userKey.getKeyString(), userValue, odpConfig.getAllSegments());
         try {
-            qualifiedSegments = parser.parseQualifiedSegments(qualifiedSegmentsResponse);
+            return parser.parseQualifiedSegments(qualifiedSegmentsResponse);
         } catch (Exception e) {
             logger.error("Audience segments fetch failed (Error Parsing Response)");
             logger.debug(e.getMessage());
-            qualifiedSegments = null;
+            return null;
+        }
+    }
+
+    public Map<ODPUserIdentifier, List<String>> prefetchQualifiedSegments(Collection<ODPUserIdentifier> users) {
+        return prefetchQualifiedSegments(users, DEFAULT_PREFETCH_BATCH_SIZE);
+    }
+
+    /**
+     * Fetch the qualified segments of several users ahead of their decisions, saving them to the segment cache so
+     * the decisions that follow are cache hits.
+     *
+     * Users already in the cache are not fetched again. The rest are fetched in aliased GraphQL queries of up to
+     * batchSize users each, or one user at a time when the {@link ODPApiManager} does not support bulk fetches.
+     *
+     * @param users     the users to fetch segments for
+     * @param batchSize the maximum number of users fetched in one request
+     * @return the segments of each user found in the cache or fetched; users whose fetch failed are left out
+     */
+    public Map<ODPUserIdentifier, List<String>> prefetchQualifiedSegments(Collection<ODPUserIdentifier> users, int batchSize) {
+        Map<ODPUserIdentifier, List<String>> segmentsByUser = new HashMap<>();
+        ODPConfig odpConfig = this.odpConfig;
+        if (odpConfig == null || !odpConfig.isReady()) {
+            logger.error("Audience segments fetch failed (ODP is not enabled)");
+            return segmentsByUser;
         }
 
-        if (qualifiedSegments != null && !options.contains(ODPSegmentOption.IGNORE_CACHE)) {
-            segmentsCache.save(cacheKey, qualifiedSegments);
+        if (!odpConfig.hasSegments()) {
+            logger.debug("No Segments are used in the project, Not Fetching segments. Returning empty list");
+            for (ODPUserIdentifier user : users) {
+                segmentsByUser.put(user, Collections.emptyList());
+            }
+            return segmentsByUser;
         }
 
-        return qualifiedSegments;
+        if (batchSize <= 0) {
+            logger.warn("Invalid batchSize of {}, Defaulting to {}", batchSize, DEFAULT_PREFETCH_BATCH_SIZE);
+            batchSize = DEFAULT_PREFETCH_BATCH_SIZE;
+        }
+
+        List<ODPUserIdentifier> misses = new ArrayList<>();
+        for (ODPUserIdentifier user : new LinkedHashSet<>(users)) {
+            List<String> qualifiedSegments = segmentsCache.lookup(getCacheKey(user.getUserKey().getKeyString(), user.getUserValue()));
+            if (qualifiedSegments != null) {
+                segmentsByUser.put(user, qualifiedSegments);
+            } else {
+                misses.add(user);
+            }
+        }
+
+        if (!bulkFetchSupported) {
+            logger.debug("Bulk segment fetches are not supported. Fetching segments one user at a time.");
+            for (ODPUserIdentifier user : misses) {
+                List<String> qualifiedSegments = getQualifiedSegments(user.getUserKey(), user.getUserValue());
+                if (qualifiedSegments != null) {
+                    segmentsByUser.put(user, qualifiedSegments);
+                }
+            }
+            return segmentsByUser;
+        }
+
+        for (int from = 0; from < misses.size(); from += batchSize) {
+            List<ODPUserIdentifier> batch = misses.subList(from, Math.min(from + batchSize, misses.size()));
+            fetchQualifiedSegments(odpConfig, batch, segmentsByUser);
+        }
+        return segmentsByUser;
+    }
+
+    private void fetchQualifiedSegments(ODPConfig odpConfig, List<ODPUserIdentifier> users, Map<ODPUserIdentifier, List<String>> segmentsByUser) {
+        logger.debug("ODP Cache Miss. Making a call to ODP Server for {} users.", users.size());
+
+        String qualifiedSegmentsResponse = apiManager.fetchQualifiedSegments(odpConfig.getApiKey(), odpConfig.getApiHost() + SEGMENT_URL_PATH, users, odpConfig.getAllSegments());
+        if (qualifiedSegmentsResponse == null) {
+            return;
+        }
+
+        Map<String, List<String>> segmentsByAlias;
+        try {
+            segmentsByAlias = ResponseJsonParserFactory.getParser().parseQualifiedSegmentsByAlias(qualifiedSegmentsResponse);
+        } catch (Exception e) {
+            logger.debug(e.getMessage());
+            segmentsByAlias = null;
+        }
+        if (segmentsByAlias == null) {
+            logger.error("Audience segments fetch failed (Error Parsing Response)");
+            return;
+        }
+
+        for (int i = 0; i < users.size(); i++) {
+            ODPUserIdentifier user = users.get(i);
+            List<String> qualifiedSegments = segmentsByAlias.get(ODPApiManager.getUserAlias(i));
+            if (qualifiedSegments != null) {
+                segmentsCache.save(getCacheKey(user.getUserKey().getKeyString(), user.getUserValue()), qualifiedSegments);
+                segmentsByUser.put(user, qualifiedSegments);
+            }
+        }
+    }
+
+    private List<String> awaitQualifiedSegments(CompletableFuture<List<String>> pendingFetch) {
+        try {
+            if (fetchTimeoutMillis > 0) {
+                return pendingFetch.get(fetchTimeoutMillis, TimeUnit.MILLISECONDS);
+            }
+            return pendingFetch.get();
+        } catch (InterruptedException e) {
+            logger.error("Audience segments fetch failed (Interrupted while waiting for the pending fetch)");
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (TimeoutException e) {
+            logger.error("Audience segments fetch failed (Timed out after {} ms waiting for the pending fetch)", fetchTimeoutMillis);
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public CompletableFuture<List<String>> getQualifiedSegmentsAsync(String fsUserId) {
+        return getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, fsUserId, Collections.emptyList());
+    }
+
+    public CompletableFuture<List<String>> getQualifiedSegmentsAsync(String fsUserId, List<ODPSegmentOption> options) {
+        return getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, fsUserId, options);
+    }
+
+    /**
+     * Fetch the qualified segments of a user without blocking the caller.
+     *
+     * Cache hits complete immediately. Misses are fetched on the fetch executor; when more than the maximum number
+     * of fetches are pending, or a fetch takes longer than the fetch timeout, the future completes with the cached
+     * segments of the user, or an empty list if none are cached.
+     *
+     * @return a future of the segments, completed with null when ODP is not enabled or the fetch failed
+     */
+    public CompletableFuture<List<String>> getQualifiedSegmentsAsync(ODPUserKey userKey, String userValue, List<ODPSegmentOption> options) {
+        ODPConfig odpConfig = this.odpConfig;
+        boolean cacheChecked = odpConfig != null && odpConfig.isReady() && odpConfig.hasSegments()
+            && !options.contains(ODPSegmentOption.RESET_CACHE) && !options.contains(ODPSegmentOption.IGNORE_CACHE);
+        if (cacheChecked) {
+            List<String> qualifiedSegments = segmentsCache.lookup(getCacheKey(userKey.getKeyString(), userValue));
+            if (qualifiedSegments != null) {
+                logger.debug("ODP Cache Hit. Returning segments from Cache.");
+                return CompletableFuture.completedFuture(qualifiedSegments);
+            }
+        }
+
+        if (pendingAsyncFetches.incrementAndGet() > maxPendingFetches) {
+            pendingAsyncFetches.decrementAndGet();
+            logger.warn("Audience segments fetch skipped ({} fetches already pending). Returning cached or empty segments.", maxPendingFetches);
+            return CompletableFuture.completedFuture(getFallbackSegments(userKey, userValue, options));
+        }
+
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        try {
+            getFetchExecutor().execute(() -> {
+                try {
+                    future.complete(getQualifiedSegments(userKey, userValue, options, cacheChecked));
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                } finally {
+                    pendingAsyncFetches.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingAsyncFetches.decrementAndGet();
+            logger.warn("Audience segments fetch rejected by the executor. Returning cached or empty segments.");
+            return CompletableFuture.completedFuture(getFallbackSegments(userKey, userValue, options));
+        }
+
+        if (fetchTimeoutMillis > 0 && !future.isDone()) {
+            scheduleTimeout(future, userKey, userValue, options);
+        }
+
+        return future;
+    }
+
+    public CompletableFuture<List<String>> getQualifiedSegmentsAsync(ODPUserKey userKey, String userValue) {
+        return getQualifiedSegmentsAsync(userKey, userValue, Collections.emptyList());
     }
 
     public void getQualifiedSegments(ODPUserKey userKey, String userValue, ODPSegmentFetchCallback callback, List<ODPSegmentOption> options) {
-        AsyncSegmentFetcher segmentFetcher = new AsyncSegmentFetcher(userKey, userValue, options, callback);
-        segmentFetcher.start();
+        getQualifiedSegmentsAsync(userKey, userValue, options).whenComplete((segments, error) -> {
+            if (error != null) {
+                logger.error("Audience segments fetch failed", error);
+                segments = null;
+            }
+            try {
+                callback.onCompleted(segments);
+            } catch (Exception e) {
+                logger.error("Error in the audience segments fetch callback", e);
+            }
+        });
     }
 
     public void getQualifiedSegments(ODPUserKey userKey, String userValue, ODPSegmentFetchCallback callback) {
@@ -135,29 +425,112 @@ public class ODPSegmentManager {
         segmentsCache.reset();
     }
 
-    @FunctionalInterface
-    public interface ODPSegmentFetchCallback {
-        void onCompleted(List<String> segments);
+    /**
+     * Stop the executor and timer this manager created for async fetches. An executor passed in is left running.
+     * Async fetches requested after closing complete with the cached or empty segments.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (defaultFetchExecutor != null) {
+            defaultFetchExecutor.shutdownNow();
+        }
+        if (timeoutScheduler != null) {
+            timeoutScheduler.shutdownNow();
+        }
     }
 
-    private class AsyncSegmentFetcher extends Thread {
+    private void scheduleTimeout(CompletableFuture<List<String>> future, ODPUserKey userKey, String userValue, List<ODPSegmentOption> options) {
+        ScheduledExecutorService scheduler = getTimeoutScheduler();
+        if (scheduler == null) {
+            return;
+        }
+        try {
+            ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+                if (future.complete(getFallbackSegments(userKey, userValue, options))) {
+                    logger.warn("Audience segments fetch timed out after {} ms. Returning cached or empty segments.", fetchTimeoutMillis);
+                }
+            }, fetchTimeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((segments, error) -> timeout.cancel(false));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Audience segments fetch timeout not scheduled (ODPSegmentManager is closed)");
+        }
+    }
 
-        private final ODPUserKey userKey;
-        private final String userValue;
-        private final List<ODPSegmentOption> segmentOptions;
-        private final ODPSegmentFetchCallback callback;
+    private List<String> getFallbackSegments(ODPUserKey userKey, String userValue, List<ODPSegmentOption> options) {
+        List<String> qualifiedSegments = null;
+        if (!options.contains(ODPSegmentOption.IGNORE_CACHE)) {
+            qualifiedSegments = segmentsCache.lookup(getCacheKey(userKey.getKeyString(), userValue));
+        }
+        return qualifiedSegments != null ? qualifiedSegments : Collections.emptyList();
+    }
+
+    private Executor getFetchExecutor() {
+        if (fetchExecutor != null) {
+            return fetchExecutor;
+        }
+        Executor executor = defaultFetchExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                if (closed) {
+                    throw new RejectedExecutionException("ODPSegmentManager is closed");
+                }
+                if (defaultFetchExecutor == null) {
+                    defaultFetchExecutor = createDefaultFetchExecutor();
+                }
+                executor = defaultFetchExecutor;
+            }
+        }
+        return executor;
+    }
 
-        public AsyncSegmentFetcher(ODPUserKey userKey, String userValue, List<ODPSegmentOption> segmentOptions, ODPSegmentFetchCallback callback) {
-            this.userKey = userKey;
-            this.userValue = userValue;
-            this.segmentOptions = segmentOptions;
-            this.callback = callback;
+    @Nullable
+    private ScheduledExecutorService getTimeoutScheduler() {
+        ScheduledExecutorService scheduler = timeoutScheduler;
+        if (scheduler == null) {
+            synchronized (this) {
+                if (closed) {
+                    return null;
+                }
+                if (timeoutScheduler == null) {
+                    timeoutScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+                }
+                scheduler = timeoutScheduler;
+            }
         }
+        return scheduler;
+    }
 
-        @Override
-        public void run() {
-            List<String> segments = getQualifiedSegments(userKey, userValue, segmentOptions);
-            callback.onCompleted(segments);
+    /**
+     * Virtual threads when the JVM has them (Java 21+), looked up reflectively since the SDK targets Java 8.
+     * Otherwise a pool of {@link #DEFAULT_FETCH_THREADS} daemon threads which time out when idle.
+     */
+    @VisibleForTesting
+    static ExecutorService createDefaultFetchExecutor() {
+        try {
+            Method newVirtualThreadPerTaskExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) newVirtualThreadPerTaskExecutor.invoke(null);
+        } catch (Exception e) {
+            logger.debug("Virtual threads are not available, using a thread pool for segment fetches.");
         }
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_FETCH_THREADS, DEFAULT_FETCH_THREADS,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), daemonThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory daemonThreadFactory() {
+        final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+        return runnable -> {
+            Thread thread = threadFactory.newThread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @FunctionalInterface
+    public interface ODPSegmentFetchCallback {
+        void onCompleted(List<String> segments);
     }
 }
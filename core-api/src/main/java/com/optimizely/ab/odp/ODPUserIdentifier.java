@@ -0,0 +1,66 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.odp;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+import java.util.Objects;
+
+/**
+ * A user identified to ODP by one of its {@link ODPUserKey}s, e.g. the fs_user_id "user-1".
+ */
+@Immutable
+public final class ODPUserIdentifier {
+
+    private final ODPUserKey userKey;
+    private final String userValue;
+
+    public ODPUserIdentifier(@Nonnull ODPUserKey userKey, @Nonnull String userValue) {
+        this.userKey = userKey;
+        this.userValue = userValue;
+    }
+
+    public static ODPUserIdentifier fsUserId(@Nonnull String fsUserId) {
+        return new ODPUserIdentifier(ODPUserKey.FS_USER_ID, fsUserId);
+    }
+
+    public ODPUserKey getUserKey() {
+        return userKey;
+    }
+
+    public String getUserValue() {
+        return userValue;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        ODPUserIdentifier other = (ODPUserIdentifier) obj;
+        return userKey == other.userKey && userValue.equals(other.userValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userKey, userValue);
+    }
+
+    @Override
+    public String toString() {
+        return userKey.getKeyString() + "=" + userValue;
+    }
+}
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,7 +16,20 @@
 package com.optimizely.ab.odp.parser;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ResponseJsonParser {
     public List<String> parseQualifiedSegments(String responseJson);
+
+    /**
+     * Parse the response of an aliased query for the segments of several users.
+     *
+     * Errors for individual users are logged, and those users are left out of the result.
+     * The default implementation cannot parse aliased responses and returns null.
+     *
+     * @return the qualified segments by alias, or null if the response could not be parsed
+     */
+    default Map<String, List<String>> parseQualifiedSegmentsByAlias(String responseJson) {
+        return null;
+    }
 }
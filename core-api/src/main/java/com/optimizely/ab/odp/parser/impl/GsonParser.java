@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -22,41 +22,81 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class GsonParser implements ResponseJsonParser {
     private static final Logger logger = LoggerFactory.getLogger(GsonParser.class);
 
     @Override
     public List<String> parseQualifiedSegments(String responseJson) {
-        List<String> parsedSegments = new ArrayList<>();
         try {
             JsonObject root = JsonParser.parseString(responseJson).getAsJsonObject();
 
             if (root.has("errors")) {
-                JsonArray errors =  root.getAsJsonArray("errors");
-                StringBuilder logMessage = new StringBuilder();
-                for (int i = 0; i < errors.size(); i++) {
-                    if (i > 0) {
-                        logMessage.append(", ");
-                    }
-                    logMessage.append(errors.get(i).getAsJsonObject().get("message").getAsString());
-                }
-                logger.error(logMessage.toString());
+                logErrors(root.getAsJsonArray("errors"));
                 return null;
             }
 
             JsonArray edges = root.getAsJsonObject("data").getAsJsonObject("customer").getAsJsonObject("audiences").getAsJsonArray("edges");
-            for (int i = 0; i < edges.size(); i++) {
-                JsonObject node = edges.get(i).getAsJsonObject().getAsJsonObject("node");
-                if (node.has("state") && node.get("state").getAsString().equals("qualified")) {
-                    parsedSegments.add(node.get("name").getAsString());
+            return parseEdges(edges);
+        } catch (JsonSyntaxException e) {
+            logger.error("Error parsing qualified segments from response", e);
+            return null;
+        }
+    }
+
+    @Override
+    public Map<String, List<String>> parseQualifiedSegmentsByAlias(String responseJson) {
+        try {
+            JsonObject root = JsonParser.parseString(responseJson).getAsJsonObject();
+
+            if (root.has("errors")) {
+                logErrors(root.getAsJsonArray("errors"));
+            }
+
+            JsonElement data = root.get("data");
+            if (data == null || !data.isJsonObject()) {
+                if (!root.has("errors")) {
+                    logger.error("Error parsing qualified segments from response");
+                }
+                return null;
+            }
+
+            Map<String, List<String>> parsedSegments = new HashMap<>();
+            for (Map.Entry<String, JsonElement> customer : data.getAsJsonObject().entrySet()) {
+                if (customer.getValue().isJsonObject()) {
+                    JsonArray edges = customer.getValue().getAsJsonObject().getAsJsonObject("audiences").getAsJsonArray("edges");
+                    parsedSegments.put(customer.getKey(), parseEdges(edges));
                 }
             }
             return parsedSegments;
-        } catch (JsonSyntaxException e) {
+        } catch (JsonSyntaxException | IllegalStateException | NullPointerException e) {
             logger.error("Error parsing qualified segments from response", e);
             return null;
         }
     }
+
+    private static List<String> parseEdges(JsonArray edges) {
+        List<String> parsedSegments = new ArrayList<>();
+        for (int i = 0; i < edges.size(); i++) {
+            JsonObject node = edges.get(i).getAsJsonObject().getAsJsonObject("node");
+            if (node.has("state") && node.get("state").getAsString().equals("qualified")) {
+                parsedSegments.add(node.get("name").getAsString());
+            }
+        }
+        return parsedSegments;
+    }
+
+    private static void logErrors(JsonArray errors) {
+        StringBuilder logMessage = new StringBuilder();
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                logMessage.append(", ");
+            }
+            logMessage.append(errors.get(i).getAsJsonObject().get("message").getAsString());
+        }
+        logger.error(logMessage.toString());
+    }
 }
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -23,8 +23,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 public class JacksonParser implements ResponseJsonParser {
     private static final Logger logger = LoggerFactory.getLogger(JacksonParser.class);
@@ -32,29 +34,47 @@ public class JacksonParser implements ResponseJsonParser {
     @Override
     public List<String> parseQualifiedSegments(String responseJson) {
         ObjectMapper objectMapper = new ObjectMapper();
-        List<String> parsedSegments = new ArrayList<>();
         JsonNode root;
         try {
             root = objectMapper.readTree(responseJson);
 
             if (root.has("errors")) {
-                JsonNode errors = root.path("errors");
-                StringBuilder logMessage = new StringBuilder();
-                for (int i = 0; i < errors.size(); i++) {
-                    if (i > 0) {
-                        logMessage.append(", ");
-                    }
-                    logMessage.append(errors.get(i).path("message"));
-                }
-                logger.error(logMessage.toString());
+                logErrors(root.path("errors"));
                 return null;
             }
 
             JsonNode edges = root.path("data").path("customer").path("audiences").path("edges");
-            for (JsonNode edgeNode : edges) {
-                String state = edgeNode.path("node").path("state").asText();
-                if (state.equals("qualified")) {
-                    parsedSegments.add(edgeNode.path("node").path("name").asText());
+            return parseEdges(edges);
+        } catch (JsonProcessingException e) {
+            logger.error("Error parsing qualified segments from response", e);
+            return null;
+        }
+    }
+
+    @Override
+    public Map<String, List<String>> parseQualifiedSegmentsByAlias(String responseJson) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        try {
+            JsonNode root = objectMapper.readTree(responseJson);
+
+            if (root.has("errors")) {
+                logErrors(root.path("errors"));
+            }
+
+            JsonNode data = root.path("data");
+            if (!data.isObject()) {
+                if (!root.has("errors")) {
+                    logger.error("Error parsing qualified segments from response");
+                }
+                return null;
+            }
+
+            Map<String, List<String>> parsedSegments = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> customers = data.fields();
+            while (customers.hasNext()) {
+                Map.Entry<String, JsonNode> customer = customers.next();
+                if (customer.getValue().isObject()) {
+                    parsedSegments.put(customer.getKey(), parseEdges(customer.getValue().path("audiences").path("edges")));
                 }
             }
             return parsedSegments;
@@ -63,4 +83,26 @@ public class JacksonParser implements ResponseJsonParser {
             return null;
         }
     }
+
+    private static List<String> parseEdges(JsonNode edges) {
+        List<String> parsedSegments = new ArrayList<>();
+        for (JsonNode edgeNode : edges) {
+            String state = edgeNode.path("node").path("state").asText();
+            if (state.equals("qualified")) {
+                parsedSegments.add(edgeNode.path("node").path("name").asText());
+            }
+        }
+        return parsedSegments;
+    }
+
+    private static void logErrors(JsonNode errors) {
+        StringBuilder logMessage = new StringBuilder();
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                logMessage.append(", ");
+            }
+            logMessage.append(errors.get(i).path("message"));
+        }
+        logger.error(logMessage.toString());
+    }
 }
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -23,41 +23,81 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class JsonParser implements ResponseJsonParser {
     private static final Logger logger = LoggerFactory.getLogger(JsonParser.class);
 
     @Override
     public List<String> parseQualifiedSegments(String responseJson) {
-        List<String> parsedSegments = new ArrayList<>();
         try {
             JSONObject root = new JSONObject(responseJson);
 
             if (root.has("errors")) {
-                JSONArray errors =  root.getJSONArray("errors");
-                StringBuilder logMessage = new StringBuilder();
-                for (int i = 0; i < errors.length(); i++) {
-                    if (i > 0) {
-                        logMessage.append(", ");
-                    }
-                    logMessage.append(errors.getJSONObject(i).getString("message"));
-                }
-                logger.error(logMessage.toString());
+                logErrors(root.getJSONArray("errors"));
                 return null;
             }
 
             JSONArray edges = root.getJSONObject("data").getJSONObject("customer").getJSONObject("audiences").getJSONArray("edges");
-            for (int i = 0; i < edges.length(); i++) {
-                JSONObject node = edges.getJSONObject(i).getJSONObject("node");
-                if (node.has("state") && node.getString("state").equals("qualified")) {
-                    parsedSegments.add(node.getString("name"));
+            return parseEdges(edges);
+        } catch (JSONException e) {
+            logger.error("Error parsing qualified segments from response", e);
+            return  null;
+        }
+    }
+
+    @Override
+    public Map<String, List<String>> parseQualifiedSegmentsByAlias(String responseJson) {
+        try {
+            JSONObject root = new JSONObject(responseJson);
+
+            if (root.has("errors")) {
+                logErrors(root.getJSONArray("errors"));
+            }
+
+            JSONObject data = root.optJSONObject("data");
+            if (data == null) {
+                if (!root.has("errors")) {
+                    logger.error("Error parsing qualified segments from response");
+                }
+                return null;
+            }
+
+            Map<String, List<String>> parsedSegments = new HashMap<>();
+            for (String alias : data.keySet()) {
+                JSONObject customer = data.optJSONObject(alias);
+                if (customer != null) {
+                    parsedSegments.put(alias, parseEdges(customer.getJSONObject("audiences").getJSONArray("edges")));
                 }
             }
             return parsedSegments;
         } catch (JSONException e) {
             logger.error("Error parsing qualified segments from response", e);
-            return  null;
+            return null;
+        }
+    }
+
+    private static List<String> parseEdges(JSONArray edges) {
+        List<String> parsedSegments = new ArrayList<>();
+        for (int i = 0; i < edges.length(); i++) {
+            JSONObject node = edges.getJSONObject(i).getJSONObject("node");
+            if (node.has("state") && node.getString("state").equals("qualified")) {
+                parsedSegments.add(node.getString("name"));
+            }
+        }
+        return parsedSegments;
+    }
+
+    private static void logErrors(JSONArray errors) {
+        StringBuilder logMessage = new StringBuilder();
+        for (int i = 0; i < errors.length(); i++) {
+            if (i > 0) {
+                logMessage.append(", ");
+            }
+            logMessage.append(errors.getJSONObject(i).getString("message"));
         }
+        logger.error(logMessage.toString());
     }
 }
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -24,43 +24,84 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class JsonSimpleParser implements ResponseJsonParser {
     private static final Logger logger = LoggerFactory.getLogger(JsonSimpleParser.class);
 
     @Override
     public List<String> parseQualifiedSegments(String responseJson) {
-        List<String> parsedSegments = new ArrayList<>();
         JSONParser parser = new JSONParser();
         JSONObject root = null;
         try {
             root = (JSONObject) parser.parse(responseJson);
 
             if (root.containsKey("errors")) {
-                JSONArray errors = (JSONArray) root.get("errors");
-                StringBuilder logMessage = new StringBuilder();
-                for (int i = 0; i < errors.size(); i++) {
-                    if (i > 0) {
-                        logMessage.append(", ");
-                    }
-                    logMessage.append((String)((JSONObject) errors.get(i)).get("message"));
-                }
-                logger.error(logMessage.toString());
+                logErrors((JSONArray) root.get("errors"));
                 return null;
             }
 
             JSONArray edges = (JSONArray)((JSONObject)((JSONObject)(((JSONObject) root.get("data"))).get("customer")).get("audiences")).get("edges");
-            for (int i = 0; i < edges.size(); i++) {
-                JSONObject node = (JSONObject) ((JSONObject) edges.get(i)).get("node");
-                if (node.containsKey("state") && (node.get("state")).equals("qualified")) {
-                    parsedSegments.add((String) node.get("name"));
+            return parseEdges(edges);
+        } catch (ParseException | NullPointerException e) {
+            logger.error("Error parsing qualified segments from response", e);
+            return null;
+        }
+    }
+
+    @Override
+    public Map<String, List<String>> parseQualifiedSegmentsByAlias(String responseJson) {
+        JSONParser parser = new JSONParser();
+        try {
+            JSONObject root = (JSONObject) parser.parse(responseJson);
+
+            if (root.containsKey("errors")) {
+                logErrors((JSONArray) root.get("errors"));
+            }
+
+            if (!(root.get("data") instanceof JSONObject)) {
+                if (!root.containsKey("errors")) {
+                    logger.error("Error parsing qualified segments from response");
+                }
+                return null;
+            }
+
+            Map<String, List<String>> parsedSegments = new HashMap<>();
+            for (Object entry : ((JSONObject) root.get("data")).entrySet()) {
+                Map.Entry<?, ?> customer = (Map.Entry<?, ?>) entry;
+                if (customer.getValue() instanceof JSONObject) {
+                    JSONArray edges = (JSONArray) ((JSONObject) ((JSONObject) customer.getValue()).get("audiences")).get("edges");
+                    parsedSegments.put((String) customer.getKey(), parseEdges(edges));
                 }
             }
             return parsedSegments;
-        } catch (ParseException | NullPointerException e) {
+        } catch (ParseException | NullPointerException | ClassCastException e) {
             logger.error("Error parsing qualified segments from response", e);
             return null;
         }
     }
+
+    private static List<String> parseEdges(JSONArray edges) {
+        List<String> parsedSegments = new ArrayList<>();
+        for (int i = 0; i < edges.size(); i++) {
+            JSONObject node = (JSONObject) ((JSONObject) edges.get(i)).get("node");
+            if (node.containsKey("state") && (node.get("state")).equals("qualified")) {
+                parsedSegments.add((String) node.get("name"));
+            }
+        }
+        return parsedSegments;
+    }
+
+    private static void logErrors(JSONArray errors) {
+        StringBuilder logMessage = new StringBuilder();
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                logMessage.append(", ");
+            }
+            logMessage.append((String)((JSONObject) errors.get(i)).get("message"));
+        }
+        logger.error(logMessage.toString());
+    }
 }
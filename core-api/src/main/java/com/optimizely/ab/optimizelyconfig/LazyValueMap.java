@@ -0,0 +1,106 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.optimizelyconfig;
+
+import javax.annotation.Nonnull;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Unmodifiable map whose keys are known up front and whose values are built on first access.
+ *
+ * Each value is built once from the source entity of its key, so reading one entry does not build the others.
+ * Iterating the entries, and equals or hashCode, build all of them.
+ *
+ * @param <K> the type of the keys
+ * @param <S> the type of the source entities
+ * @param <V> the type of the values
+ */
+final class LazyValueMap<K, S, V> extends AbstractMap<K, V> {
+
+    private final Map<K, S> sources;
+    private final Function<S, V> factory;
+    private final ConcurrentHashMap<K, V> values = new ConcurrentHashMap<>();
+
+    /**
+     * @param sources the source entity of each key
+     * @param factory builds the value of a source entity, never null
+     */
+    LazyValueMap(@Nonnull Map<K, S> sources, @Nonnull Function<S, V> factory) {
+        this.sources = Collections.unmodifiableMap(sources);
+        this.factory = factory;
+    }
+
+    @Override
+    public V get(Object key) {
+        S source = sources.get(key);
+        if (source == null) {
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        K typedKey = (K) key;
+        return values.computeIfAbsent(typedKey, k -> factory.apply(source));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return sources.containsKey(key);
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return sources.keySet();
+    }
+
+    @Override
+    public int size() {
+        return sources.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                Iterator<K> keys = sources.keySet().iterator();
+                return new Iterator<Entry<K, V>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<K, V> next() {
+                        K key = keys.next();
+                        return new SimpleImmutableEntry<>(key, get(key));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return sources.size();
+            }
+        };
+    }
+}
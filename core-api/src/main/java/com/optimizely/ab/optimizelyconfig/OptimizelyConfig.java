@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright 2020-2021, Optimizely, Inc. and contributors                        *
+ * Copyright 2020-2021, 2023, Optimizely, Inc. and contributors                  *
  *                                                                          *
  * Licensed under the Apache License, Version 2.0 (the "License");          *
  * you may not use this file except in compliance with the License.         *
@@ -21,6 +21,7 @@ import com.optimizely.ab.config.Attribute;
 import com.optimizely.ab.config.EventType;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 /**
  * Interface for OptimizleyConfig
@@ -32,11 +33,11 @@ public class OptimizelyConfig {
     private Map<String, OptimizelyFeature> featuresMap;
     private List<OptimizelyAttribute> attributes;
     private List<OptimizelyEvent> events;
-    private List<OptimizelyAudience> audiences;
+    private Supplier<List<OptimizelyAudience>> audiences;
     private String revision;
     private String sdkKey;
     private String environmentKey;
-    private String datafile;
+    private Supplier<String> datafile;
 
     public OptimizelyConfig(Map<String, OptimizelyExperiment> experimentsMap,
                             Map<String, OptimizelyFeature> featuresMap,
@@ -47,6 +48,19 @@ public class OptimizelyConfig {
                             List<OptimizelyEvent> events,
                             List<OptimizelyAudience> audiences,
                             String datafile) {
+        this(experimentsMap, featuresMap, revision, sdkKey, environmentKey, attributes, events,
+            () -> audiences, () -> datafile);
+    }
+
+    private OptimizelyConfig(Map<String, OptimizelyExperiment> experimentsMap,
+                             Map<String, OptimizelyFeature> featuresMap,
+                             String revision,
+                             String sdkKey,
+                             String environmentKey,
+                             List<OptimizelyAttribute> attributes,
+                             List<OptimizelyEvent> events,
+                             Supplier<List<OptimizelyAudience>> audiences,
+                             Supplier<String> datafile) {
 
         // This experimentsMap is for experiments of legacy projects only.
         // For flag projects, experiment keys are not guaranteed to be unique
@@ -64,6 +78,23 @@ public class OptimizelyConfig {
         this.datafile = datafile;
     }
 
+    /**
+     * @param audiences supplies the audiences on each {@link #getAudiences()} call
+     * @param datafile  supplies the datafile on each {@link #getDatafile()} call
+     */
+    static OptimizelyConfig withSuppliers(Map<String, OptimizelyExperiment> experimentsMap,
+                                          Map<String, OptimizelyFeature> featuresMap,
+                                          String revision,
+                                          String sdkKey,
+                                          String environmentKey,
+                                          List<OptimizelyAttribute> attributes,
+                                          List<OptimizelyEvent> events,
+                                          Supplier<List<OptimizelyAudience>> audiences,
+                                          Supplier<String> datafile) {
+        return new OptimizelyConfig(experimentsMap, featuresMap, revision, sdkKey, environmentKey, attributes, events,
+            audiences, datafile);
+    }
+
     public Map<String, OptimizelyExperiment> getExperimentsMap() {
         return experimentsMap;
     }
@@ -76,7 +107,7 @@ public class OptimizelyConfig {
 
     public List<OptimizelyEvent> getEvents() { return events; }
 
-    public List<OptimizelyAudience> getAudiences() { return audiences; }
+    public List<OptimizelyAudience> getAudiences() { return audiences.get(); }
 
     public String getRevision() {
         return revision;
@@ -89,7 +120,7 @@ public class OptimizelyConfig {
     }
 
     public String getDatafile() {
-        return datafile;
+        return datafile.get();
     }
 
     @Override
@@ -102,7 +133,7 @@ public class OptimizelyConfig {
             featuresMap.equals(optimizelyConfig.getFeaturesMap()) &&
             attributes.equals(optimizelyConfig.getAttributes()) &&
             events.equals(optimizelyConfig.getEvents()) &&
-            audiences.equals(optimizelyConfig.getAudiences());
+            getAudiences().equals(optimizelyConfig.getAudiences());
     }
 
     @Override
@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright 2020-2021, Optimizely, Inc. and contributors                        *
+ * Copyright 2020-2021, 2023, Optimizely, Inc. and contributors                  *
  *                                                                          *
  * Licensed under the Apache License, Version 2.0 (the "License");          *
  * you may not use this file except in compliance with the License.         *
@@ -18,23 +18,30 @@ package com.optimizely.ab.optimizelyconfig;
 import com.optimizely.ab.annotations.VisibleForTesting;
 import com.optimizely.ab.config.*;
 import com.optimizely.ab.config.audience.Audience;
+import com.optimizely.ab.internal.MemoizingSupplier;
 
 import java.util.*;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the {@link OptimizelyConfig} of a {@link ProjectConfig}.
+ *
+ * Experiments and features are built when their entry of the experiments or features map is first read, and the
+ * audiences and datafile when they are first requested, so callers reading one flag do not pay for the project.
+ */
 public class OptimizelyConfigService {
 
     private ProjectConfig projectConfig;
     private OptimizelyConfig optimizelyConfig;
-    private List<OptimizelyAudience> audiences;
-    private List<OptimizelyExperiment> experimentRules;
     private Map<String, String> audiencesMap;
+    private Map<String, List<FeatureVariable>> featureKeyToVariablesMap;
     private Map<String, List<FeatureVariable>> featureIdToVariablesMap = new HashMap<>();
-    private Map<String, OptimizelyExperiment> experimentMapByExperimentId = new HashMap<>();
+    private Map<String, OptimizelyExperiment> experimentMapByExperimentId = new ConcurrentHashMap<>();
 
     public OptimizelyConfigService(ProjectConfig projectConfig) {
         this.projectConfig = projectConfig;
-        this.audiences = getAudiencesList(projectConfig.getTypedAudiences(), projectConfig.getAudiences());
-        this.audiencesMap = getAudiencesMap(this.audiences);
+        this.audiencesMap = generateAudienceIdToNameMap(projectConfig.getTypedAudiences(), projectConfig.getAudiences());
+        this.featureKeyToVariablesMap = generateFeatureKeyToVariablesMap();
 
         List<OptimizelyAttribute> optimizelyAttributes = new ArrayList<>();
         List<OptimizelyEvent> optimizelyEvents = new ArrayList<>();
@@ -62,7 +69,7 @@ public class OptimizelyConfigService {
             }
         }
 
-        optimizelyConfig = new OptimizelyConfig(
+        optimizelyConfig = OptimizelyConfig.withSuppliers(
             experimentsMap,
             getFeaturesMap(experimentsMap),
             projectConfig.getRevision(),
@@ -70,8 +77,8 @@ public class OptimizelyConfigService {
             projectConfig.getEnvironmentKey(),
             optimizelyAttributes,
             optimizelyEvents,
-            this.audiences,
-            projectConfig.toDatafile()
+            new MemoizingSupplier<>(() -> getAudiencesList(projectConfig.getTypedAudiences(), projectConfig.getAudiences())),
+            new MemoizingSupplier<>(projectConfig::toDatafile)
         );
     }
 
@@ -115,20 +122,20 @@ public class OptimizelyConfigService {
         if (experiments == null) {
             return Collections.emptyMap();
         }
-        Map<String, OptimizelyExperiment> featureExperimentMap = new HashMap<>();
-
+        Map<String, Experiment> experimentKeyMap = new HashMap<>();
         for (Experiment experiment : experiments) {
-            OptimizelyExperiment optimizelyExperiment = new OptimizelyExperiment(
-                experiment.getId(),
-                experiment.getKey(),
-                getVariationsMap(experiment.getVariations(), experiment.getId(), null),
-                experiment.serializeConditions(this.audiencesMap)
-            );
-
-            featureExperimentMap.put(experiment.getKey(), optimizelyExperiment);
-            experimentMapByExperimentId.put(experiment.getId(), optimizelyExperiment);
+            experimentKeyMap.put(experiment.getKey(), experiment);
         }
-        return featureExperimentMap;
+        return new LazyValueMap<>(experimentKeyMap, this::getOptimizelyExperiment);
+    }
+
+    private OptimizelyExperiment getOptimizelyExperiment(Experiment experiment) {
+        return experimentMapByExperimentId.computeIfAbsent(experiment.getId(), experimentId -> new OptimizelyExperiment(
+            experiment.getId(),
+            experiment.getKey(),
+            getVariationsMap(experiment.getVariations(), experiment.getId(), null),
+            experiment.serializeConditions(this.audiencesMap)
+        ));
     }
 
     @VisibleForTesting
@@ -158,7 +165,6 @@ public class OptimizelyConfigService {
     @VisibleForTesting
     Map<String, OptimizelyVariable> getMergedVariablesMap(Variation variation, String experimentId, String featureId) {
         String featureKey = this.getExperimentFeatureKey(experimentId);
-        Map<String, List<FeatureVariable>> featureKeyToVariablesMap = generateFeatureKeyToVariablesMap();
         if (featureKey == null && featureId == null) {
             return Collections.emptyMap();
         }
@@ -219,26 +225,27 @@ public class OptimizelyConfigService {
             return Collections.emptyMap();
         }
 
-        Map<String, OptimizelyFeature> optimizelyFeatureKeyMap = new HashMap<>();
+        Map<String, FeatureFlag> featureFlagKeyMap = new HashMap<>();
         for (FeatureFlag featureFlag : featureFlags) {
-            Map<String, OptimizelyExperiment> experimentsMapForFeature =
-                getExperimentsMapForFeature(featureFlag.getExperimentIds());
-
-            List<OptimizelyExperiment> deliveryRules =
-                this.getDeliveryRules(featureFlag.getRolloutId(), featureFlag.getId());
-
-            OptimizelyFeature optimizelyFeature = new OptimizelyFeature(
-                featureFlag.getId(),
-                featureFlag.getKey(),
-                experimentsMapForFeature,
-                getFeatureVariablesMap(featureFlag.getVariables()),
-                experimentRules,
-                deliveryRules
-            );
-
-            optimizelyFeatureKeyMap.put(featureFlag.getKey(), optimizelyFeature);
+            featureFlagKeyMap.put(featureFlag.getKey(), featureFlag);
         }
-        return optimizelyFeatureKeyMap;
+        return new LazyValueMap<>(featureFlagKeyMap, this::getOptimizelyFeature);
+    }
+
+    private OptimizelyFeature getOptimizelyFeature(FeatureFlag featureFlag) {
+        List<OptimizelyExperiment> experimentRules = getExperimentRules(featureFlag.getExperimentIds());
+
+        List<OptimizelyExperiment> deliveryRules =
+            this.getDeliveryRules(featureFlag.getRolloutId(), featureFlag.getId());
+
+        return new OptimizelyFeature(
+            featureFlag.getId(),
+            featureFlag.getKey(),
+            getExperimentKeyMap(experimentRules),
+            getFeatureVariablesMap(featureFlag.getVariables()),
+            experimentRules,
+            deliveryRules
+        );
     }
 
     List<OptimizelyExperiment> getDeliveryRules(String rolloutId, String featureId) {
@@ -271,17 +278,26 @@ public class OptimizelyConfigService {
             return Collections.emptyMap();
         }
 
+        return getExperimentKeyMap(getExperimentRules(experimentIds));
+    }
+
+    private List<OptimizelyExperiment> getExperimentRules(List<String> experimentIds) {
+        if (experimentIds == null) {
+            return Collections.emptyList();
+        }
+
         List<OptimizelyExperiment> experimentRulesList = new ArrayList<>();
+        for (String experimentId : experimentIds) {
+            experimentRulesList.add(getOptimizelyExperiment(projectConfig.getExperimentIdMapping().get(experimentId)));
+        }
+        return experimentRulesList;
+    }
 
+    private static Map<String, OptimizelyExperiment> getExperimentKeyMap(List<OptimizelyExperiment> experiments) {
         Map<String, OptimizelyExperiment> optimizelyExperimentKeyMap = new HashMap<>();
-        for (String experimentId : experimentIds) {
-            OptimizelyExperiment optimizelyExperiment = experimentMapByExperimentId.get(experimentId);
+        for (OptimizelyExperiment optimizelyExperiment : experiments) {
             optimizelyExperimentKeyMap.put(optimizelyExperiment.getKey(), optimizelyExperiment);
-            experimentRulesList.add(optimizelyExperiment);
         }
-
-        this.experimentRules = experimentRulesList;
-
         return optimizelyExperimentKeyMap;
     }
 
@@ -343,6 +359,29 @@ public class OptimizelyConfigService {
         return audiencesList;
     }
 
+    /**
+     * Same names as {@link #getAudiencesMap(List)} of {@link #getAudiencesList(List, List)}, without serializing
+     * the audience conditions.
+     */
+    private static Map<String, String> generateAudienceIdToNameMap(List<Audience> typedAudiences, List<Audience> audiences) {
+        Map<String, String> audiencesMap = new HashMap<>();
+        if (audiences != null) {
+            for (Audience audience : audiences) {
+                if (!audience.getId().equals("$opt_dummy_audience")) {
+                    audiencesMap.put(audience.getId(), audience.getName());
+                }
+            }
+        }
+
+        // typed audiences take precedence
+        if (typedAudiences != null) {
+            for (Audience audience : typedAudiences) {
+                audiencesMap.put(audience.getId(), audience.getName());
+            }
+        }
+        return audiencesMap;
+    }
+
     @VisibleForTesting
     Map<String, String> getAudiencesMap(List<OptimizelyAudience> optimizelyAudiences) {
         Map<String, String> audiencesMap = new HashMap<>();
@@ -0,0 +1,72 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.optimizelydecision;
+
+import javax.annotation.Nonnull;
+import java.util.Arrays;
+
+/**
+ * A decision reason recorded as its message format and arguments.
+ *
+ * The message is only formatted when it is first read, so reasons that are neither reported
+ * ({@link OptimizelyDecideOption#INCLUDE_REASONS}) nor logged cost no formatting. Pass the reason itself
+ * as a logger argument (e.g. {@code logger.info("{}", reason)}) to keep logging lazy as well.
+ */
+public final class DecisionReason {
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final String format;
+    private final Object[] args;
+    private volatile String message;
+
+    public DecisionReason(@Nonnull String format, Object... args) {
+        this.format = format;
+        this.args = args != null ? args : NO_ARGS;
+    }
+
+    /**
+     * @return the message format, which also identifies the kind of reason
+     */
+    @Nonnull
+    public String getFormat() {
+        return format;
+    }
+
+    @Nonnull
+    public Object[] getArgs() {
+        return Arrays.copyOf(args, args.length);
+    }
+
+    /**
+     * @return the formatted message, formatted on first call
+     */
+    @Nonnull
+    public String getMessage() {
+        String result = message;
+        if (result == null) {
+            result = String.format(format, args);
+            message = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2020, Optimizely and contributors
+ *    Copyright 2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -22,7 +22,7 @@ import java.util.List;
 public class DecisionReasons {
 
     protected final List<String> errors = new ArrayList<>();
-    protected final List<String> infos = new ArrayList<>();
+    protected final List<DecisionReason> infos = new ArrayList<>();
 
     public void addError(String format, Object... args) {
         String message = String.format(format, args);
@@ -30,9 +30,29 @@ public class DecisionReasons {
     }
 
     public String addInfo(String format, Object... args) {
-        String message = String.format(format, args);
-        infos.add(message);
-        return message;
+        return info(format, args).getMessage();
+    }
+
+    /**
+     * Record an info reason without formatting it.
+     *
+     * @param format the message format
+     * @param args   the message arguments
+     * @return the recorded reason, to be passed on to the logger
+     */
+    public DecisionReason info(String format, Object... args) {
+        DecisionReason reason = new DecisionReason(format, args);
+        infos.add(reason);
+        return reason;
+    }
+
+    /**
+     * Record an info reason again.
+     *
+     * @param reason the reason to record
+     */
+    public void addInfo(DecisionReason reason) {
+        infos.add(reason);
     }
 
     public void merge(DecisionReasons target) {
@@ -41,8 +61,11 @@ public class DecisionReasons {
     }
 
     public List<String> toReport() {
-        List<String> reasons = new ArrayList<>(errors);
-        reasons.addAll(infos);
+        List<String> reasons = new ArrayList<>(errors.size() + infos.size());
+        reasons.addAll(errors);
+        for (DecisionReason info : infos) {
+            reasons.add(info.getMessage());
+        }
         return reasons;
     }
 
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2020, Optimizely and contributors
+ *    Copyright 2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,7 +16,7 @@
  */
 /**
  *
- *    Copyright 2020, Optimizely and contributors
+ *    Copyright 2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -52,6 +52,17 @@ public class DefaultDecisionReasons extends DecisionReasons {
         return String.format(format, args);
     }
 
+    @Override
+    public DecisionReason info(String format, Object... args) {
+        // not tracked, so formatted only if logged.
+        return new DecisionReason(format, args);
+    }
+
+    @Override
+    public void addInfo(DecisionReason reason) {
+        // skip tracking
+    }
+
     @Override
     public void merge(DecisionReasons target) {
         // ignore infos
@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright 2016-2022, Optimizely, Inc. and contributors                   *
+ * Copyright 2016-2023, Optimizely, Inc. and contributors                   *
  *                                                                          *
  * Licensed under the Apache License, Version 2.0 (the "License");          *
  * you may not use this file except in compliance with the License.         *
@@ -23,6 +23,7 @@ import com.google.gson.JsonParser;
 import com.optimizely.ab.bucketing.Bucketer;
 import com.optimizely.ab.bucketing.DecisionService;
 import com.optimizely.ab.bucketing.FeatureDecision;
+import com.optimizely.ab.bucketing.UserProfileService;
 import com.optimizely.ab.config.*;
 import com.optimizely.ab.error.NoOpErrorHandler;
 import com.optimizely.ab.error.RaiseExceptionErrorHandler;
@@ -194,11 +195,17 @@ public class OptimizelyTest {
 
         Mockito.when(mockODPManager.getEventManager()).thenReturn(mockODPEventManager);
 
+        UserProfileService mockUserProfileService = mock(
+            UserProfileService.class,
+            withSettings().extraInterfaces(AutoCloseable.class)
+        );
+
         Optimizely optimizely = Optimizely.builder()
             .withEventHandler(mockEventHandler)
             .withEventProcessor(mockEventProcessor)
             .withConfigManager(mockProjectConfigManager)
             .withODPManager(mockODPManager)
+            .withUserProfileService(mockUserProfileService)
             .build();
 
         optimizely.close();
@@ -207,6 +214,7 @@ public class OptimizelyTest {
         verify((AutoCloseable) mockProjectConfigManager).close();
         verify((AutoCloseable) mockEventProcessor).close();
         verify((AutoCloseable) mockODPManager).close();
+        verify((AutoCloseable) mockUserProfileService).close();
     }
 
     //======== activate tests ========//
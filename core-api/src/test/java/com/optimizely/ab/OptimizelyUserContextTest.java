@@ -686,6 +686,49 @@ public class OptimizelyUserContextTest {
         verify(ups, never()).save(anyObject());
     }
 
+    @Test
+    public void decideAll_userProfileLookedUpAndSavedOnce() throws Exception {
+        UserProfileService ups = mock(UserProfileService.class);
+
+        optimizely = new Optimizely.Builder()
+            .withDatafile(datafile)
+            .withUserProfileService(ups)
+            .build();
+
+        OptimizelyUserContext user = optimizely.createUserContext(userId);
+        Map<String, OptimizelyDecision> decisions = user.decideAll();
+        assertTrue(decisions.size() > 1);
+
+        // the profile is shared by all flags of the call
+        verify(ups, times(1)).lookup(userId);
+        verify(ups, times(1)).save(anyObject());
+    }
+
+    @Test
+    public void decide_audienceResultsCachedUntilAttributesChange() {
+        String flagKey = "feature_1";
+        OptimizelyUserContext user = optimizely.createUserContext(userId);
+
+        // experiment audience "gender" and both rollout audiences are evaluated once
+        OptimizelyDecision decision = user.decide(flagKey);
+        assertEquals("18322080788", decision.getRuleKey());
+        assertEquals(0, user.getAudienceResultCache().getHitCount());
+        assertEquals(3, user.getAudienceResultCache().getMissCount());
+
+        decision = user.decide(flagKey);
+        assertEquals("18322080788", decision.getRuleKey());
+        assertEquals(3, user.getAudienceResultCache().getHitCount());
+        assertEquals(3, user.getAudienceResultCache().getMissCount());
+
+        user.setAttribute("gender", "f");
+        decision = user.decide(flagKey);
+        assertEquals("exp_with_audience", decision.getRuleKey());
+        assertEquals(4, user.getAudienceResultCache().getMissCount());
+
+        user.setQualifiedSegments(Collections.singletonList("odp-segment-1"));
+        assertEquals(0, user.getAudienceResultCache().size());
+    }
+
     @Test
     public void decideOptions_excludeVariables() {
         String flagKey = "feature_1";
@@ -0,0 +1,153 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class BatchUserProfileServiceTest {
+
+    private static final String USER_ID = "user1";
+
+    @Test
+    public void lookupConvertsTypedProfileToMap() throws Exception {
+        InMemoryUserProfileService userProfileService = new InMemoryUserProfileService();
+        UserProfile userProfile = new UserProfile(USER_ID, Collections.singletonMap("exp1", new Decision("var1")));
+        userProfileService.saveUserProfiles(Collections.singletonList(userProfile));
+
+        Map<String, Object> userProfileMap = userProfileService.lookup(USER_ID);
+        assertTrue(UserProfileUtils.isValidUserProfileMap(userProfileMap));
+        assertEquals(userProfile, UserProfileUtils.convertMapToUserProfile(userProfileMap));
+        assertNull(userProfileService.lookup("user2"));
+    }
+
+    @Test
+    public void saveConvertsMapToTypedProfile() throws Exception {
+        InMemoryUserProfileService userProfileService = new InMemoryUserProfileService();
+        UserProfile userProfile = new UserProfile(USER_ID, Collections.singletonMap("exp1", new Decision("var1")));
+
+        userProfileService.save(userProfile.toMap());
+        assertEquals(userProfile, userProfileService.getProfile(USER_ID));
+    }
+
+    @Test
+    public void lookupUserProfilesInBulk() throws Exception {
+        InMemoryUserProfileService userProfileService = new InMemoryUserProfileService();
+        UserProfile userProfile1 = new UserProfile("user1", Collections.singletonMap("exp1", new Decision("var1")));
+        UserProfile userProfile2 = new UserProfile("user2", Collections.singletonMap("exp1", new Decision("var2")));
+        userProfileService.saveUserProfiles(Arrays.asList(userProfile1, userProfile2));
+
+        Map<String, UserProfile> userProfiles = userProfileService.lookupUserProfilesAsync(Arrays.asList("user1", "user2", "user3")).get();
+        assertEquals(2, userProfiles.size());
+        assertEquals(userProfile1, userProfiles.get("user1"));
+        assertEquals(userProfile2, userProfiles.get("user2"));
+    }
+
+    @Test
+    public void asyncVariantsCompleteExceptionallyOnFailure() {
+        BatchUserProfileService userProfileService = new BatchUserProfileService() {
+            @Nonnull
+            @Override
+            public Map<String, UserProfile> lookupUserProfiles(@Nonnull Collection<String> userIds) throws Exception {
+                throw new Exception("lookup failed");
+            }
+
+            @Override
+            public void saveUserProfiles(@Nonnull Collection<UserProfile> userProfiles) throws Exception {
+                throw new Exception("save failed");
+            }
+        };
+
+        CompletableFuture<Map<String, UserProfile>> lookup = userProfileService.lookupUserProfilesAsync(Collections.singletonList(USER_ID));
+        CompletableFuture<Void> save = userProfileService.saveUserProfilesAsync(Collections.emptyList());
+        assertEquals("lookup failed", causeOf(lookup).getMessage());
+        assertEquals("save failed", causeOf(save).getMessage());
+    }
+
+    @Test
+    public void nullLookupIsTakenAsNoProfiles() throws Exception {
+        BatchUserProfileService userProfileService = new BatchUserProfileService() {
+            @Nonnull
+            @Override
+            public Map<String, UserProfile> lookupUserProfiles(@Nonnull Collection<String> userIds) {
+                return null;
+            }
+
+            @Override
+            public void saveUserProfiles(@Nonnull Collection<UserProfile> userProfiles) {
+            }
+        };
+
+        assertNull(userProfileService.lookup(USER_ID));
+        assertNull(new CachingUserProfileService(userProfileService).lookup(USER_ID));
+        assertTrue(new CachingUserProfileService(userProfileService).lookupUserProfilesAsync(Collections.singletonList(USER_ID)).get().isEmpty());
+        WriteBehindUserProfileService writeBehindUserProfileService = WriteBehindUserProfileService.builder()
+            .withUserProfileService(userProfileService)
+            .build();
+        assertTrue(writeBehindUserProfileService.lookupUserProfiles(Collections.singletonList(USER_ID)).isEmpty());
+        writeBehindUserProfileService.close();
+    }
+
+    private static Throwable causeOf(CompletableFuture<?> future) {
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        throw new AssertionError("future completed normally");
+    }
+
+    /**
+     * Keeps typed profiles in memory.
+     */
+    static class InMemoryUserProfileService implements BatchUserProfileService {
+        private final Map<String, UserProfile> profiles = new ConcurrentHashMap<>();
+
+        @Nonnull
+        @Override
+        public Map<String, UserProfile> lookupUserProfiles(@Nonnull Collection<String> userIds) {
+            Map<String, UserProfile> found = new HashMap<>();
+            for (String userId : userIds) {
+                UserProfile userProfile = profiles.get(userId);
+                if (userProfile != null) {
+                    found.put(userId, userProfile);
+                }
+            }
+            return found;
+        }
+
+        @Override
+        public void saveUserProfiles(@Nonnull Collection<UserProfile> userProfiles) {
+            for (UserProfile userProfile : userProfiles) {
+                profiles.put(userProfile.userId, userProfile);
+            }
+        }
+
+        public UserProfile getProfile(String userId) {
+            return profiles.get(userId);
+        }
+    }
+}
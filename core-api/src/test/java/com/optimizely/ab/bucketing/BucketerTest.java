@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019, Optimizely and contributors
+ *    Copyright 2016-2017, 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -104,6 +104,54 @@ public class BucketerTest {
         assertThat(Math.round(((double) lowerHalfCount / totalCount) * 100), is(50L));
     }
 
+    /**
+     * Verify that across the entire 32-bit hashCode space, {@link Bucketer#generateBucketValue(int)} is bit-for-bit
+     * identical to the floating point formula it replaced.
+     */
+    @Test
+    @Category(ExhaustiveTest.class)
+    public void generateBucketValueMatchesFloatingPointFormula() throws Exception {
+        long hashCode = Integer.MIN_VALUE;
+        while (hashCode <= Integer.MAX_VALUE) {
+            int i = (int) hashCode++;
+            double ratio = (double) (i & 0xFFFFFFFFL) / Math.pow(2, 32);
+            int expected = (int) Math.floor(Bucketer.MAX_TRAFFIC_VALUE * ratio);
+            if (algorithm.generateBucketValue(i) != expected) {
+                assertThat("bucket value of hashCode " + i, algorithm.generateBucketValue(i), is(expected));
+            }
+        }
+    }
+
+    /**
+     * Verify that hashing the bucketing id and the salt as two parts is identical to hashing their concatenation,
+     * for every UTF-16 code unit on either side of the boundary and at every 4-byte block alignment.
+     */
+    @Test
+    @Category(ExhaustiveTest.class)
+    public void twoPartBucketKeyHashMatchesConcatenation() throws Exception {
+        String[] prefixes = {"", "a", "ab", "abc", "\u00e9", "\u2345", "\ud83d\ude00"};
+        char[] neighbours = {'0', '9', 'a', '\u00e9', '\u2345', '\ud83d', '\ude00', '\uffff'};
+        for (String prefix : prefixes) {
+            for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+                for (char neighbour : neighbours) {
+                    String first = prefix + (char) c;
+                    String second = neighbour + "1886780721";
+                    assertTwoPartHash(first, second);
+                    assertTwoPartHash(prefix + neighbour, (char) c + "1886780721");
+                }
+            }
+        }
+    }
+
+    private static void assertTwoPartHash(String first, String second) {
+        String combined = first + second;
+        int expected = MurmurHash3.murmurhash3_x86_32(combined, 0, combined.length(), 1);
+        int actual = MurmurHash3.murmurhash3_x86_32(first, second, 1);
+        if (actual != expected) {
+            assertThat("hash of " + combined, actual, is(expected));
+        }
+    }
+
     /**
      * Verify that generated bucket values match expected output.
      */
@@ -0,0 +1,215 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CachingUserProfileServiceTest {
+
+    private static final UserProfile USER_PROFILE_1 = new UserProfile("user1", Collections.singletonMap("exp1", new Decision("var1")));
+    private static final UserProfile USER_PROFILE_2 = new UserProfile("user2", Collections.singletonMap("exp1", new Decision("var2")));
+
+    private CountingUserProfileService userProfileService;
+    private CachingUserProfileService cachingUserProfileService;
+
+    @Before
+    public void setUp() {
+        userProfileService = new CountingUserProfileService();
+        userProfileService.profiles.put(USER_PROFILE_1.userId, USER_PROFILE_1.toMap());
+        cachingUserProfileService = new CachingUserProfileService(userProfileService);
+    }
+
+    @Test
+    public void lookupIsCached() throws Exception {
+        assertEquals(USER_PROFILE_1.toMap(), cachingUserProfileService.lookup("user1"));
+        assertEquals(USER_PROFILE_1.toMap(), cachingUserProfileService.lookup("user1"));
+        assertEquals(1, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void missingProfileIsCached() throws Exception {
+        assertNull(cachingUserProfileService.lookup("user2"));
+        assertNull(cachingUserProfileService.lookup("user2"));
+        assertEquals(1, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void invalidProfileIsNotCached() throws Exception {
+        userProfileService.profiles.put("user2", Collections.singletonMap(UserProfileService.userIdKey, "user2"));
+
+        assertTrue(cachingUserProfileService.lookupUserProfiles(Collections.singletonList("user2")).isEmpty());
+        assertTrue(cachingUserProfileService.lookupUserProfiles(Collections.singletonList("user2")).isEmpty());
+        assertEquals(2, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void saveWritesThroughAndUpdatesCache() throws Exception {
+        assertNull(cachingUserProfileService.lookup("user2"));
+
+        cachingUserProfileService.save(USER_PROFILE_2.toMap());
+        assertEquals(1, userProfileService.saves.get());
+        assertEquals(USER_PROFILE_2.toMap(), userProfileService.profiles.get("user2"));
+
+        assertEquals(USER_PROFILE_2.toMap(), cachingUserProfileService.lookup("user2"));
+        assertEquals(1, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void failedSaveIsNotCached() throws Exception {
+        userProfileService.failSaves = true;
+        try {
+            cachingUserProfileService.save(USER_PROFILE_2.toMap());
+            fail("Expected the save to fail.");
+        } catch (Exception e) {
+            assertEquals("save failed", e.getMessage());
+        }
+
+        assertNull(cachingUserProfileService.lookup("user2"));
+        assertEquals(1, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void saveDuringLookupIsNotOverwrittenByLookup() throws Exception {
+        CountDownLatch read = new CountDownLatch(1);
+        CountDownLatch saved = new CountDownLatch(1);
+        CachingUserProfileService cachingUserProfileService = new CachingUserProfileService(new CountingUserProfileService() {
+            @Override
+            public Map<String, Object> lookup(String userId) {
+                Map<String, Object> userProfile = super.lookup(userId);
+                read.countDown();
+                try {
+                    saved.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return userProfile;
+            }
+        });
+
+        Thread lookup = new Thread(() -> {
+            try {
+                cachingUserProfileService.lookup("user2");
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        lookup.start();
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+        cachingUserProfileService.save(USER_PROFILE_2.toMap());
+        saved.countDown();
+        lookup.join(5000);
+
+        // the lookup read user2 before the save, so the saved profile stays cached
+        assertEquals(USER_PROFILE_2.toMap(), cachingUserProfileService.lookup("user2"));
+    }
+
+    @Test
+    public void lookupUserProfilesOnlyLooksUpMissingUsers() throws Exception {
+        BatchUserProfileServiceTest.InMemoryUserProfileService batchUserProfileService = new BatchUserProfileServiceTest.InMemoryUserProfileService();
+        batchUserProfileService.saveUserProfiles(Arrays.asList(USER_PROFILE_1, USER_PROFILE_2));
+        List<Collection<String>> lookups = new ArrayList<>();
+        CachingUserProfileService cachingUserProfileService = new CachingUserProfileService(new BatchUserProfileServiceTest.InMemoryUserProfileService() {
+            @Override
+            public Map<String, UserProfile> lookupUserProfiles(Collection<String> userIds) {
+                lookups.add(new ArrayList<>(userIds));
+                return batchUserProfileService.lookupUserProfiles(userIds);
+            }
+        });
+
+        assertEquals(USER_PROFILE_1, cachingUserProfileService.lookupUserProfiles(Collections.singletonList("user1")).get("user1"));
+        Map<String, UserProfile> userProfiles = cachingUserProfileService.lookupUserProfilesAsync(Arrays.asList("user1", "user2", "user3")).get();
+        assertEquals(2, userProfiles.size());
+        assertEquals(USER_PROFILE_2, userProfiles.get("user2"));
+
+        assertEquals(Arrays.asList(Collections.singletonList("user1"), Arrays.asList("user2", "user3")), lookups);
+    }
+
+    @Test
+    public void cachedProfileIsNotChangedBySavedInstance() throws Exception {
+        Map<String, Decision> experimentBucketMap = new HashMap<>();
+        experimentBucketMap.put("exp1", new Decision("var1"));
+        UserProfile userProfile = new UserProfile("user2", experimentBucketMap);
+        cachingUserProfileService.saveUserProfiles(Collections.singletonList(userProfile));
+
+        experimentBucketMap.get("exp1").variationId = "var2";
+        experimentBucketMap.put("exp2", new Decision("var3"));
+
+        assertEquals(new UserProfile("user2", Collections.singletonMap("exp1", new Decision("var1"))),
+            cachingUserProfileService.lookupUserProfiles(Collections.singletonList("user2")).get("user2"));
+    }
+
+    @Test
+    public void disabledCache() throws Exception {
+        cachingUserProfileService = new CachingUserProfileService(userProfileService, 0, 0);
+        cachingUserProfileService.lookup("user1");
+        cachingUserProfileService.lookup("user1");
+        assertEquals(2, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void reset() throws Exception {
+        cachingUserProfileService.lookup("user1");
+        cachingUserProfileService.reset();
+        cachingUserProfileService.lookup("user1");
+        assertEquals(2, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void closeClosesUnderlyingService() {
+        cachingUserProfileService.close();
+        assertTrue(userProfileService.closed);
+    }
+
+    /**
+     * Map based service counting its calls.
+     */
+    static class CountingUserProfileService implements UserProfileService, AutoCloseable {
+        final Map<String, Map<String, Object>> profiles = Collections.synchronizedMap(new HashMap<>());
+        final AtomicInteger lookups = new AtomicInteger();
+        final AtomicInteger saves = new AtomicInteger();
+        volatile boolean failSaves;
+        volatile boolean closed;
+
+        @Override
+        public Map<String, Object> lookup(String userId) {
+            lookups.incrementAndGet();
+            return profiles.get(userId);
+        }
+
+        @Override
+        public void save(Map<String, Object> userProfile) throws Exception {
+            saves.incrementAndGet();
+            if (failSaves) {
+                throw new Exception("save failed");
+            }
+            profiles.put((String) userProfile.get(UserProfileService.userIdKey), userProfile);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
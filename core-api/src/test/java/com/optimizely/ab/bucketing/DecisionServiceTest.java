@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright 2017-2022, Optimizely, Inc. and contributors                   *
+ * Copyright 2017-2023, Optimizely, Inc. and contributors                   *
  *                                                                          *
  * Licensed under the Apache License, Version 2.0 (the "License");          *
  * you may not use this file except in compliance with the License.         *
@@ -480,6 +480,90 @@ public class DecisionServiceTest {
         );
     }
 
+    /**
+     * Verify that {@link DecisionService#getVariationsForFeatureList(List, OptimizelyUserContext, ProjectConfig, List)}
+     * looks up the {@link UserProfile} once and saves the variations of all flags with a single save.
+     */
+    @Test
+    public void getVariationsForFeatureListLooksUpAndSavesUserProfileOnce() throws Exception {
+        UserProfileService userProfileService = mock(UserProfileService.class);
+        DecisionService decisionService = new DecisionService(new Bucketer(), mockErrorHandler, userProfileService);
+
+        List<DecisionResponse<FeatureDecision>> decisions = decisionService.getVariationsForFeatureList(
+            Arrays.asList(FEATURE_FLAG_MULTI_VARIATE_FEATURE, FEATURE_FLAG_MUTEX_GROUP_FEATURE),
+            optimizely.createUserContext(genericUserId, Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, AUDIENCE_GRYFFINDOR_VALUE)),
+            v4ProjectConfig,
+            Collections.emptyList()
+        );
+        assertEquals(2, decisions.size());
+
+        Map<String, Decision> experimentBucketMap = new HashMap<String, Decision>();
+        for (DecisionResponse<FeatureDecision> decision : decisions) {
+            FeatureDecision featureDecision = decision.getResult();
+            assertEquals(FeatureDecision.DecisionSource.FEATURE_TEST, featureDecision.decisionSource);
+            experimentBucketMap.put(featureDecision.experiment.getId(), new Decision(featureDecision.variation.getId()));
+        }
+
+        verify(userProfileService, times(1)).lookup(genericUserId);
+        verify(userProfileService, times(1)).save(eq(new UserProfile(genericUserId, experimentBucketMap).toMap()));
+    }
+
+    /**
+     * Verify that {@link DecisionService#getVariationsForFeatureList(List, OptimizelyUserContext, ProjectConfig, List)}
+     * uses the typed methods of a {@link BatchUserProfileService}, with one lookup and one deferred save.
+     */
+    @Test
+    public void getVariationsForFeatureListUsesBatchUserProfileService() throws Exception {
+        BatchUserProfileServiceTest.InMemoryUserProfileService userProfileService = spy(new BatchUserProfileServiceTest.InMemoryUserProfileService());
+        DecisionService decisionService = new DecisionService(new Bucketer(), mockErrorHandler, userProfileService);
+
+        List<DecisionResponse<FeatureDecision>> decisions = decisionService.getVariationsForFeatureList(
+            Arrays.asList(FEATURE_FLAG_MULTI_VARIATE_FEATURE, FEATURE_FLAG_MUTEX_GROUP_FEATURE),
+            optimizely.createUserContext(genericUserId, Collections.singletonMap(ATTRIBUTE_HOUSE_KEY, AUDIENCE_GRYFFINDOR_VALUE)),
+            v4ProjectConfig,
+            Collections.emptyList()
+        );
+        assertEquals(2, decisions.size());
+
+        Map<String, Decision> experimentBucketMap = new HashMap<String, Decision>();
+        for (DecisionResponse<FeatureDecision> decision : decisions) {
+            FeatureDecision featureDecision = decision.getResult();
+            experimentBucketMap.put(featureDecision.experiment.getId(), new Decision(featureDecision.variation.getId()));
+        }
+
+        verify(userProfileService, times(1)).lookupUserProfiles(Collections.singletonList(genericUserId));
+        verify(userProfileService, times(1)).saveUserProfilesAsync(
+            Collections.singletonList(new UserProfile(genericUserId, experimentBucketMap)));
+        verify(userProfileService, never()).lookup(anyString());
+        verify(userProfileService, never()).save(anyMapOf(String.class, Object.class));
+        assertEquals(new UserProfile(genericUserId, experimentBucketMap), userProfileService.getProfile(genericUserId));
+    }
+
+    /**
+     * Verify that variations recorded during a decision do not change the profile held by a
+     * {@link BatchUserProfileService} before it is saved.
+     */
+    @Test
+    public void getVariationDoesNotModifyStoredBatchUserProfile() throws Exception {
+        final Experiment experiment = noAudienceProjectConfig.getExperiments().get(0);
+        final Variation variation = experiment.getVariations().get(0);
+
+        BatchUserProfileServiceTest.InMemoryUserProfileService userProfileService = new BatchUserProfileServiceTest.InMemoryUserProfileService();
+        UserProfile storedProfile = new UserProfile(userProfileId, new HashMap<String, Decision>());
+        userProfileService.saveUserProfiles(Collections.singletonList(storedProfile));
+
+        Bucketer bucketer = mock(Bucketer.class);
+        when(bucketer.bucket(eq(experiment), eq(userProfileId), eq(noAudienceProjectConfig))).thenReturn(DecisionResponse.responseNoReasons(variation));
+        DecisionService decisionService = new DecisionService(bucketer, mockErrorHandler, userProfileService);
+
+        assertEquals(variation, decisionService.getVariation(
+            experiment, optimizely.createUserContext(userProfileId, Collections.emptyMap()), noAudienceProjectConfig).getResult());
+
+        assertTrue(storedProfile.experimentBucketMap.isEmpty());
+        assertEquals(new UserProfile(userProfileId, Collections.singletonMap(experiment.getId(), new Decision(variation.getId()))),
+            userProfileService.getProfile(userProfileId));
+    }
+
     //========== getVariationForFeatureInRollout tests ==========//
 
     /**
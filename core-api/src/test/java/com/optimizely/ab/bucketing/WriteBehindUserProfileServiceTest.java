@@ -0,0 +1,223 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.bucketing;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindUserProfileServiceTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private CachingUserProfileServiceTest.CountingUserProfileService userProfileService;
+    private WriteBehindUserProfileService writeBehindUserProfileService;
+
+    @Before
+    public void setUp() {
+        userProfileService = new CachingUserProfileServiceTest.CountingUserProfileService();
+        // flushed explicitly by the tests
+        writeBehindUserProfileService = WriteBehindUserProfileService.builder()
+            .withUserProfileService(userProfileService)
+            .withFlushInterval(1, TimeUnit.HOURS)
+            .build();
+    }
+
+    @After
+    public void tearDown() {
+        writeBehindUserProfileService.close();
+    }
+
+    @Test
+    public void saveIsDeferredAndCoalesced() throws Exception {
+        writeBehindUserProfileService.save(profile("user1", "var1").toMap());
+        writeBehindUserProfileService.save(profile("user1", "var2").toMap());
+        writeBehindUserProfileService.save(profile("user2", "var1").toMap());
+        assertEquals(0, userProfileService.saves.get());
+        assertEquals(2, writeBehindUserProfileService.getPendingCount());
+
+        writeBehindUserProfileService.flush();
+        assertEquals(2, userProfileService.saves.get());
+        assertEquals(profile("user1", "var2").toMap(), userProfileService.profiles.get("user1"));
+        assertEquals(profile("user2", "var1").toMap(), userProfileService.profiles.get("user2"));
+        assertEquals(0, writeBehindUserProfileService.getPendingCount());
+    }
+
+    @Test
+    public void lookupSeesPendingProfiles() throws Exception {
+        userProfileService.profiles.put("user1", profile("user1", "var1").toMap());
+        writeBehindUserProfileService.save(profile("user1", "var2").toMap());
+
+        assertEquals(profile("user1", "var2").toMap(), writeBehindUserProfileService.lookup("user1"));
+        assertEquals(profile("user1", "var2"), writeBehindUserProfileService.lookupUserProfiles(Collections.singletonList("user1")).get("user1"));
+        assertEquals(0, userProfileService.lookups.get());
+
+        writeBehindUserProfileService.flush();
+        assertEquals(profile("user1", "var2").toMap(), writeBehindUserProfileService.lookup("user1"));
+        assertEquals(1, userProfileService.lookups.get());
+    }
+
+    @Test
+    public void fullBatchIsFlushedRightAway() throws Exception {
+        writeBehindUserProfileService.close();
+        writeBehindUserProfileService = WriteBehindUserProfileService.builder()
+            .withUserProfileService(userProfileService)
+            .withBatchSize(2)
+            .withFlushInterval(1, TimeUnit.HOURS)
+            .build();
+
+        writeBehindUserProfileService.save(profile("user1", "var1").toMap());
+        writeBehindUserProfileService.save(profile("user2", "var1").toMap());
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (userProfileService.saves.get() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, userProfileService.saves.get());
+    }
+
+    @Test
+    public void failedWriteIsRetried() throws Exception {
+        userProfileService.failSaves = true;
+        writeBehindUserProfileService.save(profile("user1", "var1").toMap());
+
+        writeBehindUserProfileService.flush();
+        assertEquals(1, userProfileService.saves.get());
+        assertEquals(1, writeBehindUserProfileService.getPendingCount());
+
+        userProfileService.failSaves = false;
+        writeBehindUserProfileService.flush();
+        assertEquals(2, userProfileService.saves.get());
+        assertEquals(profile("user1", "var1").toMap(), userProfileService.profiles.get("user1"));
+        assertEquals(0, writeBehindUserProfileService.getPendingCount());
+    }
+
+    @Test
+    public void failedWriteDoesNotOverrideNewerSave() throws Exception {
+        userProfileService.failSaves = true;
+        writeBehindUserProfileService.save(profile("user1", "var1").toMap());
+        writeBehindUserProfileService.flush();
+
+        writeBehindUserProfileService.save(profile("user1", "var2").toMap());
+        userProfileService.failSaves = false;
+        writeBehindUserProfileService.flush();
+        assertEquals(profile("user1", "var2").toMap(), userProfileService.profiles.get("user1"));
+    }
+
+    @Test
+    public void failedWritesBeyondMaxPendingProfilesAreDropped() throws Exception {
+        writeBehindUserProfileService.close();
+        writeBehindUserProfileService = WriteBehindUserProfileService.builder()
+            .withUserProfileService(userProfileService)
+            .withMaxPendingProfiles(3)
+            .withFlushInterval(1, TimeUnit.HOURS)
+            .build();
+
+        userProfileService.failSaves = true;
+        for (int i = 1; i <= 3; i++) {
+            writeBehindUserProfileService.save(profile("user" + i, "var1").toMap());
+        }
+        writeBehindUserProfileService.flush();
+        assertEquals(3, writeBehindUserProfileService.getPendingCount());
+
+        writeBehindUserProfileService.save(profile("user4", "var1").toMap());
+        writeBehindUserProfileService.flush();
+        assertEquals(0, writeBehindUserProfileService.getPendingCount());
+    }
+
+    @Test
+    public void batchServiceIsWrittenInBulk() throws Exception {
+        List<Collection<UserProfile>> saves = new ArrayList<>();
+        writeBehindUserProfileService.close();
+        writeBehindUserProfileService = WriteBehindUserProfileService.builder()
+            .withUserProfileService(new BatchUserProfileServiceTest.InMemoryUserProfileService() {
+                @Override
+                public void saveUserProfiles(Collection<UserProfile> userProfiles) {
+                    saves.add(new ArrayList<>(userProfiles));
+                    super.saveUserProfiles(userProfiles);
+                }
+            })
+            .withFlushInterval(1, TimeUnit.HOURS)
+            .build();
+
+        writeBehindUserProfileService.saveUserProfilesAsync(Arrays.asList(profile("user1", "var1"), profile("user2", "var1")));
+        writeBehindUserProfileService.saveUserProfilesAsync(Collections.singletonList(profile("user3", "var1")));
+        writeBehindUserProfileService.flush();
+
+        assertEquals(1, saves.size());
+        assertEquals(3, saves.get(0).size());
+    }
+
+    @Test
+    public void closeWritesPendingProfiles() throws Exception {
+        writeBehindUserProfileService.save(profile("user1", "var1").toMap());
+        writeBehindUserProfileService.close();
+
+        assertEquals(profile("user1", "var1").toMap(), userProfileService.profiles.get("user1"));
+        assertTrue(userProfileService.closed);
+
+        // written through once closed
+        writeBehindUserProfileService.save(profile("user2", "var1").toMap());
+        assertEquals(profile("user2", "var1").toMap(), userProfileService.profiles.get("user2"));
+    }
+
+    @Test
+    public void profilesSavedWhileClosingAreWritten() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String prefix = "thread" + i + "-user";
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 500; j++) {
+                    writeBehindUserProfileService.saveUserProfiles(Collections.singletonList(profile(prefix + j, "var1")));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        writeBehindUserProfileService.close();
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT_MS);
+        }
+
+        assertEquals(2000, userProfileService.profiles.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void userProfileServiceIsRequired() {
+        WriteBehindUserProfileService.builder().build();
+    }
+
+    @Test
+    public void invalidBatchSizeUsesDefault() {
+        WriteBehindUserProfileService userProfileService = WriteBehindUserProfileService.builder()
+            .withUserProfileService(this.userProfileService)
+            .withBatchSize(-1)
+            .build();
+        assertEquals(WriteBehindUserProfileService.DEFAULT_BATCH_SIZE, userProfileService.batchSize);
+        userProfileService.close();
+    }
+
+    private static UserProfile profile(String userId, String variationId) {
+        return new UserProfile(userId, Collections.singletonMap("exp1", new Decision(variationId)));
+    }
+}
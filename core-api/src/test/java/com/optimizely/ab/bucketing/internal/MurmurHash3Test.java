@@ -60,6 +60,37 @@ public class MurmurHash3Test {
         assertEquals(hash1, hash2);
     }
 
+    private void doTwoPartString(String s, int split) {
+        String first = s.substring(0, split);
+        String second = s.substring(split);
+        int hash1 = MurmurHash3.murmurhash3_x86_32(s, 0, s.length(), 123456789);
+        int hash2 = MurmurHash3.murmurhash3_x86_32(first, second, 123456789);
+        assertEquals(hash1, hash2);
+    }
+
+    @Test
+    public void testTwoPartStringHash() {
+        doTwoPartString("", 0);
+        doTwoPartString("user123" + "1886780721", 7);
+        doTwoPartString("\u2345\u1234", 1);
+        // a surrogate pair and an unpaired surrogate split across the two parts
+        doTwoPartString("ab\ud83d\ude00cd", 3);
+        doTwoPartString("ab\ud83d", 3);
+
+        Random r = new Random();
+        StringBuilder sb = new StringBuilder(40);
+        for (int i = 0; i < 100000; i++) {
+            sb.setLength(0);
+            int len = r.nextInt(24);
+            for (int j = 0; j < len; j++) {
+                sb.append((char) r.nextInt(0x10000));
+            }
+
+            String s = sb.toString();
+            doTwoPartString(s, r.nextInt(s.length() + 1));
+        }
+    }
+
     @Test
     @SuppressFBWarnings(
         value = {"SF_SWITCH_FALLTHROUGH", "SF_SWITCH_NO_DEFAULT"},
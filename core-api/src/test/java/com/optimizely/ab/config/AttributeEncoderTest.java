@@ -0,0 +1,102 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.internal.ControlAttribute;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.optimizely.ab.config.DatafileProjectConfigTestUtils.validConfigJsonV4;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for {@link AttributeEncoder}.
+ */
+public class AttributeEncoderTest {
+
+    private ProjectConfig projectConfig;
+    private AttributeEncoder encoder;
+
+    @Before
+    public void setUp() throws Exception {
+        projectConfig = new DatafileProjectConfig.Builder().withDatafile(validConfigJsonV4()).build();
+        encoder = projectConfig.getAttributeEncoder();
+    }
+
+    @Test
+    public void attributeIdsMatchProjectConfig() {
+        assertNotNull(encoder);
+        for (Attribute attribute : projectConfig.getAttributes()) {
+            assertEquals(projectConfig.getAttributeId(projectConfig, attribute.getKey()), encoder.getAttributeId(attribute.getKey()));
+        }
+        String reservedKey = ControlAttribute.USER_AGENT_ATTRIBUTE.toString();
+        assertEquals(reservedKey, encoder.getAttributeId(reservedKey));
+        assertNull(encoder.getAttributeId("unknown"));
+    }
+
+    @Test
+    public void encodeSkipsUnknownKeysAndUnsupportedValues() {
+        Attribute attribute = projectConfig.getAttributes().get(0);
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put(attribute.getKey(), "value");
+        attributes.put(ControlAttribute.USER_AGENT_ATTRIBUTE.toString(), "Chrome");
+        attributes.put("unknown", "value");
+        attributes.put("", "value");
+        attributes.put(projectConfig.getAttributes().get(1).getKey(), Collections.singletonList("value"));
+        attributes.put(projectConfig.getAttributes().get(2).getKey(), null);
+
+        List<com.optimizely.ab.event.internal.payload.Attribute> encoded = encoder.encode(attributes);
+
+        assertEquals(3, encoded.size());
+        assertEquals(attribute.getId(), encoded.get(0).getEntityId());
+        assertEquals(attribute.getKey(), encoded.get(0).getKey());
+        assertEquals("value", encoded.get(0).getValue());
+        assertEquals(com.optimizely.ab.event.internal.payload.Attribute.CUSTOM_ATTRIBUTE_TYPE, encoded.get(0).getType());
+        assertEquals(ControlAttribute.USER_AGENT_ATTRIBUTE.toString(), encoded.get(1).getEntityId());
+        assertEquals(ControlAttribute.BOT_FILTERING_ATTRIBUTE.toString(), encoded.get(2).getKey());
+    }
+
+    @Test
+    public void forConfigEncodesWithConfigLookups() {
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        for (Attribute attribute : projectConfig.getAttributes()) {
+            attributes.put(attribute.getKey(), "value");
+        }
+        attributes.put(ControlAttribute.USER_AGENT_ATTRIBUTE.toString(), "Chrome");
+        attributes.put("unknown", "value");
+
+        assertEquals(encoder.encode(attributes), AttributeEncoder.forConfig(projectConfig).encode(attributes));
+    }
+
+    @Test
+    public void botFilteringAttributeIsNotShared() {
+        List<com.optimizely.ab.event.internal.payload.Attribute> first = encoder.encode(null);
+        assertEquals(1, first.size());
+        assertEquals(projectConfig.getBotFiltering(), first.get(0).getValue());
+
+        // a handler changing the payload of one event does not change the next
+        first.get(0).setValue("changed");
+        List<com.optimizely.ab.event.internal.payload.Attribute> second = encoder.encode(null);
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals(projectConfig.getBotFiltering(), second.get(0).getValue());
+    }
+}
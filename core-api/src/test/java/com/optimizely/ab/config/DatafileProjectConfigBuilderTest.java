@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2018-2019, Optimizely and contributors
+ *    Copyright 2018-2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -21,6 +21,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
 import static com.optimizely.ab.config.DatafileProjectConfigTestUtils.invalidProjectConfigV5;
 import static com.optimizely.ab.config.DatafileProjectConfigTestUtils.validConfigJsonV4;
 import static org.junit.Assert.assertEquals;
@@ -68,4 +71,32 @@ public class DatafileProjectConfigBuilderTest {
             .withDatafile(invalidProjectConfigV5())
             .build();
     }
+
+    @Test
+    public void withValidDatafileStream() throws Exception {
+        ProjectConfig projectConfig = new DatafileProjectConfig.Builder()
+            .withDatafileStream(new ByteArrayInputStream(validConfigJsonV4().getBytes(StandardCharsets.UTF_8)))
+            .build();
+
+        assertNotNull(projectConfig);
+        assertEquals("4", projectConfig.getVersion());
+        // the datafile is kept compressed and restored on request
+        assertEquals(validConfigJsonV4(), projectConfig.toDatafile());
+    }
+
+    @Test
+    public void withEmptyDatafileStream() throws Exception {
+        thrown.expect(ConfigParseException.class);
+        new DatafileProjectConfig.Builder()
+            .withDatafileStream(new ByteArrayInputStream(new byte[0]))
+            .build();
+    }
+
+    @Test
+    public void withUnsupportedDatafileStream() throws Exception {
+        thrown.expect(ConfigParseException.class);
+        new DatafileProjectConfig.Builder()
+            .withDatafileStream(new ByteArrayInputStream(invalidProjectConfigV5().getBytes(StandardCharsets.UTF_8)))
+            .build();
+    }
 }
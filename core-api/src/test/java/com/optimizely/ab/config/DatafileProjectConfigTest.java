@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019, Optimizely and contributors
+ *    Copyright 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -18,6 +18,8 @@ package com.optimizely.ab.config;
 
 import ch.qos.logback.classic.Level;
 import com.google.errorprone.annotations.Var;
+import com.optimizely.ab.Optimizely;
+import com.optimizely.ab.OptimizelyUserContext;
 import com.optimizely.ab.config.audience.AndCondition;
 import com.optimizely.ab.config.audience.Condition;
 import com.optimizely.ab.config.audience.NotCondition;
@@ -26,6 +28,7 @@ import com.optimizely.ab.config.audience.UserAttribute;
 
 import java.util.*;
 
+import static com.optimizely.ab.config.DatafileProjectConfigTestUtils.validConfigJsonV4;
 import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.*;
@@ -187,4 +190,64 @@ public class DatafileProjectConfigTest {
         }
     }
 
+    @Test
+    public void reuseUnchangedEntitiesSharesUnchangedRules() throws Exception {
+        ProjectConfig previous = new DatafileProjectConfig.Builder().withDatafile(validConfigJsonV4()).build();
+        String datafile = validConfigJsonV4()
+            .replace("\"revision\": \"1480511547\"", "\"revision\": \"1480511548\"")
+            .replace("\"entityId\": \"1423767502\",\n          \"endOfRange\": 5000", "\"entityId\": \"1423767502\",\n          \"endOfRange\": 4000");
+        ProjectConfig parsed = new DatafileProjectConfig.Builder().withDatafile(datafile).build();
+
+        ProjectConfig config = DatafileProjectConfig.reuseUnchangedEntities(parsed, previous);
+
+        assertEquals("1480511548", config.getRevision());
+        assertEquals(datafile, config.toDatafile());
+
+        Experiment changed = config.getExperimentKeyMapping().get("basic_experiment");
+        assertEquals(4000, changed.getTrafficAllocation().get(0).getEndOfRange());
+        assertNotSame(previous.getExperimentKeyMapping().get("basic_experiment"), changed);
+
+        assertEquals(previous.getExperiments().size(), config.getExperiments().size());
+        for (Experiment experiment : config.getExperiments()) {
+            if (experiment != changed) {
+                assertSame(previous.getExperimentIdMapping().get(experiment.getId()), experiment);
+            }
+        }
+        for (Rollout rollout : config.getRollouts()) {
+            assertSame(previous.getRolloutIdMapping().get(rollout.getId()), rollout);
+        }
+        for (FeatureFlag flag : config.getFeatureFlags()) {
+            assertSame(previous.getFeatureKeyMapping().get(flag.getKey()), flag);
+            assertSame(previous.getFlagDecisionPlan(flag), config.getFlagDecisionPlan(flag));
+        }
+        assertSame(previous.getAttributeEncoder(), config.getAttributeEncoder());
+    }
+
+    @Test
+    public void reuseUnchangedEntitiesAfterDecisionsOnPreviousConfig() throws Exception {
+        Optimizely optimizely = Optimizely.builder().withDatafile(validConfigJsonV4()).build();
+        ProjectConfig previous = optimizely.getProjectConfig();
+        OptimizelyUserContext user = optimizely.createUserContext("user", Collections.singletonMap("house", "Gryffindor"));
+        for (Experiment experiment : previous.getExperiments()) {
+            if (experiment.getAudienceConditions() != null) {
+                experiment.getAudienceConditions().evaluate(previous, user);
+            }
+        }
+        String datafile = validConfigJsonV4().replace("\"revision\": \"1480511547\"", "\"revision\": \"1480511548\"");
+        ProjectConfig parsed = new DatafileProjectConfig.Builder().withDatafile(datafile).build();
+
+        ProjectConfig config = DatafileProjectConfig.reuseUnchangedEntities(parsed, previous);
+
+        for (Experiment experiment : config.getExperiments()) {
+            assertSame(previous.getExperimentIdMapping().get(experiment.getId()), experiment);
+        }
+    }
+
+    @Test
+    public void reuseUnchangedEntitiesWithoutPreviousConfig() throws Exception {
+        ProjectConfig parsed = new DatafileProjectConfig.Builder().withDatafile(validConfigJsonV4()).build();
+
+        assertSame(parsed, DatafileProjectConfig.reuseUnchangedEntities(parsed, null));
+    }
+
 }
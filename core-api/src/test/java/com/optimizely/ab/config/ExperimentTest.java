@@ -190,6 +190,41 @@ public class ExperimentTest {
         return conditionTestScenarios;
     }
 
+    @Test
+    public void trafficAllocationIndexResolvesVariationsByRange() {
+        Variation control = new Variation("1", "control");
+        Variation treatment = new Variation("2", "treatment");
+        List<TrafficAllocation> trafficAllocation = Arrays.asList(
+            new TrafficAllocation("1", 3000),
+            new TrafficAllocation("", 5000),
+            new TrafficAllocation("2", 8000),
+            new TrafficAllocation("unknown", 9000));
+        Experiment experiment = new Experiment("12345", "key", "Running", "layerId",
+            Collections.<String>emptyList(), null, Arrays.asList(control, treatment),
+            Collections.<String, String>emptyMap(), trafficAllocation);
+
+        TrafficAllocationIndex<Variation> index = experiment.getTrafficAllocationIndex();
+        assertTrue(index.isIndexOf(experiment.getTrafficAllocation()));
+        assertSame(control, index.getEntity(0));
+        assertSame(control, index.getEntity(2999));
+        assertNull(index.getEntity(3000));
+        assertSame(treatment, index.getEntity(5000));
+        assertSame(treatment, index.getEntity(7999));
+        assertNull(index.getEntity(8500));
+        assertNull(index.getEntity(9999));
+    }
+
+    @Test
+    public void audienceIdsConditionIsAnImplicitOr() {
+        Experiment experiment = new Experiment("12345", "key", "Running", "layerId",
+            Arrays.asList("1", "2"), null, Collections.<Variation>emptyList(),
+            Collections.<String, String>emptyMap(), Collections.<TrafficAllocation>emptyList());
+
+        OrCondition condition = experiment.getAudienceIdsCondition();
+        assertSame(condition, experiment.getAudienceIdsCondition());
+        assertEquals(Arrays.asList(new AudienceIdCondition("1"), new AudienceIdCondition("2")), condition.getConditions());
+    }
+
     private Experiment makeMockExperimentWithStatus(Experiment.ExperimentStatus status, Condition audienceConditions) {
         return new Experiment("12345",
             "mockExperimentKey",
@@ -0,0 +1,121 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.optimizely.ab.config.DatafileProjectConfigTestUtils.validConfigJsonV4;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FlagDecisionPlan}.
+ */
+public class FlagDecisionPlanTest {
+
+    private static final String FLAG_KEY = "multi_variate_feature";
+
+    private ProjectConfig projectConfig;
+    private FeatureFlag featureFlag;
+    private FlagDecisionPlan plan;
+
+    @Before
+    public void setUp() throws Exception {
+        projectConfig = new DatafileProjectConfig.Builder().withDatafile(validConfigJsonV4()).build();
+        featureFlag = projectConfig.getFeatureKeyMapping().get(FLAG_KEY);
+        plan = projectConfig.getFlagDecisionPlan(featureFlag);
+    }
+
+    @Test
+    public void planResolvesRulesAndRollout() {
+        assertNotNull(plan);
+        assertSame(featureFlag, plan.getFeatureFlag());
+
+        List<String> experimentIds = featureFlag.getExperimentIds();
+        assertEquals(experimentIds.size(), plan.getExperimentRules().size());
+        for (int i = 0; i < experimentIds.size(); i++) {
+            assertSame(projectConfig.getExperimentIdMapping().get(experimentIds.get(i)), plan.getExperimentRules().get(i));
+        }
+        assertSame(projectConfig.getRolloutIdMapping().get(featureFlag.getRolloutId()), plan.getRollout());
+    }
+
+    @Test
+    public void planIsOnlyServedForFlagsOfTheConfig() {
+        FeatureFlag copy = new FeatureFlag(featureFlag.getId(), featureFlag.getKey(), featureFlag.getRolloutId(),
+            featureFlag.getExperimentIds(), featureFlag.getVariables());
+
+        assertNull(projectConfig.getFlagDecisionPlan(copy));
+    }
+
+    @Test
+    public void planIsNotServedWhenMappingsAreOverridden() {
+        ProjectConfig spyConfig = spy(projectConfig);
+        when(spyConfig.getExperimentIdMapping()).thenReturn(new HashMap<>(projectConfig.getExperimentIdMapping()));
+
+        assertNull(spyConfig.getFlagDecisionPlan(featureFlag));
+    }
+
+    @Test
+    public void disabledDecisionsGetDefaultValues() {
+        Variation variation = plan.getExperimentRules().get(0).getVariations().get(0);
+        Map<String, Object> values = plan.getVariableValues(variation, false).toMap();
+
+        for (FeatureVariable variable : featureFlag.getVariables()) {
+            if (!FeatureVariable.JSON_TYPE.equals(variable.getType())) {
+                assertEquals(variable.getDefaultValue(), values.get(variable.getKey()));
+            }
+        }
+        assertEquals(values, plan.getVariableValues(null, true).toMap());
+    }
+
+    @Test
+    public void enabledDecisionsGetVariationValues() {
+        Variation variation = plan.getExperimentRules().get(0).getVariations().get(0);
+        Map<String, Object> values = plan.getVariableValues(variation, true).toMap();
+
+        for (FeatureVariable variable : featureFlag.getVariables()) {
+            FeatureVariableUsageInstance instance = variation.getVariableIdToFeatureVariableUsageInstanceMap().get(variable.getId());
+            if (instance != null && FeatureVariable.STRING_TYPE.equals(variable.getType())) {
+                assertEquals(instance.getValue(), values.get(variable.getKey()));
+            }
+        }
+        assertSame(plan.getVariableValues(variation, true), plan.getVariableValues(variation, true));
+        assertEquals(Collections.emptyList(), plan.getVariableValues(variation, true).getInvalidKeys());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void jsonValuesAreCopiedForEachDecision() {
+        Map<String, Object> first = plan.getVariableValues(null, false).toMap();
+        Map<String, Object> json = (Map<String, Object>) first.get("json_patched");
+        assertEquals("v1", json.get("k1"));
+
+        json.put("k1", "modified");
+        ((Map<String, Object>) json.get("k4")).put("kk1", "modified");
+
+        Map<String, Object> second = (Map<String, Object>) plan.getVariableValues(null, false).toMap().get("json_patched");
+        assertEquals("v1", second.get("k1"));
+        assertEquals("vv1", ((Map<String, Object>) second.get("k4")).get("kk1"));
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019-2021, Optimizely and contributors
+ *    Copyright 2019-2021, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package com.optimizely.ab.config;
 
 import com.optimizely.ab.notification.NotificationCenter;
 import com.optimizely.ab.notification.UpdateConfigNotification;
+import com.optimizely.ab.optimizelyconfig.OptimizelyConfig;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -32,6 +33,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static com.optimizely.ab.config.DatafileProjectConfigTestUtils.validConfigJsonV4;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class PollingProjectConfigManagerTest {
@@ -103,6 +106,20 @@ public class PollingProjectConfigManagerTest {
         assertEquals(projectConfig, testProjectConfigManager.getConfig());
     }
 
+    @Test
+    public void testGetConfigAfterPublishDoesNotBlock() throws Exception {
+        testProjectConfigManager.setConfig(projectConfig);
+
+        // An interrupted thread would fail the latch await, so the published config must be read directly.
+        Thread.currentThread().interrupt();
+        try {
+            assertSame(projectConfig, testProjectConfigManager.getConfig());
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
     @Test
     @Ignore("flaky")
     public void testBlockingGetConfigWithTimeout() throws Exception {
@@ -172,6 +189,23 @@ public class PollingProjectConfigManagerTest {
         assertEquals("new", testProjectConfigManager.getOptimizelyConfig().getRevision());
     }
 
+    @Test
+    public void testOptimizelyConfigIsBuiltOnFirstAccess() {
+        // not started, so no poll replaces the config
+        TestProjectConfigManager projectConfigManager = new TestProjectConfigManager();
+        ProjectConfig newerProjectConfig = mock(ProjectConfig.class);
+        when(newerProjectConfig.getRevision()).thenReturn("new");
+
+        projectConfigManager.setConfig(newerProjectConfig);
+        verify(newerProjectConfig, never()).getFeatureFlags();
+        verify(newerProjectConfig, never()).toDatafile();
+
+        OptimizelyConfig optimizelyConfig = projectConfigManager.getOptimizelyConfig();
+        assertEquals("new", optimizelyConfig.getRevision());
+        assertSame(optimizelyConfig, projectConfigManager.getOptimizelyConfig());
+        verify(newerProjectConfig, never()).toDatafile();
+    }
+
     @Test
     public void testErroringProjectConfigManagerWithTimeout() throws Exception {
         testProjectConfigManager = new TestProjectConfigManager() {
@@ -0,0 +1,89 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class TrafficAllocationIndexTest {
+
+    private static final int MAX_TRAFFIC_VALUE = 10000;
+
+    @Test
+    public void getEntityResolvesEntitiesByRange() {
+        List<TrafficAllocation> ranges = Arrays.asList(
+            new TrafficAllocation("a", 2500),
+            new TrafficAllocation("", 5000),
+            new TrafficAllocation("b", 7500)
+        );
+        TrafficAllocationIndex<String> index = new TrafficAllocationIndex<>(ranges, Function.identity());
+
+        assertEquals("a", index.getEntity(0));
+        assertEquals("a", index.getEntity(2499));
+        assertNull(index.getEntity(2500));
+        assertEquals("b", index.getEntity(5000));
+        assertNull(index.getEntity(7500));
+        assertTrue(index.isIndexOf(ranges));
+        assertFalse(index.isIndexOf(new ArrayList<>(ranges)));
+    }
+
+    @Test
+    public void getEntityOfEmptyAllocation() {
+        assertNull(new TrafficAllocationIndex<>(null, Function.identity()).getEntity(0));
+        assertNull(new TrafficAllocationIndex<>(Collections.emptyList(), Function.identity()).getEntity(0));
+    }
+
+    /**
+     * Verify that for every bucket value the index returns the range a linear scan of the allocations returns,
+     * including zero-width ranges and allocations that are not in ascending order.
+     */
+    @Test
+    public void getEntityMatchesLinearScanForEveryBucketValue() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            List<TrafficAllocation> ranges = new ArrayList<>();
+            int size = random.nextInt(12);
+            int end = 0;
+            for (int j = 0; j < size; j++) {
+                end = i % 10 == 0 ? random.nextInt(MAX_TRAFFIC_VALUE + 1) : Math.min(MAX_TRAFFIC_VALUE, end + random.nextInt(3000));
+                ranges.add(new TrafficAllocation(random.nextInt(4) == 0 ? "" : String.valueOf(j), end));
+            }
+
+            TrafficAllocationIndex<String> index = new TrafficAllocationIndex<>(ranges, Function.identity());
+            for (int bucketValue = 0; bucketValue < MAX_TRAFFIC_VALUE; bucketValue++) {
+                assertEquals(ranges + " at " + bucketValue, linearScan(ranges, bucketValue), index.getEntity(bucketValue));
+            }
+        }
+    }
+
+    private static String linearScan(List<TrafficAllocation> ranges, int bucketValue) {
+        for (TrafficAllocation range : ranges) {
+            if (bucketValue < range.getEndOfRange()) {
+                return range.getEntityId().isEmpty() ? null : range.getEntityId();
+            }
+        }
+        return null;
+    }
+}
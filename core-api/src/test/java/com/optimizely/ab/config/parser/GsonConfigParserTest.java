@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2020, Optimizely and contributors
+ *    Copyright 2016-2017, 2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -34,7 +34,9 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -421,4 +423,43 @@ public class GsonConfigParserTest {
 
     }
 
+    @Test
+    public void parseProjectConfigV2FromStream() throws Exception {
+        GsonConfigParser parser = new GsonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJsonV2().getBytes(StandardCharsets.UTF_8)));
+        ProjectConfig expected = validProjectConfigV2();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseProjectConfigV4FromStream() throws Exception {
+        GsonConfigParser parser = new GsonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJsonV4().getBytes(StandardCharsets.UTF_8)));
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    /**
+     * Verify that an invalid JSON stream results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void invalidJsonStreamExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        GsonConfigParser parser = new GsonConfigParser();
+        parser.parseProjectConfig(new ByteArrayInputStream("invalid config".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Verify that a JSON stream without a required field results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void validJsonStreamRequiredFieldMissingExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        GsonConfigParser parser = new GsonConfigParser();
+        parser.parseProjectConfig(new ByteArrayInputStream("{\"valid\": \"json\"}".getBytes(StandardCharsets.UTF_8)));
+    }
 }
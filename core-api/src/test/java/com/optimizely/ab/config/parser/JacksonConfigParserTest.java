@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019-2020, Optimizely and contributors
+ *    Copyright 2016-2017, 2019-2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -31,6 +31,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -418,4 +420,43 @@ public class JacksonConfigParserTest {
 
     }
 
+    @Test
+    public void parseProjectConfigV2FromStream() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJsonV2().getBytes(StandardCharsets.UTF_8)));
+        ProjectConfig expected = validProjectConfigV2();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseProjectConfigV4FromStream() throws Exception {
+        JacksonConfigParser parser = new JacksonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJsonV4().getBytes(StandardCharsets.UTF_8)));
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    /**
+     * Verify that an invalid JSON stream results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void invalidJsonStreamExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        JacksonConfigParser parser = new JacksonConfigParser();
+        parser.parseProjectConfig(new ByteArrayInputStream("invalid config".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Verify that a JSON stream without a required field results in a {@link ConfigParseException} being thrown.
+     */
+    @Test
+    public void validJsonStreamRequiredFieldMissingExceptionWrapping() throws Exception {
+        thrown.expect(ConfigParseException.class);
+
+        JacksonConfigParser parser = new JacksonConfigParser();
+        parser.parseProjectConfig(new ByteArrayInputStream("{\"valid\": \"json\"}".getBytes(StandardCharsets.UTF_8)));
+    }
 }
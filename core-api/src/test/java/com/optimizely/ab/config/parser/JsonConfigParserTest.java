@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019-2020, Optimizely and contributors
+ *    Copyright 2016-2017, 2019-2020, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -32,6 +32,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -361,4 +363,21 @@ public class JsonConfigParserTest {
         }
     }
 
+    @Test
+    public void parseProjectConfigV2FromStream() throws Exception {
+        JsonConfigParser parser = new JsonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJsonV2().getBytes(StandardCharsets.UTF_8)));
+        ProjectConfig expected = validProjectConfigV2();
+
+        verifyProjectConfig(actual, expected);
+    }
+
+    @Test
+    public void parseProjectConfigV4FromStream() throws Exception {
+        JsonConfigParser parser = new JsonConfigParser();
+        ProjectConfig actual = parser.parseProjectConfig(new ByteArrayInputStream(validConfigJsonV4().getBytes(StandardCharsets.UTF_8)));
+        ProjectConfig expected = validProjectConfigV4();
+
+        verifyProjectConfig(actual, expected);
+    }
 }
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019, Optimizely and contributors
+ *    Copyright 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -28,7 +28,10 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -87,7 +90,9 @@ public class BatchEventProcessorTest {
     public void testFlushMaxBatchSize() throws Exception {
         CountDownLatch countDownLatch = new CountDownLatch(1);
         setEventProcessor(logEvent -> {
-            assertEquals(MAX_BATCH_SIZE, logEvent.getEventBatch().getVisitors().size());
+            // events of the same user are coalesced into a single visitor
+            assertEquals(1, logEvent.getEventBatch().getVisitors().size());
+            assertEquals(MAX_BATCH_SIZE, logEvent.getEventBatch().getVisitors().get(0).getSnapshots().size());
             eventHandlerRule.dispatchEvent(logEvent);
             countDownLatch.countDown();
         });
@@ -292,6 +297,170 @@ public class BatchEventProcessorTest {
         assertEquals(eventProcessor.timeoutMillis, BatchEventProcessor.DEFAULT_TIMEOUT_INTERVAL);
     }
 
+    @Test
+    public void testMultipleWorkers() throws Exception {
+        List<String> revisions = Collections.synchronizedList(new ArrayList<>());
+        eventProcessor = BatchEventProcessor.builder()
+            .withNumWorkers(2)
+            .withBatchSize(MAX_BATCH_SIZE)
+            .withFlushInterval(MAX_DURATION_MS)
+            .withEventHandler(logEvent -> {
+                revisions.add(logEvent.getEventBatch().getRevision());
+                eventHandlerRule.dispatchEvent(logEvent);
+            })
+            .withTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+        ProjectConfig projectConfig2 = mock(ProjectConfig.class);
+        when(projectConfig2.getRevision()).thenReturn("2");
+        when(projectConfig2.getProjectId()).thenReturn("X");
+
+        for (int i = 0; i < 3; i++) {
+            eventProcessor.process(buildConversionEvent(EVENT_NAME, projectConfig));
+            eventProcessor.process(buildConversionEvent(EVENT_NAME, projectConfig2));
+        }
+        eventProcessor.close();
+
+        assertEquals(2, revisions.size());
+        assertTrue(revisions.containsAll(Arrays.asList("1", "2")));
+        assertEquals(6, eventProcessor.getMetrics().getDispatchedCount());
+        eventHandlerRule.expectCalls(2);
+    }
+
+    @Test
+    public void testDropNewestWhenQueueFull() throws Exception {
+        eventProcessor = BatchEventProcessor.builder()
+            .withQueueCapacity(2)
+            .withBackpressurePolicy(BatchEventProcessor.BackpressurePolicy.DROP_NEWEST)
+            .withBatchSize(MAX_BATCH_SIZE)
+            .withEventHandler(logEvent -> eventHandlerRule.dispatchEvent(logEvent))
+            .withTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build(false);
+
+        for (int i = 0; i < 5; i++) {
+            eventProcessor.process(buildConversionEvent(EVENT_NAME + i));
+        }
+        EventProcessorMetrics metrics = eventProcessor.getMetrics();
+        assertEquals(2, metrics.getQueuedCount());
+        assertEquals(3, metrics.getDroppedCount());
+        assertEquals(2, metrics.getQueueSize());
+
+        eventProcessor.start();
+        eventProcessor.close();
+
+        eventHandlerRule.expectConversion(EVENT_NAME + 0, USER_ID);
+        eventHandlerRule.expectConversion(EVENT_NAME + 1, USER_ID);
+        assertEquals(2, metrics.getDispatchedCount());
+    }
+
+    @Test
+    public void testDropOldestWhenQueueFull() throws Exception {
+        eventProcessor = BatchEventProcessor.builder()
+            .withQueueCapacity(2)
+            .withBackpressurePolicy(BatchEventProcessor.BackpressurePolicy.DROP_OLDEST)
+            .withBatchSize(MAX_BATCH_SIZE)
+            .withEventHandler(logEvent -> eventHandlerRule.dispatchEvent(logEvent))
+            .withTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build(false);
+
+        for (int i = 0; i < 5; i++) {
+            eventProcessor.process(buildConversionEvent(EVENT_NAME + i));
+        }
+        assertEquals(5, eventProcessor.getMetrics().getQueuedCount());
+        assertEquals(3, eventProcessor.getMetrics().getDroppedCount());
+
+        eventProcessor.start();
+        eventProcessor.close();
+
+        eventHandlerRule.expectConversion(EVENT_NAME + 3, USER_ID);
+        eventHandlerRule.expectConversion(EVENT_NAME + 4, USER_ID);
+    }
+
+    @Test
+    public void testBlockTimesOutWhenQueueFull() throws Exception {
+        eventProcessor = BatchEventProcessor.builder()
+            .withQueueCapacity(1)
+            .withBackpressurePolicy(BatchEventProcessor.BackpressurePolicy.BLOCK)
+            .withBlockTimeout(10, TimeUnit.MILLISECONDS)
+            .withBatchSize(MAX_BATCH_SIZE)
+            .withEventHandler(logEvent -> eventHandlerRule.dispatchEvent(logEvent))
+            .withTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build(false);
+
+        for (int i = 0; i < 3; i++) {
+            eventProcessor.process(buildConversionEvent(EVENT_NAME + i));
+        }
+        assertEquals(2, eventProcessor.getMetrics().getQueuedCount());
+        assertEquals(1, eventProcessor.getMetrics().getDroppedCount());
+
+        eventProcessor.start();
+        eventProcessor.close();
+        eventHandlerRule.expectConversion(EVENT_NAME + 0, USER_ID);
+        eventHandlerRule.expectConversion(EVENT_NAME + 1, USER_ID);
+    }
+
+    @Test
+    public void testBlockWaitsForRunningWorker() throws Exception {
+        eventProcessor = BatchEventProcessor.builder()
+            .withQueueCapacity(1)
+            .withBackpressurePolicy(BatchEventProcessor.BackpressurePolicy.BLOCK)
+            .withBlockTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .withBatchSize(MAX_BATCH_SIZE)
+            .withEventHandler(logEvent -> eventHandlerRule.dispatchEvent(logEvent))
+            .withTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+        for (int i = 0; i < 20; i++) {
+            eventProcessor.process(buildConversionEvent(EVENT_NAME + i));
+            eventHandlerRule.expectConversion(EVENT_NAME + i, USER_ID);
+        }
+        eventProcessor.close();
+
+        assertEquals(0, eventProcessor.getMetrics().getDroppedCount());
+        assertEquals(20, eventProcessor.getMetrics().getDispatchedCount());
+    }
+
+    @Test
+    public void testSpillWhenQueueFull() throws Exception {
+        eventProcessor = BatchEventProcessor.builder()
+            .withQueueCapacity(2)
+            .withBackpressurePolicy(BatchEventProcessor.BackpressurePolicy.SPILL)
+            .withBatchSize(MAX_BATCH_SIZE)
+            .withEventHandler(logEvent -> eventHandlerRule.dispatchEvent(logEvent))
+            .withTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build(false);
+
+        for (int i = 0; i < 5; i++) {
+            eventProcessor.process(buildConversionEvent(EVENT_NAME + i));
+            eventHandlerRule.expectConversion(EVENT_NAME + i, USER_ID);
+        }
+        EventProcessorMetrics metrics = eventProcessor.getMetrics();
+        assertEquals(5, metrics.getQueuedCount());
+        assertEquals(3, metrics.getSpilledCount());
+        assertEquals(0, metrics.getDroppedCount());
+
+        eventProcessor.start();
+        eventProcessor.close();
+
+        assertEquals(5, metrics.getDispatchedCount());
+        eventHandlerRule.expectCalls(1);
+    }
+
+    @Test
+    public void testInvalidQueueCapacityAndNumWorkersUseDefault() throws Exception {
+        eventProcessor = BatchEventProcessor.builder()
+            .withQueueCapacity(-1)
+            .withNumWorkers(0)
+            .withBatchSize(MAX_BATCH_SIZE)
+            .withEventHandler(logEvent -> eventHandlerRule.dispatchEvent(logEvent))
+            .withTimeout(TIMEOUT_MS, TimeUnit.MILLISECONDS)
+            .build();
+
+        eventProcessor.process(buildConversionEvent(EVENT_NAME));
+        eventProcessor.close();
+        eventHandlerRule.expectConversion(EVENT_NAME, USER_ID);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testDefaultEventHandler() {
         eventProcessor = BatchEventProcessor.builder().build();
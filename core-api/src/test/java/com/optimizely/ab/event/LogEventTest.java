@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019, Optimizely and contributors
+ *    Copyright 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import com.optimizely.ab.event.internal.payload.EventBatch;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.StringWriter;
 import java.util.Collections;
 import java.util.Map;
 
@@ -59,6 +60,36 @@ public class LogEventTest {
         assertEquals("{}", logEvent.getBody());
     }
 
+    @Test
+    public void testGetBodyIsSerializedOnce() {
+        LogEvent event = new LogEvent(REQUEST_METHOD, ENDPOINT_URL, REQUEST_PARAMS, new EventBatch.Builder()
+            .setAccountId("12345")
+            .setProjectId("67890")
+            .setRevision("1")
+            .build());
+        assertSame(event.getBody(), event.getBody());
+    }
+
+    @Test
+    public void testWriteBody() throws Exception {
+        EventBatch eventBatch = new EventBatch.Builder().setAccountId("12345").build();
+        LogEvent event = new LogEvent(REQUEST_METHOD, ENDPOINT_URL, REQUEST_PARAMS, eventBatch);
+        String expected = new LogEvent(REQUEST_METHOD, ENDPOINT_URL, REQUEST_PARAMS, eventBatch).getBody();
+
+        StringWriter streamed = new StringWriter();
+        event.writeBody(streamed);
+        assertEquals(expected, streamed.toString());
+
+        event.getBody();
+        StringWriter memoized = new StringWriter();
+        event.writeBody(memoized);
+        assertEquals(expected, memoized.toString());
+
+        StringWriter empty = new StringWriter();
+        new LogEvent(REQUEST_METHOD, ENDPOINT_URL, REQUEST_PARAMS, null).writeBody(empty);
+        assertEquals("", empty.toString());
+    }
+
     @Test
     public void testGetEventBatch() {
         assertEquals(EVENT_BATCH, logEvent.getEventBatch());
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2020, 2022, Optimizely and contributors
+ *    Copyright 2016-2020, 2022-2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -1038,6 +1038,44 @@ public class EventFactoryTest {
     }
 
 
+    @Test
+    public void createLogEventCoalescesVisitorsOfTheSameUser() {
+        Experiment activatedExperiment = validProjectConfig.getExperiments().get(0);
+        Variation bucketedVariation = activatedExperiment.getVariations().get(0);
+        EventType eventType = validProjectConfig.getEventTypes().get(0);
+        Attribute attribute = validProjectConfig.getAttributes().get(0);
+        Map<String, String> attributeMap = Collections.singletonMap(attribute.getKey(), "value");
+
+        List<UserEvent> userEvents = Arrays.asList(
+            UserEventFactory.createImpressionEvent(validProjectConfig, activatedExperiment, bucketedVariation,
+                userId, attributeMap, activatedExperiment.getKey(), "experiment", true),
+            UserEventFactory.createImpressionEvent(validProjectConfig, activatedExperiment, bucketedVariation,
+                "otherUserId", attributeMap, activatedExperiment.getKey(), "experiment", true),
+            UserEventFactory.createConversionEvent(validProjectConfig, userId, eventType.getId(), eventType.getKey(),
+                new HashMap<>(attributeMap), Collections.emptyMap()),
+            UserEventFactory.createConversionEvent(validProjectConfig, userId, eventType.getId(), eventType.getKey(),
+                Collections.singletonMap(attribute.getKey(), "otherValue"), Collections.emptyMap()));
+
+        EventBatch eventBatch = EventFactory.createLogEvent(userEvents).getEventBatch();
+
+        List<com.optimizely.ab.event.internal.payload.Visitor> visitors = eventBatch.getVisitors();
+        assertEquals(3, visitors.size());
+
+        // same user and attributes: one visitor with a snapshot per event, in order
+        assertEquals(userId, visitors.get(0).getVisitorId());
+        assertEquals(2, visitors.get(0).getSnapshots().size());
+        assertEquals(bucketedVariation.getId(), visitors.get(0).getSnapshots().get(0).getDecisions().get(0).getVariationId());
+        assertEquals(eventType.getKey(), visitors.get(0).getSnapshots().get(1).getEvents().get(0).getKey());
+        assertEquals("value", visitors.get(0).getAttributes().get(0).getValue());
+
+        assertEquals("otherUserId", visitors.get(1).getVisitorId());
+        assertEquals(1, visitors.get(1).getSnapshots().size());
+
+        assertEquals(userId, visitors.get(2).getVisitorId());
+        assertEquals(1, visitors.get(2).getSnapshots().size());
+        assertEquals("otherValue", visitors.get(2).getAttributes().get(0).getValue());
+    }
+
     private com.optimizely.ab.event.internal.payload.Attribute getBotFilteringAttribute() {
         return new com.optimizely.ab.event.internal.payload.Attribute.Builder()
             .setEntityId(ControlAttribute.BOT_FILTERING_ATTRIBUTE.toString())
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2017, 2019, Optimizely and contributors
+ *    Copyright 2016-2017, 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -25,6 +25,7 @@ import com.optimizely.ab.event.internal.payload.EventBatch;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.StringWriter;
 
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversion;
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateConversionJson;
@@ -36,6 +37,8 @@ import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.ge
 import static com.optimizely.ab.event.internal.serializer.SerializerTestUtils.generateImpressionWithSessionIdJson;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 
 public class GsonSerializerTest {
@@ -84,4 +87,22 @@ public class GsonSerializerTest {
 
         assertThat(actual, is(expected));
     }
+
+    @Test
+    public void serializeIntoWriter() throws IOException {
+        EventBatch impression = generateImpressionWithSessionId();
+        final boolean[] closed = {false};
+        StringWriter writer = new StringWriter() {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        serializer.serialize(impression, writer);
+
+        assertEquals(serializer.serialize(impression), writer.toString());
+        assertFalse(closed[0]);
+    }
 }
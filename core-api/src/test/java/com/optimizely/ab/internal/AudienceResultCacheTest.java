@@ -0,0 +1,86 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import com.optimizely.ab.config.audience.Audience;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class AudienceResultCacheTest {
+
+    private final Audience audience = new Audience("1", "audience", null);
+
+    @Test
+    public void evaluatesAudienceOnce() {
+        AudienceResultCache cache = new AudienceResultCache();
+        AtomicInteger evaluations = new AtomicInteger();
+        Supplier<Boolean> evaluator = () -> {
+            evaluations.incrementAndGet();
+            return true;
+        };
+
+        assertTrue(cache.getOrEvaluate(audience, evaluator));
+        assertTrue(cache.getOrEvaluate(audience, evaluator));
+        assertEquals(1, evaluations.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void cachesNullResults() {
+        AudienceResultCache cache = new AudienceResultCache();
+        AtomicInteger evaluations = new AtomicInteger();
+        Supplier<Boolean> evaluator = () -> {
+            evaluations.incrementAndGet();
+            return null;
+        };
+
+        assertNull(cache.getOrEvaluate(audience, evaluator));
+        assertNull(cache.getOrEvaluate(audience, evaluator));
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    public void cachesByAudienceInstance() {
+        AudienceResultCache cache = new AudienceResultCache();
+        Audience sameIdAudience = new Audience("1", "audience", null);
+
+        assertTrue(cache.getOrEvaluate(audience, () -> true));
+        assertFalse(cache.getOrEvaluate(sameIdAudience, () -> false));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void newGenerationIsEmptyAndSharesCounters() {
+        AudienceResultCache cache = new AudienceResultCache();
+        assertTrue(cache.getOrEvaluate(audience, () -> true));
+
+        AudienceResultCache next = cache.newGeneration();
+        assertEquals(0, next.size());
+        assertFalse(next.getOrEvaluate(audience, () -> false));
+
+        // the previous generation is left untouched
+        assertTrue(cache.getOrEvaluate(audience, () -> false));
+        assertEquals(1, next.getHitCount());
+        assertEquals(2, next.getMissCount());
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentLRUCacheTest {
+
+    @Test
+    public void createSaveAndLookupOneItem() {
+        Cache<String> cache = new ConcurrentLRUCache<>();
+        assertNull(cache.lookup("key1"));
+        cache.save("key1", "value1");
+        assertEquals("value1", cache.lookup("key1"));
+    }
+
+    @Test
+    public void saveReplacesItem() {
+        ConcurrentLRUCache<String> cache = new ConcurrentLRUCache<>();
+        cache.save("key1", "value1");
+        cache.save("key1", "value2");
+        assertEquals("value2", cache.lookup("key1"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void lookupProtectsItemFromEviction() {
+        ConcurrentLRUCache<List<String>> cache = new ConcurrentLRUCache<>(2, Cache.DEFAULT_TIMEOUT_SECONDS);
+
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        cache.save("user2", Arrays.asList("segment3", "segment4"));
+        assertEquals(Arrays.asList("segment1", "segment2"), cache.lookup("user1"));
+
+        // user2 is now the least recently used
+        cache.save("user3", Arrays.asList("segment5", "segment6"));
+
+        assertNull(cache.lookup("user2"));
+        assertEquals(Arrays.asList("segment1", "segment2"), cache.lookup("user1"));
+        assertEquals(Arrays.asList("segment5", "segment6"), cache.lookup("user3"));
+    }
+
+    @Test
+    public void saveProtectsItemFromEviction() {
+        ConcurrentLRUCache<List<String>> cache = new ConcurrentLRUCache<>(2, Cache.DEFAULT_TIMEOUT_SECONDS);
+
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        cache.save("user2", Arrays.asList("segment3", "segment4"));
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        cache.save("user3", Arrays.asList("segment5", "segment6"));
+
+        assertNull(cache.lookup("user2"));
+        assertEquals(Arrays.asList("segment1", "segment2"), cache.lookup("user1"));
+    }
+
+    @Test
+    public void whenCacheIsDisabled() {
+        ConcurrentLRUCache<List<String>> cache = new ConcurrentLRUCache<>(0, Cache.DEFAULT_TIMEOUT_SECONDS);
+
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        assertNull(cache.lookup("user1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void whenItemsExpire() throws InterruptedException {
+        ConcurrentLRUCache<List<String>> cache = new ConcurrentLRUCache<>(Cache.DEFAULT_MAX_SIZE, 50, TimeUnit.MILLISECONDS);
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        assertEquals(Arrays.asList("segment1", "segment2"), cache.lookup("user1"));
+        assertEquals(1, cache.size());
+        Thread.sleep(100);
+        assertNull(cache.lookup("user1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void zeroTimeoutNeverExpires() throws InterruptedException {
+        ConcurrentLRUCache<String> cache = new ConcurrentLRUCache<>(Cache.DEFAULT_MAX_SIZE, 0);
+        cache.save("user1", "value1");
+        Thread.sleep(10);
+        assertEquals("value1", cache.lookup("user1"));
+    }
+
+    @Test
+    public void whenCacheReachesMaxSize() {
+        ConcurrentLRUCache<List<String>> cache = new ConcurrentLRUCache<>(2, Cache.DEFAULT_TIMEOUT_SECONDS);
+
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        cache.save("user2", Arrays.asList("segment3", "segment4"));
+        cache.save("user3", Arrays.asList("segment5", "segment6"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        assertEquals(Arrays.asList("segment5", "segment6"), cache.lookup("user3"));
+        assertEquals(Arrays.asList("segment3", "segment4"), cache.lookup("user2"));
+        assertNull(cache.lookup("user1"));
+    }
+
+    @Test
+    public void segmentsAddUpToMaxSize() {
+        assertEquals(1, new ConcurrentLRUCache<>(100, 0, TimeUnit.SECONDS).getSegmentCount());
+        assertEquals(16, new ConcurrentLRUCache<>(Cache.DEFAULT_MAX_SIZE, 0, TimeUnit.SECONDS).getSegmentCount());
+
+        ConcurrentLRUCache<Integer> cache = new ConcurrentLRUCache<>(1000, 0, TimeUnit.SECONDS);
+        assertEquals(8, cache.getSegmentCount());
+        for (int i = 0; i < 5000; i++) {
+            cache.save("key" + i, i);
+        }
+        assertTrue(cache.size() <= 1000);
+        assertEquals(5000 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void whenCacheIsReset() {
+        ConcurrentLRUCache<List<String>> cache = new ConcurrentLRUCache<>();
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        cache.save("user2", Arrays.asList("segment3", "segment4"));
+        assertEquals(Arrays.asList("segment1", "segment2"), cache.lookup("user1"));
+        assertEquals(2, cache.size());
+
+        cache.reset();
+
+        assertNull(cache.lookup("user1"));
+        assertNull(cache.lookup("user2"));
+        assertEquals(0, cache.size());
+
+        cache.save("user1", Arrays.asList("segment1", "segment2"));
+        assertEquals(Arrays.asList("segment1", "segment2"), cache.lookup("user1"));
+    }
+
+    @Test
+    public void statistics() {
+        ConcurrentLRUCache<String> cache = new ConcurrentLRUCache<>();
+        cache.save("key1", "value1");
+        cache.lookup("key1");
+        cache.lookup("key1");
+        cache.lookup("key2");
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+    }
+
+    @Test
+    public void concurrentSavesAndLookups() throws Exception {
+        int maxSize = 500;
+        ConcurrentLRUCache<Integer> cache = new ConcurrentLRUCache<>(maxSize, 0, TimeUnit.SECONDS);
+        int threads = 8;
+        int operations = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < operations; i++) {
+                        int key = random.nextInt(2000);
+                        if ((i + seed) % 4 == 0) {
+                            cache.save("key" + key, key);
+                        } else {
+                            Integer value = cache.lookup("key" + key);
+                            if (value != null) {
+                                assertEquals(key, value.intValue());
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(cache.size() <= maxSize);
+        assertEquals(threads * operations * 3 / 4, cache.getHitCount() + cache.getMissCount());
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MemoizingSupplierTest {
+
+    @Test
+    public void valueIsComputedOnFirstGet() {
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingSupplier<String> supplier = new MemoizingSupplier<>(() -> "value" + calls.incrementAndGet());
+
+        assertEquals(0, calls.get());
+        assertEquals("value1", supplier.get());
+        assertEquals("value1", supplier.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void nullValueIsMemoized() {
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingSupplier<String> supplier = new MemoizingSupplier<>(() -> {
+            calls.incrementAndGet();
+            return null;
+        });
+
+        assertNull(supplier.get());
+        assertNull(supplier.get());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void concurrentGetsComputeOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        MemoizingSupplier<Object> supplier = new MemoizingSupplier<>(() -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+
+        int threadCount = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Object> values = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                Object value = supplier.get();
+                synchronized (values) {
+                    values.add(value);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(threadCount, values.size());
+        for (Object value : values) {
+            assertSame(values.get(0), value);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class RingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(2, new RingBuffer<>(1).capacity());
+        assertEquals(2, new RingBuffer<>(2).capacity());
+        assertEquals(1024, new RingBuffer<>(1000).capacity());
+        assertEquals(1024, new RingBuffer<>(1024).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new RingBuffer<>(0);
+    }
+
+    @Test
+    public void offerAndPollInOrder() {
+        RingBuffer<String> buffer = new RingBuffer<>(4);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+
+        assertTrue(buffer.offer("a"));
+        assertTrue(buffer.offer("b"));
+        assertTrue(buffer.offer("c"));
+        assertEquals(3, buffer.size());
+
+        assertEquals("a", buffer.poll());
+        assertEquals("b", buffer.poll());
+        assertTrue(buffer.offer("d"));
+        assertEquals("c", buffer.poll());
+        assertEquals("d", buffer.poll());
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void singleSlotIsRoundedUp() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(1);
+        assertTrue(buffer.offer(1));
+        assertTrue(buffer.offer(2));
+        assertFalse(buffer.offer(3));
+        assertEquals(Integer.valueOf(1), buffer.poll());
+        assertEquals(Integer.valueOf(2), buffer.poll());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(2);
+        assertTrue(buffer.offer(1));
+        assertTrue(buffer.offer(2));
+        assertFalse(buffer.offer(3));
+        assertEquals(2, buffer.size());
+
+        assertEquals(Integer.valueOf(1), buffer.poll());
+        assertTrue(buffer.offer(3));
+        assertEquals(Integer.valueOf(2), buffer.poll());
+        assertEquals(Integer.valueOf(3), buffer.poll());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void offerNull() {
+        new RingBuffer<>(2).offer(null);
+    }
+
+    @Test
+    public void concurrentProducersSingleConsumer() throws Exception {
+        int producers = 4;
+        int itemsPerProducer = 10000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p * itemsPerProducer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < itemsPerProducer; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        BitSet received = new BitSet();
+        int[] lastPerProducer = new int[producers];
+        Arrays.fill(lastPerProducer, -1);
+        int count = 0;
+        while (count < producers * itemsPerProducer) {
+            Integer item = buffer.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            assertFalse("received twice: " + item, received.get(item));
+            received.set(item);
+
+            // items of a single producer keep their order
+            int producer = item / itemsPerProducer;
+            assertTrue(item > lastPerProducer[producer]);
+            lastPerProducer[producer] = item;
+            count++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(producers * itemsPerProducer, received.cardinality());
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019, Optimizely and contributors
+ *    Copyright 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -30,6 +30,7 @@ import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
@@ -206,4 +207,35 @@ public class DecisionNotificationTest {
             .withVariableKey(FEATURE_VARIABLE_KEY)
             .build();
     }
+
+    @Test
+    public void testFlagDecisionInfoIsBuiltOnDemand() {
+        DecisionNotification.FlagDecisionNotificationBuilder builder = DecisionNotification.newFlagDecisionNotificationBuilder()
+            .withUserId(USER_ID)
+            .withAttributes(USER_ATTRIBUTES)
+            .withFlagKey(FEATURE_KEY)
+            .withEnabled(Boolean.TRUE)
+            .withVariables(Collections.singletonMap("var", 1))
+            .withVariationKey("variationKey")
+            .withRuleKey("ruleKey")
+            .withReasons(Collections.singletonList("reason"))
+            .withDecisionEventDispatched(Boolean.TRUE);
+        DecisionNotification flagDecisionNotification = builder.build();
+
+        // the notification keeps the values it was built with
+        builder.withFlagKey("otherFlagKey").withEnabled(Boolean.FALSE);
+
+        Map<String, Object> expectedDecisionInfo = new HashMap<>();
+        expectedDecisionInfo.put(DecisionNotification.FlagDecisionNotificationBuilder.FLAG_KEY, FEATURE_KEY);
+        expectedDecisionInfo.put(DecisionNotification.FlagDecisionNotificationBuilder.ENABLED, Boolean.TRUE);
+        expectedDecisionInfo.put(DecisionNotification.FlagDecisionNotificationBuilder.VARIABLES, Collections.singletonMap("var", 1));
+        expectedDecisionInfo.put(DecisionNotification.FlagDecisionNotificationBuilder.VARIATION_KEY, "variationKey");
+        expectedDecisionInfo.put(DecisionNotification.FlagDecisionNotificationBuilder.RULE_KEY, "ruleKey");
+        expectedDecisionInfo.put(DecisionNotification.FlagDecisionNotificationBuilder.REASONS, Collections.singletonList("reason"));
+        expectedDecisionInfo.put(DecisionNotification.FlagDecisionNotificationBuilder.DECISION_EVENT_DISPATCHED, Boolean.TRUE);
+
+        assertEquals(NotificationCenter.DecisionNotificationType.FLAG.toString(), flagDecisionNotification.getType());
+        assertEquals(expectedDecisionInfo, flagDecisionNotification.getDecisionInfo());
+        assertSame(flagDecisionNotification.getDecisionInfo(), flagDecisionNotification.getDecisionInfo());
+    }
 }
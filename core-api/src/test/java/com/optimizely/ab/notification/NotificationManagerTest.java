@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019, Optimizely and contributors
+ *    Copyright 2019, 2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -20,6 +20,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -103,4 +104,107 @@ public class NotificationManagerTest {
         assertTrue(latch.await(10, TimeUnit.SECONDS));
         assertEquals(numThreads * numRepeats, notificationManager.size());
     }
+
+    @Test
+    public void testSendWhileHandlersChange() throws InterruptedException {
+        TestNotificationHandler<TestNotification> handler = new TestNotificationHandler<>();
+        assertEquals(1, notificationManager.addHandler(handler));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        AtomicBoolean done = new AtomicBoolean(false);
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            while (!done.get()) {
+                int id = notificationManager.addHandler(message -> {});
+                notificationManager.remove(id);
+            }
+            latch.countDown();
+        });
+
+        for (int i = 0; i < 1000; i++) {
+            notificationManager.send(new TestNotification("message" + i));
+        }
+        done.set(true);
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(1000, handler.getMessages().size());
+        assertEquals(1, notificationManager.size());
+    }
+
+    @Test
+    public void testSendToAsyncHandler() throws InterruptedException {
+        ConcurrentLinkedQueue<String> threads = new ConcurrentLinkedQueue<>();
+        CountDownLatch latch = new CountDownLatch(3);
+        assertEquals(1, notificationManager.addAsyncHandler(message -> {
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+        }));
+
+        notificationManager.send(new TestNotification("message1"));
+        notificationManager.send(new TestNotification("message2"));
+        notificationManager.send(new TestNotification("message3"));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(3, threads.size());
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+        assertEquals(0, notificationManager.getDroppedCount());
+    }
+
+    @Test
+    public void testAsyncHandlerDropsWhenQueueIsFull() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        TestNotificationHandler<TestNotification> handler = new TestNotificationHandler<>();
+        assertEquals(1, notificationManager.addAsyncHandler(message -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            handler.handle(message);
+        }, 2));
+
+        notificationManager.send(new TestNotification("message1"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 2; i <= 5; i++) {
+            notificationManager.send(new TestNotification("message" + i));
+        }
+
+        assertEquals(2, notificationManager.getDroppedCount());
+        release.countDown();
+        notificationManager.clear();
+        assertEquals(0, notificationManager.getDroppedCount());
+    }
+
+    @Test
+    public void testRemoveAsyncHandlerDeliversQueuedNotifications() {
+        TestNotificationHandler<TestNotification> handler = new TestNotificationHandler<>();
+        AsyncNotificationHandler<TestNotification> asyncHandler = new AsyncNotificationHandler<>(handler);
+        int id = notificationManager.addHandler(asyncHandler);
+
+        notificationManager.send(new TestNotification("message1"));
+        notificationManager.send(new TestNotification("message2"));
+        assertTrue(notificationManager.remove(id));
+
+        // closed handlers drop late notifications
+        asyncHandler.handle(new TestNotification("message3"));
+        assertEquals(1, asyncHandler.getDroppedCount());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (asyncHandler.getDeliveredCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(2, handler.getMessages().size());
+        assertEquals(0, notificationManager.size());
+    }
+
+    @Test
+    public void testAddDuplicateAsyncHandler() {
+        TestNotificationHandler<TestNotification> handler = new TestNotificationHandler<>();
+        assertEquals(1, notificationManager.addHandler(handler));
+        assertEquals(-1, notificationManager.addAsyncHandler(handler));
+        assertEquals(1, notificationManager.size());
+    }
 }
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2022, Optimizely
+ *    Copyright 2022, 2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -30,10 +30,15 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
@@ -255,6 +260,164 @@ public class ODPEventManagerTest {
         assertFalse(event.isDataValid());
     }
 
+    @Test
+    public void dropNewestEventsWhenQueueIsFull() throws InterruptedException {
+        BlockingApiManager apiManager = new BlockingApiManager(202);
+        ODPEventManager eventManager = ODPEventManager.builder()
+            .withApiManager(apiManager)
+            .withBatchSize(2)
+            .withQueueSize(3)
+            .build();
+        eventManager.updateSettings(new ODPConfig("key", "http://www.odp-host.com", null));
+        eventManager.start();
+
+        // the first batch holds the dispatcher until released, so the rest stays queued
+        sendEvents(eventManager, 0, 2);
+        assertTrue(apiManager.sendStarted.await(5, TimeUnit.SECONDS));
+        sendEvents(eventManager, 2, 7);
+
+        assertEquals(3, eventManager.getMetrics().getQueueSize());
+        assertEquals(2, eventManager.getMetrics().getDroppedCount());
+
+        apiManager.release.countDown();
+        eventManager.stop();
+        Thread.sleep(500);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), apiManager.getSentIds());
+        assertEquals(5, eventManager.getMetrics().getDispatchedCount());
+        assertEquals(0, eventManager.getMetrics().getQueueSize());
+    }
+
+    @Test
+    public void dropOldestEventsWhenQueueIsFull() throws InterruptedException {
+        BlockingApiManager apiManager = new BlockingApiManager(202);
+        ODPEventManager eventManager = ODPEventManager.builder()
+            .withApiManager(apiManager)
+            .withBatchSize(2)
+            .withQueueSize(3)
+            .withQueueFullPolicy(ODPEventManager.QueueFullPolicy.DROP_OLDEST)
+            .build();
+        eventManager.updateSettings(new ODPConfig("key", "http://www.odp-host.com", null));
+        eventManager.start();
+
+        sendEvents(eventManager, 0, 2);
+        assertTrue(apiManager.sendStarted.await(5, TimeUnit.SECONDS));
+        sendEvents(eventManager, 2, 7);
+
+        assertEquals(3, eventManager.getMetrics().getQueueSize());
+        assertEquals(2, eventManager.getMetrics().getDroppedCount());
+
+        apiManager.release.countDown();
+        eventManager.stop();
+        Thread.sleep(500);
+        assertEquals(Arrays.asList(0, 1, 4, 5, 6), apiManager.getSentIds());
+    }
+
+    @Test
+    public void dispatchBatchesInParallel() throws InterruptedException {
+        BlockingApiManager apiManager = new BlockingApiManager(202);
+        ODPEventManager eventManager = ODPEventManager.builder()
+            .withApiManager(apiManager)
+            .withBatchSize(2)
+            .withMaxInFlightBatches(2)
+            .build();
+        eventManager.updateSettings(new ODPConfig("key", "http://www.odp-host.com", null));
+        eventManager.start();
+
+        sendEvents(eventManager, 0, 4);
+        Thread.sleep(200);
+        assertEquals(4, apiManager.getSentIds().size());
+        assertEquals(2, eventManager.getMetrics().getInFlightBatchCount());
+
+        apiManager.release.countDown();
+        eventManager.stop();
+        Thread.sleep(500);
+        assertEquals(4, eventManager.getMetrics().getDispatchedCount());
+        assertEquals(0, eventManager.getMetrics().getInFlightBatchCount());
+    }
+
+    @Test
+    public void countRetriesAndFailedEvents() throws InterruptedException {
+        BlockingApiManager apiManager = new BlockingApiManager(500);
+        apiManager.release.countDown();
+        ODPEventManager eventManager = ODPEventManager.builder()
+            .withApiManager(apiManager)
+            .withBatchSize(2)
+            .withRetryBackoff(1, TimeUnit.MILLISECONDS)
+            .build();
+        eventManager.updateSettings(new ODPConfig("key", "http://www.odp-host.com", null));
+        eventManager.start();
+
+        sendEvents(eventManager, 0, 2);
+        eventManager.stop();
+        Thread.sleep(500);
+
+        // three attempts of the same batch
+        assertEquals(Arrays.asList(0, 1, 0, 1, 0, 1), apiManager.getSentIds());
+        assertEquals(2, eventManager.getMetrics().getRetryCount());
+        assertEquals(2, eventManager.getMetrics().getFailedCount());
+        assertEquals(0, eventManager.getMetrics().getDispatchedCount());
+    }
+
+    @Test
+    public void retryBackoffGrowsExponentiallyWithJitter() {
+        ODPEventManager eventManager = ODPEventManager.builder()
+            .withApiManager(mockApiManager)
+            .withRetryBackoff(100, TimeUnit.MILLISECONDS)
+            .build();
+        for (int i = 0; i < 100; i++) {
+            long firstBackoff = eventManager.getRetryBackoffMillis(1);
+            assertTrue(firstBackoff >= 50 && firstBackoff <= 100);
+            long secondBackoff = eventManager.getRetryBackoffMillis(2);
+            assertTrue(secondBackoff >= 100 && secondBackoff <= 200);
+        }
+    }
+
+    private void sendEvents(ODPEventManager eventManager, int fromId, int toId) {
+        for (int i = fromId; i < toId; i++) {
+            eventManager.sendEvent(getEvent(i));
+        }
+    }
+
+    /**
+     * Records the ids of the events sent, holding every send until released.
+     */
+    private static class BlockingApiManager implements ODPApiManager {
+        private final int statusCode;
+        private final List<Integer> sentIds = new ArrayList<>();
+        private final CountDownLatch sendStarted = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        BlockingApiManager(int statusCode) {
+            this.statusCode = statusCode;
+        }
+
+        synchronized List<Integer> getSentIds() {
+            return new ArrayList<>(sentIds);
+        }
+
+        @Override
+        public String fetchQualifiedSegments(String apiKey, String apiEndpoint, String userKey, String userValue, Set<String> segmentsToCheck) {
+            return null;
+        }
+
+        @Override
+        public Integer sendEvents(String apiKey, String apiEndpoint, String eventPayload) {
+            JSONArray events = new JSONArray(eventPayload);
+            synchronized (this) {
+                for (int i = 0; i < events.length(); i++) {
+                    sentIds.add(events.getJSONObject(i).getJSONObject("data").getInt("data2"));
+                }
+            }
+            sendStarted.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return statusCode;
+        }
+    }
+
     private ODPEvent getEvent(int id) {
         Map<String, String> identifiers = new HashMap<>();
         identifiers.put("identifier1", "value1-" + id);
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2022, Optimizely
+ *    Copyright 2022, 2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -18,6 +18,7 @@ package com.optimizely.ab.odp;
 
 import ch.qos.logback.classic.Level;
 import com.optimizely.ab.internal.Cache;
+import com.optimizely.ab.internal.ConcurrentLRUCache;
 import com.optimizely.ab.internal.LogbackVerifier;
 import org.junit.Before;
 import org.junit.Rule;
@@ -30,7 +31,8 @@ import static org.mockito.Mockito.*;
 import static org.junit.Assert.*;
 
 import java.util.*;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ODPSegmentManagerTest {
 
@@ -398,4 +400,359 @@ public class ODPSegmentManagerTest {
 
         logbackVerifier.expectMessage(Level.DEBUG, "No Segments are used in the project, Not Fetching segments. Returning empty list");
     }
+
+    @Test
+    public void concurrentMissesForSameUserShareOneFetch() throws Exception {
+        AtomicInteger fetchCount = new AtomicInteger();
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        ODPApiManager apiManager = new BlockingApiManager(fetchCount, fetchStarted, releaseFetch);
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager);
+        segmentManager.updateSettings(odpConfig);
+
+        int threads = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            futures.add(executor.submit(() -> segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId")));
+            assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+            for (int i = 1; i < threads; i++) {
+                futures.add(executor.submit(() -> segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId")));
+            }
+
+            // give the other threads time to join the pending fetch
+            Thread.sleep(100);
+            releaseFetch.countDown();
+
+            for (Future<List<String>> future : futures) {
+                assertEquals(Arrays.asList("segment1", "segment2"), future.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, fetchCount.get());
+    }
+
+    @Test
+    public void failedFetchReleasesWaitingMisses() throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        ODPApiManager apiManager = new BlockingApiManager(new AtomicInteger(), fetchStarted, releaseFetch) {
+            @Override
+            public String fetchQualifiedSegments(String apiKey, String apiEndpoint, String userKey, String userValue, Set<String> segmentsToCheck) {
+                super.fetchQualifiedSegments(apiKey, apiEndpoint, userKey, userValue, segmentsToCheck);
+                throw new LinkageError("fetch failed");
+            }
+        };
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager);
+        segmentManager.updateSettings(odpConfig);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> leader = executor.submit(() -> segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId"));
+            assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+            Future<List<String>> follower = executor.submit(() -> segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId"));
+
+            // give the other thread time to join the pending fetch
+            Thread.sleep(100);
+            releaseFetch.countDown();
+
+            for (Future<List<String>> future : Arrays.asList(leader, follower)) {
+                try {
+                    future.get(5, TimeUnit.SECONDS);
+                    fail("Expected the fetch to fail.");
+                } catch (ExecutionException e) {
+                    assertEquals("fetch failed", e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void waitForPendingFetchIsBoundedByFetchTimeout() throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        ODPApiManager apiManager = new BlockingApiManager(new AtomicInteger(), fetchStarted, releaseFetch);
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager, new ConcurrentLRUCache<>(), null, ODPSegmentManager.DEFAULT_MAX_PENDING_FETCHES, 100);
+        segmentManager.updateSettings(odpConfig);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<String>> leader = executor.submit(() -> segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId"));
+            assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+
+            assertNull(segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId"));
+
+            releaseFetch.countDown();
+            assertEquals(Arrays.asList("segment1", "segment2"), leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void missesForDifferentUsersFetchInParallel() throws Exception {
+        AtomicInteger fetchCount = new AtomicInteger();
+        CountDownLatch fetchesStarted = new CountDownLatch(2);
+        // each fetch only completes once both are in flight
+        ODPApiManager apiManager = new BlockingApiManager(fetchCount, fetchesStarted, fetchesStarted);
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager);
+        segmentManager.updateSettings(odpConfig);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> future1 = executor.submit(() -> segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId1"));
+            Future<List<String>> future2 = executor.submit(() -> segmentManager.getQualifiedSegments(ODPUserKey.FS_USER_ID, "testId2"));
+
+            assertEquals(Arrays.asList("segment1", "segment2"), future1.get(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("segment1", "segment2"), future2.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, fetchCount.get());
+    }
+
+    @Test
+    public void cacheHitAsyncFutureCompletesWithoutExecutor() throws Exception {
+        Mockito.when(mockCache.lookup(any())).thenReturn(Arrays.asList("segment1-cached", "segment2-cached"));
+        Executor executor = mock(Executor.class);
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(mockApiManager, mockCache, executor, 10, 1000);
+        segmentManager.updateSettings(odpConfig);
+        CompletableFuture<List<String>> future = segmentManager.getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, "testId");
+
+        assertTrue(future.isDone());
+        assertEquals(Arrays.asList("segment1-cached", "segment2-cached"), future.get());
+        verify(mockCache, times(1)).lookup("fs_user_id-$-testId");
+        verify(executor, times(0)).execute(any());
+        verify(mockApiManager, times(0)).fetchQualifiedSegments(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void cacheMissAsyncFutureRunsOnExecutor() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        ODPApiManager apiManager = new BlockingApiManager(new AtomicInteger(), new CountDownLatch(1), new CountDownLatch(0));
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager, mockCache, runnable -> {
+            executions.incrementAndGet();
+            executor.execute(runnable);
+        }, 10, 1000);
+        segmentManager.updateSettings(odpConfig);
+        try {
+            List<String> segments = segmentManager.getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, "testId").get(5, TimeUnit.SECONDS);
+            assertEquals(Arrays.asList("segment1", "segment2"), segments);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, executions.get());
+        verify(mockCache, times(1)).lookup("fs_user_id-$-testId");
+        verify(mockCache, times(1)).save("fs_user_id-$-testId", Arrays.asList("segment1", "segment2"));
+    }
+
+    @Test
+    public void asyncFetchesPastLimitCompleteWithEmptySegments() throws Exception {
+        CountDownLatch fetchStarted = new CountDownLatch(1);
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        AtomicInteger fetchCount = new AtomicInteger();
+        ODPApiManager apiManager = new BlockingApiManager(fetchCount, fetchStarted, releaseFetch);
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager, mockCache, null, 1, 0);
+        segmentManager.updateSettings(odpConfig);
+        try {
+            CompletableFuture<List<String>> pending = segmentManager.getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, "testId1");
+            assertTrue(fetchStarted.await(5, TimeUnit.SECONDS));
+
+            CompletableFuture<List<String>> rejected = segmentManager.getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, "testId2");
+            assertTrue(rejected.isDone());
+            assertEquals(Collections.emptyList(), rejected.get());
+
+            releaseFetch.countDown();
+            assertEquals(Arrays.asList("segment1", "segment2"), pending.get(5, TimeUnit.SECONDS));
+        } finally {
+            segmentManager.close();
+        }
+        assertEquals(1, fetchCount.get());
+    }
+
+    @Test
+    public void asyncFetchTimeoutCompletesWithCachedSegments() throws Exception {
+        CountDownLatch releaseFetch = new CountDownLatch(1);
+        ODPApiManager apiManager = new BlockingApiManager(new AtomicInteger(), new CountDownLatch(1), releaseFetch);
+        // missed when the fetch is requested, cached by the time it times out
+        Mockito.when(mockCache.lookup(any())).thenReturn(null, Collections.singletonList("segment1-cached"));
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager, mockCache, null, 10, 50);
+        segmentManager.updateSettings(odpConfig);
+        try {
+            List<String> segments = segmentManager.getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, "testId").get(5, TimeUnit.SECONDS);
+            assertEquals(Collections.singletonList("segment1-cached"), segments);
+        } finally {
+            releaseFetch.countDown();
+            segmentManager.close();
+        }
+    }
+
+    @Test
+    public void asyncFetchAfterCloseCompletesWithEmptySegments() throws Exception {
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(mockApiManager, mockCache);
+        segmentManager.updateSettings(odpConfig);
+        segmentManager.close();
+
+        CompletableFuture<List<String>> future = segmentManager.getQualifiedSegmentsAsync(ODPUserKey.FS_USER_ID, "testId");
+
+        assertTrue(future.isDone());
+        assertEquals(Collections.emptyList(), future.get());
+        verify(mockApiManager, times(0)).fetchQualifiedSegments(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void prefetchFetchesMissedUsersInBatchesAndCachesThem() {
+        BulkApiManager apiManager = new BulkApiManager();
+        Cache<List<String>> cache = new ConcurrentLRUCache<>();
+        cache.save("fs_user_id-$-cachedUser", Collections.singletonList("segment1-cached"));
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager, cache);
+        segmentManager.updateSettings(odpConfig);
+
+        List<ODPUserIdentifier> users = Arrays.asList(
+            ODPUserIdentifier.fsUserId("cachedUser"),
+            ODPUserIdentifier.fsUserId("user1"),
+            new ODPUserIdentifier(ODPUserKey.VUID, "vuid1"),
+            ODPUserIdentifier.fsUserId("user2"),
+            ODPUserIdentifier.fsUserId("user1"));
+        Map<ODPUserIdentifier, List<String>> segments = segmentManager.prefetchQualifiedSegments(users, 2);
+
+        // the cached user is not fetched, the duplicate is fetched once
+        assertEquals(Arrays.asList(2, 1), apiManager.batchSizes);
+        assertEquals(4, segments.size());
+        assertEquals(Collections.singletonList("segment1-cached"), segments.get(ODPUserIdentifier.fsUserId("cachedUser")));
+        assertEquals(Arrays.asList("segment1", "segment2"), segments.get(new ODPUserIdentifier(ODPUserKey.VUID, "vuid1")));
+
+        // decisions that follow are cache hits
+        assertEquals(Arrays.asList("segment1", "segment2"), segmentManager.getQualifiedSegments("user2"));
+        assertEquals(Arrays.asList("segment1", "segment2"), segmentManager.getQualifiedSegments(ODPUserKey.VUID, "vuid1"));
+        assertEquals(Arrays.asList(2, 1), apiManager.batchSizes);
+    }
+
+    @Test
+    public void prefetchFetchesOneUserAtATimeWhenBulkFetchIsNotSupported() {
+        AtomicInteger fetchCount = new AtomicInteger();
+        ODPApiManager apiManager = new BlockingApiManager(fetchCount, new CountDownLatch(1), new CountDownLatch(0));
+
+        ODPConfig odpConfig = new ODPConfig("testKey", "testHost", new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(apiManager);
+        segmentManager.updateSettings(odpConfig);
+
+        Map<ODPUserIdentifier, List<String>> segments = segmentManager.prefetchQualifiedSegments(
+            Arrays.asList(ODPUserIdentifier.fsUserId("user1"), ODPUserIdentifier.fsUserId("user2")));
+
+        assertEquals(2, fetchCount.get());
+        assertEquals(Arrays.asList("segment1", "segment2"), segments.get(ODPUserIdentifier.fsUserId("user1")));
+        assertEquals(Arrays.asList("segment1", "segment2"), segments.get(ODPUserIdentifier.fsUserId("user2")));
+        assertEquals(Arrays.asList("segment1", "segment2"), segmentManager.getQualifiedSegments("user1"));
+        assertEquals(2, fetchCount.get());
+    }
+
+    @Test
+    public void prefetchWhenOdpConfigNotReady() {
+        ODPConfig odpConfig = new ODPConfig(null, null, new HashSet<>(Arrays.asList("segment1", "segment2")));
+        ODPSegmentManager segmentManager = new ODPSegmentManager(mockApiManager, mockCache);
+        segmentManager.updateSettings(odpConfig);
+
+        Map<ODPUserIdentifier, List<String>> segments = segmentManager.prefetchQualifiedSegments(
+            Collections.singletonList(ODPUserIdentifier.fsUserId("user1")));
+
+        assertTrue(segments.isEmpty());
+        verify(mockCache, times(0)).lookup(any());
+        logbackVerifier.expectMessage(Level.ERROR, "Audience segments fetch failed (ODP is not enabled)");
+    }
+
+    /**
+     * Answers bulk fetches with the same segments for every user, recording the size of each batch.
+     */
+    private static class BulkApiManager implements ODPApiManager {
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        @Override
+        public boolean supportsBulkSegmentFetch() {
+            return true;
+        }
+
+        @Override
+        public String fetchQualifiedSegments(String apiKey, String apiEndpoint, String userKey, String userValue, Set<String> segmentsToCheck) {
+            return API_RESPONSE;
+        }
+
+        @Override
+        public String fetchQualifiedSegments(String apiKey, String apiEndpoint, List<ODPUserIdentifier> users, Set<String> segmentsToCheck) {
+            batchSizes.add(users.size());
+            StringBuilder data = new StringBuilder();
+            for (int i = 0; i < users.size(); i++) {
+                if (i > 0) {
+                    data.append(",");
+                }
+                data.append("\"").append(ODPApiManager.getUserAlias(i)).append("\":")
+                    .append("{\"audiences\":{\"edges\":[{\"node\":{\"name\":\"segment1\",\"state\":\"qualified\"}},{\"node\":{\"name\":\"segment2\",\"state\":\"qualified\"}}]}}");
+            }
+            return "{\"data\":{" + data + "}}";
+        }
+
+        @Override
+        public Integer sendEvents(String apiKey, String apiEndpoint, String eventPayload) {
+            return 200;
+        }
+    }
+
+    /**
+     * Counts the fetches and holds each of them until released.
+     */
+    private static class BlockingApiManager implements ODPApiManager {
+        private final AtomicInteger fetchCount;
+        private final CountDownLatch fetchStarted;
+        private final CountDownLatch releaseFetch;
+
+        BlockingApiManager(AtomicInteger fetchCount, CountDownLatch fetchStarted, CountDownLatch releaseFetch) {
+            this.fetchCount = fetchCount;
+            this.fetchStarted = fetchStarted;
+            this.releaseFetch = releaseFetch;
+        }
+
+        @Override
+        public String fetchQualifiedSegments(String apiKey, String apiEndpoint, String userKey, String userValue, Set<String> segmentsToCheck) {
+            fetchCount.incrementAndGet();
+            fetchStarted.countDown();
+            try {
+                if (!releaseFetch.await(5, TimeUnit.SECONDS)) {
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            return API_RESPONSE;
+        }
+
+        @Override
+        public Integer sendEvents(String apiKey, String apiEndpoint, String eventPayload) {
+            return 200;
+        }
+    }
 }
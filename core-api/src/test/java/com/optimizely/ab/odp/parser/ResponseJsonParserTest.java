@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -26,7 +26,9 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @RunWith(Parameterized.class)
 public class ResponseJsonParserTest {
@@ -89,4 +91,34 @@ public class ResponseJsonParserTest {
         logbackVerifier.expectMessage(Level.ERROR, "Exception while fetching data (/customer) : java.lang.RuntimeException: could not resolve _fs_user_id = wrong_id");
         assertEquals(null, parsedSegments);
     }
+
+    @Test
+    public void returnSegmentsByAliasWhenResponseIsCorrect() {
+        String responseToParse = "{\"data\":{\"user0\":{\"audiences\":{\"edges\":[{\"node\":{\"name\":\"has_email\",\"state\":\"qualified\"}},{\"node\":{\"name\":\"has_email_opted_in\",\"state\":\"not_qualified\"}}]}},\"user1\":{\"audiences\":{\"edges\":[]}}}}";
+        Map<String, List<String>> parsedSegments = jsonParser.parseQualifiedSegmentsByAlias(responseToParse);
+
+        Map<String, List<String>> expected = new HashMap<>();
+        expected.put("user0", Arrays.asList("has_email"));
+        expected.put("user1", Arrays.asList());
+        assertEquals(expected, parsedSegments);
+    }
+
+    @Test
+    public void leaveOutAliasesWithErrors() {
+        String responseToParse = "{\"errors\":[{\"message\":\"Exception while fetching data (/user1) : java.lang.RuntimeException: could not resolve _fs_user_id = wrong_id\",\"path\":[\"user1\"]}],\"data\":{\"user0\":{\"audiences\":{\"edges\":[{\"node\":{\"name\":\"has_email\",\"state\":\"qualified\"}}]}},\"user1\":null}}";
+        Map<String, List<String>> parsedSegments = jsonParser.parseQualifiedSegmentsByAlias(responseToParse);
+        logbackVerifier.expectMessage(Level.ERROR, "Exception while fetching data (/user1) : java.lang.RuntimeException: could not resolve _fs_user_id = wrong_id");
+
+        Map<String, List<String>> expected = new HashMap<>();
+        expected.put("user0", Arrays.asList("has_email"));
+        assertEquals(expected, parsedSegments);
+    }
+
+    @Test
+    public void returnNullByAliasWhenJsonIsMalformed() {
+        String responseToParse = "{\"data\"\"user0\":{\"audiences\":{\"edges\":[]}}}";
+        Map<String, List<String>> parsedSegments = jsonParser.parseQualifiedSegmentsByAlias(responseToParse);
+        logbackVerifier.expectMessage(Level.ERROR, "Error parsing qualified segments from response");
+        assertEquals(null, parsedSegments);
+    }
 }
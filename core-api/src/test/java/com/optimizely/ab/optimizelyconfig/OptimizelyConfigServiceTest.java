@@ -1,5 +1,5 @@
 /****************************************************************************
- * Copyright 2020-2021, Optimizely, Inc. and contributors                        *
+ * Copyright 2020-2021, 2023, Optimizely, Inc. and contributors                  *
  *                                                                          *
  * Licensed under the Apache License, Version 2.0 (the "License");          *
  * you may not use this file except in compliance with the License.         *
@@ -91,6 +91,20 @@ public class OptimizelyConfigServiceTest {
         assertEquals(expectedConfig.getFeaturesMap().get("multi_variate_feature").getExperimentsMap().size(), optimizelyFeatureExperimentMap.size());
     }
 
+    @Test
+    public void testFeaturesShareExperimentsOfExperimentsMap() {
+        OptimizelyConfig optimizelyConfig = optimizelyConfigService.getConfig();
+        OptimizelyFeature feature = optimizelyConfig.getFeaturesMap().get("multi_variate_feature");
+
+        assertFalse(feature.getExperimentRules().isEmpty());
+        for (OptimizelyExperiment experiment : feature.getExperimentRules()) {
+            assertSame(optimizelyConfig.getExperimentsMap().get(experiment.getKey()), experiment);
+        }
+        assertSame(feature, optimizelyConfig.getFeaturesMap().get("multi_variate_feature"));
+        assertNull(optimizelyConfig.getFeaturesMap().get("unknown_feature"));
+        assertEquals(expectedConfig.getFeaturesMap().keySet(), optimizelyConfig.getFeaturesMap().keySet());
+    }
+
     @Test
     public void testGetFeatureVariableUsageInstanceMap() {
         List<FeatureVariableUsageInstance> featureVariableUsageInstances =
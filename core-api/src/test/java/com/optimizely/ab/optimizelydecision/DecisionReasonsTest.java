@@ -0,0 +1,78 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.optimizelydecision;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecisionReasonsTest {
+
+    private static class CountingArg {
+        int formatted = 0;
+
+        @Override
+        public String toString() {
+            formatted++;
+            return "arg";
+        }
+    }
+
+    @Test
+    public void infoIsNotFormattedWhenReasonsAreNotIncluded() {
+        CountingArg arg = new CountingArg();
+        DecisionReasons reasons = DefaultDecisionReasons.newInstance(Collections.emptyList());
+
+        DecisionReasons inner = DefaultDecisionReasons.newInstance();
+        inner.info("value %s", arg);
+        reasons.merge(inner);
+        reasons.info("value %s", arg);
+
+        assertTrue(reasons.toReport().isEmpty());
+        assertEquals(0, arg.formatted);
+    }
+
+    @Test
+    public void infoIsFormattedOnceWhenReported() {
+        CountingArg arg = new CountingArg();
+        DecisionReasons reasons = DefaultDecisionReasons.newInstance(Collections.singletonList(OptimizelyDecideOption.INCLUDE_REASONS));
+
+        DecisionReason reason = reasons.info("value %s (%d)", arg, 1);
+        assertEquals(0, arg.formatted);
+        reasons.addInfo(reason);
+        reasons.addError("error %s", "e");
+
+        assertEquals(Arrays.asList("error e", "value arg (1)", "value arg (1)"), reasons.toReport());
+        assertEquals("value arg (1)", reason.toString());
+        assertEquals(1, arg.formatted);
+    }
+
+    @Test
+    public void addInfoReturnsFormattedMessage() {
+        DecisionReasons reasons = DefaultDecisionReasons.newInstance();
+        assertEquals("user \"u\"", reasons.addInfo("user \"%s\"", "u"));
+        assertEquals(Collections.singletonList("user \"u\""), reasons.toReport());
+
+        DecisionReasons skipped = DefaultDecisionReasons.newInstance(Collections.emptyList());
+        assertEquals("user \"u\"", skipped.addInfo("user \"%s\"", "u"));
+        assertTrue(skipped.toReport().isEmpty());
+    }
+}
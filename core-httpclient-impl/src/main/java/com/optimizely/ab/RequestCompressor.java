@@ -0,0 +1,235 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of JSON request bodies with {@code Content-Encoding: gzip}.
+ *
+ * Bodies smaller than the threshold are sent as is, since compressing them saves little. The counters
+ * track the body bytes before compression and the bytes actually sent, across all requests.
+ */
+public final class RequestCompressor {
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+    public static final int DEFAULT_LEVEL = Deflater.DEFAULT_COMPRESSION;
+
+    private static final Logger logger = LoggerFactory.getLogger(RequestCompressor.class);
+    private static final String GZIP = "gzip";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int threshold;
+    private final int level;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong compressedRequestCount = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+
+    public RequestCompressor() {
+        this(DEFAULT_THRESHOLD, DEFAULT_LEVEL);
+    }
+
+    /**
+     * @param threshold the minimum body size in bytes to compress
+     * @param level     the deflate level, from 0 to 9, or -1 for the default level
+     */
+    public RequestCompressor(int threshold, int level) {
+        if (threshold < 0) {
+            logger.warn("Invalid value for compression threshold: {}. Defaulting to {}", threshold, DEFAULT_THRESHOLD);
+            threshold = DEFAULT_THRESHOLD;
+        }
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            logger.warn("Invalid value for compression level: {}. Defaulting to {}", level, DEFAULT_LEVEL);
+            level = DEFAULT_LEVEL;
+        }
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    /**
+     * Create the entity for a JSON body, encoded as UTF-8 and gzip compressed if it reaches the threshold.
+     *
+     * @param body the request body
+     * @return the request entity
+     */
+    public HttpEntity createEntity(String body) {
+        byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+        requestCount.incrementAndGet();
+        rawBytes.addAndGet(raw.length);
+
+        if (raw.length >= threshold) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(raw.length / 4, 64));
+            try (GZIPOutputStream gzip = newGzipStream(compressed)) {
+                gzip.write(raw);
+            } catch (IOException e) {
+                logger.warn("Unable to compress request body, sending it uncompressed", e);
+                compressed = null;
+            }
+
+            if (compressed != null) {
+                compressedRequestCount.incrementAndGet();
+                sentBytes.addAndGet(compressed.size());
+                ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), ContentType.APPLICATION_JSON);
+                entity.setContentEncoding(GZIP);
+                return entity;
+            }
+        }
+
+        sentBytes.addAndGet(raw.length);
+        return new ByteArrayEntity(raw, ContentType.APPLICATION_JSON);
+    }
+
+    /**
+     * Wrap a streamed entity so it is compressed while it is written. The size of a streamed body is not known
+     * up front, so it is always compressed regardless of the threshold.
+     *
+     * @param entity the entity to compress
+     * @return the compressing entity
+     */
+    public HttpEntity compress(HttpEntity entity) {
+        return new GzipEntity(entity);
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * @return the number of request bodies sent through this compressor
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of request bodies that were compressed
+     */
+    public long getCompressedRequestCount() {
+        return compressedRequestCount.get();
+    }
+
+    /**
+     * @return the total size of the request bodies before compression
+     */
+    public long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    /**
+     * @return the total size of the request bodies as sent, compressed or not
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    private GZIPOutputStream newGzipStream(OutputStream out) throws IOException {
+        return new GZIPOutputStream(out, BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * Compresses the wrapped entity into the request stream, with chunked transfer encoding.
+     */
+    private final class GzipEntity extends HttpEntityWrapper {
+
+        GzipEntity(HttpEntity wrappedEntity) {
+            super(wrappedEntity);
+        }
+
+        @Override
+        public Header getContentEncoding() {
+            return new BasicHeader("Content-Encoding", GZIP);
+        }
+
+        @Override
+        public long getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return true;
+        }
+
+        @Override
+        public InputStream getContent() {
+            throw new UnsupportedOperationException("getContent() not supported");
+        }
+
+        @Override
+        public void writeTo(OutputStream outStream) throws IOException {
+            CountingOutputStream sent = new CountingOutputStream(outStream);
+            GZIPOutputStream gzip = newGzipStream(sent);
+            CountingOutputStream raw = new CountingOutputStream(gzip);
+            wrappedEntity.writeTo(raw);
+            // as GzipCompressingEntity does, closing finishes the stream and releases the deflater
+            gzip.close();
+
+            requestCount.incrementAndGet();
+            compressedRequestCount.incrementAndGet();
+            rawBytes.addAndGet(raw.count);
+            sentBytes.addAndGet(sent.count);
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
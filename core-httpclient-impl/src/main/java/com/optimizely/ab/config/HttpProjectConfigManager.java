@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019,2021, Optimizely
+ *    Copyright 2019,2021,2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -33,6 +33,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.util.concurrent.TimeUnit;
 
@@ -51,6 +52,8 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
     public static final String CONFIG_EVICT_UNIT        = "http.project.config.manager.evict.unit";
     public static final String CONFIG_SDK_KEY           = "http.project.config.manager.sdk.key";
     public static final String CONFIG_DATAFILE_AUTH_TOKEN = "http.project.config.manager.datafile.auth.token";
+    public static final String CONFIG_STREAMING_URL     = "http.project.config.manager.streaming.url";
+    public static final String CONFIG_STREAMING_MODE    = "http.project.config.manager.streaming.mode";
 
     public static final long DEFAULT_POLLING_DURATION  = 5;
     public static final TimeUnit DEFAULT_POLLING_UNIT  = TimeUnit.MINUTES;
@@ -64,16 +67,16 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
     private final OptimizelyHttpClient httpClient;
     private final URI uri;
     private final String datafileAccessToken;
-    private String datafileLastModified;
-
-    private HttpProjectConfigManager(long period,
-                                     TimeUnit timeUnit,
-                                     OptimizelyHttpClient httpClient,
-                                     String url,
-                                     String datafileAccessToken,
-                                     long blockingTimeoutPeriod,
-                                     TimeUnit blockingTimeoutUnit,
-                                     NotificationCenter notificationCenter) {
+    private final Validators datafileValidators = new Validators();
+
+    HttpProjectConfigManager(long period,
+                             TimeUnit timeUnit,
+                             OptimizelyHttpClient httpClient,
+                             String url,
+                             String datafileAccessToken,
+                             long blockingTimeoutPeriod,
+                             TimeUnit blockingTimeoutUnit,
+                             NotificationCenter notificationCenter) {
         super(period, timeUnit, blockingTimeoutPeriod, blockingTimeoutUnit, notificationCenter);
         this.httpClient = httpClient;
         this.uri = URI.create(url);
@@ -85,10 +88,30 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
     }
 
     public String getLastModified() {
-        return datafileLastModified;
+        return datafileValidators.lastModified;
+    }
+
+    public String getETag() {
+        return datafileValidators.eTag;
     }
 
     public String getDatafileFromResponse(HttpResponse response) throws NullPointerException, IOException {
+        HttpEntity entity = getDatafileEntity(response);
+        return entity == null ? null : EntityUtils.toString(entity, "UTF-8");
+    }
+
+    /**
+     * @return the entity of a response carrying a new datafile, or null if the datafile has not changed
+     */
+    HttpEntity getDatafileEntity(HttpResponse response) throws IOException {
+        return getDatafileEntity(response, datafileValidators);
+    }
+
+    /**
+     * @param validators the validators of the server that sent the response, updated from a new datafile
+     * @return the entity of a response carrying a new datafile, or null if the datafile has not changed
+     */
+    static HttpEntity getDatafileEntity(HttpResponse response, Validators validators) throws IOException {
         StatusLine statusLine = response.getStatusLine();
 
         if (statusLine == null) {
@@ -99,18 +122,21 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
 
         // Datafile has not updated
         if (status == HttpStatus.SC_NOT_MODIFIED) {
-            logger.debug("Not updating ProjectConfig as datafile has not updated since " + datafileLastModified);
+            logger.debug("Not updating ProjectConfig as datafile has not updated since " + validators.lastModified);
             return null;
         }
 
         if (status >= 200 && status < 300) {
-            // read the response, so we can close the connection
             HttpEntity entity = response.getEntity();
             Header lastModifiedHeader = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
             if (lastModifiedHeader != null) {
-                datafileLastModified = lastModifiedHeader.getValue();
+                validators.lastModified = lastModifiedHeader.getValue();
+            }
+            Header eTagHeader = response.getFirstHeader(HttpHeaders.ETAG);
+            if (eTagHeader != null) {
+                validators.eTag = eTagHeader.getValue();
             }
-            return EntityUtils.toString(entity, "UTF-8");
+            return entity;
         } else {
             throw new ClientProtocolException("unexpected response when trying to fetch datafile, status: " + status);
         }
@@ -122,16 +148,27 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
 
     @Override
     protected ProjectConfig poll() {
-        HttpGet httpGet = createHttpRequest();
+        return fetch(createHttpRequest());
+    }
+
+    /**
+     * Execute a datafile request and parse the datafile it answers with.
+     *
+     * @return the parsed config, or null if the datafile has not changed or cannot be fetched
+     */
+    ProjectConfig fetch(HttpGet httpGet) {
         CloseableHttpResponse response = null;
         logger.debug("Fetching datafile from: {}", httpGet.getURI());
         try {
             response = httpClient.execute(httpGet);
-            String datafile = getDatafileFromResponse(response);
-            if (datafile == null) {
+            HttpEntity entity = getDatafileEntity(response);
+            if (entity == null) {
                 return null;
             }
-            return parseProjectConfig(datafile);
+            // parse while the response is read, rather than reading the datafile into a String first
+            try (InputStream datafile = entity.getContent()) {
+                return new DatafileProjectConfig.Builder().withDatafileStream(datafile).build();
+            }
         } catch (ConfigParseException | IOException e) {
             logger.error("Error fetching datafile", e);
         }
@@ -148,21 +185,54 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
         return null;
     }
 
+    OptimizelyHttpClient getHttpClient() {
+        return httpClient;
+    }
+
     @VisibleForTesting
     HttpGet createHttpRequest() {
+        return createConditionalRequest(uri, datafileValidators);
+    }
+
+    /**
+     * @param validators the validators of the server the request is sent to
+     * @return a GET request that the server can answer with 304 if the datafile has not changed since the last fetch
+     */
+    HttpGet createConditionalRequest(URI uri, Validators validators) {
+        HttpGet httpGet = createAuthorizedRequest(uri);
+
+        String lastModified = validators.lastModified;
+        if (lastModified != null) {
+            httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        String eTag = validators.eTag;
+        if (eTag != null) {
+            httpGet.setHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        }
+
+        return httpGet;
+    }
+
+    HttpGet createAuthorizedRequest(URI uri) {
         HttpGet httpGet = new HttpGet(uri);
 
         if (datafileAccessToken != null) {
             httpGet.setHeader(HttpHeaders.AUTHORIZATION, "Bearer " + datafileAccessToken);
         }
 
-        if (datafileLastModified != null) {
-            httpGet.setHeader(HttpHeaders.IF_MODIFIED_SINCE, datafileLastModified);
-        }
-
         return httpGet;
     }
 
+    /**
+     * The Last-Modified and ETag of the datafile last received from a server, which are only meaningful
+     * to that server.
+     */
+    static final class Validators {
+        volatile String lastModified;
+        volatile String eTag;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -175,6 +245,11 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
         private String authFormat = "https://config.optimizely.com/datafiles/auth/%s.json";
         private OptimizelyHttpClient httpClient;
         private NotificationCenter notificationCenter;
+        private String streamingUrl = PropertyUtils.get(CONFIG_STREAMING_URL);
+        private StreamingProjectConfigManager.Mode streamingMode = PropertyUtils.getEnum(CONFIG_STREAMING_MODE,
+            StreamingProjectConfigManager.Mode.class, StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+        private long streamingReconnectDelayMillis = StreamingProjectConfigManager.DEFAULT_RECONNECT_DELAY_MILLIS;
+        private long streamingReadTimeoutMillis = StreamingProjectConfigManager.DEFAULT_READ_TIMEOUT_MILLIS;
 
         String sdkKey = PropertyUtils.get(CONFIG_SDK_KEY);
         long period = PropertyUtils.getLong(CONFIG_POLLING_DURATION, DEFAULT_POLLING_DURATION);
@@ -295,6 +370,55 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
             return this;
         }
 
+        /**
+         * Hold a connection to an endpoint announcing datafile changes, and fetch the datafile as soon as a change
+         * is announced. Polling at the polling interval continues as a fallback.
+         *
+         * @param streamingUrl  The URL of the update endpoint.
+         * @param streamingMode How the endpoint announces changes.
+         * @return  A HttpProjectConfigManager builder, which builds a {@link StreamingProjectConfigManager}
+         * @see StreamingProjectConfigManager
+         */
+        public Builder withStreamingUrl(String streamingUrl, StreamingProjectConfigManager.Mode streamingMode) {
+            this.streamingUrl = streamingUrl;
+            this.streamingMode = streamingMode;
+            return this;
+        }
+
+        /**
+         * Configure the delay before reconnecting to the update endpoint after a failure. The delay doubles
+         * on each consecutive failure, up to {@link StreamingProjectConfigManager#MAX_RECONNECT_DELAY_MILLIS}.
+         *
+         * @param delay    The initial reconnect delay.
+         * @param timeUnit The unit of the delay.
+         * @return  A HttpProjectConfigManager builder
+         */
+        public Builder withStreamingReconnectDelay(long delay, TimeUnit timeUnit) {
+            if (delay <= 0) {
+                logger.warn("Reconnect delay cannot be <= 0. Keeping default delay: {} ms", this.streamingReconnectDelayMillis);
+                return this;
+            }
+            this.streamingReconnectDelayMillis = timeUnit.toMillis(delay);
+            return this;
+        }
+
+        /**
+         * Configure how long the update endpoint can stay silent before the connection is considered lost.
+         * Long-poll endpoints must answer within this time.
+         *
+         * @param timeout  The read timeout.
+         * @param timeUnit The unit of the timeout.
+         * @return  A HttpProjectConfigManager builder
+         */
+        public Builder withStreamingReadTimeout(long timeout, TimeUnit timeUnit) {
+            if (timeout <= 0) {
+                logger.warn("Read timeout cannot be <= 0. Keeping default timeout: {} ms", this.streamingReadTimeoutMillis);
+                return this;
+            }
+            this.streamingReadTimeoutMillis = timeUnit.toMillis(timeout);
+            return this;
+        }
+
         /**
          * HttpProjectConfigManager.Builder that builds and starts a HttpProjectConfigManager.
          * This is the default builder which will block until a config is available.
@@ -349,15 +473,32 @@ public class HttpProjectConfigManager extends PollingProjectConfigManager {
                 notificationCenter = new NotificationCenter();
             }
 
-            HttpProjectConfigManager httpProjectManager = new HttpProjectConfigManager(
-                period,
-                timeUnit,
-                httpClient,
-                url,
-                datafileAccessToken,
-                blockingTimeoutPeriod,
-                blockingTimeoutUnit,
-                notificationCenter);
+            HttpProjectConfigManager httpProjectManager;
+            if (streamingUrl == null) {
+                httpProjectManager = new HttpProjectConfigManager(
+                    period,
+                    timeUnit,
+                    httpClient,
+                    url,
+                    datafileAccessToken,
+                    blockingTimeoutPeriod,
+                    blockingTimeoutUnit,
+                    notificationCenter);
+            } else {
+                httpProjectManager = new StreamingProjectConfigManager(
+                    period,
+                    timeUnit,
+                    httpClient,
+                    url,
+                    datafileAccessToken,
+                    blockingTimeoutPeriod,
+                    blockingTimeoutUnit,
+                    notificationCenter,
+                    streamingUrl,
+                    streamingMode,
+                    streamingReconnectDelayMillis,
+                    streamingReadTimeoutMillis);
+            }
 
             if (datafile != null) {
                 try {
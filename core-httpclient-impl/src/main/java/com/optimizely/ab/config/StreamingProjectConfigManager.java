@@ -0,0 +1,444 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.optimizely.ab.HttpClientUtils;
+import com.optimizely.ab.NamedThreadFactory;
+import com.optimizely.ab.OptimizelyHttpClient;
+import com.optimizely.ab.config.parser.ConfigParseException;
+import com.optimizely.ab.notification.NotificationCenter;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * StreamingProjectConfigManager is a {@link HttpProjectConfigManager} that also holds a connection to an endpoint
+ * announcing datafile changes, so a new revision is applied as soon as it is published rather than on the next poll.
+ *
+ * The endpoint is read in one of two {@link Mode}s:
+ * <ul>
+ *   <li>{@link Mode#SERVER_SENT_EVENTS} - every event of a text/event-stream response announces a change, and the
+ *   datafile is then fetched with a conditional request. An event whose data is a revision already fetched is
+ *   skipped, and a fetch that does not reach an announced revision yet, as when a CDN edge still serves the
+ *   previous datafile, is retried with an exponential backoff until it does.</li>
+ *   <li>{@link Mode#LONG_POLL} - the endpoint holds a conditional request until the datafile changes, and answers
+ *   with the new datafile, or with 304 when the hold expires.</li>
+ * </ul>
+ *
+ * Polling at the configured interval is paused while the stream is connected, and resumes as a fallback while it
+ * is down. Polls and stream updates are applied one at a time, and a datafile whose revision is older than the
+ * one already applied is discarded. A failing stream is reconnected with an exponential backoff.
+ */
+public class StreamingProjectConfigManager extends HttpProjectConfigManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingProjectConfigManager.class);
+
+    public static final long DEFAULT_RECONNECT_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    public static final long MAX_RECONNECT_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // floor of the reconnect delays set by the server, so a retry field of 0 does not reconnect in a tight loop
+    static final long MIN_RETRY_MILLIS = 100;
+    public static final long DEFAULT_READ_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    public enum Mode {
+        SERVER_SENT_EVENTS,
+        LONG_POLL
+    }
+
+    private final URI streamUri;
+    private final Mode mode;
+    private final RequestConfig streamRequestConfig;
+    // the stream loop holds one thread, the other runs the refetches of announced revisions
+    private final ScheduledExecutorService streamExecutor;
+    // the long-poll endpoint tags its datafiles independently of the datafile URL
+    private final Validators streamValidators = new Validators();
+    private final Object updateLock = new Object();
+
+    private volatile long reconnectDelayMillis;
+    private volatile boolean streaming;
+    private volatile boolean connected;
+    private volatile HttpGet streamRequest;
+    private volatile String lastEventId;
+    private volatile String fetchedRevision;
+    private volatile String announcedRevision;
+    private Future<?> streamFuture;
+    private Future<?> refetchFuture;
+
+    StreamingProjectConfigManager(long period,
+                                  TimeUnit timeUnit,
+                                  OptimizelyHttpClient httpClient,
+                                  String url,
+                                  String datafileAccessToken,
+                                  long blockingTimeoutPeriod,
+                                  TimeUnit blockingTimeoutUnit,
+                                  NotificationCenter notificationCenter,
+                                  String streamingUrl,
+                                  Mode mode,
+                                  long reconnectDelayMillis,
+                                  long readTimeoutMillis) {
+        super(period, timeUnit, httpClient, url, datafileAccessToken, blockingTimeoutPeriod, blockingTimeoutUnit, notificationCenter);
+        this.streamUri = URI.create(streamingUrl);
+        this.mode = mode;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+        // the stream stays open far longer than a datafile request is allowed to take
+        this.streamRequestConfig = RequestConfig.copy(HttpClientUtils.DEFAULT_REQUEST_CONFIG)
+            .setSocketTimeout((int) Math.min(readTimeoutMillis, Integer.MAX_VALUE))
+            .build();
+        this.streamExecutor = Executors.newScheduledThreadPool(2,
+            new NamedThreadFactory("optimizely-datafile-stream-thread-%s", true));
+    }
+
+    public URI getStreamUri() {
+        return streamUri;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @return true while the update endpoint is connected, and polling is paused
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Fetch and apply the datafile, unless the stream is connected and delivers the changes.
+     *
+     * @return null, the fetched config is already applied
+     */
+    @Override
+    protected ProjectConfig poll() {
+        if (connected) {
+            logger.debug("Skipping poll while the datafile update stream is connected");
+            return null;
+        }
+        refresh();
+        return null;
+    }
+
+    private void refresh() {
+        synchronized (updateLock) {
+            apply(super.poll());
+        }
+    }
+
+    /**
+     * Apply a fetched datafile, unless its revision is older than the one already applied. Callers hold the
+     * update lock.
+     */
+    private void apply(ProjectConfig projectConfig) {
+        if (projectConfig == null) {
+            return;
+        }
+
+        String revision = projectConfig.getRevision();
+        if (isOlderRevision(revision, fetchedRevision)) {
+            logger.debug("Discarding datafile revision {} older than revision {}", revision, fetchedRevision);
+            return;
+        }
+
+        setConfig(projectConfig);
+        fetchedRevision = revision;
+    }
+
+    /**
+     * @return true if both revisions are numbers, as datafiles number them, and the first is the smaller
+     */
+    static boolean isOlderRevision(String revision, String otherRevision) {
+        if (revision == null || otherRevision == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(revision) < Long.parseLong(otherRevision);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        super.start();
+        if (!isRunning() || streaming) {
+            return;
+        }
+
+        streaming = true;
+        streamFuture = streamExecutor.submit(this::stream);
+    }
+
+    @Override
+    public synchronized void stop() {
+        stopStream();
+        super.stop();
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+        streamExecutor.shutdownNow();
+    }
+
+    private void stopStream() {
+        if (!streaming) {
+            return;
+        }
+
+        logger.info("closing datafile update stream");
+        streaming = false;
+        connected = false;
+        HttpGet request = streamRequest;
+        if (request != null) {
+            // unblocks the read of a held connection
+            request.abort();
+        }
+        streamFuture.cancel(true);
+        synchronized (updateLock) {
+            if (refetchFuture != null) {
+                refetchFuture.cancel(false);
+            }
+        }
+    }
+
+    private void stream() {
+        long failureDelayMillis = reconnectDelayMillis;
+        while (streaming) {
+            long startedAt = System.currentTimeMillis();
+            long pauseMillis;
+            try {
+                if (mode == Mode.LONG_POLL) {
+                    longPoll();
+                } else {
+                    readEvents();
+                }
+                failureDelayMillis = reconnectDelayMillis;
+                // requests are at least the reconnect delay apart, so an endpoint answering at once is not hammered
+                pauseMillis = reconnectDelayMillis - (System.currentTimeMillis() - startedAt);
+            } catch (IOException | ConfigParseException | RuntimeException e) {
+                // polling resumes until the endpoint is back
+                connected = false;
+                if (!streaming) {
+                    break;
+                }
+                logger.warn("Datafile update stream failed, reconnecting in {} ms: {}", failureDelayMillis, e.toString());
+                pauseMillis = failureDelayMillis;
+                failureDelayMillis = nextBackoff(failureDelayMillis);
+            } finally {
+                streamRequest = null;
+            }
+
+            if (pauseMillis > 0) {
+                try {
+                    Thread.sleep(pauseMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private CloseableHttpResponse execute(HttpGet request) throws IOException {
+        request.setConfig(streamRequestConfig);
+        streamRequest = request;
+        if (!streaming) {
+            // stopped before the request could be aborted
+            throw new IOException("stream closed");
+        }
+        logger.debug("Connecting to datafile update stream: {}", request.getURI());
+        return getHttpClient().execute(request);
+    }
+
+    private void longPoll() throws IOException, ConfigParseException {
+        try (CloseableHttpResponse response = execute(createConditionalRequest(streamUri, streamValidators))) {
+            synchronized (updateLock) {
+                HttpEntity entity = getDatafileEntity(response, streamValidators);
+                if (entity != null) {
+                    try (InputStream datafile = entity.getContent()) {
+                        apply(new DatafileProjectConfig.Builder().withDatafileStream(datafile).build());
+                    }
+                }
+            }
+        }
+        connected = true;
+    }
+
+    /**
+     * Read events until the endpoint closes the stream.
+     */
+    private void readEvents() throws IOException {
+        HttpGet request = createAuthorizedRequest(streamUri);
+        request.setHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        if (lastEventId != null) {
+            request.setHeader("Last-Event-ID", lastEventId);
+        }
+
+        // the response is closed without reading the content stream to its end, which never comes
+        try (CloseableHttpResponse response = execute(request)) {
+            int status = response.getStatusLine().getStatusCode();
+            HttpEntity entity = response.getEntity();
+            if (status != 200 || entity == null) {
+                throw new ClientProtocolException("unexpected response from datafile update stream, status: " + status);
+            }
+
+            // changes published while disconnected are not replayed by every endpoint
+            refresh();
+            connected = true;
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), StandardCharsets.UTF_8));
+            StringBuilder data = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (data.length() > 0) {
+                        onEvent(data.toString().trim());
+                        data.setLength(0);
+                    }
+                    continue;
+                }
+                if (line.startsWith(":")) {
+                    // comment, sent as a keep-alive
+                    continue;
+                }
+
+                int colon = line.indexOf(':');
+                String field = colon < 0 ? line : line.substring(0, colon);
+                String value = colon < 0 ? "" : line.substring(line.startsWith(" ", colon + 1) ? colon + 2 : colon + 1);
+                switch (field) {
+                    case "data":
+                        if (data.length() > 0) {
+                            data.append('\n');
+                        }
+                        data.append(value);
+                        break;
+                    case "id":
+                        lastEventId = value;
+                        break;
+                    case "retry":
+                        setRetry(value);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            connected = false;
+        }
+    }
+
+    private static long nextBackoff(long delayMillis) {
+        return Math.min(Math.max(1, delayMillis) * 2, MAX_RECONNECT_DELAY_MILLIS);
+    }
+
+    /**
+     * Take the reconnect delay of a retry field, which only digits make valid, no shorter than
+     * {@link #MIN_RETRY_MILLIS}.
+     */
+    private void setRetry(String value) {
+        if (value.isEmpty() || !value.chars().allMatch(c -> c >= '0' && c <= '9')) {
+            logger.debug("Ignoring invalid retry field: {}", value);
+            return;
+        }
+        try {
+            reconnectDelayMillis = Math.max(Long.parseLong(value), MIN_RETRY_MILLIS);
+        } catch (NumberFormatException e) {
+            logger.debug("Ignoring out of range retry field: {}", value);
+        }
+    }
+
+    private void onEvent(String data) {
+        String revision = fetchedRevision;
+        if (data.equals(revision) || isOlderRevision(data, revision)) {
+            logger.debug("Datafile revision {} is already in use", revision);
+            return;
+        }
+
+        logger.debug("Datafile change announced: {}", data);
+        if (!isOlderRevision(data, announcedRevision)) {
+            announcedRevision = data;
+        }
+        refresh();
+        if (!isFetched(announcedRevision)) {
+            scheduleRefetch(reconnectDelayMillis);
+        }
+    }
+
+    /**
+     * @return true if the revision, or a newer one, has been fetched. Data that is not a revision counts as
+     * fetched once announced, as there is no telling which datafile it refers to.
+     */
+    private boolean isFetched(String revision) {
+        String fetched = fetchedRevision;
+        return revision == null
+            || revision.equals(fetched)
+            || isOlderRevision(revision, fetched)
+            || !isRevision(revision);
+    }
+
+    private static boolean isRevision(String data) {
+        try {
+            Long.parseLong(data);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Refetch the datafile until the announced revision is fetched, as the datafile URL can lag the announcement.
+     */
+    private void scheduleRefetch(long delayMillis) {
+        synchronized (updateLock) {
+            if (!streaming || (refetchFuture != null && !refetchFuture.isDone())) {
+                return;
+            }
+            refetchFuture = streamExecutor.schedule(() -> {
+                if (!streaming || isFetched(announcedRevision)) {
+                    return;
+                }
+                logger.debug("Refetching datafile for announced revision {}", announcedRevision);
+                refresh();
+                if (!isFetched(announcedRevision)) {
+                    synchronized (updateLock) {
+                        refetchFuture = null;
+                    }
+                    scheduleRefetch(nextBackoff(delayMillis));
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016-2019,2021, Optimizely and contributors
+ *    Copyright 2016-2019,2021,2023, Optimizely and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -18,9 +18,11 @@ package com.optimizely.ab.event;
 
 import com.optimizely.ab.NamedThreadFactory;
 import com.optimizely.ab.OptimizelyHttpClient;
+import com.optimizely.ab.RequestCompressor;
 import com.optimizely.ab.annotations.VisibleForTesting;
 
 import com.optimizely.ab.internal.PropertyUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.ResponseHandler;
@@ -43,6 +45,7 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 
 /**
  * {@link EventHandler} implementation that queues events and has a separate pool of threads responsible
@@ -55,6 +58,10 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
     public static final String CONFIG_MAX_CONNECTIONS           = "async.event.handler.max.connections";
     public static final String CONFIG_MAX_PER_ROUTE             = "async.event.handler.event.max.per.route";
     public static final String CONFIG_VALIDATE_AFTER_INACTIVITY = "async.event.handler.validate.after";
+    public static final String CONFIG_STREAM_BODY               = "async.event.handler.stream.body";
+    public static final String CONFIG_GZIP_ENABLED              = "async.event.handler.gzip.enabled";
+    public static final String CONFIG_GZIP_THRESHOLD            = "async.event.handler.gzip.threshold";
+    public static final String CONFIG_GZIP_LEVEL                = "async.event.handler.gzip.level";
 
     public static final int DEFAULT_QUEUE_CAPACITY = 10000;
     public static final int DEFAULT_NUM_WORKERS = 2;
@@ -67,6 +74,8 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
 
     private final OptimizelyHttpClient httpClient;
     private final ExecutorService workerExecutor;
+    private final boolean streamBody;
+    private final RequestCompressor compressor;
 
     private final long closeTimeout;
     private final TimeUnit closeTimeoutUnit;
@@ -108,6 +117,18 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
                              int validateAfter,
                              long closeTimeout,
                              TimeUnit closeTimeoutUnit) {
+        this(queueCapacity, numWorkers, maxConnections, connectionsPerRoute, validateAfter, closeTimeout, closeTimeoutUnit, false, null);
+    }
+
+    private AsyncEventHandler(int queueCapacity,
+                              int numWorkers,
+                              int maxConnections,
+                              int connectionsPerRoute,
+                              int validateAfter,
+                              long closeTimeout,
+                              TimeUnit closeTimeoutUnit,
+                              boolean streamBody,
+                              @Nullable RequestCompressor compressor) {
 
         queueCapacity       = validateInput("queueCapacity", queueCapacity, DEFAULT_QUEUE_CAPACITY);
         numWorkers          = validateInput("numWorkers", numWorkers, DEFAULT_NUM_WORKERS);
@@ -126,18 +147,38 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
             new ArrayBlockingQueue<>(queueCapacity),
             new NamedThreadFactory("optimizely-event-dispatcher-thread-%s", true));
 
+        this.streamBody = streamBody;
+        this.compressor = compressor;
         this.closeTimeout = closeTimeout;
         this.closeTimeoutUnit = closeTimeoutUnit;
     }
 
     @VisibleForTesting
     public AsyncEventHandler(OptimizelyHttpClient httpClient, ExecutorService workerExecutor) {
+        this(httpClient, workerExecutor, false, null);
+    }
+
+    @VisibleForTesting
+    AsyncEventHandler(OptimizelyHttpClient httpClient,
+                      ExecutorService workerExecutor,
+                      boolean streamBody,
+                      @Nullable RequestCompressor compressor) {
         this.httpClient = httpClient;
         this.workerExecutor = workerExecutor;
+        this.streamBody = streamBody;
+        this.compressor = compressor;
         this.closeTimeout = Long.MAX_VALUE;
         this.closeTimeoutUnit = TimeUnit.MILLISECONDS;
     }
 
+    /**
+     * @return the compressor of event request bodies, with its byte counters, or null if compression is disabled
+     */
+    @Nullable
+    public RequestCompressor getRequestCompressor() {
+        return compressor;
+    }
+
     @Override
     public void dispatchEvent(LogEvent logEvent) {
         try {
@@ -247,7 +288,13 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
 
         private HttpPost generatePostRequest(LogEvent event) throws UnsupportedEncodingException {
             HttpPost post = new HttpPost(event.getEndpointUrl());
-            post.setEntity(new StringEntity(event.getBody()));
+            HttpEntity entity;
+            if (streamBody) {
+                entity = compressor != null ? compressor.compress(new LogEventEntity(event)) : new LogEventEntity(event);
+            } else {
+                entity = compressor != null ? compressor.createEntity(event.getBody()) : new StringEntity(event.getBody());
+            }
+            post.setEntity(entity);
             post.addHeader("Content-Type", "application/json");
             return post;
         }
@@ -283,6 +330,10 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
         int maxTotalConnections = PropertyUtils.getInteger(CONFIG_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
         int maxPerRoute = PropertyUtils.getInteger(CONFIG_MAX_PER_ROUTE, DEFAULT_MAX_PER_ROUTE);
         int validateAfterInactivity = PropertyUtils.getInteger(CONFIG_VALIDATE_AFTER_INACTIVITY, DEFAULT_VALIDATE_AFTER_INACTIVITY);
+        boolean streamBody = Boolean.parseBoolean(PropertyUtils.get(CONFIG_STREAM_BODY, "false"));
+        boolean gzip = Boolean.parseBoolean(PropertyUtils.get(CONFIG_GZIP_ENABLED, "false"));
+        int gzipThreshold = PropertyUtils.getInteger(CONFIG_GZIP_THRESHOLD, RequestCompressor.DEFAULT_THRESHOLD);
+        int gzipLevel = PropertyUtils.getInteger(CONFIG_GZIP_LEVEL, RequestCompressor.DEFAULT_LEVEL);
         private long closeTimeout = Long.MAX_VALUE;
         private TimeUnit closeTimeoutUnit = TimeUnit.MILLISECONDS;
 
@@ -321,6 +372,47 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
             return this;
         }
 
+        /**
+         * Serialize event batches straight into the request stream as UTF-8, instead of building the body
+         * String and a copy of it for the request entity. Off by default.
+         *
+         * @param streamBody true to stream request bodies
+         * @return this builder
+         */
+        public Builder withStreamBody(boolean streamBody) {
+            this.streamBody = streamBody;
+            return this;
+        }
+
+        /**
+         * Gzip compress event request bodies. Off by default.
+         *
+         * @param gzip true to compress request bodies
+         * @return this builder
+         */
+        public Builder withGzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        /**
+         * @param gzipThreshold the minimum body size in bytes to compress, when compression is enabled
+         * @return this builder
+         */
+        public Builder withGzipThreshold(int gzipThreshold) {
+            this.gzipThreshold = gzipThreshold;
+            return this;
+        }
+
+        /**
+         * @param gzipLevel the deflate level, from 0 to 9, or -1 for the default level
+         * @return this builder
+         */
+        public Builder withGzipLevel(int gzipLevel) {
+            this.gzipLevel = gzipLevel;
+            return this;
+        }
+
         public Builder withCloseTimeout(long closeTimeout, TimeUnit unit) {
             this.closeTimeout = closeTimeout;
             this.closeTimeoutUnit = unit;
@@ -335,7 +427,9 @@ public class AsyncEventHandler implements EventHandler, AutoCloseable {
                 maxPerRoute,
                 validateAfterInactivity,
                 closeTimeout,
-                closeTimeoutUnit
+                closeTimeoutUnit,
+                streamBody,
+                gzip ? new RequestCompressor(gzipThreshold, gzipLevel) : null
             );
         }
     }
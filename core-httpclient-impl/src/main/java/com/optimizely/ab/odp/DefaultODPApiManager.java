@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -16,6 +16,7 @@
 package com.optimizely.ab.odp;
 
 import com.optimizely.ab.OptimizelyHttpClient;
+import com.optimizely.ab.RequestCompressor;
 import com.optimizely.ab.annotations.VisibleForTesting;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -25,9 +26,11 @@ import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 public class DefaultODPApiManager implements ODPApiManager {
@@ -35,12 +38,22 @@ public class DefaultODPApiManager implements ODPApiManager {
 
     private final OptimizelyHttpClient httpClientSegments;
     private final OptimizelyHttpClient httpClientEvents;
+    private final RequestCompressor eventCompressor;
 
     public DefaultODPApiManager() {
         this(OptimizelyHttpClient.builder().build());
     }
 
     public DefaultODPApiManager(int segmentFetchTimeoutMillis, int eventDispatchTimeoutMillis) {
+        this(segmentFetchTimeoutMillis, eventDispatchTimeoutMillis, null);
+    }
+
+    /**
+     * @param segmentFetchTimeoutMillis  the timeout of segment fetch requests
+     * @param eventDispatchTimeoutMillis the timeout of event requests
+     * @param eventCompressor            gzip compression of event request bodies, or null to send them uncompressed
+     */
+    public DefaultODPApiManager(int segmentFetchTimeoutMillis, int eventDispatchTimeoutMillis, @Nullable RequestCompressor eventCompressor) {
         httpClientSegments = OptimizelyHttpClient.builder().setTimeoutMillis(segmentFetchTimeoutMillis).build();
         if (segmentFetchTimeoutMillis == eventDispatchTimeoutMillis) {
             // If the timeouts are same, single httpClient can be used for both.
@@ -48,12 +61,27 @@ public class DefaultODPApiManager implements ODPApiManager {
         } else {
             httpClientEvents = OptimizelyHttpClient.builder().setTimeoutMillis(eventDispatchTimeoutMillis).build();
         }
+        this.eventCompressor = eventCompressor;
     }
 
     @VisibleForTesting
     DefaultODPApiManager(OptimizelyHttpClient httpClient) {
+        this(httpClient, null);
+    }
+
+    @VisibleForTesting
+    DefaultODPApiManager(OptimizelyHttpClient httpClient, @Nullable RequestCompressor eventCompressor) {
         this.httpClientSegments = httpClient;
         this.httpClientEvents = httpClient;
+        this.eventCompressor = eventCompressor;
+    }
+
+    /**
+     * @return the compressor of event request bodies, with its byte counters, or null if compression is disabled
+     */
+    @Nullable
+    public RequestCompressor getEventCompressor() {
+        return eventCompressor;
     }
 
     @VisibleForTesting
@@ -145,13 +173,61 @@ public class DefaultODPApiManager implements ODPApiManager {
     */
     @Override
     public String fetchQualifiedSegments(String apiKey, String apiEndpoint, String userKey, String userValue, Set<String> segmentsToCheck) {
-        HttpPost request = new HttpPost(apiEndpoint);
         String segmentsString = getSegmentsStringForRequest(segmentsToCheck);
 
         String query = String.format("query($userId: String, $audiences: [String]) {customer(%s: $userId) {audiences(subset: $audiences) {edges {node {name state}}}}}", userKey);
         String variables = String.format("{\"userId\": \"%s\", \"audiences\": [%s]}", userValue, segmentsString);
         String requestPayload = String.format("{\"query\": \"%s\", \"variables\": %s}", query, variables);
 
+        return executeSegmentsRequest(apiKey, apiEndpoint, requestPayload);
+    }
+
+    /*
+     [Aliased GraphQL Request]
+
+     query($audiences: [String], $user0: String, $user1: String) {
+       user0: customer(fs_user_id: $user0) {audiences(subset: $audiences) {edges {node {name state}}}}
+       user1: customer(vuid: $user1) {audiences(subset: $audiences) {edges {node {name state}}}}
+     }
+
+     [Aliased GraphQL Response]
+
+     {"data": {"user0": {"audiences": {"edges": [...]}}, "user1": {"audiences": {"edges": [...]}}}}
+    */
+    @Override
+    public boolean supportsBulkSegmentFetch() {
+        return true;
+    }
+
+    @Override
+    public String fetchQualifiedSegments(String apiKey, String apiEndpoint, List<ODPUserIdentifier> users, Set<String> segmentsToCheck) {
+        return executeSegmentsRequest(apiKey, apiEndpoint, getBulkSegmentsRequestPayload(users, segmentsToCheck));
+    }
+
+    @VisibleForTesting
+    String getBulkSegmentsRequestPayload(List<ODPUserIdentifier> users, Set<String> segmentsToCheck) {
+        StringBuilder parameters = new StringBuilder("$audiences: [String]");
+        StringBuilder customers = new StringBuilder();
+        StringBuilder variables = new StringBuilder("{\"audiences\": [").append(getSegmentsStringForRequest(segmentsToCheck)).append("]");
+        for (int i = 0; i < users.size(); i++) {
+            ODPUserIdentifier user = users.get(i);
+            String alias = ODPApiManager.getUserAlias(i);
+            parameters.append(", $").append(alias).append(": String");
+            if (i > 0) {
+                customers.append(" ");
+            }
+            customers.append(String.format("%s: customer(%s: $%s) {audiences(subset: $audiences) {edges {node {name state}}}}",
+                alias, user.getUserKey().getKeyString(), alias));
+            variables.append(String.format(", \"%s\": \"%s\"", alias, user.getUserValue()));
+        }
+        variables.append("}");
+
+        String query = String.format("query(%s) {%s}", parameters, customers);
+        return String.format("{\"query\": \"%s\", \"variables\": %s}", query, variables);
+    }
+
+    private String executeSegmentsRequest(String apiKey, String apiEndpoint, String requestPayload) {
+        HttpPost request = new HttpPost(apiEndpoint);
         try {
             request.setEntity(new StringEntity(requestPayload));
         } catch (UnsupportedEncodingException e) {
@@ -212,11 +288,15 @@ public class DefaultODPApiManager implements ODPApiManager {
     public Integer sendEvents(String apiKey, String apiEndpoint, String eventPayload) {
         HttpPost request = new HttpPost(apiEndpoint);
 
-        try {
-            request.setEntity(new StringEntity(eventPayload));
-        } catch (UnsupportedEncodingException e) {
-            logger.error("ODP event send failed (Error encoding request payload)", e);
-            return null;
+        if (eventCompressor != null) {
+            request.setEntity(eventCompressor.createEntity(eventPayload));
+        } else {
+            try {
+                request.setEntity(new StringEntity(eventPayload));
+            } catch (UnsupportedEncodingException e) {
+                logger.error("ODP event send failed (Error encoding request payload)", e);
+                return null;
+            }
         }
         request.setHeader("x-api-key", apiKey);
         request.setHeader("content-type", "application/json");
@@ -0,0 +1,113 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCompressorTest {
+
+    private static final String BODY = createBody(200);
+
+    @Test
+    public void bodyBelowThresholdIsNotCompressed() throws IOException {
+        RequestCompressor compressor = new RequestCompressor(BODY.length() + 1, RequestCompressor.DEFAULT_LEVEL);
+        HttpEntity entity = compressor.createEntity(BODY);
+
+        assertNull(entity.getContentEncoding());
+        assertEquals(BODY, EntityUtils.toString(entity));
+        assertEquals(1, compressor.getRequestCount());
+        assertEquals(0, compressor.getCompressedRequestCount());
+        assertEquals(BODY.length(), compressor.getRawBytes());
+        assertEquals(BODY.length(), compressor.getSentBytes());
+    }
+
+    @Test
+    public void bodyAtThresholdIsCompressed() throws IOException {
+        RequestCompressor compressor = new RequestCompressor(BODY.length(), 9);
+        HttpEntity entity = compressor.createEntity(BODY);
+
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        byte[] compressed = EntityUtils.toByteArray(entity);
+        assertEquals(BODY, gunzip(compressed));
+        assertEquals(1, compressor.getRequestCount());
+        assertEquals(1, compressor.getCompressedRequestCount());
+        assertEquals(BODY.length(), compressor.getRawBytes());
+        assertEquals(compressed.length, compressor.getSentBytes());
+        assertTrue(compressor.getSentBytes() < compressor.getRawBytes());
+    }
+
+    @Test
+    public void streamedEntityIsAlwaysCompressed() throws IOException {
+        RequestCompressor compressor = new RequestCompressor(Integer.MAX_VALUE, RequestCompressor.DEFAULT_LEVEL);
+        HttpEntity entity = compressor.compress(new StringEntity(BODY));
+
+        assertEquals("gzip", entity.getContentEncoding().getValue());
+        assertTrue(entity.isChunked());
+        assertEquals(-1, entity.getContentLength());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertEquals(BODY, gunzip(out.toByteArray()));
+        assertEquals(1, compressor.getCompressedRequestCount());
+        assertEquals(BODY.length(), compressor.getRawBytes());
+        assertEquals(out.size(), compressor.getSentBytes());
+    }
+
+    @Test
+    public void invalidSettingsFallBackToDefaults() {
+        RequestCompressor compressor = new RequestCompressor(-1, 10);
+        assertEquals(RequestCompressor.DEFAULT_THRESHOLD, compressor.getThreshold());
+        assertEquals(RequestCompressor.DEFAULT_LEVEL, compressor.getLevel());
+    }
+
+    private static String createBody(int visitors) {
+        StringBuilder body = new StringBuilder("{\"visitors\":[");
+        for (int i = 0; i < visitors; i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            body.append("{\"visitor_id\":\"user_").append(i).append("\",\"attributes\":[{\"key\":\"browser\",\"value\":\"chrome\"}]}");
+        }
+        return body.append("]}").toString();
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2019, Optimizely
+ *    Copyright 2019, 2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -19,6 +19,7 @@ package com.optimizely.ab.config;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
 import com.optimizely.ab.OptimizelyHttpClient;
+import com.optimizely.ab.internal.HttpStubServer;
 import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
@@ -285,6 +286,45 @@ public class HttpProjectConfigManagerTest {
         assertEquals(modifiedStamp, projectConfigManager.getLastModified());
     }
 
+    @Test
+    public void testGetDatafileHttpResponse2XXWithETag() throws Exception {
+        String eTag = "\"1480511547\"";
+        CloseableHttpResponse getResponse = new MyResponse(new ProtocolVersion("TEST", 0, 0), 200, "TEST");
+        getResponse.setEntity(new StringEntity(datafileString));
+        getResponse.setHeader(HttpHeaders.ETAG, eTag);
+
+        String datafile = projectConfigManager.getDatafileFromResponse(getResponse);
+        assertNotNull(datafile);
+        assertEquals(eTag, projectConfigManager.getETag());
+
+        // Confirm the next poll is conditional on the entity tag
+        HttpGet request = projectConfigManager.createHttpRequest();
+        assertEquals(eTag, request.getFirstHeader(HttpHeaders.IF_NONE_MATCH).getValue());
+    }
+
+    @Test
+    public void testBuildStreamingManager() throws Exception {
+        try (HttpStubServer server = new HttpStubServer()) {
+            server.respondWith(200, datafileString);
+            server.handle("/stream", (request, exchange) -> HttpStubServer.respond(exchange, 304, ""));
+
+            projectConfigManager = builder()
+                .withUrl(server.getUrl("/datafile"))
+                .withStreamingUrl(server.getUrl("/stream"), StreamingProjectConfigManager.Mode.LONG_POLL)
+                .build();
+
+            assertTrue(projectConfigManager instanceof StreamingProjectConfigManager);
+            StreamingProjectConfigManager streamingManager = (StreamingProjectConfigManager) projectConfigManager;
+            assertEquals(new URI(server.getUrl("/stream")), streamingManager.getStreamUri());
+            assertEquals(StreamingProjectConfigManager.Mode.LONG_POLL, streamingManager.getMode());
+            assertTrue(streamingManager.isStreaming());
+            assertEquals("1480511547", projectConfigManager.getConfig().getRevision());
+
+            projectConfigManager.close();
+            assertFalse(streamingManager.isStreaming());
+        }
+    }
+
     @Test(expected = ClientProtocolException.class)
     public void testGetDatafileHttpResponse3XX() throws Exception {
         CloseableHttpResponse getResponse = new MyResponse(new ProtocolVersion("TEST", 0, 0), 300, "TEST");
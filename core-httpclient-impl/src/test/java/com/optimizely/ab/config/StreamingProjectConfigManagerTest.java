@@ -0,0 +1,378 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.config;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.optimizely.ab.internal.HttpStubServer;
+import com.optimizely.ab.internal.HttpStubServer.RecordedRequest;
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.http.HttpHeaders;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StreamingProjectConfigManagerTest {
+
+    private static final String REVISION = "1480511547";
+    private static final String NEXT_REVISION = "1480511548";
+
+    private HttpStubServer server;
+    private HttpProjectConfigManager projectConfigManager;
+    private String datafile;
+    private String nextDatafile;
+    private volatile String currentDatafile;
+    private volatile String currentRevision;
+
+    @Before
+    public void setUp() throws Exception {
+        datafile = Resources.toString(Resources.getResource("valid-project-config-v4.json"), Charsets.UTF_8);
+        nextDatafile = datafile.replace("\"revision\": \"" + REVISION + "\"", "\"revision\": \"" + NEXT_REVISION + "\"");
+        currentDatafile = datafile;
+        currentRevision = REVISION;
+
+        server = new HttpStubServer();
+        // answers with the current datafile, tagged with its revision
+        server.handle("/datafile", (request, exchange) -> {
+            String eTag = "\"" + currentRevision + "\"";
+            if (eTag.equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+                HttpStubServer.respond(exchange, 304, "");
+                return;
+            }
+            exchange.getResponseHeaders().set(HttpHeaders.ETAG, eTag);
+            HttpStubServer.respond(exchange, 200, currentDatafile);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        if (projectConfigManager != null) {
+            projectConfigManager.close();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testServerSentEventFetchesAnnouncedRevision() throws Exception {
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        server.handle("/stream", (request, exchange) -> streamEvents(exchange, events));
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+        assertEquals(REVISION, projectConfigManager.getConfig().getRevision());
+
+        publishNextDatafile();
+        events.add("id: 1\ndata: " + NEXT_REVISION + "\n\n");
+
+        awaitRevision(NEXT_REVISION);
+        assertEquals("\"" + NEXT_REVISION + "\"", projectConfigManager.getETag());
+    }
+
+    @Test
+    public void testServerSentEventOfCurrentRevisionIsSkipped() throws Exception {
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        server.handle("/stream", (request, exchange) -> streamEvents(exchange, events));
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+        assertEquals(REVISION, projectConfigManager.getConfig().getRevision());
+        awaitConnected();
+
+        events.add(": keep-alive\n\ndata: " + REVISION + "\n\n");
+        assertNull(server.takeRequest(100, TimeUnit.MILLISECONDS));
+        assertEquals(REVISION, projectConfigManager.getConfig().getRevision());
+    }
+
+    @Test
+    public void testAnnouncedRevisionIsRefetchedUntilAvailable() throws Exception {
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        server.handle("/stream", (request, exchange) -> streamEvents(exchange, events));
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+        assertEquals(REVISION, projectConfigManager.getConfig().getRevision());
+        awaitConnected();
+
+        // announced before the datafile URL serves it
+        events.add("data: " + NEXT_REVISION + "\n\n");
+        RecordedRequest fetch = awaitRequest("/datafile");
+        assertEquals("\"" + REVISION + "\"", fetch.getHeader(HttpHeaders.IF_NONE_MATCH));
+        awaitRequest("/datafile");
+        assertEquals(REVISION, projectConfigManager.getConfig().getRevision());
+
+        publishNextDatafile();
+        awaitRevision(NEXT_REVISION);
+
+        // refetches stop once the announced revision is fetched
+        Thread.sleep(100);
+        drainRequests();
+        assertNull(server.takeRequest(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testInvalidRetryFieldIsIgnored() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        BlockingQueue<Long> connectedAt = new LinkedBlockingQueue<>();
+        server.handle("/stream", (request, exchange) -> {
+            connectedAt.add(System.currentTimeMillis());
+            if (connections.incrementAndGet() > 1) {
+                streamEvents(exchange, new LinkedBlockingQueue<>());
+                return;
+            }
+            // closes the stream after setting the reconnect delay
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "text/event-stream");
+            HttpStubServer.respond(exchange, 200, "retry: 300\nretry: -1\nretry: 1e3\n\n");
+        });
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+
+        long first = connectedAt.poll(5, TimeUnit.SECONDS);
+        Long second = connectedAt.poll(5, TimeUnit.SECONDS);
+        assertNotNull(second);
+        assertTrue("Reconnected after " + (second - first) + " ms", second - first >= 250);
+    }
+
+    @Test
+    public void testZeroRetryFieldDoesNotReconnectInATightLoop() throws Exception {
+        BlockingQueue<Long> connectedAt = new LinkedBlockingQueue<>();
+        AtomicInteger connections = new AtomicInteger();
+        server.handle("/stream", (request, exchange) -> {
+            connectedAt.add(System.currentTimeMillis());
+            if (connections.incrementAndGet() > 1) {
+                // the endpoint goes down after setting a zero reconnect delay
+                HttpStubServer.respond(exchange, 503, "");
+                return;
+            }
+            exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "text/event-stream");
+            HttpStubServer.respond(exchange, 200, "retry: 0\n\n");
+        });
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+
+        long previous = connectedAt.poll(5, TimeUnit.SECONDS);
+        for (int i = 0; i < 3; i++) {
+            Long next = connectedAt.poll(5, TimeUnit.SECONDS);
+            assertNotNull(next);
+            assertTrue("Reconnected after " + (next - previous) + " ms",
+                next - previous >= StreamingProjectConfigManager.MIN_RETRY_MILLIS - 10);
+            previous = next;
+        }
+    }
+
+    @Test
+    public void testPollingIsPausedWhileStreamIsConnected() throws Exception {
+        server.handle("/stream", (request, exchange) -> streamEvents(exchange, new LinkedBlockingQueue<>()));
+
+        projectConfigManager = HttpProjectConfigManager.builder()
+            .withUrl(server.getUrl("/datafile"))
+            .withStreamingUrl(server.getUrl("/stream"), StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS)
+            .withStreamingReconnectDelay(10, TimeUnit.MILLISECONDS)
+            .withPollingInterval(20L, TimeUnit.MILLISECONDS)
+            .build();
+        awaitConnected();
+
+        assertNull(server.takeRequest(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testLongPollAppliesDatafile() throws Exception {
+        BlockingQueue<String> datafiles = new LinkedBlockingQueue<>();
+        server.handle("/stream", (request, exchange) -> {
+            try {
+                // holds the request until a datafile is published
+                String published = datafiles.poll(500, TimeUnit.MILLISECONDS);
+                if (published == null) {
+                    HttpStubServer.respond(exchange, 304, "");
+                    return;
+                }
+                exchange.getResponseHeaders().set(HttpHeaders.ETAG, "\"" + currentRevision + "\"");
+                HttpStubServer.respond(exchange, 200, published);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.LONG_POLL);
+        assertEquals(REVISION, projectConfigManager.getConfig().getRevision());
+
+        publishNextDatafile();
+        datafiles.add(nextDatafile);
+
+        awaitRevision(NEXT_REVISION);
+        // the poll that follows is conditional on the new revision
+        RecordedRequest poll;
+        do {
+            poll = awaitRequest("/stream");
+        } while (!("\"" + NEXT_REVISION + "\"").equals(poll.getHeader(HttpHeaders.IF_NONE_MATCH)));
+    }
+
+    @Test
+    public void testFallbackPollKeepsItsOwnValidatorsAndNeverRegresses() throws Exception {
+        AtomicInteger longPolls = new AtomicInteger();
+        server.handle("/stream", (request, exchange) -> {
+            if (longPolls.incrementAndGet() > 1) {
+                // the endpoint goes down, so polling resumes
+                HttpStubServer.respond(exchange, 503, "");
+                return;
+            }
+            exchange.getResponseHeaders().set(HttpHeaders.ETAG, "\"long-poll\"");
+            HttpStubServer.respond(exchange, 200, nextDatafile);
+        });
+        // a CDN edge still serving the previous revision
+        server.handle("/stale", (request, exchange) -> {
+            exchange.getResponseHeaders().set(HttpHeaders.ETAG, "\"cdn\"");
+            HttpStubServer.respond(exchange, 200, datafile);
+        });
+
+        projectConfigManager = HttpProjectConfigManager.builder()
+            .withUrl(server.getUrl("/stale"))
+            .withStreamingUrl(server.getUrl("/stream"), StreamingProjectConfigManager.Mode.LONG_POLL)
+            .withStreamingReconnectDelay(10, TimeUnit.MILLISECONDS)
+            .withPollingInterval(20L, TimeUnit.MILLISECONDS)
+            .build();
+
+        awaitRevision(NEXT_REVISION);
+        for (int polls = 0; polls < 3; ) {
+            RecordedRequest request = awaitRequest("/stale");
+            if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+                assertEquals("\"cdn\"", request.getHeader(HttpHeaders.IF_NONE_MATCH));
+                polls++;
+            }
+        }
+        assertEquals(NEXT_REVISION, projectConfigManager.getConfig().getRevision());
+        assertEquals("\"cdn\"", projectConfigManager.getETag());
+    }
+
+    @Test
+    public void testStreamReconnectsAfterFailure() throws Exception {
+        AtomicInteger connections = new AtomicInteger();
+        BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        server.handle("/stream", (request, exchange) -> {
+            if (connections.incrementAndGet() == 1) {
+                HttpStubServer.respond(exchange, 503, "");
+                return;
+            }
+            streamEvents(exchange, events);
+        });
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+        assertEquals(REVISION, projectConfigManager.getConfig().getRevision());
+
+        publishNextDatafile();
+        events.add("data: " + NEXT_REVISION + "\n\n");
+
+        awaitRevision(NEXT_REVISION);
+        assertEquals(2, connections.get());
+    }
+
+    @Test
+    public void testStopClosesStream() throws Exception {
+        server.handle("/stream", (request, exchange) -> streamEvents(exchange, new LinkedBlockingQueue<>()));
+
+        projectConfigManager = build(StreamingProjectConfigManager.Mode.SERVER_SENT_EVENTS);
+        StreamingProjectConfigManager streamingManager = (StreamingProjectConfigManager) projectConfigManager;
+        assertTrue(streamingManager.isStreaming());
+        awaitRequest("/stream");
+
+        projectConfigManager.stop();
+        assertFalse(streamingManager.isStreaming());
+
+        projectConfigManager.start();
+        assertTrue(streamingManager.isStreaming());
+        awaitRequest("/stream");
+    }
+
+    private HttpProjectConfigManager build(StreamingProjectConfigManager.Mode mode) {
+        return HttpProjectConfigManager.builder()
+            .withUrl(server.getUrl("/datafile"))
+            .withStreamingUrl(server.getUrl("/stream"), mode)
+            .withStreamingReconnectDelay(10, TimeUnit.MILLISECONDS)
+            // long enough that every update in these tests comes through the stream
+            .withPollingInterval(1L, TimeUnit.HOURS)
+            .build();
+    }
+
+    private void awaitConnected() throws InterruptedException {
+        StreamingProjectConfigManager streamingManager = (StreamingProjectConfigManager) projectConfigManager;
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!streamingManager.isConnected()) {
+            assertTrue("Timed out waiting for the stream to connect", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        // a poll started before the stream connected can still be in flight
+        Thread.sleep(50);
+        drainRequests();
+    }
+
+    private void drainRequests() throws InterruptedException {
+        while (server.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+            // discard
+        }
+    }
+
+    private void publishNextDatafile() {
+        currentDatafile = nextDatafile;
+        currentRevision = NEXT_REVISION;
+    }
+
+    private void awaitRevision(String revision) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!revision.equals(projectConfigManager.getConfig().getRevision())) {
+            assertTrue("Timed out waiting for revision " + revision, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private RecordedRequest awaitRequest(String path) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (true) {
+            RecordedRequest request = server.takeRequest(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+            assertNotNull("Timed out waiting for a request to " + path, request);
+            if (request.getUri().startsWith(path)) {
+                return request;
+            }
+        }
+    }
+
+    /**
+     * Hold the exchange open as a text/event-stream, writing the queued events until the client disconnects.
+     */
+    private static void streamEvents(HttpExchange exchange, BlockingQueue<String> events) throws IOException {
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        out.write(": connected\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        try {
+            while (true) {
+                String event = events.poll(100, TimeUnit.MILLISECONDS);
+                // a write also detects a disconnected client
+                out.write((event == null ? ":\n" : event).getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,6 +1,6 @@
 /**
  *
- *    Copyright 2016, 2019, Optimizely
+ *    Copyright 2016, 2019, 2023, Optimizely
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -19,19 +19,28 @@ package com.optimizely.ab.event;
 import com.google.common.util.concurrent.MoreExecutors;
 
 import com.optimizely.ab.OptimizelyHttpClient;
+import com.optimizely.ab.RequestCompressor;
 import com.optimizely.ab.event.internal.payload.EventBatch;
+import com.optimizely.ab.internal.HttpStubServer;
 import org.apache.http.client.ResponseHandler;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -43,6 +52,8 @@ import org.mockito.runners.MockitoJUnitRunner;
 
 import static com.optimizely.ab.event.AsyncEventHandler.builder;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.doThrow;
@@ -68,6 +79,96 @@ public class AsyncEventHandlerTest {
         verify(mockHttpClient).execute(any(HttpGet.class), any(ResponseHandler.class));
     }
 
+    @Test
+    public void testDispatchPostWithStringBody() throws Exception {
+        AsyncEventHandler eventHandler = new AsyncEventHandler(mockHttpClient, MoreExecutors.newDirectExecutorService());
+        LogEvent logEvent = createPostLogEvent("http://localhost/events");
+        eventHandler.dispatchEvent(logEvent);
+
+        HttpEntity entity = capturePostEntity();
+        assertTrue(entity instanceof StringEntity);
+        assertEquals(logEvent.getBody(), EntityUtils.toString(entity));
+    }
+
+    @Test
+    public void testDispatchPostWithStreamedBody() throws Exception {
+        AsyncEventHandler eventHandler = new AsyncEventHandler(mockHttpClient, MoreExecutors.newDirectExecutorService(), true, null);
+        LogEvent logEvent = createPostLogEvent("http://localhost/events");
+        eventHandler.dispatchEvent(logEvent);
+
+        HttpEntity entity = capturePostEntity();
+        assertTrue(entity instanceof LogEventEntity);
+        assertTrue(entity.isChunked());
+        assertTrue(entity.isRepeatable());
+        assertEquals(-1, entity.getContentLength());
+        assertEquals(logEvent.getBody(), EntityUtils.toString(entity, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testGzipDispatchToLocalServer() throws Exception {
+        try (HttpStubServer server = new HttpStubServer()) {
+            AsyncEventHandler eventHandler = builder().withGzip(true).withGzipThreshold(0).build();
+            LogEvent logEvent = createPostLogEvent(server.getUrl("/events"));
+            eventHandler.dispatchEvent(logEvent);
+
+            HttpStubServer.RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            eventHandler.close();
+
+            assertEquals("POST", request.getMethod());
+            assertEquals("gzip", request.getContentEncoding());
+            assertEquals(logEvent.getBody(), request.getBody());
+
+            RequestCompressor compressor = eventHandler.getRequestCompressor();
+            assertEquals(1, compressor.getCompressedRequestCount());
+            assertEquals(logEvent.getBody().length(), compressor.getRawBytes());
+            assertEquals(request.getBodySize(), compressor.getSentBytes());
+        }
+    }
+
+    @Test
+    public void testGzipStreamedDispatchToLocalServer() throws Exception {
+        try (HttpStubServer server = new HttpStubServer()) {
+            AsyncEventHandler eventHandler = builder().withStreamBody(true).withGzip(true).build();
+            LogEvent logEvent = createPostLogEvent(server.getUrl("/events"));
+            eventHandler.dispatchEvent(logEvent);
+
+            HttpStubServer.RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            eventHandler.close();
+
+            assertEquals("gzip", request.getContentEncoding());
+            assertEquals(logEvent.getBody(), request.getBody());
+            assertEquals(request.getBodySize(), eventHandler.getRequestCompressor().getSentBytes());
+        }
+    }
+
+    @Test
+    public void testGzipBelowThresholdToLocalServer() throws Exception {
+        try (HttpStubServer server = new HttpStubServer()) {
+            AsyncEventHandler eventHandler = builder().withGzip(true).withGzipThreshold(Integer.MAX_VALUE).build();
+            LogEvent logEvent = createPostLogEvent(server.getUrl("/events"));
+            eventHandler.dispatchEvent(logEvent);
+
+            HttpStubServer.RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            eventHandler.close();
+
+            assertNull(request.getContentEncoding());
+            assertEquals(logEvent.getBody(), request.getBody());
+            assertEquals(0, eventHandler.getRequestCompressor().getCompressedRequestCount());
+        }
+    }
+
+    @Test
+    public void testGzipDisabledByDefault() {
+        assertNull(builder().build().getRequestCompressor());
+    }
+
+    @Test
+    public void testStreamBody() {
+        AsyncEventHandler.Builder builder = builder();
+        builder.withStreamBody(true);
+        assertTrue(builder.streamBody);
+    }
+
     /**
      * Verify that {@link RejectedExecutionException}s are caught, rather than being propagated.
      */
@@ -147,4 +248,21 @@ public class AsyncEventHandlerTest {
         testParams.put("test", "params");
         return new LogEvent(LogEvent.RequestMethod.GET, "test_url", testParams, new EventBatch());
     }
+
+    private LogEvent createPostLogEvent(String url) {
+        EventBatch eventBatch = new EventBatch.Builder()
+            .setAccountId("12345")
+            .setProjectId("67890")
+            .setRevision("1")
+            .setClientName("java-sdk")
+            .build();
+        return new LogEvent(LogEvent.RequestMethod.POST, url, Collections.emptyMap(), eventBatch);
+    }
+
+    @SuppressWarnings("unchecked")
+    private HttpEntity capturePostEntity() throws IOException {
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(mockHttpClient).execute(request.capture(), any(ResponseHandler.class));
+        return request.getValue().getEntity();
+    }
 }
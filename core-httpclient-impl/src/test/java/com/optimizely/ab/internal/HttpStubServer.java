@@ -0,0 +1,188 @@
+/**
+ *
+ *    Copyright 2023, Optimizely and contributors
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package com.optimizely.ab.internal;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local HTTP server for tests that records the requests it receives and answers each with a fixed response,
+ * or with the {@link Handler} registered for its path.
+ */
+public class HttpStubServer implements AutoCloseable {
+
+    /**
+     * Answers the requests of a path. Requests are handled concurrently, so a handler can hold its exchange open.
+     */
+    public interface Handler {
+        void handle(RecordedRequest request, HttpExchange exchange) throws IOException;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = Executors.defaultThreadFactory().newThread(runnable);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final BlockingQueue<RecordedRequest> requests = new LinkedBlockingQueue<>();
+    private volatile int responseStatus = 200;
+    private volatile String responseBody = "";
+
+    public HttpStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", exchange -> handle(exchange, this::respond));
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Answer the requests of a path, and the paths below it, with a handler rather than the fixed response.
+     */
+    public void handle(String path, Handler handler) {
+        server.createContext(path, exchange -> handle(exchange, handler));
+    }
+
+    public String getUrl(String path) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+    }
+
+    public void respondWith(int status, String body) {
+        this.responseStatus = status;
+        this.responseBody = body;
+    }
+
+    public RecordedRequest takeRequest(long timeout, TimeUnit unit) throws InterruptedException {
+        return requests.poll(timeout, unit);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) throws IOException {
+        try {
+            RecordedRequest request = new RecordedRequest(
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().toString(),
+                exchange.getRequestHeaders(),
+                readFully(exchange.getRequestBody()));
+            requests.add(request);
+            handler.handle(request, exchange);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(RecordedRequest request, HttpExchange exchange) throws IOException {
+        respond(exchange, responseStatus, responseBody);
+    }
+
+    /**
+     * Send a complete response, with no body when the body is empty.
+     */
+    public static void respond(HttpExchange exchange, int status, String responseBody) throws IOException {
+        byte[] body = responseBody.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    public static class RecordedRequest {
+        private final String method;
+        private final String uri;
+        private final Headers headers;
+        private final String contentEncoding;
+        private final byte[] body;
+
+        RecordedRequest(String method, String uri, Headers headers, byte[] body) {
+            this.method = method;
+            this.uri = uri;
+            this.headers = headers;
+            this.contentEncoding = headers.getFirst("Content-Encoding");
+            this.body = body;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        /**
+         * @return the first value of a request header, or null if the request did not have it
+         */
+        public String getHeader(String name) {
+            return headers.getFirst(name);
+        }
+
+        /**
+         * @return the size of the body as received, before any decompression
+         */
+        public int getBodySize() {
+            return body.length;
+        }
+
+        /**
+         * @return the body as UTF-8, decompressed if it was sent gzip encoded
+         */
+        public String getBody() throws IOException {
+            if (!"gzip".equalsIgnoreCase(contentEncoding)) {
+                return new String(body, StandardCharsets.UTF_8);
+            }
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                return new String(readFully(in), StandardCharsets.UTF_8);
+            }
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /**
- *    Copyright 2022, Optimizely Inc. and contributors
+ *    Copyright 2022, 2023, Optimizely Inc. and contributors
  *
  *    Licensed under the Apache License, Version 2.0 (the "License");
  *    you may not use this file except in compliance with the License.
@@ -17,6 +17,8 @@ package com.optimizely.ab.odp;
 
 import ch.qos.logback.classic.Level;
 import com.optimizely.ab.OptimizelyHttpClient;
+import com.optimizely.ab.RequestCompressor;
+import com.optimizely.ab.internal.HttpStubServer;
 import com.optimizely.ab.internal.LogbackVerifier;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -30,6 +32,7 @@ import org.mockito.ArgumentCaptor;
 
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
@@ -96,6 +99,24 @@ public class DefaultODPApiManagerTest {
         assertEquals(expectedResponse, EntityUtils.toString(request.getValue().getEntity()));
     }
 
+    @Test
+    public void generateCorrectBulkRequestBody() throws Exception {
+        ODPApiManager apiManager = new DefaultODPApiManager(mockHttpClient);
+        assertTrue(apiManager.supportsBulkSegmentFetch());
+        apiManager.fetchQualifiedSegments("key", "endPoint",
+            Arrays.asList(ODPUserIdentifier.fsUserId("test_user"), new ODPUserIdentifier(ODPUserKey.VUID, "test_vuid")),
+            new HashSet<>(Arrays.asList("segment_1", "segment_2")));
+
+        String expectedRequest = "{\"query\": \"query($audiences: [String], $user0: String, $user1: String) {" +
+            "user0: customer(fs_user_id: $user0) {audiences(subset: $audiences) {edges {node {name state}}}} " +
+            "user1: customer(vuid: $user1) {audiences(subset: $audiences) {edges {node {name state}}}}}\", " +
+            "\"variables\": {\"audiences\": [\"segment_1\", \"segment_2\"], \"user0\": \"test_user\", \"user1\": \"test_vuid\"}}";
+        ArgumentCaptor<HttpPost> request = ArgumentCaptor.forClass(HttpPost.class);
+        verify(mockHttpClient).execute(request.capture());
+        assertEquals(expectedRequest, EntityUtils.toString(request.getValue().getEntity()));
+        assertEquals("key", request.getValue().getFirstHeader("x-api-key").getValue());
+    }
+
     @Test
     public void returnResponseStringWhenStatusIs200() throws Exception {
         ODPApiManager apiManager = new DefaultODPApiManager(mockHttpClient);
@@ -144,4 +165,36 @@ public class DefaultODPApiManagerTest {
         logbackVerifier.expectMessage(Level.DEBUG, "Creating HttpClient with timeout: 3333", 1);
         logbackVerifier.expectMessage(Level.DEBUG, "Creating HttpClient with timeout: 4444", 1);
     }
+
+    @Test
+    public void eventDispatchCompressedToLocalServer() throws Exception {
+        String payload = "[{\"action\":\"identified\",\"identifiers\":{\"fs_user_id\":\"user-1\"},\"data\":{},\"type\":\"fullstack\"}]";
+        try (HttpStubServer server = new HttpStubServer()) {
+            RequestCompressor compressor = new RequestCompressor(0, RequestCompressor.DEFAULT_LEVEL);
+            DefaultODPApiManager apiManager = new DefaultODPApiManager(1000, 1000, compressor);
+
+            assertEquals(Integer.valueOf(200), apiManager.sendEvents("testKey", server.getUrl("/v3/events"), payload));
+
+            HttpStubServer.RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertEquals("gzip", request.getContentEncoding());
+            assertEquals(payload, request.getBody());
+            assertEquals(1, compressor.getCompressedRequestCount());
+            assertEquals(payload.length(), compressor.getRawBytes());
+            assertEquals(request.getBodySize(), compressor.getSentBytes());
+        }
+    }
+
+    @Test
+    public void eventDispatchUncompressedByDefault() throws Exception {
+        try (HttpStubServer server = new HttpStubServer()) {
+            DefaultODPApiManager apiManager = new DefaultODPApiManager(1000, 1000);
+            assertNull(apiManager.getEventCompressor());
+
+            assertEquals(Integer.valueOf(200), apiManager.sendEvents("testKey", server.getUrl("/v3/events"), "[]"));
+
+            HttpStubServer.RecordedRequest request = server.takeRequest(5, TimeUnit.SECONDS);
+            assertNull(request.getContentEncoding());
+            assertEquals("[]", request.getBody());
+        }
+    }
 }